@@ -2,6 +2,7 @@ package es.tid.bgp.bgp4.messages;
 
 import es.tid.bgp.bgp4.update.fields.*;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.*;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
 
 import java.util.ArrayList;
 
@@ -94,6 +95,55 @@ public class BGP4Update extends BGP4Message
 		decode();
 	}
 
+	/**
+	 * Construct for decoding, sharing the path attributes through a cache.
+	 * The attributes found in the cache are not decoded again, and the
+	 * instances are shared with the other updates decoded with the same cache.
+	 *
+	 * @param bytes bytes of the message
+	 * @param attributeCache cache of canonical path attributes
+	 */
+	public BGP4Update(byte[] bytes, PathAttributeCache attributeCache)
+	{
+		this(bytes, attributeCache, null);
+	}
+
+	/**
+	 * Construct for decoding, sharing the path attributes and the node
+	 * descriptors of the Link-State NLRIs through caches.
+	 *
+	 * @param bytes bytes of the message
+	 * @param attributeCache cache of canonical path attributes, may be null
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 */
+	public BGP4Update(byte[] bytes, PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache)
+	{
+		super(bytes);
+		this.messageBytes = new byte[bytes.length];
+		System.arraycopy(bytes, 0, this.messageBytes, 0, bytes.length);
+		decode(attributeCache, descriptorsCache, null, 0);
+	}
+
+	/**
+	 * Construct for decoding, with the AS number size negotiated in the
+	 * session (see BGP4OctetsASByteCapabilityAdvertisement.isNegotiated).
+	 * The AS paths are interned in the given table, so the routes with the
+	 * same path share it.
+	 *
+	 * @param bytes bytes of the message
+	 * @param attributeCache cache of canonical path attributes, may be null
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 * @param asPathTable table of canonical AS paths, may be null
+	 * @param fourOctetAS true if the AS numbers of the AS_PATH are encoded in 4 octets
+	 */
+	public BGP4Update(byte[] bytes, PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable, boolean fourOctetAS)
+	{
+		super(bytes);
+		this.messageBytes = new byte[bytes.length];
+		System.arraycopy(bytes, 0, this.messageBytes, 0, bytes.length);
+		decode(attributeCache, descriptorsCache, asPathTable, fourOctetAS ? 4 : 2);
+	}
+
 	/**
 	 * Encode BGP4 Update message
 	 */
@@ -117,7 +167,11 @@ public class BGP4Update extends BGP4Message
 		int totalPathAttibuteLength = 0;
 		for(int i = 0; i < pathAttributes.size(); ++ i)
 		{
-			pathAttributes.get(i).encode();
+			//Shared attributes keep their bytes, other threads may be copying them
+			if(!pathAttributes.get(i).isShared() || pathAttributes.get(i).getBytes() == null)
+			{
+				pathAttributes.get(i).encode();
+			}
 			len = len + pathAttributes.get(i).getLength();
 			totalPathAttibuteLength = totalPathAttibuteLength + pathAttributes.get(i).getLength();
 		}
@@ -163,6 +217,14 @@ public class BGP4Update extends BGP4Message
 	}
 
 	public void decode()
+	{
+		decode(null, null, null, 0);
+	}
+
+	/**
+	 * @param asNumberSize size of the AS numbers in the AS_PATH (2 or 4), 0 to guess it
+	 */
+	private void decode(PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable, int asNumberSize)
 	{
 		int offset = BGPHeaderLength;
 		//Withdrawn Routes length
@@ -171,8 +233,7 @@ public class BGP4Update extends BGP4Message
 		//Withdrawn Routes
 		if(withdrawnRoutesLength != 0)
 		{
-			//Decodificar withdrawnRoutes
-			log.warn("withdrawnRoutesLength not implemented");
+			withdrawnRoutes = new WithdrawnRoutes(messageBytes, offset, withdrawnRoutesLength);
 			offset = offset + withdrawnRoutesLength;
 		} else {
 			withdrawnRoutes =null;
@@ -193,40 +254,29 @@ public class BGP4Update extends BGP4Message
 				attribute_typeCode = PathAttribute.getAttibuteTypeCode(messageBytes, offset);
 				attribute_length = PathAttribute.getAttributeLength(messageBytes, offset);
 				mandatory_length = PathAttribute.getMandatoryLength(messageBytes, offset);
-				if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ORIGIN)
-				{
-					OriginAttribute origin = new OriginAttribute(messageBytes, offset);
-					pathAttributes.add(origin);
-
-				} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ASPATH)
-				{
-					AS_Path_Attribute as_Path_Attribute = new AS_Path_Attribute(messageBytes, offset);
-					pathAttributes.add(as_Path_Attribute);
-				} else if((attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE) ||
-						(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE_LEGACY))
-				{
-					LinkStateAttribute linkState_Attribute = new LinkStateAttribute(messageBytes, offset);
-					pathAttributes.add(linkState_Attribute);
-				} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI)
+				PathAttribute pathAttribute = null;
+				boolean cacheable = (attributeCache != null) && PathAttributeCache.isCacheable(attribute_typeCode);
+				if(cacheable)
 				{
-					//PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI
-					int afi = MP_Reach_Attribute.getAFI(messageBytes, offset);
-					if(afi == AFICodes.AFI_BGP_LS)
+					pathAttribute = attributeCache.lookup(messageBytes, offset);
+					if((pathAttribute instanceof AS_Path_Attribute) && (asNumberSize != 0) && (((AS_Path_Attribute) pathAttribute).isFourOctetAS() != (asNumberSize == 4)))
 					{
-						BGP_LS_MP_Reach_Attribute blsra = new BGP_LS_MP_Reach_Attribute(messageBytes, offset);
-						pathAttributes.add(blsra);
-					} else
-					{
-						Generic_MP_Reach_Attribute gblsra = new Generic_MP_Reach_Attribute(messageBytes, offset);
-						pathAttributes.add(gblsra);
+						//Same bytes learnt with the other AS number size, it is a different path
+						pathAttribute = null;
+						cacheable = false;
 					}
-				} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI)
+				}
+				if(pathAttribute == null)
 				{
-					Generic_MP_Unreach_Attribute mpUnreachAttribute = new Generic_MP_Unreach_Attribute(messageBytes, offset);
-					pathAttributes.add(mpUnreachAttribute);
-				} else
+					pathAttribute = decodePathAttribute(attribute_typeCode, offset, descriptorsCache, asPathTable, asNumberSize);
+					if(cacheable && pathAttribute != null)
+					{
+						pathAttribute = attributeCache.intern(pathAttribute);
+					}
+				}
+				if(pathAttribute != null)
 				{
-					log.warn("attribute_typeCode NOT supported by this implementation " + attribute_typeCode);
+					pathAttributes.add(pathAttribute);
 				}
 				offset = offset + attribute_length + mandatory_length;
 				len = len + attribute_length + mandatory_length;
@@ -237,16 +287,22 @@ public class BGP4Update extends BGP4Message
 			//NLRI
 			//if (nlri != null){
 			int nlri_type = LinkStateNLRI.getNLRIType(messageBytes, offset);
+			if(!isLinkStateNLRI(nlri_type, offset))
+			{
+				//IPv4 unicast prefixes
+				nlri = new IPv4UnicastNLRI(messageBytes, offset, this.getLength() - offset);
+				return;
+			}
 			if(nlri_type == NLRITypes.Link_NLRI)
 			{
 				//Link_NLRI
-				nlri = new LinkNLRI(messageBytes, offset);
+				nlri = new LinkNLRI(messageBytes, offset, descriptorsCache);
 				offset = offset + nlri.getLength();
 			}
 			if(nlri_type == NLRITypes.Node_NLRI)
 			{
 				//Node_NLRI
-				nlri = new NodeNLRI(messageBytes, offset);
+				nlri = new NodeNLRI(messageBytes, offset, descriptorsCache);
 				//UPDATE message Length - 23 - Total Path Attributes Length
 				//   - Withdrawn Routes Length
 				offset = offset + nlri.getLength();
@@ -266,6 +322,75 @@ public class BGP4Update extends BGP4Message
 	}
 
 
+	/**
+	 * Checks if the NLRI field after the path attributes is a single
+	 * Link-State NLRI (of a known type, filling the rest of the message)
+	 * instead of a list of IPv4 unicast prefixes.
+	 *
+	 * @param nlri_type Link-State NLRI type read at the offset
+	 * @param offset offset of the NLRI field
+	 * @return true if the field is a Link-State NLRI
+	 */
+	private boolean isLinkStateNLRI(int nlri_type, int offset)
+	{
+		if((nlri_type != NLRITypes.Link_NLRI) && (nlri_type != NLRITypes.Node_NLRI) && (nlri_type != NLRITypes.IT_Node_NLRI))
+		{
+			return false;
+		}
+		return (offset + 4 <= this.getLength()) && (LinkStateNLRI.getNLRILength(messageBytes, offset) + 4 == this.getLength() - offset);
+	}
+
+	/**
+	 * Decodes the path attribute starting at the given offset of the message
+	 *
+	 * @param attribute_typeCode type code of the attribute
+	 * @param offset offset of the attribute in the message bytes
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 * @param asPathTable table of canonical AS paths, may be null
+	 * @param asNumberSize size of the AS numbers in the AS_PATH (2 or 4), 0 to guess it
+	 * @return the path attribute, or null if the type is not supported
+	 */
+	private PathAttribute decodePathAttribute(int attribute_typeCode, int offset, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable, int asNumberSize)
+	{
+		if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ORIGIN)
+		{
+			return new OriginAttribute(messageBytes, offset);
+		} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ASPATH)
+		{
+			if(asNumberSize == 0)
+			{
+				return new AS_Path_Attribute(messageBytes, offset);
+			}
+			return new AS_Path_Attribute(messageBytes, offset, asNumberSize == 4, asPathTable);
+		} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_NEXTHOP)
+		{
+			return new Next_Hop_Attribute(messageBytes, offset);
+		} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_LOCAL_PREF)
+		{
+			return new LOCAL_PREF_Attribute(messageBytes, offset);
+		} else if((attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE) ||
+				(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE_LEGACY))
+		{
+			return new LinkStateAttribute(messageBytes, offset);
+		} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI)
+		{
+			//PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI
+			int afi = MP_Reach_Attribute.getAFI(messageBytes, offset);
+			if(afi == AFICodes.AFI_BGP_LS)
+			{
+				return new BGP_LS_MP_Reach_Attribute(messageBytes, offset, descriptorsCache);
+			} else
+			{
+				return new Generic_MP_Reach_Attribute(messageBytes, offset);
+			}
+		} else if(attribute_typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI)
+		{
+			return new Generic_MP_Unreach_Attribute(messageBytes, offset);
+		}
+		log.warn("attribute_typeCode NOT supported by this implementation " + attribute_typeCode);
+		return null;
+	}
+
 	public WithdrawnRoutes getWithdrawnRoutes()
 	{
 		return withdrawnRoutes;
@@ -273,7 +398,7 @@ public class BGP4Update extends BGP4Message
 
 	public void setWithdrawnRoutes(WithdrawnRoutes withdrawnRoutes)
 	{
-		//this.withdrawnRoutes = withdrawnRoutes; FIXME: First, implement WithdrawnRoutes
+		this.withdrawnRoutes = withdrawnRoutes;
 	}
 
 
@@ -313,11 +438,10 @@ public class BGP4Update extends BGP4Message
 		// TODO Auto-generated method stub
 		StringBuffer sb = new StringBuffer(80000);
 		sb.append("BGP4Update Msg: ");
-//		if(withdrawnRoutesLength != 0)
-//		{
-//			sb.append("> Withdrawn Routes: \n");
-//			sb.append(withdrawnRoutes.toString());
-//		}
+		if(withdrawnRoutes != null)
+		{
+			sb.append("> " + withdrawnRoutes.toString() + "\n");
+		}
 		if(pathAttributes.size() != 0)
 		{
 			sb.append("> Path Attibutes: \n ");
@@ -332,4 +456,4 @@ public class BGP4Update extends BGP4Message
 		return sb.toString();
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package es.tid.bgp.bgp4.mrt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader of MRT dumps (RFC 6396) that maps the file in memory.
+ * <p>
+ * The records are read in place from the mapped file, see {@link MRTRecord}.
+ * Files bigger than a mapping (1 GB) are mapped in consecutive regions; a
+ * record is never split between two regions.
+ * <p>
+ * By default the records are returned as fast as they are requested. With
+ * {@link #setReplaySpeed(double)} the reader waits between records to keep
+ * the original timing (1), or a multiple of it, so a capture can be replayed
+ * to a speaker as it was received.
+ *
+ * <pre>
+ * MRTReader reader = new MRTReader(file);
+ * while (reader.next()){
+ *     MRTRecord record = reader.getRecord();
+ *     if (record.getMessageType() == BGP4MessageTypes.MESSAGE_UPDATE){
+ *         BGP4Update update = record.decodeUpdate();
+ *     }
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * @author ogondio
+ *
+ */
+public class MRTReader implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	static final long MAX_MAPPING_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final long fileSize;
+
+	private final long maxMappingSize;
+
+	private MappedByteBuffer mapping;
+
+	private long mappingStart;
+
+	private long mappingEnd;
+
+	/**
+	 * Position in the file of the next record
+	 */
+	private long position;
+
+	private final MRTRecord record = new MRTRecord();
+
+	private long records;
+
+	/**
+	 * 0 to read as fast as possible
+	 */
+	private double replaySpeed;
+
+	private long firstRecordMicros = -1;
+
+	private long replayStartNanos;
+
+	public MRTReader(File mrtFile) throws IOException{
+		this(mrtFile, MAX_MAPPING_SIZE);
+	}
+
+	MRTReader(File mrtFile, long maxMappingSize) throws IOException{
+		this.file = new RandomAccessFile(mrtFile, "r");
+		this.channel = file.getChannel();
+		this.fileSize = channel.size();
+		this.maxMappingSize = maxMappingSize;
+	}
+
+	/**
+	 * Reads the next record.
+	 * @return false at the end of the file or if the last record is truncated
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public boolean next() throws IOException{
+		if (position + MRTTypes.MRT_HEADER_LENGTH > fileSize){
+			if (position < fileSize){
+				log.warn("MRT: truncated header at the end of the file, offset "+position);
+			}
+			return false;
+		}
+		map(position, MRTTypes.MRT_HEADER_LENGTH);
+		long length = mapping.getInt((int)(position - mappingStart) + 8) & 0xFFFFFFFFL;
+		long recordLength = MRTTypes.MRT_HEADER_LENGTH + length;
+		if (position + recordLength > fileSize){
+			log.warn("MRT: truncated record at offset "+position);
+			return false;
+		}
+		if (recordLength > maxMappingSize){
+			throw new IOException("MRT record too big: "+recordLength+" bytes at offset "+position);
+		}
+		map(position, recordLength);
+		record.wrap(mapping, (int)(position - mappingStart));
+		position += recordLength;
+		records++;
+		if (replaySpeed > 0){
+			waitRecordTime();
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure that the region of the file is in the current mapping
+	 */
+	private void map(long start, long length) throws IOException{
+		if (mapping != null && start >= mappingStart && start + length <= mappingEnd){
+			return;
+		}
+		long size = Math.min(maxMappingSize, fileSize - start);
+		mapping = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		mappingStart = start;
+		mappingEnd = start + size;
+	}
+
+	private void waitRecordTime(){
+		long recordMicros = record.getTimeMicros();
+		if (firstRecordMicros < 0){
+			firstRecordMicros = recordMicros;
+			replayStartNanos = System.nanoTime();
+			return;
+		}
+		long due = replayStartNanos + (long)((recordMicros - firstRecordMicros) * 1000 / replaySpeed);
+		long wait = due - System.nanoTime();
+		while (wait > 0){
+			try {
+				Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			wait = due - System.nanoTime();
+		}
+	}
+
+	/**
+	 * @return The current record. It is reused by the next call to {@link #next()}.
+	 */
+	public MRTRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * @return Number of records read
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return Offset of the next record in the file
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public double getReplaySpeed() {
+		return replaySpeed;
+	}
+
+	/**
+	 * Sets the timing of the replay
+	 * @param replaySpeed 0 to read the records as fast as possible (default), 1 to
+	 * keep the original time between records, 2 to replay at twice the speed...
+	 */
+	public void setReplaySpeed(double replaySpeed) {
+		if (replaySpeed < 0){
+			throw new IllegalArgumentException("replaySpeed must not be negative");
+		}
+		this.replaySpeed = replaySpeed;
+		this.firstRecordMicros = -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		mapping = null;
+		channel.close();
+		file.close();
+	}
+
+}
@@ -0,0 +1,365 @@
+package es.tid.bgp.bgp4.mrt;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.ASPathTable;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributeCache;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
+
+/**
+ * MRT record, read in place from the buffer that holds the dump.
+ * <p>
+ * The record does not copy the bytes: the fields of the header and of the
+ * BGP4MP part are read from the buffer, and the BGP message is exposed as a
+ * slice of it. The same instance is reused by {@link MRTReader} for all the
+ * records of a file, so it is only valid until the next record is read.
+ *
+ *  <pre>
+    0                   1                   2                   3
+    0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                           Timestamp                           |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |             Type              |            Subtype            |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                             Length                            |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                      Message... (variable)
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+                BGP4MP_MESSAGE_AS4 Subtype (RFC 6396 section 4.4.3)
+
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                         Peer AS Number                        |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                         Local AS Number                       |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |        Interface Index        |        Address Family         |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                Peer IP Address (variable)                     |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                Local IP Address (variable)                    |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |                    BGP Message... (variable)
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ *
+ * @author ogondio
+ *
+ */
+public class MRTRecord {
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Offset of the record (common header) in the buffer
+	 */
+	private int offset;
+
+	private long timestamp;
+
+	private int microseconds;
+
+	private int type;
+
+	private int subtype;
+
+	/**
+	 * Length of the record without the common header
+	 */
+	private int length;
+
+	private boolean bgp4mp;
+
+	private long peerAS;
+
+	private long localAS;
+
+	private int interfaceIndex;
+
+	private int addressFamily;
+
+	private int peerAddressOffset;
+
+	private int localAddressOffset;
+
+	/**
+	 * Offset of the BGP message (or of the states of a state change)
+	 */
+	private int dataOffset;
+
+	private int dataLength;
+
+	/**
+	 * Reads the record at the given position of the buffer. The buffer must
+	 * contain the whole record.
+	 * @param buffer Buffer with the dump
+	 * @param offset Offset of the record
+	 */
+	void wrap(ByteBuffer buffer, int offset){
+		this.buffer = buffer;
+		this.offset = offset;
+		this.timestamp = buffer.getInt(offset) & 0xFFFFFFFFL;
+		this.type = buffer.getShort(offset + 4) & 0xFFFF;
+		this.subtype = buffer.getShort(offset + 6) & 0xFFFF;
+		this.length = buffer.getInt(offset + 8);
+		int pos = offset + MRTTypes.MRT_HEADER_LENGTH;
+		int end = pos + length;
+		this.microseconds = 0;
+		this.bgp4mp = false;
+		if (type == MRTTypes.MRT_TYPE_BGP4MP_ET){
+			if (length < 4){
+				return;
+			}
+			this.microseconds = buffer.getInt(pos);
+			pos += 4;
+		}
+		if (type != MRTTypes.MRT_TYPE_BGP4MP && type != MRTTypes.MRT_TYPE_BGP4MP_ET){
+			return;
+		}
+		boolean as4 = isAS4(subtype);
+		int asLength = as4 ? 4 : 2;
+		if (pos + 2 * asLength + 4 > end){
+			return;
+		}
+		if (as4){
+			this.peerAS = buffer.getInt(pos) & 0xFFFFFFFFL;
+			this.localAS = buffer.getInt(pos + 4) & 0xFFFFFFFFL;
+		} else {
+			this.peerAS = buffer.getShort(pos) & 0xFFFF;
+			this.localAS = buffer.getShort(pos + 2) & 0xFFFF;
+		}
+		pos += 2 * asLength;
+		this.interfaceIndex = buffer.getShort(pos) & 0xFFFF;
+		this.addressFamily = buffer.getShort(pos + 2) & 0xFFFF;
+		pos += 4;
+		int addressLength = (addressFamily == AFICodes.AFI_IPv6) ? 16 : 4;
+		if (pos + 2 * addressLength > end){
+			return;
+		}
+		this.peerAddressOffset = pos;
+		this.localAddressOffset = pos + addressLength;
+		this.dataOffset = pos + 2 * addressLength;
+		this.dataLength = end - dataOffset;
+		this.bgp4mp = true;
+	}
+
+	private static boolean isAS4(int subtype){
+		return subtype == MRTTypes.BGP4MP_MESSAGE_AS4 || subtype == MRTTypes.BGP4MP_STATE_CHANGE_AS4 || subtype == MRTTypes.BGP4MP_MESSAGE_AS4_LOCAL;
+	}
+
+	/**
+	 * @return true if the record is a well formed BGP4MP (or BGP4MP_ET) record
+	 */
+	public boolean isBGP4MP(){
+		return bgp4mp;
+	}
+
+	/**
+	 * @return true if the record carries a BGP message
+	 */
+	public boolean isMessage(){
+		if (!bgp4mp){
+			return false;
+		}
+		return subtype == MRTTypes.BGP4MP_MESSAGE || subtype == MRTTypes.BGP4MP_MESSAGE_AS4 || subtype == MRTTypes.BGP4MP_MESSAGE_LOCAL || subtype == MRTTypes.BGP4MP_MESSAGE_AS4_LOCAL;
+	}
+
+	/**
+	 * @return true if the record is a state change of the BGP FSM
+	 */
+	public boolean isStateChange(){
+		return bgp4mp && (subtype == MRTTypes.BGP4MP_STATE_CHANGE || subtype == MRTTypes.BGP4MP_STATE_CHANGE_AS4);
+	}
+
+	/**
+	 * @return true if the record uses 4 octet AS numbers. It is also taken as
+	 * the AS number size of the AS_PATH attributes of the message.
+	 */
+	public boolean isAS4(){
+		return isAS4(subtype);
+	}
+
+	/**
+	 * @return Seconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return Microseconds of the timestamp (only in BGP4MP_ET records, 0 otherwise)
+	 */
+	public int getMicroseconds() {
+		return microseconds;
+	}
+
+	/**
+	 * @return Time of the record in microseconds since the epoch
+	 */
+	public long getTimeMicros(){
+		return timestamp * 1000000L + microseconds;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getSubtype() {
+		return subtype;
+	}
+
+	/**
+	 * @return Length of the record, including the common header
+	 */
+	public int getLength() {
+		return MRTTypes.MRT_HEADER_LENGTH + length;
+	}
+
+	public long getPeerAS() {
+		return peerAS;
+	}
+
+	public long getLocalAS() {
+		return localAS;
+	}
+
+	public int getInterfaceIndex() {
+		return interfaceIndex;
+	}
+
+	public int getAddressFamily() {
+		return addressFamily;
+	}
+
+	public InetAddress getPeerAddress() throws UnknownHostException{
+		return getAddress(peerAddressOffset);
+	}
+
+	public InetAddress getLocalAddress() throws UnknownHostException{
+		return getAddress(localAddressOffset);
+	}
+
+	private InetAddress getAddress(int addressOffset) throws UnknownHostException{
+		byte[] address = new byte[(addressFamily == AFICodes.AFI_IPv6) ? 16 : 4];
+		for (int i = 0; i < address.length; i++){
+			address[i] = buffer.get(addressOffset + i);
+		}
+		return InetAddress.getByAddress(address);
+	}
+
+	/**
+	 * @return Previous state of the FSM in a state change record
+	 */
+	public int getOldState(){
+		return buffer.getShort(dataOffset) & 0xFFFF;
+	}
+
+	/**
+	 * @return New state of the FSM in a state change record
+	 */
+	public int getNewState(){
+		return buffer.getShort(dataOffset + 2) & 0xFFFF;
+	}
+
+	/**
+	 * @return The buffer that holds the record
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return Offset of the record in the buffer
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Offset of the BGP message in the buffer
+	 */
+	public int getMessageOffset() {
+		return dataOffset;
+	}
+
+	/**
+	 * @return Length of the BGP message
+	 */
+	public int getMessageLength() {
+		return dataLength;
+	}
+
+	/**
+	 * @return BGP message type (BGP4MessageTypes), -1 if the record has no message
+	 */
+	public int getMessageType(){
+		if (!isMessage() || dataLength < BGP4Message.getBGPHeaderLength()){
+			return -1;
+		}
+		return buffer.get(dataOffset + 18) & 0xFF;
+	}
+
+	/**
+	 * @return View of the BGP message, sharing the bytes of the dump
+	 */
+	public ByteBuffer getMessage(){
+		ByteBuffer message = buffer.duplicate();
+		message.limit(dataOffset + dataLength);
+		message.position(dataOffset);
+		return message.slice();
+	}
+
+	/**
+	 * Copies the BGP message
+	 * @param dst Destination array
+	 * @param dstOffset Offset in the destination array
+	 */
+	public void copyMessage(byte[] dst, int dstOffset){
+		ByteBuffer message = buffer.duplicate();
+		message.position(dataOffset);
+		message.get(dst, dstOffset, dataLength);
+	}
+
+	/**
+	 * @return A copy of the BGP message
+	 */
+	public byte[] getMessageBytes(){
+		byte[] message = new byte[dataLength];
+		copyMessage(message, 0);
+		return message;
+	}
+
+	/**
+	 * Decodes the BGP UPDATE carried in the record
+	 * @return The decoded update
+	 */
+	public BGP4Update decodeUpdate(){
+		return new BGP4Update(getMessageBytes());
+	}
+
+	/**
+	 * Decodes the BGP UPDATE carried in the record, sharing the attributes,
+	 * node descriptors and AS paths through the given caches. The AS numbers
+	 * of the AS_PATH are taken as 4 octets if the record is an AS4 one.
+	 * @param attributeCache cache of canonical path attributes, may be null
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 * @param asPathTable table of canonical AS paths, may be null
+	 * @return The decoded update
+	 */
+	public BGP4Update decodeUpdate(PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable){
+		return new BGP4Update(getMessageBytes(), attributeCache, descriptorsCache, asPathTable, isAS4());
+	}
+
+	@Override
+	public String toString() {
+		return "MRTRecord [timestamp=" + timestamp + ", microseconds=" + microseconds + ", type=" + type
+				+ ", subtype=" + subtype + ", length=" + length + ", peerAS=" + peerAS + ", localAS=" + localAS + "]";
+	}
+
+}
@@ -0,0 +1,32 @@
+package es.tid.bgp.bgp4.mrt;
+
+/**
+ * MRT record types and BGP4MP subtypes (RFC 6396 section 4 and 4.4)
+ *
+ * @author ogondio
+ *
+ */
+public class MRTTypes {
+
+	/**
+	 * Length of the MRT common header: timestamp, type, subtype and length
+	 */
+	public static final int MRT_HEADER_LENGTH = 12;
+
+	public static final int MRT_TYPE_OSPFv2 = 11;
+	public static final int MRT_TYPE_TABLE_DUMP = 12;
+	public static final int MRT_TYPE_TABLE_DUMP_V2 = 13;
+	public static final int MRT_TYPE_BGP4MP = 16;
+	/**
+	 * BGP4MP with a microsecond timestamp after the common header
+	 */
+	public static final int MRT_TYPE_BGP4MP_ET = 17;
+
+	public static final int BGP4MP_STATE_CHANGE = 0;
+	public static final int BGP4MP_MESSAGE = 1;
+	public static final int BGP4MP_MESSAGE_AS4 = 4;
+	public static final int BGP4MP_STATE_CHANGE_AS4 = 5;
+	public static final int BGP4MP_MESSAGE_LOCAL = 6;
+	public static final int BGP4MP_MESSAGE_AS4_LOCAL = 7;
+
+}
@@ -0,0 +1,202 @@
+package es.tid.bgp.bgp4.mrt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.ASPath;
+
+/**
+ * Writer of MRT dumps (RFC 6396) of the BGP messages exchanged with a peer.
+ * <p>
+ * The messages are written as BGP4MP records (BGP4MP_ET if the timestamps
+ * are written with microseconds) through a buffer, so writing a message does
+ * not cost a system call. The file is opened in append mode, a capture can
+ * be continued after a restart. The records are in the file after
+ * {@link #flush()} or {@link #close()}.
+ * <p>
+ * The writer is not thread safe, it is meant to be used by the thread that
+ * receives the messages of the peer.
+ *
+ * @author ogondio
+ *
+ */
+public class MRTWriter implements Closeable, Flushable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer;
+
+	private final boolean extendedTimestamp;
+
+	private final boolean fourOctetAS;
+
+	private long records;
+
+	/**
+	 * Creates a writer with microsecond timestamps and 4 octet AS numbers
+	 * @param mrtFile File of the dump
+	 * @throws IOException if the file cannot be opened
+	 */
+	public MRTWriter(File mrtFile) throws IOException{
+		this(mrtFile, true, true, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param mrtFile File of the dump
+	 * @param extendedTimestamp true to write BGP4MP_ET records, with microseconds
+	 * @param fourOctetAS true to write the AS4 subtypes. It must be true if
+	 * the session uses 4 octet AS numbers, the readers take it as the size of
+	 * the AS numbers in the AS_PATH of the messages.
+	 * @param bufferSize Size of the write buffer
+	 * @throws IOException if the file cannot be opened
+	 */
+	public MRTWriter(File mrtFile, boolean extendedTimestamp, boolean fourOctetAS, int bufferSize) throws IOException{
+		this.channel = FileChannel.open(mrtFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.extendedTimestamp = extendedTimestamp;
+		this.fourOctetAS = fourOctetAS;
+	}
+
+	/**
+	 * Writes an encoded BGP message
+	 * @param timeMillis Time when the message was received or sent
+	 * @param peerAS AS of the peer
+	 * @param localAS Local AS
+	 * @param peerAddress Address of the peer
+	 * @param localAddress Local address (same family as the peer address)
+	 * @param message Encoded message
+	 * @throws IOException if the buffer cannot be written
+	 */
+	public void writeMessage(long timeMillis, long peerAS, long localAS, InetAddress peerAddress, InetAddress localAddress, BGP4Message message) throws IOException{
+		writeMessage(timeMillis * 1000, peerAS, localAS, peerAddress, localAddress, message.getBytes(), 0, message.getLength());
+	}
+
+	/**
+	 * Writes a BGP message
+	 * @param timeMicros Time in microseconds since the epoch
+	 * @param peerAS AS of the peer
+	 * @param localAS Local AS
+	 * @param peerAddress Address of the peer
+	 * @param localAddress Local address (same family as the peer address)
+	 * @param message Bytes of the message
+	 * @param offset Offset of the message
+	 * @param length Length of the message
+	 * @throws IOException if the buffer cannot be written
+	 */
+	public void writeMessage(long timeMicros, long peerAS, long localAS, InetAddress peerAddress, InetAddress localAddress, byte[] message, int offset, int length) throws IOException{
+		int subtype = fourOctetAS ? MRTTypes.BGP4MP_MESSAGE_AS4 : MRTTypes.BGP4MP_MESSAGE;
+		writeBGP4MPHeader(timeMicros, subtype, peerAS, localAS, peerAddress, localAddress, length);
+		int written = 0;
+		while (written < length){
+			if (!buffer.hasRemaining()){
+				drain();
+			}
+			int n = Math.min(buffer.remaining(), length - written);
+			buffer.put(message, offset + written, n);
+			written += n;
+		}
+		records++;
+	}
+
+	/**
+	 * Writes a change of state of the BGP FSM
+	 * @param timeMicros Time in microseconds since the epoch
+	 * @param peerAS AS of the peer
+	 * @param localAS Local AS
+	 * @param peerAddress Address of the peer
+	 * @param localAddress Local address (same family as the peer address)
+	 * @param oldState Previous state (RFC 6396 section 4.4.1)
+	 * @param newState New state
+	 * @throws IOException if the buffer cannot be written
+	 */
+	public void writeStateChange(long timeMicros, long peerAS, long localAS, InetAddress peerAddress, InetAddress localAddress, int oldState, int newState) throws IOException{
+		int subtype = fourOctetAS ? MRTTypes.BGP4MP_STATE_CHANGE_AS4 : MRTTypes.BGP4MP_STATE_CHANGE;
+		writeBGP4MPHeader(timeMicros, subtype, peerAS, localAS, peerAddress, localAddress, 4);
+		buffer.putShort((short)oldState);
+		buffer.putShort((short)newState);
+		records++;
+	}
+
+	private void writeBGP4MPHeader(long timeMicros, int subtype, long peerAS, long localAS, InetAddress peerAddress, InetAddress localAddress, int dataLength) throws IOException{
+		byte[] peer = peerAddress.getAddress();
+		byte[] local = localAddress.getAddress();
+		if (peer.length != local.length){
+			throw new IllegalArgumentException("Peer and local addresses must be of the same family");
+		}
+		int asLength = fourOctetAS ? 4 : 2;
+		int length = 2 * asLength + 4 + 2 * peer.length + dataLength;
+		if (extendedTimestamp){
+			length += 4;
+		}
+		int headerLength = MRTTypes.MRT_HEADER_LENGTH + length - dataLength;
+		if (buffer.remaining() < headerLength){
+			drain();
+		}
+		buffer.putInt((int)(timeMicros / 1000000));
+		buffer.putShort((short)(extendedTimestamp ? MRTTypes.MRT_TYPE_BGP4MP_ET : MRTTypes.MRT_TYPE_BGP4MP));
+		buffer.putShort((short)subtype);
+		buffer.putInt(length);
+		if (extendedTimestamp){
+			buffer.putInt((int)(timeMicros % 1000000));
+		}
+		if (fourOctetAS){
+			buffer.putInt((int)peerAS);
+			buffer.putInt((int)localAS);
+		} else {
+			buffer.putShort((short)toTwoOctetAS(peerAS));
+			buffer.putShort((short)toTwoOctetAS(localAS));
+		}
+		buffer.putShort((short)0);
+		buffer.putShort((short)((peerAddress instanceof Inet6Address) ? AFICodes.AFI_IPv6 : AFICodes.AFI_IPv4));
+		buffer.put(peer);
+		buffer.put(local);
+	}
+
+	private static long toTwoOctetAS(long as){
+		return (as > 0xFFFF) ? ASPath.AS_TRANS : as;
+	}
+
+	private void drain() throws IOException{
+		buffer.flip();
+		while (buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered records to the file
+	 */
+	@Override
+	public void flush() throws IOException{
+		drain();
+	}
+
+	/**
+	 * @return Number of records written
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
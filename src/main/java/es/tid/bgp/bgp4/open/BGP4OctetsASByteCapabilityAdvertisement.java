@@ -1,5 +1,9 @@
 package es.tid.bgp.bgp4.open;
 
+import java.util.LinkedList;
+
+import es.tid.bgp.bgp4.messages.BGP4Open;
+
 /**
  * From Multiprotocol Extensions for BGP-4 
  * <a href="http://tools.ietf.org/html/rfc4760">RFC 4760</a>.
@@ -81,8 +85,43 @@ public class BGP4OctetsASByteCapabilityAdvertisement extends BGP4Capability{
 		int offset = 2;
 		AS=0;
 		for (int k=0;k<4;k++){
-			AS=(AS<<4)|((long)this.bytes[k+offset]& 0xFF);
+			AS=(AS<<8)|((long)this.bytes[k+offset]& 0xFF);
+		}
+	}
+
+	/**
+	 * Looks for the 4-octet AS capability in an OPEN message
+	 * @param open OPEN message
+	 * @return The capability, or null if it was not advertised
+	 */
+	public static BGP4OctetsASByteCapabilityAdvertisement getCapability(BGP4Open open){
+		if (open == null || open.getParametersList() == null){
+			return null;
+		}
+		for (BGP4OptionalParameter parameter : open.getParametersList()){
+			if (parameter instanceof BGP4CapabilitiesOptionalParameter){
+				LinkedList<BGP4Capability> capabilities = ((BGP4CapabilitiesOptionalParameter) parameter).getCapabilityList();
+				if (capabilities != null){
+					for (BGP4Capability capability : capabilities){
+						if (capability instanceof BGP4OctetsASByteCapabilityAdvertisement){
+							return (BGP4OctetsASByteCapabilityAdvertisement) capability;
+						}
+					}
+				}
+			}
 		}
+		return null;
+	}
+
+	/**
+	 * The AS numbers are encoded in 4 octets in the AS_PATH only if both
+	 * speakers advertised the capability (RFC 6793).
+	 * @param localOpen OPEN message sent to the peer
+	 * @param remoteOpen OPEN message received from the peer
+	 * @return true if the 4-octet AS numbers are used in the session
+	 */
+	public static boolean isNegotiated(BGP4Open localOpen, BGP4Open remoteOpen){
+		return getCapability(localOpen) != null && getCapability(remoteOpen) != null;
 	}
 
 	@Override
@@ -0,0 +1,25 @@
+package es.tid.bgp.bgp4.pipeline;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+
+/**
+ * Receiver of the updates decoded by an {@link UpdatePipeline}.
+ * <p>
+ * It is called by the worker threads of the pipeline: the updates of
+ * different workers are processed concurrently, so the handler must be
+ * thread safe. The updates of the same worker are processed in order, and
+ * all the updates about an NLRI are processed by the same worker.
+ *
+ * @author ogondio
+ *
+ */
+public interface UpdateHandler {
+
+	/**
+	 * Processes a decoded update (or the part of an update assigned to the worker)
+	 * @param update Decoded update
+	 * @param worker Index of the worker thread
+	 */
+	public void processUpdate(BGP4Update update, int worker);
+
+}
@@ -0,0 +1,311 @@
+package es.tid.bgp.bgp4.pipeline;
+
+import java.io.ByteArrayOutputStream;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.messages.BGP4MessageTypes;
+import es.tid.bgp.bgp4.rib.ShardedLinkStateStore;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NLRITypes;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Splits a raw UPDATE message among the workers of an {@link UpdatePipeline}.
+ * <p>
+ * Every NLRI of the message (IPv4 withdrawn routes and prefixes, and
+ * Link-State NLRIs of MP_REACH_NLRI and MP_UNREACH_NLRI) is assigned to a
+ * worker by a hash of its key. If all the NLRIs go to the same worker, the
+ * message is handed over as it is. Otherwise a smaller UPDATE is built for
+ * each worker with its NLRIs and a copy of the path attributes.
+ * <p>
+ * The key of a Link-State NLRI is its Protocol-ID, Identifier and node
+ * descriptors (see {@link ShardedLinkStateStore#getDescriptorsHash(byte[], int)}), so all the NLRIs of a node (and all the links between two
+ * nodes) go to the same worker whatever their other descriptors or TE
+ * metric extensions are.
+ *
+ * @author ogondio
+ *
+ */
+final class UpdatePartitioner {
+
+	private static final int WITHDRAWN_ROUTE = 0;
+	private static final int LS_UNREACH = 1;
+	private static final int LS_REACH = 2;
+	private static final int IPV4_PREFIX = 3;
+	//Single Link-State NLRI after the path attributes
+	private static final int LS_NLRI_FIELD = 4;
+	//MP_REACH_NLRI or MP_UNREACH_NLRI of another address family, not split
+	private static final int OTHER_MP_ATTRIBUTE = 5;
+
+	private static final int EXTENDED_LENGTH_FLAG = 0x10;
+
+	private final int workers;
+
+	//Elements of the message being split
+	private int[] kinds = new int[64];
+	private int[] offsets = new int[64];
+	private int[] lengths = new int[64];
+	private int[] targets = new int[64];
+	private int numElements;
+
+	/**
+	 * Messages split (not handed over as they are)
+	 */
+	private long splitMessages;
+
+	UpdatePartitioner(int workers){
+		this.workers = workers;
+	}
+
+	/**
+	 * Assigns the message to the workers. Not thread safe, it is called by
+	 * the thread that frames the messages of the peer.
+	 * @param message Bytes of the UPDATE, including the BGP header
+	 * @return Message of every worker, null for the workers without NLRIs of the message
+	 */
+	byte[][] split(byte[] message){
+		byte[][] result = new byte[workers][];
+		numElements = 0;
+		int msgEnd = ((message[16] & 0xFF) << 8) | (message[17] & 0xFF);
+		int offset = BGP4Message.getBGPHeaderLength();
+		int withdrawnLength = ((message[offset] & 0xFF) << 8) | (message[offset + 1] & 0xFF);
+		offset += 2;
+		int withdrawnEnd = offset + withdrawnLength;
+		addPrefixes(message, offset, withdrawnEnd, WITHDRAWN_ROUTE);
+		offset = withdrawnEnd;
+		int attributesLength = ((message[offset] & 0xFF) << 8) | (message[offset + 1] & 0xFF);
+		offset += 2;
+		int attributesEnd = offset + attributesLength;
+		while (offset < attributesEnd){
+			int typeCode = PathAttribute.getAttibuteTypeCode(message, offset);
+			int ml = PathAttribute.getMandatoryLength(message, offset);
+			int attLength = PathAttribute.getAttributeLength(message, offset);
+			if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI || typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI){
+				int value = offset + ml;
+				int afi = ((message[value] & 0xFF) << 8) | (message[value + 1] & 0xFF);
+				if (afi != AFICodes.AFI_BGP_LS){
+					addElement(OTHER_MP_ATTRIBUTE, offset, ml + attLength, 0);
+				} else if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+					addLinkStateNLRIs(message, getReachNLRIOffset(message, value), value + attLength, LS_REACH);
+				} else {
+					addLinkStateNLRIs(message, value + 3, value + attLength, LS_UNREACH);
+				}
+			}
+			offset += ml + attLength;
+		}
+		if (offset < msgEnd){
+			if (isSingleLinkStateNLRI(message, offset, msgEnd)){
+				//Single Link-State NLRI after the attributes, the message is not split
+				addElement(LS_NLRI_FIELD, offset, msgEnd - offset, partition(ShardedLinkStateStore.getDescriptorsHash(message, offset)));
+			} else {
+				addPrefixes(message, offset, msgEnd, IPV4_PREFIX);
+			}
+		}
+		int target = (numElements == 0) ? 0 : targets[0];
+		boolean single = true;
+		for (int i = 1; i < numElements && single; i++){
+			single = targets[i] == target;
+		}
+		if (single){
+			result[target] = message;
+			return result;
+		}
+		splitMessages++;
+		for (int w = 0; w < workers; w++){
+			result[w] = buildMessage(message, w, attributesEnd - attributesLength, attributesEnd);
+		}
+		return result;
+	}
+
+	private void addPrefixes(byte[] message, int offset, int end, int kind){
+		while (offset < end){
+			int length = 1 + (((message[offset] & 0xFF) + 7) >> 3);
+			addElement(kind, offset, length, partition(BytesKey.hashCode(message, offset, length)));
+			offset += length;
+		}
+	}
+
+	private void addLinkStateNLRIs(byte[] message, int offset, int end, int kind){
+		while (offset < end){
+			int length = LinkStateNLRI.getNLRILength(message, offset) + 4;
+			addElement(kind, offset, length, partition(ShardedLinkStateStore.getDescriptorsHash(message, offset)));
+			offset += length;
+		}
+	}
+
+	private void addElement(int kind, int offset, int length, int target){
+		if (numElements == kinds.length){
+			kinds = grow(kinds);
+			offsets = grow(offsets);
+			lengths = grow(lengths);
+			targets = grow(targets);
+		}
+		kinds[numElements] = kind;
+		offsets[numElements] = offset;
+		lengths[numElements] = length;
+		targets[numElements] = target;
+		numElements++;
+	}
+
+	private static int[] grow(int[] array){
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static int getReachNLRIOffset(byte[] message, int value){
+		int nextHopLength = message[value + 3] & 0xFF;
+		return value + 5 + nextHopLength;
+	}
+
+	private static boolean isSingleLinkStateNLRI(byte[] message, int offset, int end){
+		int type = LinkStateNLRI.getNLRIType(message, offset);
+		if (type != NLRITypes.Link_NLRI && type != NLRITypes.Node_NLRI && type != NLRITypes.IT_Node_NLRI){
+			return false;
+		}
+		return offset + 4 <= end && LinkStateNLRI.getNLRILength(message, offset) + 4 == end - offset;
+	}
+
+	int partition(int hash){
+		hash ^= (hash >>> 16);
+		hash *= 0x85EBCA6B;
+		hash ^= (hash >>> 13);
+		return (hash & 0x7FFFFFFF) % workers;
+	}
+
+	/**
+	 * Builds the UPDATE with the NLRIs of a worker
+	 * @return The message, null if the worker has no NLRIs
+	 */
+	private byte[] buildMessage(byte[] message, int worker, int attributesStart, int attributesEnd){
+		boolean hasWithdrawn = false;
+		boolean hasReach = false;
+		boolean hasLSUnreach = false;
+		for (int i = 0; i < numElements; i++){
+			if (targets[i] == worker){
+				switch (kinds[i]){
+				case WITHDRAWN_ROUTE:
+					hasWithdrawn = true;
+					break;
+				case LS_UNREACH:
+					hasLSUnreach = true;
+					break;
+				default:
+					hasReach = true;
+				}
+			}
+		}
+		if (!hasWithdrawn && !hasReach && !hasLSUnreach){
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(message.length);
+		for (int i = 0; i < BGP4Message.getBGPMarkerLength(); i++){
+			out.write(0xFF);
+		}
+		writeShort(out, 0);
+		out.write(BGP4MessageTypes.MESSAGE_UPDATE);
+		//Withdrawn routes
+		writeShort(out, elementsLength(worker, WITHDRAWN_ROUTE));
+		writeElements(out, message, worker, WITHDRAWN_ROUTE);
+		//Path attributes
+		int attributesLengthPosition = out.size();
+		writeShort(out, 0);
+		int offset = attributesStart;
+		while (offset < attributesEnd){
+			int typeCode = PathAttribute.getAttibuteTypeCode(message, offset);
+			int ml = PathAttribute.getMandatoryLength(message, offset);
+			int attLength = PathAttribute.getAttributeLength(message, offset);
+			boolean mpAttribute = typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI || typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI;
+			int afi = mpAttribute ? ((message[offset + ml] & 0xFF) << 8) | (message[offset + ml + 1] & 0xFF) : 0;
+			if (mpAttribute && afi != AFICodes.AFI_BGP_LS){
+				if (worker == 0){
+					out.write(message, offset, ml + attLength);
+				}
+			} else if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+				if (hasKind(worker, LS_REACH)){
+					int value = offset + ml;
+					int nlriOffset = getReachNLRIOffset(message, value);
+					writeMPAttribute(out, message, offset, nlriOffset - value, worker, LS_REACH);
+				}
+			} else if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI){
+				if (hasLSUnreach){
+					writeMPAttribute(out, message, offset, 3, worker, LS_UNREACH);
+				}
+			} else if (hasReach){
+				out.write(message, offset, ml + attLength);
+			}
+			offset += ml + attLength;
+		}
+		int attributesLength = out.size() - attributesLengthPosition - 2;
+		//Single Link-State NLRI or IPv4 prefixes
+		writeElements(out, message, worker, LS_NLRI_FIELD);
+		writeElements(out, message, worker, IPV4_PREFIX);
+		byte[] bytes = out.toByteArray();
+		bytes[16] = (byte)(bytes.length >> 8);
+		bytes[17] = (byte)bytes.length;
+		bytes[attributesLengthPosition] = (byte)(attributesLength >> 8);
+		bytes[attributesLengthPosition + 1] = (byte)attributesLength;
+		return bytes;
+	}
+
+	private boolean hasKind(int worker, int kind){
+		for (int i = 0; i < numElements; i++){
+			if (targets[i] == worker && kinds[i] == kind){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int elementsLength(int worker, int kind){
+		int length = 0;
+		for (int i = 0; i < numElements; i++){
+			if (targets[i] == worker && kinds[i] == kind){
+				length += lengths[i];
+			}
+		}
+		return length;
+	}
+
+	private void writeElements(ByteArrayOutputStream out, byte[] message, int worker, int kind){
+		for (int i = 0; i < numElements; i++){
+			if (targets[i] == worker && kinds[i] == kind){
+				out.write(message, offsets[i], lengths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Writes a MP_REACH_NLRI or MP_UNREACH_NLRI attribute with the fixed
+	 * part of the original one and the NLRIs of the worker
+	 */
+	private void writeMPAttribute(ByteArrayOutputStream out, byte[] message, int offset, int fixedLength, int worker, int kind){
+		int ml = PathAttribute.getMandatoryLength(message, offset);
+		int length = fixedLength + elementsLength(worker, kind);
+		int flags = message[offset] & 0xFF & ~EXTENDED_LENGTH_FLAG;
+		if (length > 255){
+			out.write(flags | EXTENDED_LENGTH_FLAG);
+			out.write(message[offset + 1] & 0xFF);
+			writeShort(out, length);
+		} else {
+			out.write(flags);
+			out.write(message[offset + 1] & 0xFF);
+			out.write(length);
+		}
+		out.write(message, offset + ml, fixedLength);
+		writeElements(out, message, worker, kind);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value){
+		out.write((value >> 8) & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+	long getSplitMessages(){
+		return splitMessages;
+	}
+
+}
@@ -0,0 +1,435 @@
+package es.tid.bgp.bgp4.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.messages.BGP4MessageTypes;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.ASPathTable;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributeCache;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
+
+/**
+ * Pipeline that decodes the UPDATE messages of a peer on several threads.
+ * <p>
+ * The thread that reads the session (the I/O thread) frames the messages
+ * and assigns every NLRI of an UPDATE to a worker by a hash of the NLRI (see
+ * {@link UpdatePartitioner}); an UPDATE with NLRIs of several workers is
+ * split in one UPDATE per worker. Each worker has a bounded queue, decodes
+ * its messages in order and hands them to the {@link UpdateHandler}. As an
+ * NLRI is always assigned to the same worker, an advertisement and a later
+ * withdrawal of the same NLRI are never reordered, while the NLRIs of
+ * different nodes are decoded in parallel.
+ * <p>
+ * When a queue is full the I/O thread waits, which stops reading from the
+ * peer. The updates without NLRIs (End-of-RIB) are processed by the first
+ * worker; use {@link #flush()} to wait until all the updates received
+ * before have been processed.
+ * <p>
+ * The pipeline keeps the depth of the queues and the time spent in each
+ * stage: framing and splitting (I/O thread), waiting in the queue, and
+ * decoding and processing (worker).
+ * <p>
+ * The caches of path attributes, node descriptors and AS paths are
+ * synchronized, so a cache shared by all the workers serializes the decoding.
+ * By default each worker has its own caches, which are only used by its
+ * thread; the same attribute may then have a canonical instance in each
+ * worker.
+ *
+ * @author ogondio
+ *
+ */
+public class UpdatePipeline {
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private static final Task SHUTDOWN = new Task(null, 0);
+
+	private static final class Task {
+
+		final byte[] message;
+
+		final long enqueueTime;
+
+		Task(byte[] message, long enqueueTime){
+			this.message = message;
+			this.enqueueTime = enqueueTime;
+		}
+	}
+
+	private final class Worker extends Thread {
+
+		private final int index;
+
+		private final ArrayBlockingQueue<Task> queue;
+
+		private final PathAttributeCache attributeCache;
+
+		private final NodeDescriptorsCache descriptorsCache;
+
+		private final ASPathTable asPathTable;
+
+		private volatile long processedUpdates;
+
+		private volatile long decodingErrors;
+
+		private volatile long queueTime;
+
+		private volatile long maxQueueTime;
+
+		private volatile long processingTime;
+
+		private volatile long maxProcessingTime;
+
+		Worker(int index, int queueCapacity, PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable){
+			super("UpdatePipeline-worker-"+index);
+			this.index = index;
+			this.queue = new ArrayBlockingQueue<Task>(queueCapacity);
+			this.attributeCache = attributeCache;
+			this.descriptorsCache = descriptorsCache;
+			this.asPathTable = asPathTable;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (true){
+				Task task;
+				try {
+					task = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (task == SHUTDOWN){
+					return;
+				}
+				long start = System.nanoTime();
+				long waited = start - task.enqueueTime;
+				queueTime += waited;
+				if (waited > maxQueueTime){
+					maxQueueTime = waited;
+				}
+				try {
+					BGP4Update update = new BGP4Update(task.message, attributeCache, descriptorsCache, asPathTable, fourOctetAS);
+					handler.processUpdate(update, index);
+				} catch (Throwable e){
+					//The worker must survive an error of the handler, or its
+					//NLRIs would never be processed again and flush() would hang
+					decodingErrors++;
+					log.warn("UpdatePipeline: error processing an update in worker "+index+": "+e);
+				} finally {
+					long elapsed = System.nanoTime() - start;
+					processingTime += elapsed;
+					if (elapsed > maxProcessingTime){
+						maxProcessingTime = elapsed;
+					}
+					processedUpdates++;
+					if (pending.decrementAndGet() == 0){
+						synchronized (pending){
+							pending.notifyAll();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private final Worker[] workers;
+
+	private final UpdatePartitioner partitioner;
+
+	private final UpdateHandler handler;
+
+	private final boolean fourOctetAS;
+
+	/**
+	 * Messages handed to the workers and not processed yet
+	 */
+	private final AtomicLong pending = new AtomicLong();
+
+	private volatile long submittedMessages;
+
+	private volatile long framingTime;
+
+	private volatile boolean running;
+
+	/**
+	 * Creates a pipeline in which each worker has its own caches
+	 * @param numberOfWorkers Number of worker threads
+	 * @param handler Receiver of the decoded updates
+	 * @param fourOctetAS true if the session uses 4 octet AS numbers
+	 */
+	public UpdatePipeline(int numberOfWorkers, UpdateHandler handler, boolean fourOctetAS){
+		this(numberOfWorkers, DEFAULT_QUEUE_CAPACITY, handler, fourOctetAS);
+	}
+
+	/**
+	 * Creates a pipeline in which each worker has its own caches
+	 * @param numberOfWorkers Number of worker threads
+	 * @param queueCapacity Number of messages that can wait in the queue of a worker
+	 * @param handler Receiver of the decoded updates
+	 * @param fourOctetAS true if the session uses 4 octet AS numbers
+	 */
+	public UpdatePipeline(int numberOfWorkers, int queueCapacity, UpdateHandler handler, boolean fourOctetAS){
+		if (numberOfWorkers <= 0){
+			throw new IllegalArgumentException("numberOfWorkers must be positive");
+		}
+		this.handler = handler;
+		this.fourOctetAS = fourOctetAS;
+		this.partitioner = new UpdatePartitioner(numberOfWorkers);
+		this.workers = new Worker[numberOfWorkers];
+		for (int i = 0; i < numberOfWorkers; i++){
+			workers[i] = new Worker(i, queueCapacity, new PathAttributeCache(), new NodeDescriptorsCache(), new ASPathTable());
+		}
+	}
+
+	/**
+	 * Creates a pipeline with caches shared by all the workers. The lookups of
+	 * the workers in the caches are serialized.
+	 * @param numberOfWorkers Number of worker threads
+	 * @param queueCapacity Number of messages that can wait in the queue of a worker
+	 * @param handler Receiver of the decoded updates
+	 * @param attributeCache cache of canonical path attributes, may be null
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 * @param asPathTable table of canonical AS paths, may be null
+	 * @param fourOctetAS true if the session uses 4 octet AS numbers
+	 */
+	public UpdatePipeline(int numberOfWorkers, int queueCapacity, UpdateHandler handler, PathAttributeCache attributeCache, NodeDescriptorsCache descriptorsCache, ASPathTable asPathTable, boolean fourOctetAS){
+		if (numberOfWorkers <= 0){
+			throw new IllegalArgumentException("numberOfWorkers must be positive");
+		}
+		this.handler = handler;
+		this.fourOctetAS = fourOctetAS;
+		this.partitioner = new UpdatePartitioner(numberOfWorkers);
+		this.workers = new Worker[numberOfWorkers];
+		for (int i = 0; i < numberOfWorkers; i++){
+			workers[i] = new Worker(i, queueCapacity, attributeCache, descriptorsCache, asPathTable);
+		}
+	}
+
+	public synchronized void start(){
+		if (running){
+			return;
+		}
+		running = true;
+		for (Worker worker : workers){
+			worker.start();
+		}
+	}
+
+	/**
+	 * Hands an UPDATE message to the workers. It must be called by a single
+	 * thread, the one that reads the session, and blocks while the queue of a
+	 * worker is full.
+	 * @param message Bytes of the UPDATE, including the BGP header
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void submit(byte[] message) throws InterruptedException{
+		long start = System.nanoTime();
+		byte[][] messages;
+		try {
+			messages = partitioner.split(message);
+		} catch (ArrayIndexOutOfBoundsException e){
+			log.warn("UpdatePipeline: malformed UPDATE, it is processed by the first worker");
+			messages = new byte[workers.length][];
+			messages[0] = message;
+		}
+		long now = System.nanoTime();
+		framingTime += now - start;
+		submittedMessages++;
+		for (int i = 0; i < messages.length; i++){
+			if (messages[i] != null){
+				pending.incrementAndGet();
+				workers[i].queue.put(new Task(messages[i], now));
+			}
+		}
+	}
+
+	/**
+	 * Frames the BGP messages read from the session. The UPDATE messages are
+	 * handed to the workers, the other messages are returned to be processed
+	 * by the session. An incomplete message at the end is left in the buffer.
+	 * @param in Bytes read from the session (in read mode)
+	 * @return Messages other than UPDATE, in order
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public List<byte[]> frame(ByteBuffer in) throws InterruptedException{
+		List<byte[]> otherMessages = new ArrayList<byte[]>();
+		while (in.remaining() >= BGP4Message.getBGPHeaderLength()){
+			int start = in.position();
+			int length = ((in.get(start + 16) & 0xFF) << 8) | (in.get(start + 17) & 0xFF);
+			if (length < BGP4Message.getBGPHeaderLength()){
+				throw new IllegalArgumentException("Bad BGP message length: "+length);
+			}
+			if (in.remaining() < length){
+				break;
+			}
+			byte[] message = new byte[length];
+			in.get(message);
+			if ((message[18] & 0xFF) == BGP4MessageTypes.MESSAGE_UPDATE){
+				submit(message);
+			} else {
+				otherMessages.add(message);
+			}
+		}
+		return otherMessages;
+	}
+
+	/**
+	 * Waits until all the messages submitted have been processed
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void flush() throws InterruptedException{
+		synchronized (pending){
+			while (pending.get() > 0){
+				pending.wait();
+			}
+		}
+	}
+
+	/**
+	 * Stops the workers after the messages already submitted are processed
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized void shutdown() throws InterruptedException{
+		if (!running){
+			return;
+		}
+		running = false;
+		for (Worker worker : workers){
+			worker.queue.put(SHUTDOWN);
+		}
+		for (Worker worker : workers){
+			worker.join();
+		}
+	}
+
+	public int getNumberOfWorkers(){
+		return workers.length;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Number of messages waiting in the queue of the worker
+	 */
+	public int getQueueDepth(int worker){
+		return workers[worker].queue.size();
+	}
+
+	/**
+	 * @return Number of messages waiting in all the queues
+	 */
+	public int getTotalQueueDepth(){
+		int depth = 0;
+		for (Worker worker : workers){
+			depth += worker.queue.size();
+		}
+		return depth;
+	}
+
+	public long getSubmittedMessages() {
+		return submittedMessages;
+	}
+
+	/**
+	 * @return Number of UPDATE messages that were split among several workers
+	 */
+	public long getSplitMessages() {
+		return partitioner.getSplitMessages();
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Number of updates processed by the worker
+	 */
+	public long getProcessedUpdates(int worker){
+		return workers[worker].processedUpdates;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Cache of path attributes used by the worker, may be null
+	 */
+	public PathAttributeCache getAttributeCache(int worker){
+		return workers[worker].attributeCache;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Cache of node descriptors used by the worker, may be null
+	 */
+	public NodeDescriptorsCache getDescriptorsCache(int worker){
+		return workers[worker].descriptorsCache;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Table of AS paths used by the worker, may be null
+	 */
+	public ASPathTable getASPathTable(int worker){
+		return workers[worker].asPathTable;
+	}
+
+	/**
+	 * @return Number of updates that could not be decoded or processed
+	 */
+	public long getDecodingErrors(){
+		long errors = 0;
+		for (Worker worker : workers){
+			errors += worker.decodingErrors;
+		}
+		return errors;
+	}
+
+	/**
+	 * @return Average time to frame and split a message, in nanoseconds
+	 */
+	public long getAverageFramingTime(){
+		long messages = submittedMessages;
+		return (messages == 0) ? 0 : framingTime / messages;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Average time that the messages wait in the queue of the worker, in nanoseconds
+	 */
+	public long getAverageQueueTime(int worker){
+		long processed = workers[worker].processedUpdates;
+		return (processed == 0) ? 0 : workers[worker].queueTime / processed;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Maximum time that a message has waited in the queue of the worker, in nanoseconds
+	 */
+	public long getMaxQueueTime(int worker){
+		return workers[worker].maxQueueTime;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Average time to decode and process a message in the worker, in nanoseconds
+	 */
+	public long getAverageProcessingTime(int worker){
+		long processed = workers[worker].processedUpdates;
+		return (processed == 0) ? 0 : workers[worker].processingTime / processed;
+	}
+
+	/**
+	 * @param worker Index of the worker
+	 * @return Maximum time to decode and process a message in the worker, in nanoseconds
+	 */
+	public long getMaxProcessingTime(int worker){
+		return workers[worker].maxProcessingTime;
+	}
+
+}
@@ -0,0 +1,105 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+
+/**
+ * Adj-RIB-Out organised in update groups.
+ * <p>
+ * Each peer is registered with its outbound policy; peers with equal policies
+ * (according to equals and hashCode of the policy object) are placed in the
+ * same {@link UpdateGroup}, and the updates advertised for a policy are
+ * encoded once per group.
+ *
+ * @author ogondio
+ *
+ */
+public class AdjRibOut {
+
+	private final HashMap<Object, UpdateGroup> groups = new HashMap<Object, UpdateGroup>();
+
+	private final HashMap<String, UpdateGroup> peerGroups = new HashMap<String, UpdateGroup>();
+
+	/**
+	 * Registers a peer. If the peer was already registered with another
+	 * policy it is moved to the new group.
+	 * @param peer Peer identifier
+	 * @param policy Outbound policy of the peer
+	 * @return Update group of the peer
+	 */
+	public synchronized UpdateGroup addPeer(String peer, Object policy){
+		UpdateGroup current = peerGroups.get(peer);
+		if (current != null){
+			if (current.getPolicy().equals(policy)){
+				return current;
+			}
+			removePeer(peer);
+		}
+		UpdateGroup group = groups.get(policy);
+		if (group == null){
+			group = new UpdateGroup(policy);
+			groups.put(policy, group);
+		}
+		group.addPeer(peer);
+		peerGroups.put(peer, group);
+		return group;
+	}
+
+	/**
+	 * Unregisters a peer, releasing its pending messages. Empty groups are removed.
+	 * @param peer Peer identifier
+	 * @return true if the peer was registered
+	 */
+	public synchronized boolean removePeer(String peer){
+		UpdateGroup group = peerGroups.remove(peer);
+		if (group == null){
+			return false;
+		}
+		group.removePeer(peer);
+		if (group.size() == 0){
+			groups.remove(group.getPolicy());
+		}
+		return true;
+	}
+
+	/**
+	 * Advertises an update to all the peers with the given policy
+	 * @param policy Outbound policy
+	 * @param update Update to advertise
+	 * @return Shared buffer queued to the peers, or null if no peer has that policy
+	 */
+	public SharedUpdateBuffer advertise(Object policy, BGP4Update update){
+		UpdateGroup group;
+		synchronized (this){
+			group = groups.get(policy);
+		}
+		if (group == null){
+			return null;
+		}
+		return group.advertise(update);
+	}
+
+	public synchronized UpdateGroup getUpdateGroup(String peer){
+		return peerGroups.get(peer);
+	}
+
+	public synchronized UpdateGroup getUpdateGroupByPolicy(Object policy){
+		return groups.get(policy);
+	}
+
+	public synchronized List<UpdateGroup> getUpdateGroups(){
+		return new ArrayList<UpdateGroup>(groups.values());
+	}
+
+	public synchronized int getNumberOfGroups(){
+		return groups.size();
+	}
+
+	public synchronized int getNumberOfPeers(){
+		return peerGroups.size();
+	}
+
+}
@@ -0,0 +1,103 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring that assigns hash values to a number of shards.
+ * <p>
+ * Every shard owns a number of points (virtual nodes) placed on the ring by
+ * a fixed function of the shard index, and a hash value belongs to the shard
+ * of the next point of the ring. The assignment does not depend on anything
+ * else, so it is stable between runs, and when a shard is added only about
+ * 1/N of the values move to it.
+ *
+ * @author ogondio
+ *
+ */
+public class ConsistentHashRing {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+	/**
+	 * Points of the ring, sorted
+	 */
+	private final int[] points;
+
+	/**
+	 * Shard owning each point
+	 */
+	private final int[] owners;
+
+	private final int numberOfShards;
+
+	public ConsistentHashRing(int numberOfShards){
+		this(numberOfShards, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param numberOfShards Number of shards
+	 * @param virtualNodes Number of points of each shard in the ring
+	 */
+	public ConsistentHashRing(int numberOfShards, int virtualNodes){
+		if (numberOfShards <= 0 || virtualNodes <= 0){
+			throw new IllegalArgumentException("numberOfShards and virtualNodes must be positive");
+		}
+		this.numberOfShards = numberOfShards;
+		int n = numberOfShards * virtualNodes;
+		long[] ring = new long[n];
+		for (int shard = 0; shard < numberOfShards; shard++){
+			for (int v = 0; v < virtualNodes; v++){
+				int point = mix(shard * 0x9E3779B9 + v * 0x85EBCA6B + 1);
+				//Point in the high bits, owner in the low bits, to sort both at once
+				ring[shard * virtualNodes + v] = ((long)point << 32) | shard;
+			}
+		}
+		Arrays.sort(ring);
+		this.points = new int[n];
+		this.owners = new int[n];
+		for (int i = 0; i < n; i++){
+			points[i] = (int)(ring[i] >> 32);
+			owners[i] = (int)ring[i];
+		}
+	}
+
+	/**
+	 * @param hash Hash value
+	 * @return Shard of the value
+	 */
+	public int getShard(int hash){
+		int h = mix(hash);
+		int low = 0;
+		int high = points.length - 1;
+		if (h > points[high]){
+			//Wraps around the ring
+			return owners[0];
+		}
+		while (low < high){
+			int mid = (low + high) >>> 1;
+			if (points[mid] < h){
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return owners[low];
+	}
+
+	public int getNumberOfShards() {
+		return numberOfShards;
+	}
+
+	/**
+	 * Finalizer of MurmurHash3, spreads the bits of the value
+	 */
+	static int mix(int h){
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
@@ -0,0 +1,315 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.Arrays;
+
+import es.tid.bgp.bgp4.update.fields.IPv4PrefixList;
+
+/**
+ * Path-compressed binary trie (Patricia trie) of IPv4 prefixes.
+ * <p>
+ * The trie is kept in parallel arrays indexed by node number: the prefix and
+ * its length as primitive ints, the two children and the value associated to
+ * the prefix. Nodes without value are branching nodes, created when two
+ * prefixes diverge. Lookups visit at most one node per bit of the prefix.
+ * <p>
+ * Freed nodes are reused, so the arrays do not grow after the trie has
+ * reached its size. The trie is not synchronized.
+ *
+ * @author ogondio
+ *
+ */
+public class IPv4PrefixTrie {
+
+	private static final int NONE = -1;
+
+	private int[] prefix;
+
+	private byte[] prefixLength;
+
+	private int[] child0;
+
+	private int[] child1;
+
+	private Object[] values;
+
+	private int root = NONE;
+
+	//First free node; free nodes are linked through child0
+	private int free = NONE;
+
+	//Number of nodes ever allocated
+	private int allocated;
+
+	private int size;
+
+	private int numNodes;
+
+	public IPv4PrefixTrie(){
+		this(1024);
+	}
+
+	/**
+	 * @param capacity Initial number of nodes
+	 */
+	public IPv4PrefixTrie(int capacity){
+		capacity = Math.max(capacity, 16);
+		prefix = new int[capacity];
+		prefixLength = new byte[capacity];
+		child0 = new int[capacity];
+		child1 = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	/**
+	 * Associates a value to a prefix
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix (0 to 32)
+	 * @param value Value of the prefix, not null
+	 * @return The previous value of the prefix, null if the prefix is new
+	 */
+	public Object put(int address, int length, Object value){
+		if (value == null){
+			throw new IllegalArgumentException("The value of a prefix can not be null");
+		}
+		address = address & IPv4PrefixList.mask(length);
+		int parent = NONE;
+		int node = root;
+		while (node != NONE){
+			int nodeLength = prefixLength[node];
+			int common = commonLength(address, length, prefix[node], nodeLength);
+			if (common < nodeLength){
+				int newNode;
+				if (common == length){
+					//The new prefix contains the node
+					newNode = allocate(address, length, value);
+					setChild(newNode, bit(prefix[node], length), node);
+				} else {
+					//Branch where both prefixes diverge
+					newNode = allocate(address & IPv4PrefixList.mask(common), common, null);
+					setChild(newNode, bit(prefix[node], common), node);
+					setChild(newNode, bit(address, common), allocate(address, length, value));
+				}
+				replaceChild(parent, node, newNode);
+				size++;
+				return null;
+			}
+			if (length == nodeLength){
+				Object previous = values[node];
+				values[node] = value;
+				if (previous == null){
+					size++;
+				}
+				return previous;
+			}
+			parent = node;
+			node = bit(address, nodeLength) == 0 ? child0[node] : child1[node];
+		}
+		replaceChild(parent, NONE, allocate(address, length, value));
+		size++;
+		return null;
+	}
+
+	/**
+	 * Removes a prefix
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix
+	 * @return The value of the prefix, null if the prefix was not in the trie
+	 */
+	public Object remove(int address, int length){
+		address = address & IPv4PrefixList.mask(length);
+		int grandParent = NONE;
+		int parent = NONE;
+		int node = root;
+		while (node != NONE){
+			int nodeLength = prefixLength[node];
+			if (nodeLength > length || ((address ^ prefix[node]) & IPv4PrefixList.mask(nodeLength)) != 0){
+				return null;
+			}
+			if (nodeLength == length){
+				break;
+			}
+			grandParent = parent;
+			parent = node;
+			node = bit(address, nodeLength) == 0 ? child0[node] : child1[node];
+		}
+		if (node == NONE || values[node] == null){
+			return null;
+		}
+		Object value = values[node];
+		values[node] = null;
+		size--;
+		if (child0[node] != NONE && child1[node] != NONE){
+			//Still needed as a branching node
+			return value;
+		}
+		int onlyChild = child0[node] != NONE ? child0[node] : child1[node];
+		replaceChild(parent, node, onlyChild);
+		release(node);
+		//A branching parent left with one child is not needed anymore
+		if (onlyChild == NONE && parent != NONE && values[parent] == null){
+			int sibling = child0[parent] != NONE ? child0[parent] : child1[parent];
+			replaceChild(grandParent, parent, sibling);
+			release(parent);
+		}
+		return value;
+	}
+
+	/**
+	 * Longest prefix match
+	 * @param address IPv4 address as an int
+	 * @return Value of the most specific prefix containing the address, null if there is none
+	 */
+	public Object lookup(int address){
+		Object best = null;
+		int node = root;
+		while (node != NONE){
+			int nodeLength = prefixLength[node];
+			if (((address ^ prefix[node]) & IPv4PrefixList.mask(nodeLength)) != 0){
+				break;
+			}
+			if (values[node] != null){
+				best = values[node];
+			}
+			if (nodeLength == 32){
+				break;
+			}
+			node = bit(address, nodeLength) == 0 ? child0[node] : child1[node];
+		}
+		return best;
+	}
+
+	/**
+	 * Exact match
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix
+	 * @return Value of the prefix, null if the prefix is not in the trie
+	 */
+	public Object get(int address, int length){
+		address = address & IPv4PrefixList.mask(length);
+		int node = root;
+		while (node != NONE){
+			int nodeLength = prefixLength[node];
+			if (nodeLength > length || ((address ^ prefix[node]) & IPv4PrefixList.mask(nodeLength)) != 0){
+				return null;
+			}
+			if (nodeLength == length){
+				return values[node];
+			}
+			node = bit(address, nodeLength) == 0 ? child0[node] : child1[node];
+		}
+		return null;
+	}
+
+	/**
+	 * @return All the prefixes of the trie, in address order (shorter prefixes first)
+	 */
+	public IPv4PrefixList getPrefixes(){
+		IPv4PrefixList list = new IPv4PrefixList(Math.max(size, 1));
+		//The depth of the trie is at most 33 nodes
+		int[] stack = new int[33];
+		int top = 0;
+		if (root != NONE){
+			stack[top++] = root;
+		}
+		while (top > 0){
+			int node = stack[--top];
+			if (values[node] != null){
+				list.add(prefix[node], prefixLength[node]);
+			}
+			if (child1[node] != NONE){
+				stack[top++] = child1[node];
+			}
+			if (child0[node] != NONE){
+				stack[top++] = child0[node];
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return Number of prefixes with a value
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return Number of nodes of the trie, including branching nodes
+	 */
+	public int getNumberOfNodes(){
+		return numNodes;
+	}
+
+	public void clear(){
+		Arrays.fill(values, 0, allocated, null);
+		root = NONE;
+		free = NONE;
+		allocated = 0;
+		size = 0;
+		numNodes = 0;
+	}
+
+	private static int bit(int address, int position){
+		return (address >>> (31-position)) & 1;
+	}
+
+	private static int commonLength(int a, int aLength, int b, int bLength){
+		int x = a ^ b;
+		int common = x == 0 ? 32 : Integer.numberOfLeadingZeros(x);
+		return Math.min(common, Math.min(aLength, bLength));
+	}
+
+	private void setChild(int node, int bit, int child){
+		if (bit == 0){
+			child0[node] = child;
+		} else {
+			child1[node] = child;
+		}
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild){
+		if (parent == NONE){
+			root = newChild;
+		} else if (oldChild != NONE && child0[parent] == oldChild){
+			child0[parent] = newChild;
+		} else if (oldChild != NONE && child1[parent] == oldChild){
+			child1[parent] = newChild;
+		} else {
+			setChild(parent, bit(prefix[newChild], prefixLength[parent]), newChild);
+		}
+	}
+
+	private int allocate(int address, int length, Object value){
+		int node;
+		if (free != NONE){
+			node = free;
+			free = child0[node];
+		} else {
+			if (allocated == prefix.length){
+				int capacity = allocated*2;
+				prefix = Arrays.copyOf(prefix, capacity);
+				prefixLength = Arrays.copyOf(prefixLength, capacity);
+				child0 = Arrays.copyOf(child0, capacity);
+				child1 = Arrays.copyOf(child1, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			node = allocated++;
+		}
+		prefix[node] = address;
+		prefixLength[node] = (byte)length;
+		child0[node] = NONE;
+		child1[node] = NONE;
+		values[node] = value;
+		numNodes++;
+		return node;
+	}
+
+	private void release(int node){
+		values[node] = null;
+		child1[node] = NONE;
+		child0[node] = free;
+		free = node;
+		numNodes--;
+	}
+
+}
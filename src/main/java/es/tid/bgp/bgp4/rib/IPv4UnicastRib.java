@@ -0,0 +1,153 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.List;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.IPv4PrefixList;
+import es.tid.bgp.bgp4.update.fields.IPv4UnicastNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+
+/**
+ * RIB of IPv4 unicast routes, stored in a path-compressed binary trie
+ * ({@link IPv4PrefixTrie}).
+ * <p>
+ * The prefixes are kept as primitive ints and each route references the list
+ * of path attributes of the UPDATE that advertised it. All the prefixes of an
+ * UPDATE share the same list, so a full table costs a few ints per prefix plus
+ * one attribute list per distinct path.
+ *
+ * @author ogondio
+ *
+ */
+public class IPv4UnicastRib {
+
+	private final IPv4PrefixTrie trie;
+
+	public IPv4UnicastRib(){
+		trie = new IPv4PrefixTrie();
+	}
+
+	/**
+	 * @param capacity Initial number of nodes of the trie
+	 */
+	public IPv4UnicastRib(int capacity){
+		trie = new IPv4PrefixTrie(capacity);
+	}
+
+	/**
+	 * Adds or replaces a route
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix (0 to 32)
+	 * @param pathAttributes Path attributes of the route, not null
+	 * @return true if the route is new, false if it has been replaced
+	 */
+	public synchronized boolean insert(int address, int length, List<PathAttribute> pathAttributes){
+		if (pathAttributes == null){
+			throw new IllegalArgumentException("The path attributes of a route can not be null");
+		}
+		return trie.put(address, length, pathAttributes) == null;
+	}
+
+	/**
+	 * Removes a route
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix
+	 * @return true if the route was in the RIB
+	 */
+	public synchronized boolean withdraw(int address, int length){
+		return trie.remove(address, length) != null;
+	}
+
+	/**
+	 * Longest prefix match
+	 * @param address IPv4 address as an int
+	 * @return Path attributes of the most specific route containing the address, null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized List<PathAttribute> lookup(int address){
+		return (List<PathAttribute>) trie.lookup(address);
+	}
+
+	/**
+	 * Exact match
+	 * @param address Prefix as an int. The host bits are ignored.
+	 * @param length Length of the prefix
+	 * @return Path attributes of the route, null if there is no route for the prefix
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized List<PathAttribute> get(int address, int length){
+		return (List<PathAttribute>) trie.get(address, length);
+	}
+
+	/**
+	 * Adds all the prefixes of a list with the same path attributes
+	 * @param prefixes Prefixes to add
+	 * @param pathAttributes Path attributes shared by the routes
+	 * @return Number of new routes
+	 */
+	public synchronized int insertAll(IPv4PrefixList prefixes, List<PathAttribute> pathAttributes){
+		int added = 0;
+		for (int i = 0; i < prefixes.size(); ++i){
+			if (insert(prefixes.getPrefix(i), prefixes.getPrefixLength(i), pathAttributes)){
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Removes all the prefixes of a list
+	 * @param prefixes Prefixes to remove
+	 * @return Number of routes removed
+	 */
+	public synchronized int withdrawAll(IPv4PrefixList prefixes){
+		int removed = 0;
+		for (int i = 0; i < prefixes.size(); ++i){
+			if (withdraw(prefixes.getPrefix(i), prefixes.getPrefixLength(i))){
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Applies an UPDATE: the withdrawn routes are removed and the IPv4
+	 * prefixes of the NLRI field are added with the path attributes of the
+	 * message.
+	 * @param update Decoded UPDATE message
+	 */
+	public synchronized void processUpdate(BGP4Update update){
+		if (update.getWithdrawnRoutes() != null){
+			withdrawAll(update.getWithdrawnRoutes().getPrefixList());
+		}
+		if (update.getNlri() instanceof IPv4UnicastNLRI){
+			insertAll(((IPv4UnicastNLRI) update.getNlri()).getPrefixList(), update.getPathAttributes());
+		}
+	}
+
+	/**
+	 * @return All the prefixes of the RIB, in address order (shorter prefixes first)
+	 */
+	public synchronized IPv4PrefixList getPrefixes(){
+		return trie.getPrefixes();
+	}
+
+	/**
+	 * @return Number of routes
+	 */
+	public synchronized int size(){
+		return trie.size();
+	}
+
+	/**
+	 * @return Number of nodes of the trie, including branching nodes
+	 */
+	public synchronized int getNumberOfNodes(){
+		return trie.getNumberOfNodes();
+	}
+
+	public synchronized void clear(){
+		trie.clear();
+	}
+
+}
@@ -0,0 +1,287 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.HashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Store of the last version seen of each BGP-LS NLRI, used to suppress
+ * re-advertisements that do not change anything.
+ * <p>
+ * For each Link-State NLRI the store keeps a 64-bit digest (FNV-1a) of the
+ * BGP-LS attribute that was received with it. The check is done over the raw
+ * bytes of the UPDATE, before any object is decoded, so a refresh with the same
+ * attribute costs a byte scan instead of a full decode and the recomputations
+ * triggered downstream.
+ * <p>
+ * Two different attributes with the same digest would be (wrongly) reported as
+ * unchanged; with 64 bits the probability is negligible for any real table.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStateDigestStore {
+
+	/**
+	 * The NLRI had not been seen before
+	 */
+	public static final int NLRI_NEW = 0;
+
+	/**
+	 * The NLRI was known, but its attribute has changed
+	 */
+	public static final int NLRI_CHANGED = 1;
+
+	/**
+	 * The NLRI was known with the same attribute
+	 */
+	public static final int NLRI_UNCHANGED = 2;
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final HashMap<BytesKey, Long> digests = new HashMap<BytesKey, Long>();
+
+	private long newNLRIs;
+
+	private long changedNLRIs;
+
+	private long unchangedNLRIs;
+
+	private long withdrawnNLRIs;
+
+	private long suppressedUpdates;
+
+	/**
+	 * Checks an NLRI and its attribute against the last version seen, and
+	 * stores the new version.
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI (start of the NLRI type)
+	 * @param attributeBytes Bytes containing the BGP-LS attribute, null if there is no attribute
+	 * @param attributeOffset Offset of the attribute
+	 * @param attributeLength Length of the attribute
+	 * @return NLRI_NEW, NLRI_CHANGED or NLRI_UNCHANGED
+	 */
+	public synchronized int check(byte[] nlriBytes, int nlriOffset, byte[] attributeBytes, int attributeOffset, int attributeLength){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset)+4;
+		long digest = attributeBytes == null ? FNV_OFFSET_BASIS : digest(attributeBytes, attributeOffset, attributeLength);
+		Long previous = digests.get(new BytesKey(nlriBytes, nlriOffset, nlriLength));
+		if (previous == null){
+			byte[] nlriCopy = new byte[nlriLength];
+			System.arraycopy(nlriBytes, nlriOffset, nlriCopy, 0, nlriLength);
+			digests.put(new BytesKey(nlriCopy), digest);
+			newNLRIs++;
+			return NLRI_NEW;
+		}
+		if (previous.longValue() == digest){
+			unchangedNLRIs++;
+			return NLRI_UNCHANGED;
+		}
+		digests.put(new BytesKey(nlriBytes, nlriOffset, nlriLength), digest);
+		changedNLRIs++;
+		return NLRI_CHANGED;
+	}
+
+	/**
+	 * Forgets an NLRI
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI
+	 * @return true if the NLRI was in the store
+	 */
+	public synchronized boolean withdraw(byte[] nlriBytes, int nlriOffset){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset)+4;
+		boolean known = digests.remove(new BytesKey(nlriBytes, nlriOffset, nlriLength)) != null;
+		if (known){
+			withdrawnNLRIs++;
+		}
+		return known;
+	}
+
+	/**
+	 * Processes the raw bytes of a BGP4 UPDATE message carrying BGP-LS information.
+	 * Every Link-State NLRI of the MP_REACH_NLRI attribute is checked against
+	 * the store (and the store updated) and every Link-State NLRI of the
+	 * MP_UNREACH_NLRI is withdrawn.
+	 * <p>
+	 * The whole message is parsed before the store is changed: if it is
+	 * malformed or carries something that is not handled here, the store is
+	 * left as it was.
+	 * @param messageBytes Bytes of the whole UPDATE message, including the BGP header
+	 * @return false if the update only refreshes known NLRIs with the same
+	 * attribute, so it can be dropped without decoding; true if it must be decoded
+	 */
+	public synchronized boolean processUpdate(byte[] messageBytes){
+		int reachOffset = -1;
+		int unreachOffset = -1;
+		int lsAttributeOffset = -1;
+		int lsAttributeLength = 0;
+		int reachStart = 0, reachEnd = 0, unreachStart = 0, unreachEnd = 0;
+		try {
+			int offset = BGP4Message.getBGPHeaderLength();
+			int withdrawnRoutesLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+			if (withdrawnRoutesLength != 0){
+				return true;
+			}
+			offset += 2;
+			int totalPathAttributeLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+			offset += 2;
+			int end = offset+totalPathAttributeLength;
+			if (end != messageBytes.length){
+				//NLRI after the path attributes (not handled here) or truncated message
+				return true;
+			}
+			while (offset < end){
+				int typeCode = PathAttribute.getAttibuteTypeCode(messageBytes, offset);
+				int attLength = PathAttribute.getMandatoryLength(messageBytes, offset)+PathAttribute.getAttributeLength(messageBytes, offset);
+				if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+					reachOffset = offset;
+				} else if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI){
+					unreachOffset = offset;
+				} else if ((typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE) ||
+						(typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE_LEGACY)){
+					lsAttributeOffset = offset;
+					lsAttributeLength = attLength;
+				}
+				offset += attLength;
+			}
+			if (offset != end){
+				return true;
+			}
+			if (unreachOffset >= 0){
+				int ml = PathAttribute.getMandatoryLength(messageBytes, unreachOffset);
+				if (afi(messageBytes, unreachOffset+ml) != AFICodes.AFI_BGP_LS){
+					return true;
+				}
+				unreachStart = unreachOffset+ml+3;
+				unreachEnd = unreachOffset+ml+PathAttribute.getAttributeLength(messageBytes, unreachOffset);
+			}
+			if (reachOffset >= 0){
+				int ml = PathAttribute.getMandatoryLength(messageBytes, reachOffset);
+				if (afi(messageBytes, reachOffset+ml) != AFICodes.AFI_BGP_LS){
+					return true;
+				}
+				int nextHopLength = messageBytes[reachOffset+ml+3]&0xFF;
+				reachStart = reachOffset+ml+5+nextHopLength;
+				reachEnd = reachOffset+ml+PathAttribute.getAttributeLength(messageBytes, reachOffset);
+			}
+		} catch (ArrayIndexOutOfBoundsException e){
+			log.warn("Malformed BGP4 Update, it can not be checked against the digest store");
+			return true;
+		}
+		int withdrawn = countNLRIs(messageBytes, unreachStart, unreachEnd);
+		int reached = countNLRIs(messageBytes, reachStart, reachEnd);
+		if (withdrawn < 0 || reached < 0){
+			log.warn("Malformed BGP4 Update, it can not be checked against the digest store");
+			return true;
+		}
+		if (withdrawn+reached == 0){
+			return true;
+		}
+		//The message is well formed, apply it
+		boolean changed = withdrawn > 0;
+		for (int nlriOffset = unreachStart; nlriOffset < unreachEnd; nlriOffset += LinkStateNLRI.getNLRILength(messageBytes, nlriOffset)+4){
+			withdraw(messageBytes, nlriOffset);
+		}
+		for (int nlriOffset = reachStart; nlriOffset < reachEnd; nlriOffset += LinkStateNLRI.getNLRILength(messageBytes, nlriOffset)+4){
+			int result;
+			if (lsAttributeOffset >= 0){
+				result = check(messageBytes, nlriOffset, messageBytes, lsAttributeOffset, lsAttributeLength);
+			} else {
+				result = check(messageBytes, nlriOffset, null, 0, 0);
+			}
+			if (result != NLRI_UNCHANGED){
+				changed = true;
+			}
+		}
+		if (!changed){
+			suppressedUpdates++;
+		}
+		return changed;
+	}
+
+	/**
+	 * Counts the Link-State NLRIs of a slice of an MP_(UN)REACH_NLRI attribute
+	 * @return Number of NLRIs, -1 if the last one does not end at the end of the slice
+	 */
+	private static int countNLRIs(byte[] bytes, int start, int end){
+		if (end > bytes.length){
+			return -1;
+		}
+		int count = 0;
+		int offset = start;
+		while (offset < end){
+			if (offset+4 > end){
+				return -1;
+			}
+			offset += LinkStateNLRI.getNLRILength(bytes, offset)+4;
+			count++;
+		}
+		return (offset == end) ? count : -1;
+	}
+
+	private static int afi(byte[] bytes, int offset){
+		return ((bytes[offset]&0xFF)<<8) | (bytes[offset+1]&0xFF);
+	}
+
+	/**
+	 * 64-bit FNV-1a digest of a slice of bytes
+	 * @param bytes Array of bytes
+	 * @param offset Start of the slice
+	 * @param length Length of the slice
+	 * @return digest
+	 */
+	public static long digest(byte[] bytes, int offset, int length){
+		long h = FNV_OFFSET_BASIS;
+		for (int i = offset; i < offset+length; ++i){
+			h ^= (bytes[i] & 0xFF);
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+
+	public synchronized int size(){
+		return digests.size();
+	}
+
+	public synchronized void clear(){
+		digests.clear();
+	}
+
+	public synchronized long getNewNLRIs() {
+		return newNLRIs;
+	}
+
+	public synchronized long getChangedNLRIs() {
+		return changedNLRIs;
+	}
+
+	/**
+	 * @return Number of NLRIs received again with the same attribute
+	 */
+	public synchronized long getUnchangedNLRIs() {
+		return unchangedNLRIs;
+	}
+
+	public synchronized long getWithdrawnNLRIs() {
+		return withdrawnNLRIs;
+	}
+
+	/**
+	 * @return Number of updates for which processUpdate returned false
+	 */
+	public synchronized long getSuppressedUpdates() {
+		return suppressedUpdates;
+	}
+
+}
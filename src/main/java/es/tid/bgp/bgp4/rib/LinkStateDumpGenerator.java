@@ -0,0 +1,268 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.messages.BGP4MessageTypes;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.Generic_MP_Unreach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.SAFICodes;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Generator of the full BGP-LS table for a newly established peer.
+ * <p>
+ * The generator walks a {@link LinkStateStore} and builds the UPDATE messages
+ * lazily, one at a time, packing in the same MP_REACH_NLRI all the NLRIs that
+ * share the same path attributes, up to the maximum message size. The last
+ * message is the End-of-RIB marker of the BGP-LS address family (RFC 4724):
+ * an UPDATE with an empty MP_UNREACH_NLRI.
+ * <p>
+ * With {@link #write(WritableByteChannel)} the messages are built in a single
+ * buffer of the maximum message size, and the next message is not built until
+ * the channel has accepted the previous one, so the memory used does not
+ * depend on the size of the table and a slow peer paces the walk.
+ * <p>
+ * The store may be modified during the dump. Routes added or withdrawn after
+ * the dump started may or may not be included, so the changes must also be
+ * advertised to the peer through the normal update path.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStateDumpGenerator {
+
+	/**
+	 * Maximum length of a BGP message (RFC 4271)
+	 */
+	public static final int MAX_MESSAGE_LENGTH = 4096;
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	//Flags, type code and length (extended), AFI, SAFI, next hop length and reserved
+	private static final int MP_REACH_HEADER_LENGTH = 4+5;
+
+	private final Iterator<LinkStateStore.AttributeSet> attributeSets;
+
+	private final byte[] nextHop;
+
+	private final byte[] buffer;
+
+	private final ByteBuffer pending;
+
+	private LinkStateStore.AttributeSet currentSet;
+
+	private Iterator<BytesKey> nlris;
+
+	//NLRI that did not fit in the previous message
+	private BytesKey carried;
+
+	private boolean endOfRibGenerated;
+
+	private long numberOfMessages;
+
+	private long numberOfNLRIs;
+
+	/**
+	 * Creates a generator with maximum size messages and next hop 0.0.0.0
+	 * @param store Store to dump
+	 */
+	public LinkStateDumpGenerator(LinkStateStore store){
+		this(store, MAX_MESSAGE_LENGTH, null);
+	}
+
+	/**
+	 * @param store Store to dump
+	 * @param maxMessageLength Maximum length of the messages
+	 * @param nextHop Next hop of the MP_REACH_NLRI, null for 0.0.0.0
+	 */
+	public LinkStateDumpGenerator(LinkStateStore store, int maxMessageLength, Inet4Address nextHop){
+		if (maxMessageLength > MAX_MESSAGE_LENGTH){
+			throw new IllegalArgumentException("Maximum message length is "+MAX_MESSAGE_LENGTH);
+		}
+		this.attributeSets = store.attributeSetIterator();
+		this.nextHop = nextHop == null ? new byte[4] : nextHop.getAddress();
+		this.buffer = new byte[maxMessageLength];
+		this.pending = ByteBuffer.wrap(buffer);
+		this.pending.limit(0);
+	}
+
+	/**
+	 * @return true if there are messages left, including the End-of-RIB marker
+	 */
+	public boolean hasNext(){
+		return !endOfRibGenerated;
+	}
+
+	/**
+	 * Builds the next message of the dump. It must not be mixed with
+	 * {@link #write(WritableByteChannel)} in the same generator.
+	 * @return The encoded UPDATE message, or null if the dump is finished
+	 */
+	public byte[] nextMessage(){
+		int len = fill();
+		if (len < 0){
+			return null;
+		}
+		byte[] message = new byte[len];
+		System.arraycopy(buffer, 0, message, 0, len);
+		return message;
+	}
+
+	/**
+	 * Writes the dump to the channel of the peer, until the channel does not
+	 * accept more bytes or the dump is finished. A partially written message
+	 * is resumed in the next call.
+	 * @param channel Channel of the peer
+	 * @return true if the whole dump, including the End-of-RIB marker, has been written
+	 * @throws IOException if the channel fails
+	 */
+	public boolean write(WritableByteChannel channel) throws IOException {
+		while (true){
+			if (!pending.hasRemaining()){
+				int len = fill();
+				if (len < 0){
+					return true;
+				}
+				pending.clear();
+				pending.limit(len);
+			}
+			channel.write(pending);
+			if (pending.hasRemaining()){
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Builds the next message in the buffer
+	 * @return length of the message, -1 if the dump is finished
+	 */
+	private int fill(){
+		if (endOfRibGenerated){
+			return -1;
+		}
+		while (true){
+			if (carried == null && (nlris == null || !nlris.hasNext())){
+				if (!attributeSets.hasNext()){
+					endOfRibGenerated = true;
+					byte[] eor = createEndOfRib().getBytes();
+					System.arraycopy(eor, 0, buffer, 0, eor.length);
+					numberOfMessages++;
+					return eor.length;
+				}
+				currentSet = attributeSets.next();
+				nlris = currentSet.nlris.iterator();
+				continue;
+			}
+			int len = fillUpdate();
+			if (len > 0){
+				numberOfMessages++;
+				return len;
+			}
+		}
+	}
+
+	/**
+	 * Packs NLRIs of the current attribute set in an UPDATE
+	 * @return length of the message, 0 if no NLRI could be packed
+	 */
+	private int fillUpdate(){
+		byte[] attributes = currentSet.bytes;
+		int offset = BGP4Message.getBGPHeaderLength();
+		//Withdrawn Routes Length
+		buffer[offset] = 0;
+		buffer[offset+1] = 0;
+		offset += 4;
+		System.arraycopy(attributes, 0, buffer, offset, currentSet.mpReachPosition);
+		offset += currentSet.mpReachPosition;
+		int mpReachOffset = offset;
+		offset += MP_REACH_HEADER_LENGTH+nextHop.length;
+		int tail = attributes.length-currentSet.mpReachPosition;
+		int limit = buffer.length-tail;
+		int numNLRIs = 0;
+		while (carried != null || nlris.hasNext()){
+			BytesKey nlri = carried != null ? carried : nlris.next();
+			carried = null;
+			if (offset+nlri.getLength() > limit){
+				if (numNLRIs == 0){
+					log.warn("Link-State NLRI of "+nlri.getLength()+" bytes does not fit in a message, it is not advertised");
+					continue;
+				}
+				carried = nlri;
+				break;
+			}
+			System.arraycopy(nlri.getBytes(), nlri.getOffset(), buffer, offset, nlri.getLength());
+			offset += nlri.getLength();
+			numNLRIs++;
+		}
+		if (numNLRIs == 0){
+			return 0;
+		}
+		//MP_REACH_NLRI: optional, non-transitive, extended length
+		int mpReachLength = offset-mpReachOffset-4;
+		buffer[mpReachOffset] = (byte)0x90;
+		buffer[mpReachOffset+1] = (byte)PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI;
+		buffer[mpReachOffset+2] = (byte)(mpReachLength>>>8 & 0xFF);
+		buffer[mpReachOffset+3] = (byte)(mpReachLength & 0xFF);
+		buffer[mpReachOffset+4] = (byte)(AFICodes.AFI_BGP_LS>>>8 & 0xFF);
+		buffer[mpReachOffset+5] = (byte)(AFICodes.AFI_BGP_LS & 0xFF);
+		buffer[mpReachOffset+6] = (byte)SAFICodes.SAFI_BGP_LS;
+		buffer[mpReachOffset+7] = (byte)nextHop.length;
+		System.arraycopy(nextHop, 0, buffer, mpReachOffset+8, nextHop.length);
+		buffer[mpReachOffset+8+nextHop.length] = 0;
+		System.arraycopy(attributes, currentSet.mpReachPosition, buffer, offset, tail);
+		offset += tail;
+		//Total Path Attribute Length
+		int totalPathAttributeLength = offset-BGP4Message.getBGPHeaderLength()-4;
+		buffer[BGP4Message.getBGPHeaderLength()+2] = (byte)(totalPathAttributeLength>>>8 & 0xFF);
+		buffer[BGP4Message.getBGPHeaderLength()+3] = (byte)(totalPathAttributeLength & 0xFF);
+		//BGP header
+		for (int i = 0; i < BGP4Message.getBGPMarkerLength(); i++){
+			buffer[i] = (byte)0xFF;
+		}
+		buffer[16] = (byte)(offset>>>8 & 0xFF);
+		buffer[17] = (byte)(offset & 0xFF);
+		buffer[18] = (byte)BGP4MessageTypes.MESSAGE_UPDATE;
+		numberOfNLRIs += numNLRIs;
+		return offset;
+	}
+
+	/**
+	 * Creates the End-of-RIB marker of the BGP-LS address family
+	 * @return UPDATE with an MP_UNREACH_NLRI without withdrawn routes
+	 */
+	public static BGP4Update createEndOfRib(){
+		Generic_MP_Unreach_Attribute mpUnreach = new Generic_MP_Unreach_Attribute();
+		mpUnreach.setAddressFamilyIdentifier(AFICodes.AFI_BGP_LS);
+		mpUnreach.setSubsequentAddressFamilyIdentifier(SAFICodes.SAFI_BGP_LS);
+		BGP4Update update = new BGP4Update();
+		update.getPathAttributes().add(mpUnreach);
+		update.encode();
+		return update;
+	}
+
+	/**
+	 * @return Number of messages generated, including the End-of-RIB marker
+	 */
+	public long getNumberOfMessages() {
+		return numberOfMessages;
+	}
+
+	/**
+	 * @return Number of NLRIs packed in the messages generated
+	 */
+	public long getNumberOfNLRIs() {
+		return numberOfNLRIs;
+	}
+
+}
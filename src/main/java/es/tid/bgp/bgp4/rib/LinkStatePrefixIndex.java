@@ -0,0 +1,243 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.net.Inet4Address;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.IPv4PrefixList;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NLRITypes;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.PrefixNLRI;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.BGP_LS_MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.MP_Unreach_Attribute;
+import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPReachabilityInformationPrefixDescriptorSubTLV;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Longest prefix match index from the prefixes advertised in BGP-LS Prefix
+ * NLRIs to the IGP nodes that advertise them.
+ * <p>
+ * The index is updated incrementally as Prefix NLRIs are received and
+ * withdrawn, and resolves an address to the most specific prefix containing it
+ * and the Local Node Descriptors of its node, visiting at most one trie node
+ * per bit of the prefix. When several nodes advertise the same prefix (or the
+ * same node through several protocols), all of them are kept, and
+ * {@link #lookup(int)} returns the first one received.
+ * <p>
+ * Only IPv4 prefixes (Prefix_v4_NLRI) are indexed; IPv6 Prefix NLRIs are not
+ * decoded by the library yet.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStatePrefixIndex {
+
+	/**
+	 * Prefix advertised by a node
+	 */
+	public static final class Entry {
+
+		private final BytesKey nlriKey;
+
+		private final int prefix;
+
+		private final int prefixLength;
+
+		private final int protocolID;
+
+		private final LocalNodeDescriptorsTLV localNodeDescriptors;
+
+		Entry(BytesKey nlriKey, int prefix, int prefixLength, int protocolID, LocalNodeDescriptorsTLV localNodeDescriptors){
+			this.nlriKey = nlriKey;
+			this.prefix = prefix;
+			this.prefixLength = prefixLength;
+			this.protocolID = protocolID;
+			this.localNodeDescriptors = localNodeDescriptors;
+		}
+
+		public int getPrefix() {
+			return prefix;
+		}
+
+		public Inet4Address getPrefixAddress() {
+			return IPv4PrefixList.toInet4Address(prefix);
+		}
+
+		public int getPrefixLength() {
+			return prefixLength;
+		}
+
+		public int getProtocolID() {
+			return protocolID;
+		}
+
+		/**
+		 * @return Descriptors of the node advertising the prefix
+		 */
+		public LocalNodeDescriptorsTLV getLocalNodeDescriptors() {
+			return localNodeDescriptors;
+		}
+
+		public String toString(){
+			return getPrefixAddress().getHostAddress()+"/"+prefixLength+" -> "+localNodeDescriptors;
+		}
+	}
+
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	//Values are arrays of entries, usually of one element
+	private final IPv4PrefixTrie trie = new IPv4PrefixTrie();
+
+	private int size;
+
+	/**
+	 * Adds or replaces the prefix of a Prefix NLRI
+	 * @param nlri Prefix NLRI, with IP Reachability Information and Local Node Descriptors
+	 * @return true if the NLRI was not in the index
+	 */
+	public synchronized boolean add(PrefixNLRI nlri){
+		IPReachabilityInformationPrefixDescriptorSubTLV ipReachability = nlri.getIpReachability();
+		if (ipReachability == null || nlri.getLocalNodeDescriptors() == null || nlri.getNLRIType() != NLRITypes.Prefix_v4_NLRI){
+			return false;
+		}
+		if (nlri.getBytes() == null){
+			nlri.encode();
+		}
+		int prefix = IPv4PrefixList.toInt(ipReachability.getIpv4Address());
+		int prefixLength = ipReachability.getPrefix_length();
+		Entry entry = new Entry(new BytesKey(nlri.getBytes(), 0, nlri.getTotalNLRILength()), prefix & IPv4PrefixList.mask(prefixLength), prefixLength,
+				nlri.getProtocolID(), nlri.getLocalNodeDescriptors());
+		Entry[] entries = (Entry[]) trie.get(prefix, prefixLength);
+		if (entries == null){
+			trie.put(prefix, prefixLength, new Entry[] {entry});
+			size++;
+			return true;
+		}
+		for (int i = 0; i < entries.length; ++i){
+			if (entries[i].nlriKey.equals(entry.nlriKey)){
+				entries[i] = entry;
+				return false;
+			}
+		}
+		Entry[] newEntries = new Entry[entries.length+1];
+		System.arraycopy(entries, 0, newEntries, 0, entries.length);
+		newEntries[entries.length] = entry;
+		trie.put(prefix, prefixLength, newEntries);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes the prefix of a Prefix NLRI
+	 * @param nlri Withdrawn Prefix NLRI
+	 * @return true if the NLRI was in the index
+	 */
+	public synchronized boolean withdraw(PrefixNLRI nlri){
+		IPReachabilityInformationPrefixDescriptorSubTLV ipReachability = nlri.getIpReachability();
+		if (ipReachability == null){
+			return false;
+		}
+		if (nlri.getBytes() == null){
+			nlri.encode();
+		}
+		BytesKey key = new BytesKey(nlri.getBytes(), 0, nlri.getTotalNLRILength());
+		int prefix = IPv4PrefixList.toInt(ipReachability.getIpv4Address());
+		int prefixLength = ipReachability.getPrefix_length();
+		Entry[] entries = (Entry[]) trie.get(prefix, prefixLength);
+		if (entries == null){
+			return false;
+		}
+		for (int i = 0; i < entries.length; ++i){
+			if (entries[i].nlriKey.equals(key)){
+				if (entries.length == 1){
+					trie.remove(prefix, prefixLength);
+				} else {
+					Entry[] newEntries = new Entry[entries.length-1];
+					System.arraycopy(entries, 0, newEntries, 0, i);
+					System.arraycopy(entries, i+1, newEntries, i, entries.length-i-1);
+					trie.put(prefix, prefixLength, newEntries);
+				}
+				size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Applies the Prefix NLRIs of a decoded UPDATE: the ones of the
+	 * MP_REACH_NLRI are added and the ones of the MP_UNREACH_NLRI withdrawn.
+	 * @param update Decoded UPDATE message
+	 * @return Number of NLRIs added or withdrawn
+	 */
+	public synchronized int processUpdate(BGP4Update update){
+		int changes = 0;
+		for (PathAttribute attribute : update.getPathAttributes()){
+			if (attribute instanceof BGP_LS_MP_Reach_Attribute){
+				for (LinkStateNLRI nlri : ((BGP_LS_MP_Reach_Attribute) attribute).getLsNLRIList()){
+					if (nlri instanceof PrefixNLRI && add((PrefixNLRI) nlri)){
+						changes++;
+					}
+				}
+			} else if (attribute instanceof MP_Unreach_Attribute && ((MP_Unreach_Attribute) attribute).getAddressFamilyIdentifier() == AFICodes.AFI_BGP_LS){
+				//The withdrawn NLRIs are not decoded by the attribute
+				byte[] bytes = attribute.getBytes();
+				int offset = attribute.getMandatoryLength()+3;
+				while (offset < attribute.getLength()){
+					if (LinkStateNLRI.getType(bytes, offset) == NLRITypes.Prefix_v4_NLRI && withdraw(new PrefixNLRI(bytes, offset))){
+						changes++;
+					}
+					offset += LinkStateNLRI.getNLRILength(bytes, offset)+4;
+				}
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Longest prefix match
+	 * @param address IPv4 address as an int
+	 * @return The most specific prefix containing the address (the first
+	 * advertised if there are several nodes), null if there is none
+	 */
+	public synchronized Entry lookup(int address){
+		Entry[] entries = (Entry[]) trie.lookup(address);
+		return entries == null ? null : entries[0];
+	}
+
+	public Entry lookup(Inet4Address address){
+		return lookup(IPv4PrefixList.toInt(address));
+	}
+
+	/**
+	 * Longest prefix match
+	 * @param address IPv4 address as an int
+	 * @return All the nodes advertising the most specific prefix containing the address
+	 */
+	public synchronized Entry[] lookupAll(int address){
+		Entry[] entries = (Entry[]) trie.lookup(address);
+		return entries == null ? NO_ENTRIES : entries.clone();
+	}
+
+	/**
+	 * @return Number of Prefix NLRIs in the index
+	 */
+	public synchronized int size(){
+		return size;
+	}
+
+	/**
+	 * @return Number of distinct prefixes in the index
+	 */
+	public synchronized int getNumberOfPrefixes(){
+		return trie.size();
+	}
+
+	public synchronized void clear(){
+		trie.clear();
+		size = 0;
+	}
+
+}
@@ -0,0 +1,221 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Store of the BGP-LS routes (Link-State NLRI and path attributes) known by
+ * the speaker, kept in wire format.
+ * <p>
+ * The NLRIs are grouped by their set of path attributes, so that all the NLRIs
+ * sharing the same attributes can be packed in the same UPDATE when the table
+ * is advertised (see {@link LinkStateDumpGenerator}). Every set of attributes
+ * is stored once.
+ * <p>
+ * There is a single writer (the methods that modify the store are
+ * synchronized), while the table can be walked concurrently. The walk is
+ * weakly consistent: it does not fail if the store is modified, and it may or
+ * may not reflect the changes made after it started.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStateStore {
+
+	/**
+	 * Path attributes (except MP_REACH_NLRI and MP_UNREACH_NLRI) shared by a
+	 * group of NLRIs, and the NLRIs of the group.
+	 */
+	static final class AttributeSet {
+
+		final byte[] bytes;
+
+		//Position of the MP_REACH_NLRI attribute, to keep the order of the attributes
+		final int mpReachPosition;
+
+		private final int hash;
+
+		final Set<BytesKey> nlris = ConcurrentHashMap.newKeySet();
+
+		AttributeSet(byte[] bytes, int mpReachPosition){
+			this.bytes = bytes;
+			this.mpReachPosition = mpReachPosition;
+			this.hash = BytesKey.hashCode(bytes, 0, bytes.length);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof AttributeSet))
+				return false;
+			AttributeSet other = (AttributeSet) obj;
+			return mpReachPosition == other.mpReachPosition && Arrays.equals(bytes, other.bytes);
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	private final ConcurrentHashMap<BytesKey, AttributeSet> routes = new ConcurrentHashMap<BytesKey, AttributeSet>();
+
+	private final ConcurrentHashMap<AttributeSet, AttributeSet> attributeSets = new ConcurrentHashMap<AttributeSet, AttributeSet>();
+
+	/**
+	 * Adds or replaces a route
+	 * @param nlri Link-State NLRI. It is encoded if it has not been encoded yet.
+	 * @param attributes Path attributes of the route, without MP_REACH_NLRI.
+	 * They are encoded if they have not been encoded yet.
+	 */
+	public void add(LinkStateNLRI nlri, List<PathAttribute> attributes){
+		if (nlri.getBytes() == null){
+			nlri.encode();
+		}
+		int len = 0;
+		for (PathAttribute attribute : attributes){
+			if (attribute.getBytes() == null){
+				attribute.encode();
+			}
+			len += attribute.getLength();
+		}
+		byte[] attributeBytes = new byte[len];
+		int mpReachPosition = -1;
+		int offset = 0;
+		for (PathAttribute attribute : attributes){
+			if (mpReachPosition < 0 && attribute.getTypeCode() > PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+				mpReachPosition = offset;
+			}
+			System.arraycopy(attribute.getBytes(), 0, attributeBytes, offset, attribute.getLength());
+			offset += attribute.getLength();
+		}
+		add(nlri.getBytes(), 0, attributeBytes, mpReachPosition < 0 ? len : mpReachPosition);
+	}
+
+	/**
+	 * Adds or replaces a route
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI (start of the NLRI type)
+	 * @param attributeBytes Encoded path attributes of the route, without
+	 * MP_REACH_NLRI. The array is kept by the store and must not be modified.
+	 * @param mpReachPosition Offset in attributeBytes where the MP_REACH_NLRI is placed when the route is advertised
+	 */
+	public synchronized void add(byte[] nlriBytes, int nlriOffset, byte[] attributeBytes, int mpReachPosition){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset)+4;
+		AttributeSet set = new AttributeSet(attributeBytes, mpReachPosition);
+		AttributeSet canonical = attributeSets.putIfAbsent(set, set);
+		if (canonical == null){
+			canonical = set;
+		}
+		BytesKey key = new BytesKey(nlriBytes, nlriOffset, nlriLength);
+		AttributeSet previous = routes.get(key);
+		if (previous == canonical){
+			return;
+		}
+		if (previous != null){
+			remove(key, previous);
+		}
+		byte[] nlriCopy = new byte[nlriLength];
+		System.arraycopy(nlriBytes, nlriOffset, nlriCopy, 0, nlriLength);
+		key = new BytesKey(nlriCopy);
+		canonical.nlris.add(key);
+		routes.put(key, canonical);
+	}
+
+	/**
+	 * Removes a route
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI
+	 * @return true if the route was in the store
+	 */
+	public synchronized boolean withdraw(byte[] nlriBytes, int nlriOffset){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset)+4;
+		BytesKey key = new BytesKey(nlriBytes, nlriOffset, nlriLength);
+		AttributeSet set = routes.remove(key);
+		if (set == null){
+			return false;
+		}
+		remove(key, set);
+		return true;
+	}
+
+	private void remove(BytesKey key, AttributeSet set){
+		set.nlris.remove(key);
+		if (set.nlris.isEmpty()){
+			attributeSets.remove(set);
+		}
+	}
+
+	/**
+	 * Processes the raw bytes of a BGP4 UPDATE message carrying BGP-LS
+	 * information. The Link-State NLRIs of the MP_REACH_NLRI are added with the
+	 * other path attributes of the message, and the ones of the MP_UNREACH_NLRI
+	 * are withdrawn. The message is checked before the store is changed, so a
+	 * malformed message is not applied at all.
+	 * @param messageBytes Bytes of the whole UPDATE message, including the BGP header
+	 * @return Number of NLRIs added or withdrawn, -1 if the message is malformed
+	 */
+	public synchronized int processUpdate(byte[] messageBytes){
+		LinkStateUpdate update = LinkStateUpdate.parse(messageBytes);
+		if (update == null){
+			log.warn("Malformed BGP4 Update, it can not be stored in the link state store");
+			return -1;
+		}
+		for (int nlriOffset = update.unreachStart; nlriOffset < update.unreachEnd; nlriOffset = update.next(nlriOffset)){
+			withdraw(messageBytes, nlriOffset);
+		}
+		if (update.numReached > 0){
+			byte[] attributeBytes = update.copyAttributes();
+			for (int nlriOffset = update.reachStart; nlriOffset < update.reachEnd; nlriOffset = update.next(nlriOffset)){
+				add(messageBytes, nlriOffset, attributeBytes, update.mpReachPosition);
+			}
+		}
+		return update.numWithdrawn+update.numReached;
+	}
+
+	/**
+	 * @return Weakly consistent iterator over the groups of NLRIs sharing the same attributes
+	 */
+	Iterator<AttributeSet> attributeSetIterator(){
+		return attributeSets.keySet().iterator();
+	}
+
+	public boolean contains(byte[] nlriBytes, int nlriOffset){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset)+4;
+		return routes.containsKey(new BytesKey(nlriBytes, nlriOffset, nlriLength));
+	}
+
+	/**
+	 * @return Number of NLRIs in the store
+	 */
+	public int size(){
+		return routes.size();
+	}
+
+	/**
+	 * @return Number of distinct sets of path attributes in the store
+	 */
+	public int getNumberOfAttributeSets(){
+		return attributeSets.size();
+	}
+
+	public synchronized void clear(){
+		routes.clear();
+		attributeSets.clear();
+	}
+
+}
@@ -0,0 +1,193 @@
+package es.tid.bgp.bgp4.rib;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+
+/**
+ * Offsets of the Link-State NLRIs of a BGP4 UPDATE message in wire format,
+ * used by the stores that keep the routes without decoding them
+ * ({@link LinkStateStore} and {@link ShardedLinkStateStore}).
+ * <p>
+ * The whole message is checked by {@link #parse(byte[])} before a store is
+ * changed: the path attributes must end exactly at the end given by the
+ * Total Path Attribute Length, the NLRIs of the MP_REACH_NLRI and
+ * MP_UNREACH_NLRI attributes must end exactly at the end of the attribute,
+ * and there must be at most one attribute of each. A store then applies the
+ * withdrawals and advertisements with the offsets, which are known to be
+ * valid.
+ * <p>
+ * The NLRIs of an MP_REACH_NLRI or MP_UNREACH_NLRI attribute whose AFI is
+ * not BGP-LS are ignored (empty slice).
+ *
+ * @author ogondio
+ *
+ */
+final class LinkStateUpdate {
+
+	private final byte[] bytes;
+
+	/**
+	 * Path attributes of the message
+	 */
+	private final int start, end;
+
+	private final int reachOffset, unreachOffset;
+
+	/**
+	 * Slices of the Link-State NLRIs advertised and withdrawn
+	 */
+	final int reachStart, reachEnd, unreachStart, unreachEnd;
+
+	final int numReached, numWithdrawn;
+
+	/**
+	 * Position of the MP_REACH_NLRI attribute among the other path attributes
+	 */
+	final int mpReachPosition;
+
+	/**
+	 * Length of the path attributes without MP_REACH_NLRI and MP_UNREACH_NLRI
+	 */
+	private final int attributesLength;
+
+	private LinkStateUpdate(byte[] bytes, int start, int end, int reachOffset, int unreachOffset, int reachStart, int reachEnd, int unreachStart, int unreachEnd, int numReached, int numWithdrawn, int mpReachPosition, int attributesLength){
+		this.bytes = bytes;
+		this.start = start;
+		this.end = end;
+		this.reachOffset = reachOffset;
+		this.unreachOffset = unreachOffset;
+		this.reachStart = reachStart;
+		this.reachEnd = reachEnd;
+		this.unreachStart = unreachStart;
+		this.unreachEnd = unreachEnd;
+		this.numReached = numReached;
+		this.numWithdrawn = numWithdrawn;
+		this.mpReachPosition = mpReachPosition;
+		this.attributesLength = attributesLength;
+	}
+
+	/**
+	 * Parses and checks an UPDATE message
+	 * @param messageBytes Bytes of the whole UPDATE message, including the BGP header
+	 * @return Offsets of the Link-State NLRIs, null if the message is malformed
+	 */
+	static LinkStateUpdate parse(byte[] messageBytes){
+		try {
+			int offset = BGP4Message.getBGPHeaderLength();
+			int withdrawnRoutesLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+			offset += 2+withdrawnRoutesLength;
+			int totalPathAttributeLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+			offset += 2;
+			int start = offset;
+			int end = offset+totalPathAttributeLength;
+			if (end > messageBytes.length){
+				return null;
+			}
+			int reachOffset = -1;
+			int unreachOffset = -1;
+			int mpReachPosition = 0;
+			int attributesLength = 0;
+			while (offset < end){
+				int typeCode = PathAttribute.getAttibuteTypeCode(messageBytes, offset);
+				int attLength = PathAttribute.getMandatoryLength(messageBytes, offset)+PathAttribute.getAttributeLength(messageBytes, offset);
+				if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+					if (reachOffset >= 0){
+						return null;
+					}
+					reachOffset = offset;
+					mpReachPosition = attributesLength;
+				} else if (typeCode == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_UN_REACH_NLRI){
+					if (unreachOffset >= 0){
+						return null;
+					}
+					unreachOffset = offset;
+				} else {
+					attributesLength += attLength;
+				}
+				offset += attLength;
+			}
+			if (offset != end){
+				return null;
+			}
+			int unreachStart = 0, unreachEnd = 0, numWithdrawn = 0;
+			if (unreachOffset >= 0){
+				int ml = PathAttribute.getMandatoryLength(messageBytes, unreachOffset);
+				if (afi(messageBytes, unreachOffset+ml) == AFICodes.AFI_BGP_LS){
+					unreachStart = unreachOffset+ml+3;
+					unreachEnd = unreachOffset+ml+PathAttribute.getAttributeLength(messageBytes, unreachOffset);
+					numWithdrawn = countNLRIs(messageBytes, unreachStart, unreachEnd);
+				}
+			}
+			int reachStart = 0, reachEnd = 0, numReached = 0;
+			if (reachOffset >= 0){
+				int ml = PathAttribute.getMandatoryLength(messageBytes, reachOffset);
+				if (afi(messageBytes, reachOffset+ml) == AFICodes.AFI_BGP_LS){
+					int nextHopLength = messageBytes[reachOffset+ml+3]&0xFF;
+					reachStart = reachOffset+ml+5+nextHopLength;
+					reachEnd = reachOffset+ml+PathAttribute.getAttributeLength(messageBytes, reachOffset);
+					numReached = countNLRIs(messageBytes, reachStart, reachEnd);
+				}
+			}
+			if (numWithdrawn < 0 || numReached < 0){
+				return null;
+			}
+			return new LinkStateUpdate(messageBytes, start, end, reachOffset, unreachOffset, reachStart, reachEnd, unreachStart, unreachEnd, numReached, numWithdrawn, mpReachPosition, attributesLength);
+		} catch (ArrayIndexOutOfBoundsException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Counts the Link-State NLRIs of a slice of an MP_(UN)REACH_NLRI attribute
+	 * @return Number of NLRIs, -1 if the last one does not end at the end of the slice
+	 */
+	static int countNLRIs(byte[] bytes, int start, int end){
+		if (start > end){
+			return -1;
+		}
+		int count = 0;
+		int offset = start;
+		while (offset < end){
+			if (offset+4 > end){
+				return -1;
+			}
+			offset += LinkStateNLRI.getNLRILength(bytes, offset)+4;
+			count++;
+		}
+		return (offset == end) ? count : -1;
+	}
+
+	/**
+	 * @param nlriOffset Offset of a Link-State NLRI of the message
+	 * @return Offset of the next NLRI
+	 */
+	int next(int nlriOffset){
+		return nlriOffset+LinkStateNLRI.getNLRILength(bytes, nlriOffset)+4;
+	}
+
+	/**
+	 * @return Copy of the path attributes without MP_REACH_NLRI and MP_UNREACH_NLRI
+	 */
+	byte[] copyAttributes(){
+		byte[] attributeBytes = new byte[attributesLength];
+		int pos = 0;
+		int offset = start;
+		while (offset < end){
+			int attLength = PathAttribute.getMandatoryLength(bytes, offset)+PathAttribute.getAttributeLength(bytes, offset);
+			if (offset != reachOffset && offset != unreachOffset){
+				System.arraycopy(bytes, offset, attributeBytes, pos, attLength);
+				pos += attLength;
+			}
+			offset += attLength;
+		}
+		return attributeBytes;
+	}
+
+	private static int afi(byte[] bytes, int offset){
+		return ((bytes[offset]&0xFF)<<8) | (bytes[offset+1]&0xFF);
+	}
+
+}
@@ -0,0 +1,234 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.tid.bgp.bgp4.update.fields.LinkNLRI;
+import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.LinkDescriptorSubTLVTypes;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Recent history of the TE metric extensions (RFC 7471 delay, delay
+ * variation, loss and bandwidth sub-TLVs) advertised for every link.
+ * <p>
+ * Each time a Link NLRI carrying those sub-TLVs is received, their values are
+ * added to fixed size {@link MetricRingBuffer}s of the link, so path
+ * computation can use smoothed values (average, percentiles) over a time
+ * window instead of the last advertised one. The memory used per link is
+ * bounded by the capacity given when the store is created.
+ * <p>
+ * The delays are kept in microseconds and the loss in units of 0.000003%,
+ * as advertised. The bandwidths are advertised as IEEE floating point
+ * numbers in bytes per second; they are kept in kilobits per second, so the
+ * samples can be compared and averaged as integers.
+ * <p>
+ * The links are identified by their Link NLRI without the TE metric
+ * extension sub-TLVs, which change from one advertisement to the next.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkTelemetryStore {
+
+	public static final int METRIC_DELAY = 0;
+	public static final int METRIC_MIN_DELAY = 1;
+	public static final int METRIC_MAX_DELAY = 2;
+	public static final int METRIC_DELAY_VARIATION = 3;
+	public static final int METRIC_LOSS = 4;
+	public static final int METRIC_RESIDUAL_BANDWIDTH = 5;
+	public static final int METRIC_AVAILABLE_BANDWIDTH = 6;
+	public static final int METRIC_UTILIZED_BANDWIDTH = 7;
+
+	public static final int NUMBER_OF_METRICS = 8;
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Value of the link loss when it has not been measured (all ones)
+	 */
+	private static final int LOSS_NOT_MEASURED = 0xFFFFFF;
+
+	/**
+	 * Converts a bandwidth sub-TLV value to the unit of the samples
+	 * @param bits Bits of the IEEE floating point value, in bytes per second
+	 * @return Bandwidth in kilobits per second
+	 */
+	static int toKbps(int bits){
+		float bytesPerSecond = Float.intBitsToFloat(bits);
+		if (!(bytesPerSecond > 0)){
+			return 0;
+		}
+		return (int) Math.min(Integer.MAX_VALUE, Math.round(bytesPerSecond * 8.0 / 1000.0));
+	}
+
+	/**
+	 * Samples of the metrics of a link. The buffer of a metric is created
+	 * with the first sample of that metric.
+	 */
+	public static final class LinkTelemetry {
+
+		private final MetricRingBuffer[] buffers = new MetricRingBuffer[NUMBER_OF_METRICS];
+
+		private final int capacity;
+
+		LinkTelemetry(int capacity){
+			this.capacity = capacity;
+		}
+
+		synchronized void add(int metric, long timeMillis, int value){
+			if (buffers[metric] == null){
+				buffers[metric] = new MetricRingBuffer(capacity);
+			}
+			buffers[metric].add(timeMillis, value);
+		}
+
+		/**
+		 * @param metric METRIC_* constant
+		 * @return The samples of the metric, null if none has been received
+		 */
+		public synchronized MetricRingBuffer getSamples(int metric){
+			return buffers[metric];
+		}
+	}
+
+	private final ConcurrentHashMap<BytesKey, LinkTelemetry> links = new ConcurrentHashMap<BytesKey, LinkTelemetry>();
+
+	private final int capacity;
+
+	public LinkTelemetryStore(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity Number of samples kept per link and metric
+	 */
+	public LinkTelemetryStore(int capacity){
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Records the TE metric extensions carried by a Link NLRI. The NLRI must
+	 * be encoded (or decoded from a message).
+	 * @param nlri Link NLRI
+	 * @param timeMillis Reception time
+	 * @return true if the NLRI carried any TE metric extension
+	 */
+	public boolean record(LinkNLRI nlri, long timeMillis){
+		LinkTelemetry telemetry = null;
+		if (nlri.getUndirectionalLinkDelayTLV() != null){
+			telemetry = getOrCreate(nlri);
+			telemetry.add(METRIC_DELAY, timeMillis, nlri.getUndirectionalLinkDelayTLV().getDelay());
+		}
+		if (nlri.getMinMaxUndirectionalLinkDelayTLV() != null){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_MIN_DELAY, timeMillis, nlri.getMinMaxUndirectionalLinkDelayTLV().getLowDelay());
+			telemetry.add(METRIC_MAX_DELAY, timeMillis, nlri.getMinMaxUndirectionalLinkDelayTLV().getHighDelay());
+		}
+		if (nlri.getUndirectionalDelayVariationTLV() != null){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_DELAY_VARIATION, timeMillis, nlri.getUndirectionalDelayVariationTLV().getDelayVar());
+		}
+		if (nlri.getUndirectionalLinkLossTLV() != null && nlri.getUndirectionalLinkLossTLV().getLinkLoss() != LOSS_NOT_MEASURED){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_LOSS, timeMillis, nlri.getUndirectionalLinkLossTLV().getLinkLoss());
+		}
+		if (nlri.getUndirectionalResidualBwTLV() != null){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_RESIDUAL_BANDWIDTH, timeMillis, toKbps(nlri.getUndirectionalResidualBwTLV().getResidualBw()));
+		}
+		if (nlri.getUndirectionalAvailableBwTLV() != null){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_AVAILABLE_BANDWIDTH, timeMillis, toKbps(nlri.getUndirectionalAvailableBwTLV().getAvailableBw()));
+		}
+		if (nlri.getUndirectionalUtilizedBwTLV() != null){
+			telemetry = (telemetry == null) ? getOrCreate(nlri) : telemetry;
+			telemetry.add(METRIC_UTILIZED_BANDWIDTH, timeMillis, toKbps(nlri.getUndirectionalUtilizedBwTLV().getUtilizedBw()));
+		}
+		return telemetry != null;
+	}
+
+	/**
+	 * @param nlri Link NLRI (encoded)
+	 * @return The telemetry of the link, null if nothing has been recorded
+	 */
+	public LinkTelemetry getTelemetry(LinkNLRI nlri){
+		return links.get(getLinkKey(nlri.getBytes(), 0));
+	}
+
+	/**
+	 * @param nlri Link NLRI (encoded)
+	 * @param metric METRIC_* constant
+	 * @return The samples of the metric of the link, null if none has been received
+	 */
+	public MetricRingBuffer getSamples(LinkNLRI nlri, int metric){
+		LinkTelemetry telemetry = getTelemetry(nlri);
+		return (telemetry == null) ? null : telemetry.getSamples(metric);
+	}
+
+	/**
+	 * Removes the history of a link, when the link is withdrawn
+	 * @param nlri Link NLRI (encoded)
+	 */
+	public void remove(LinkNLRI nlri){
+		links.remove(getLinkKey(nlri.getBytes(), 0));
+	}
+
+	public Set<BytesKey> getLinks(){
+		return links.keySet();
+	}
+
+	public int size(){
+		return links.size();
+	}
+
+	public void clear(){
+		links.clear();
+	}
+
+	private LinkTelemetry getOrCreate(LinkNLRI nlri){
+		BytesKey key = getLinkKey(nlri.getBytes(), 0);
+		LinkTelemetry telemetry = links.get(key);
+		if (telemetry == null){
+			telemetry = new LinkTelemetry(capacity);
+			LinkTelemetry previous = links.putIfAbsent(key, telemetry);
+			if (previous != null){
+				telemetry = previous;
+			}
+		}
+		return telemetry;
+	}
+
+	/**
+	 * Builds the key of a link: the Link NLRI (protocol, identifier, node and
+	 * link descriptors) without its header and without the TE metric
+	 * extension sub-TLVs.
+	 * @param bytes Bytes of the message
+	 * @param offset Offset of the Link NLRI
+	 * @return The key of the link
+	 */
+	public static BytesKey getLinkKey(byte[] bytes, int offset){
+		int end = offset + 4 + (((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF));
+		//Protocol-ID, Identifier, Local and Remote Node Descriptors
+		int start = offset + 4;
+		int descriptors = start + 9;
+		descriptors += BGP4TLVFormat.getTotalTLVLength(bytes, descriptors);
+		descriptors += BGP4TLVFormat.getTotalTLVLength(bytes, descriptors);
+		byte[] key = new byte[end - start];
+		int len = descriptors - start;
+		System.arraycopy(bytes, start, key, 0, len);
+		for (int i = descriptors; i + 4 <= end; i += BGP4TLVFormat.getTotalTLVLength(bytes, i)){
+			if (!isMetricExtension(BGP4TLVFormat.getType(bytes, i))){
+				int tlvLength = BGP4TLVFormat.getTotalTLVLength(bytes, i);
+				System.arraycopy(bytes, i, key, len, tlvLength);
+				len += tlvLength;
+			}
+		}
+		return new BytesKey(key, 0, len);
+	}
+
+	private static boolean isMetricExtension(int type){
+		return type >= LinkDescriptorSubTLVTypes.LINK_DESCRIPTOR_SUB_TLV_TYPE_UNDIRLINKDELAY_ID && type <= LinkDescriptorSubTLVTypes.LINK_DESCRIPTOR_SUB_TLV_TYPE_UNDIRLUTILIZEDBW_ID;
+	}
+
+}
@@ -0,0 +1,260 @@
+package es.tid.bgp.bgp4.rib;
+
+/**
+ * Fixed size series of samples of a link metric (delay, loss, bandwidth...)
+ * kept in primitive arrays.
+ * <p>
+ * The buffer holds the last <i>capacity</i> samples, the oldest one is
+ * overwritten when a new sample arrives, so the memory used does not grow
+ * with the time. Adding a sample is O(1) and does not allocate. The window
+ * queries (minimum, maximum, average and percentile of the samples received
+ * since a given time) walk back from the newest sample and stop at the first
+ * sample older than the window, so they only touch the samples in the window.
+ * <p>
+ * The samples are expected in time order. A sample older than the newest one
+ * is stored with the time of the newest one.
+ * <p>
+ * The buffer can be written by one thread and queried by others, all the
+ * methods are synchronized.
+ *
+ * @author ogondio
+ *
+ */
+public class MetricRingBuffer {
+
+	private final long[] times;
+
+	private final int[] values;
+
+	/**
+	 * Working array of the percentile queries
+	 */
+	private final int[] scratch;
+
+	private final int mask;
+
+	/**
+	 * Number of samples added since the creation (or the last clear)
+	 */
+	private long added;
+
+	/**
+	 * @param capacity Number of samples kept. It is rounded up to a power of two.
+	 */
+	public MetricRingBuffer(int capacity){
+		if (capacity <= 0){
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		int size = 1;
+		while (size < capacity){
+			size <<= 1;
+		}
+		this.times = new long[size];
+		this.values = new int[size];
+		this.scratch = new int[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds a sample, overwriting the oldest one if the buffer is full.
+	 * @param timeMillis Time of the sample
+	 * @param value Value of the sample
+	 */
+	public synchronized void add(long timeMillis, int value){
+		if (added > 0){
+			long last = times[(int)((added - 1) & mask)];
+			if (timeMillis < last){
+				timeMillis = last;
+			}
+		}
+		int i = (int)(added & mask);
+		times[i] = timeMillis;
+		values[i] = value;
+		added++;
+	}
+
+	public int getCapacity(){
+		return values.length;
+	}
+
+	/**
+	 * @return Number of samples stored
+	 */
+	public synchronized int size(){
+		return (int)Math.min(added, values.length);
+	}
+
+	/**
+	 * @return Number of samples added, including the ones already overwritten
+	 */
+	public synchronized long getTotalSamples(){
+		return added;
+	}
+
+	public synchronized boolean isEmpty(){
+		return added == 0;
+	}
+
+	/**
+	 * @return Value of the newest sample
+	 * @throws IllegalStateException if the buffer is empty
+	 */
+	public synchronized int getLastValue(){
+		checkNotEmpty();
+		return values[(int)((added - 1) & mask)];
+	}
+
+	/**
+	 * @return Time of the newest sample, -1 if the buffer is empty
+	 */
+	public synchronized long getLastTime(){
+		if (added == 0){
+			return -1;
+		}
+		return times[(int)((added - 1) & mask)];
+	}
+
+	/**
+	 * Number of samples received since the given time
+	 * @param sinceMillis Start of the window (inclusive)
+	 * @return Number of samples in the window
+	 */
+	public synchronized int count(long sinceMillis){
+		return windowSize(sinceMillis);
+	}
+
+	/**
+	 * @param sinceMillis Start of the window (inclusive)
+	 * @return Minimum value in the window, Integer.MAX_VALUE if the window is empty
+	 */
+	public synchronized int min(long sinceMillis){
+		int n = windowSize(sinceMillis);
+		int min = Integer.MAX_VALUE;
+		for (long k = added - n; k < added; k++){
+			int v = values[(int)(k & mask)];
+			if (v < min){
+				min = v;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * @param sinceMillis Start of the window (inclusive)
+	 * @return Maximum value in the window, Integer.MIN_VALUE if the window is empty
+	 */
+	public synchronized int max(long sinceMillis){
+		int n = windowSize(sinceMillis);
+		int max = Integer.MIN_VALUE;
+		for (long k = added - n; k < added; k++){
+			int v = values[(int)(k & mask)];
+			if (v > max){
+				max = v;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param sinceMillis Start of the window (inclusive)
+	 * @return Average value in the window, NaN if the window is empty
+	 */
+	public synchronized double average(long sinceMillis){
+		int n = windowSize(sinceMillis);
+		if (n == 0){
+			return Double.NaN;
+		}
+		long sum = 0;
+		for (long k = added - n; k < added; k++){
+			sum += values[(int)(k & mask)];
+		}
+		return (double)sum / n;
+	}
+
+	/**
+	 * Percentile of the values in the window (nearest rank). It is computed
+	 * with a selection over a copy of the window, without sorting it.
+	 * @param sinceMillis Start of the window (inclusive)
+	 * @param percentile Percentile, between 0 and 100
+	 * @return Value of the percentile
+	 * @throws IllegalStateException if the window is empty
+	 */
+	public synchronized int percentile(long sinceMillis, double percentile){
+		if (percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		int n = windowSize(sinceMillis);
+		if (n == 0){
+			throw new IllegalStateException("No samples in the window");
+		}
+		int j = 0;
+		for (long k = added - n; k < added; k++){
+			scratch[j++] = values[(int)(k & mask)];
+		}
+		int rank = (int)Math.ceil(percentile / 100 * n) - 1;
+		if (rank < 0){
+			rank = 0;
+		}
+		return select(scratch, n, rank);
+	}
+
+	public synchronized void clear(){
+		added = 0;
+	}
+
+	/**
+	 * Number of the newest samples with time greater or equal than the given one
+	 */
+	private int windowSize(long sinceMillis){
+		int stored = (int)Math.min(added, values.length);
+		int n = 0;
+		while (n < stored && times[(int)((added - 1 - n) & mask)] >= sinceMillis){
+			n++;
+		}
+		return n;
+	}
+
+	private void checkNotEmpty(){
+		if (added == 0){
+			throw new IllegalStateException("No samples");
+		}
+	}
+
+	/**
+	 * Returns the k-th smallest of the first n values of the array,
+	 * reordering them (quickselect)
+	 */
+	private static int select(int[] a, int n, int k){
+		int left = 0;
+		int right = n - 1;
+		while (left < right){
+			int pivot = a[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j){
+				while (a[i] < pivot){
+					i++;
+				}
+				while (a[j] > pivot){
+					j--;
+				}
+				if (i <= j){
+					int t = a[i];
+					a[i] = a[j];
+					a[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j){
+				right = j;
+			} else if (k >= i){
+				left = i;
+			} else {
+				return a[k];
+			}
+		}
+		return a[k];
+	}
+
+}
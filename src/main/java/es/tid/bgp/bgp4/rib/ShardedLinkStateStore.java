@@ -0,0 +1,356 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NLRITypes;
+import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Store of the BGP-LS routes partitioned in shards, so that several threads
+ * can update it at the same time.
+ * <p>
+ * The Node, Link and Prefix NLRIs are assigned to a shard with a
+ * {@link ConsistentHashRing} by a hash of their Protocol-ID, Identifier and
+ * node descriptors (see {@link #getDescriptorsHash(byte[], int)}), so all the
+ * NLRIs of a node (and all the links between two nodes) are in the same
+ * shard. Each shard has its own writer lock: writers of different shards do
+ * not wait for each other and there is no global lock. The reads do not take
+ * any lock.
+ * <p>
+ * The routes are stored in wire format: the NLRI and the path attributes of
+ * the route without MP_REACH_NLRI.
+ * <p>
+ * {@link #iterator()} walks all the shards while they are being modified
+ * (weakly consistent). {@link #snapshot()} returns a consistent copy of the
+ * store: it holds the writer locks of all the shards for an instant, and
+ * releases each one as soon as its shard has been copied.
+ *
+ * @author ogondio
+ *
+ */
+public class ShardedLinkStateStore {
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	private static final class Shard {
+
+		final ReentrantLock writerLock = new ReentrantLock();
+
+		final ConcurrentHashMap<BytesKey, byte[]> routes = new ConcurrentHashMap<BytesKey, byte[]>();
+
+		//Modified only with the writer lock
+		volatile long updates;
+	}
+
+	/**
+	 * Consistent copy of the routes of all the shards
+	 */
+	public static final class Snapshot implements Iterable<Map.Entry<BytesKey, byte[]>> {
+
+		private final HashMap<BytesKey, byte[]>[] shards;
+
+		private final ConsistentHashRing ring;
+
+		private final int size;
+
+		Snapshot(HashMap<BytesKey, byte[]>[] shards, ConsistentHashRing ring){
+			this.shards = shards;
+			this.ring = ring;
+			int n = 0;
+			for (HashMap<BytesKey, byte[]> shard : shards){
+				n += shard.size();
+			}
+			this.size = n;
+		}
+
+		/**
+		 * @param nlriBytes Bytes containing the NLRI
+		 * @param nlriOffset Offset of the NLRI
+		 * @return Path attributes of the route, null if it was not in the store
+		 */
+		public byte[] get(byte[] nlriBytes, int nlriOffset){
+			int shard = ring.getShard(getDescriptorsHash(nlriBytes, nlriOffset));
+			return shards[shard].get(getKey(nlriBytes, nlriOffset));
+		}
+
+		public int size(){
+			return size;
+		}
+
+		@Override
+		public Iterator<Map.Entry<BytesKey, byte[]>> iterator() {
+			Iterator<?>[] iterators = new Iterator<?>[shards.length];
+			for (int i = 0; i < shards.length; i++){
+				iterators[i] = shards[i].entrySet().iterator();
+			}
+			return new ShardIterator(iterators);
+		}
+	}
+
+	/**
+	 * Iterator that walks the shards one after the other
+	 */
+	private static final class ShardIterator implements Iterator<Map.Entry<BytesKey, byte[]>> {
+
+		private final Iterator<?>[] iterators;
+
+		private int current;
+
+		ShardIterator(Iterator<?>[] iterators){
+			this.iterators = iterators;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (current < iterators.length){
+				if (iterators[current].hasNext()){
+					return true;
+				}
+				current++;
+			}
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map.Entry<BytesKey, byte[]> next() {
+			if (!hasNext()){
+				throw new NoSuchElementException();
+			}
+			Map.Entry<BytesKey, byte[]> entry = (Map.Entry<BytesKey, byte[]>) iterators[current].next();
+			return new AbstractMap.SimpleImmutableEntry<BytesKey, byte[]>(entry);
+		}
+	}
+
+	private final Shard[] shards;
+
+	private final ConsistentHashRing ring;
+
+	public ShardedLinkStateStore(int numberOfShards){
+		this.ring = new ConsistentHashRing(numberOfShards);
+		this.shards = new Shard[numberOfShards];
+		for (int i = 0; i < numberOfShards; i++){
+			shards[i] = new Shard();
+		}
+	}
+
+	/**
+	 * Hash of the canonical descriptors of a Link-State NLRI: Protocol-ID,
+	 * Identifier and Local Node Descriptors, and also the Remote Node
+	 * Descriptors of a Link NLRI. NLRIs of other types are hashed whole.
+	 * @param bytes Bytes containing the NLRI
+	 * @param offset Offset of the NLRI (start of the NLRI type)
+	 * @return hash
+	 */
+	public static int getDescriptorsHash(byte[] bytes, int offset){
+		int type = LinkStateNLRI.getNLRIType(bytes, offset);
+		int nlriLength = LinkStateNLRI.getNLRILength(bytes, offset) + 4;
+		//NLRI header (4), Protocol-ID (1) and Identifier (8)
+		int descriptors = offset + 13;
+		int end;
+		switch (type){
+		case NLRITypes.Node_NLRI:
+		case NLRITypes.Prefix_v4_NLRI:
+		case NLRITypes.Prefix_v6_NLRI:
+			end = descriptors + BGP4TLVFormat.getTotalTLVLength(bytes, descriptors);
+			break;
+		case NLRITypes.Link_NLRI:
+			end = descriptors + BGP4TLVFormat.getTotalTLVLength(bytes, descriptors);
+			end += BGP4TLVFormat.getTotalTLVLength(bytes, end);
+			break;
+		default:
+			end = offset + nlriLength;
+		}
+		if (end > offset + nlriLength){
+			end = offset + nlriLength;
+		}
+		return BytesKey.hashCode(bytes, offset + 4, end - offset - 4);
+	}
+
+	private static BytesKey getKey(byte[] nlriBytes, int nlriOffset){
+		return new BytesKey(nlriBytes, nlriOffset, LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset) + 4);
+	}
+
+	/**
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI
+	 * @return Shard of the NLRI
+	 */
+	public int getShardIndex(byte[] nlriBytes, int nlriOffset){
+		return ring.getShard(getDescriptorsHash(nlriBytes, nlriOffset));
+	}
+
+	/**
+	 * Adds or replaces a route
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI (start of the NLRI type)
+	 * @param attributeBytes Encoded path attributes of the route, without
+	 * MP_REACH_NLRI. The array is kept by the store and must not be modified.
+	 */
+	public void add(byte[] nlriBytes, int nlriOffset, byte[] attributeBytes){
+		int nlriLength = LinkStateNLRI.getNLRILength(nlriBytes, nlriOffset) + 4;
+		byte[] nlriCopy = new byte[nlriLength];
+		System.arraycopy(nlriBytes, nlriOffset, nlriCopy, 0, nlriLength);
+		Shard shard = shards[getShardIndex(nlriCopy, 0)];
+		shard.writerLock.lock();
+		try {
+			shard.routes.put(new BytesKey(nlriCopy), attributeBytes);
+			shard.updates++;
+		} finally {
+			shard.writerLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a route
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI
+	 * @return true if the route was in the store
+	 */
+	public boolean withdraw(byte[] nlriBytes, int nlriOffset){
+		Shard shard = shards[getShardIndex(nlriBytes, nlriOffset)];
+		shard.writerLock.lock();
+		try {
+			shard.updates++;
+			return shard.routes.remove(getKey(nlriBytes, nlriOffset)) != null;
+		} finally {
+			shard.writerLock.unlock();
+		}
+	}
+
+	/**
+	 * Processes the raw bytes of a BGP4 UPDATE message carrying BGP-LS
+	 * information. The Link-State NLRIs of the MP_REACH_NLRI are added with
+	 * the other path attributes of the message, and the ones of the
+	 * MP_UNREACH_NLRI are withdrawn. Every NLRI is written in its shard, the
+	 * message can be processed while other threads update the store. The
+	 * message is checked before any shard is changed, so a malformed message
+	 * is not applied at all.
+	 * @param messageBytes Bytes of the whole UPDATE message, including the BGP header
+	 * @return Number of NLRIs added or withdrawn, -1 if the message is malformed
+	 */
+	public int processUpdate(byte[] messageBytes){
+		LinkStateUpdate update = LinkStateUpdate.parse(messageBytes);
+		if (update == null){
+			log.warn("Malformed BGP4 Update, it can not be stored in the sharded link state store");
+			return -1;
+		}
+		for (int nlriOffset = update.unreachStart; nlriOffset < update.unreachEnd; nlriOffset = update.next(nlriOffset)){
+			withdraw(messageBytes, nlriOffset);
+		}
+		if (update.numReached > 0){
+			//Path attributes without MP_REACH_NLRI and MP_UNREACH_NLRI, shared by the NLRIs
+			byte[] attributeBytes = update.copyAttributes();
+			for (int nlriOffset = update.reachStart; nlriOffset < update.reachEnd; nlriOffset = update.next(nlriOffset)){
+				add(messageBytes, nlriOffset, attributeBytes);
+			}
+		}
+		return update.numWithdrawn+update.numReached;
+	}
+
+	/**
+	 * Looks up a route, without locking
+	 * @param nlriBytes Bytes containing the NLRI
+	 * @param nlriOffset Offset of the NLRI
+	 * @return Path attributes of the route, null if it is not in the store
+	 */
+	public byte[] get(byte[] nlriBytes, int nlriOffset){
+		return shards[getShardIndex(nlriBytes, nlriOffset)].routes.get(getKey(nlriBytes, nlriOffset));
+	}
+
+	public boolean contains(byte[] nlriBytes, int nlriOffset){
+		return get(nlriBytes, nlriOffset) != null;
+	}
+
+	/**
+	 * @return Weakly consistent iterator over the routes of all the shards
+	 */
+	public Iterator<Map.Entry<BytesKey, byte[]>> iterator(){
+		Iterator<?>[] iterators = new Iterator<?>[shards.length];
+		for (int i = 0; i < shards.length; i++){
+			iterators[i] = shards[i].routes.entrySet().iterator();
+		}
+		return new ShardIterator(iterators);
+	}
+
+	/**
+	 * Copies the store. The copy reflects the routes of all the shards at the
+	 * same instant: the writers of every shard wait until the shard has been
+	 * copied, the readers do not wait.
+	 * @return Consistent copy of the store
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Snapshot snapshot(){
+		HashMap<BytesKey, byte[]>[] copies = new HashMap[shards.length];
+		//Always in the same order, so two snapshots do not deadlock
+		for (Shard shard : shards){
+			shard.writerLock.lock();
+		}
+		int copied = 0;
+		try {
+			for (; copied < shards.length; copied++){
+				copies[copied] = new HashMap<BytesKey, byte[]>(shards[copied].routes);
+				shards[copied].writerLock.unlock();
+			}
+		} finally {
+			for (int i = copied; i < shards.length; i++){
+				shards[i].writerLock.unlock();
+			}
+		}
+		return new Snapshot(copies, ring);
+	}
+
+	/**
+	 * @return Number of NLRIs in the store
+	 */
+	public int size(){
+		int size = 0;
+		for (Shard shard : shards){
+			size += shard.routes.size();
+		}
+		return size;
+	}
+
+	public int getNumberOfShards(){
+		return shards.length;
+	}
+
+	/**
+	 * @param shard Index of the shard
+	 * @return Number of NLRIs in the shard
+	 */
+	public int getShardSize(int shard){
+		return shards[shard].routes.size();
+	}
+
+	/**
+	 * @param shard Index of the shard
+	 * @return Number of additions and withdrawals processed by the shard
+	 */
+	public long getShardUpdates(int shard){
+		return shards[shard].updates;
+	}
+
+	public void clear(){
+		for (Shard shard : shards){
+			shard.writerLock.lock();
+			try {
+				shard.routes.clear();
+			} finally {
+				shard.writerLock.unlock();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encoded BGP4 message shared by all the peers of an update group.
+ * <p>
+ * The message is encoded once and kept in a read-only buffer. Each peer gets
+ * its own view (with its own position) to write it to the socket, and
+ * releases its reference when the whole message has been written. When the
+ * last peer releases the buffer it is no longer referenced by the group.
+ *
+ * @author ogondio
+ *
+ */
+public final class SharedUpdateBuffer {
+
+	private final ByteBuffer buffer;
+
+	private final AtomicInteger references;
+
+	/**
+	 * @param messageBytes Encoded message. It must not be modified afterwards.
+	 * @param references Number of peers that will write the message
+	 */
+	public SharedUpdateBuffer(byte[] messageBytes, int references){
+		this.buffer = ByteBuffer.wrap(messageBytes).asReadOnlyBuffer();
+		this.references = new AtomicInteger(references);
+	}
+
+	/**
+	 * @return A new read-only view of the message, positioned at the start
+	 */
+	public ByteBuffer view(){
+		return buffer.duplicate();
+	}
+
+	/**
+	 * Releases one reference.
+	 * @return true if it was the last reference
+	 */
+	public boolean release(){
+		int refs = references.decrementAndGet();
+		if (refs < 0){
+			throw new IllegalStateException("SharedUpdateBuffer released more times than referenced");
+		}
+		return refs == 0;
+	}
+
+	public int getReferences(){
+		return references.get();
+	}
+
+	public int getLength(){
+		return buffer.capacity();
+	}
+
+}
@@ -0,0 +1,180 @@
+package es.tid.bgp.bgp4.rib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+
+/**
+ * Set of peers sharing the same outbound policy.
+ * <p>
+ * An update advertised to the group is encoded once and the same
+ * {@link SharedUpdateBuffer} is queued to every member, so the encoding cost
+ * and the memory grow with the number of distinct policies, not with the
+ * number of peers. Each member drains its queue at its own pace with
+ * {@link #write(String, WritableByteChannel)}; a slow peer only keeps alive the
+ * buffers it has not written yet.
+ *
+ * @author ogondio
+ *
+ */
+public class UpdateGroup {
+
+	/**
+	 * Pending buffers of a member of the group
+	 */
+	private static class PeerQueue {
+		private final ArrayDeque<SharedUpdateBuffer> pending = new ArrayDeque<SharedUpdateBuffer>();
+		//View of the head of the queue being written, null if not started
+		private ByteBuffer current;
+	}
+
+	private final Object policy;
+
+	private final LinkedHashMap<String, PeerQueue> members = new LinkedHashMap<String, PeerQueue>();
+
+	private long encodedUpdates;
+
+	private long queuedBuffers;
+
+	/**
+	 * @param policy Outbound policy of the group. Peers with equal policies share the group.
+	 */
+	public UpdateGroup(Object policy){
+		this.policy = policy;
+	}
+
+	public synchronized void addPeer(String peer){
+		if (!members.containsKey(peer)){
+			members.put(peer, new PeerQueue());
+		}
+	}
+
+	/**
+	 * Removes a peer from the group, releasing the buffers it had not written
+	 * @param peer Peer identifier
+	 * @return true if the peer was a member of the group
+	 */
+	public synchronized boolean removePeer(String peer){
+		PeerQueue queue = members.remove(peer);
+		if (queue == null){
+			return false;
+		}
+		for (SharedUpdateBuffer buffer : queue.pending){
+			buffer.release();
+		}
+		queue.pending.clear();
+		return true;
+	}
+
+	/**
+	 * Encodes the update and queues it to all the members of the group
+	 * @param update Update to advertise
+	 * @return The shared buffer, or null if the group has no members
+	 */
+	public SharedUpdateBuffer advertise(BGP4Update update){
+		update.encode();
+		return advertise(update.getBytes());
+	}
+
+	/**
+	 * Queues an already encoded message to all the members of the group
+	 * @param messageBytes Encoded message. It must not be modified afterwards.
+	 * @return The shared buffer, or null if the group has no members
+	 */
+	public synchronized SharedUpdateBuffer advertise(byte[] messageBytes){
+		if (members.isEmpty()){
+			return null;
+		}
+		SharedUpdateBuffer buffer = new SharedUpdateBuffer(messageBytes, members.size());
+		for (PeerQueue queue : members.values()){
+			queue.pending.addLast(buffer);
+		}
+		encodedUpdates++;
+		queuedBuffers += members.size();
+		return buffer;
+	}
+
+	/**
+	 * Writes the pending messages of a peer to its channel, until all are
+	 * written or the channel does not accept more bytes (non-blocking socket
+	 * full). A partially written message is resumed in the next call.
+	 * @param peer Peer identifier
+	 * @param channel Channel of the peer
+	 * @return Number of complete messages written
+	 * @throws IOException if the channel fails
+	 */
+	public int write(String peer, WritableByteChannel channel) throws IOException {
+		int written = 0;
+		while (true){
+			SharedUpdateBuffer head;
+			ByteBuffer view;
+			synchronized (this){
+				PeerQueue queue = members.get(peer);
+				if (queue == null || queue.pending.isEmpty()){
+					return written;
+				}
+				head = queue.pending.peekFirst();
+				if (queue.current == null){
+					queue.current = head.view();
+				}
+				view = queue.current;
+			}
+			//Only the writer of this peer uses the view
+			channel.write(view);
+			if (view.hasRemaining()){
+				return written;
+			}
+			synchronized (this){
+				PeerQueue queue = members.get(peer);
+				if (queue != null && queue.pending.peekFirst() == head){
+					queue.pending.pollFirst();
+					queue.current = null;
+					head.release();
+				}
+			}
+			written++;
+		}
+	}
+
+	/**
+	 * @param peer Peer identifier
+	 * @return Number of messages pending to be written to the peer
+	 */
+	public synchronized int getPendingCount(String peer){
+		PeerQueue queue = members.get(peer);
+		return queue == null ? 0 : queue.pending.size();
+	}
+
+	public synchronized Set<String> getPeers(){
+		return new LinkedHashSet<String>(members.keySet());
+	}
+
+	public synchronized int size(){
+		return members.size();
+	}
+
+	public Object getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return Number of messages encoded for the group
+	 */
+	public synchronized long getEncodedUpdates() {
+		return encodedUpdates;
+	}
+
+	/**
+	 * @return Number of messages queued to the members of the group
+	 */
+	public synchronized long getQueuedBuffers() {
+		return queuedBuffers;
+	}
+
+}
@@ -0,0 +1,217 @@
+package es.tid.bgp.bgp4.update.fields;
+
+import java.net.Inet4Address;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import es.tid.bgp.bgp4.update.MalformedBGP4ElementException;
+
+/**
+ * List of IPv4 address prefixes, as carried in the Withdrawn Routes and the
+ * Network Layer Reachability Information fields of a BGP4 UPDATE (RFC 4271).
+ * Each prefix is encoded as a 2-tuple {@code<length, prefix>}:
+<pre>
+                  +---------------------------+
+                  |   Length (1 octet)        |
+                  +---------------------------+
+                  |   Prefix (variable)       |
+                  +---------------------------+
+</pre>
+ * The prefixes are kept as primitive ints (with the host bits cleared) and
+ * lengths, without one object per prefix.
+ *
+ * @author ogondio
+ *
+ */
+public class IPv4PrefixList {
+
+	private int[] prefixes;
+
+	private byte[] prefixLengths;
+
+	private int size;
+
+	public IPv4PrefixList(){
+		this(8);
+	}
+
+	/**
+	 * @param capacity Initial number of prefixes
+	 */
+	public IPv4PrefixList(int capacity){
+		prefixes = new int[Math.max(capacity, 1)];
+		prefixLengths = new byte[prefixes.length];
+	}
+
+	/**
+	 * Decodes a list of prefixes
+	 * @param bytes Bytes containing the list
+	 * @param offset Offset of the first prefix
+	 * @param length Length in bytes of the list
+	 * @throws MalformedBGP4ElementException if a prefix length is greater than 32
+	 * or the last prefix does not fit in the list
+	 */
+	public IPv4PrefixList(byte[] bytes, int offset, int length){
+		this(Math.max(length/2, 1));
+		int end = offset+length;
+		while (offset < end){
+			int prefixLength = bytes[offset]&0xFF;
+			if (prefixLength > 32){
+				throw new MalformedBGP4ElementException("Wrong IPv4 prefix length "+prefixLength);
+			}
+			int numBytes = (prefixLength+7)/8;
+			if (offset+1+numBytes > end){
+				throw new MalformedBGP4ElementException("IPv4 prefix beyond the end of the list");
+			}
+			int prefix = 0;
+			for (int i = 0; i < numBytes; ++i){
+				prefix |= (bytes[offset+1+i]&0xFF)<<(24-8*i);
+			}
+			add(prefix, prefixLength);
+			offset += 1+numBytes;
+		}
+	}
+
+	/**
+	 * Mask of a prefix length
+	 * @param prefixLength Length of the prefix (0 to 32)
+	 * @return network mask
+	 */
+	public static int mask(int prefixLength){
+		return prefixLength == 0 ? 0 : 0xFFFFFFFF << (32-prefixLength);
+	}
+
+	/**
+	 * Adds a prefix to the list
+	 * @param prefix IPv4 address as an int. The host bits are cleared.
+	 * @param prefixLength Length of the prefix (0 to 32)
+	 */
+	public void add(int prefix, int prefixLength){
+		if (prefixLength < 0 || prefixLength > 32){
+			throw new IllegalArgumentException("Wrong IPv4 prefix length "+prefixLength);
+		}
+		if (size == prefixes.length){
+			prefixes = Arrays.copyOf(prefixes, size*2);
+			prefixLengths = Arrays.copyOf(prefixLengths, size*2);
+		}
+		prefixes[size] = prefix & mask(prefixLength);
+		prefixLengths[size] = (byte)prefixLength;
+		size++;
+	}
+
+	public void add(Inet4Address prefix, int prefixLength){
+		add(toInt(prefix), prefixLength);
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getPrefix(int index){
+		if (index >= size){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		return prefixes[index];
+	}
+
+	public int getPrefixLength(int index){
+		if (index >= size){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		return prefixLengths[index];
+	}
+
+	public Inet4Address getPrefixAddress(int index){
+		return toInet4Address(getPrefix(index));
+	}
+
+	public void clear(){
+		size = 0;
+	}
+
+	/**
+	 * @return Length in bytes of the encoded list
+	 */
+	public int getEncodedLength(){
+		int len = 0;
+		for (int i = 0; i < size; ++i){
+			len += 1+(prefixLengths[i]+7)/8;
+		}
+		return len;
+	}
+
+	/**
+	 * Encodes the list
+	 * @param bytes Destination array
+	 * @param offset Offset where the first prefix is written
+	 * @return Offset after the last prefix
+	 */
+	public int encode(byte[] bytes, int offset){
+		for (int i = 0; i < size; ++i){
+			int prefixLength = prefixLengths[i];
+			bytes[offset] = (byte)prefixLength;
+			int numBytes = (prefixLength+7)/8;
+			for (int j = 0; j < numBytes; ++j){
+				bytes[offset+1+j] = (byte)(prefixes[i]>>>(24-8*j));
+			}
+			offset += 1+numBytes;
+		}
+		return offset;
+	}
+
+	public static int toInt(Inet4Address address){
+		byte[] b = address.getAddress();
+		return ((b[0]&0xFF)<<24) | ((b[1]&0xFF)<<16) | ((b[2]&0xFF)<<8) | (b[3]&0xFF);
+	}
+
+	public static Inet4Address toInet4Address(int address){
+		byte[] b = new byte[] {(byte)(address>>>24), (byte)(address>>>16), (byte)(address>>>8), (byte)address};
+		try {
+			return (Inet4Address) Inet4Address.getByAddress(b);
+		} catch (UnknownHostException e) {
+			//Not thrown for 4 bytes
+			return null;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int i = 0; i < size; ++i){
+			result = 31 * result + prefixes[i];
+			result = 31 * result + prefixLengths[i];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IPv4PrefixList other = (IPv4PrefixList) obj;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < size; ++i){
+			if (prefixes[i] != other.prefixes[i] || prefixLengths[i] != other.prefixLengths[i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		StringBuffer sb = new StringBuffer(size*20);
+		for (int i = 0; i < size; ++i){
+			if (i > 0){
+				sb.append(", ");
+			}
+			sb.append(getPrefixAddress(i).getHostAddress()).append('/').append(prefixLengths[i]);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,57 @@
+package es.tid.bgp.bgp4.update.fields;
+
+/**
+ * Network Layer Reachability Information of IPv4 unicast routes (RFC 4271),
+ * carried at the end of the UPDATE message, after the path attributes:
+
+         This variable length field contains a list of IP address
+         prefixes.  The length, in octets, of the Network Layer
+         Reachability Information is not encoded explicitly, but can be
+         calculated as:
+
+            UPDATE message Length - 23 - Total Path Attributes Length
+            - Withdrawn Routes Length
+
+ * @author ogondio
+ *
+ */
+public class IPv4UnicastNLRI extends NLRI {
+
+	private IPv4PrefixList prefixList;
+
+	public IPv4UnicastNLRI(){
+		prefixList = new IPv4PrefixList();
+	}
+
+	/**
+	 * Decodes the NLRI field
+	 * @param bytes bytes of the message
+	 * @param offset offset of the first prefix
+	 * @param length length of the NLRI field
+	 */
+	public IPv4UnicastNLRI(byte[] bytes, int offset, int length){
+		this.length = length;
+		this.bytes = new byte[length];
+		System.arraycopy(bytes, offset, this.bytes, 0, length);
+		prefixList = new IPv4PrefixList(bytes, offset, length);
+	}
+
+	public void encode(){
+		this.length = prefixList.getEncodedLength();
+		this.bytes = new byte[this.length];
+		prefixList.encode(this.bytes, 0);
+	}
+
+	public IPv4PrefixList getPrefixList() {
+		return prefixList;
+	}
+
+	public void setPrefixList(IPv4PrefixList prefixList) {
+		this.prefixList = prefixList;
+	}
+
+	public String toString(){
+		return "IPv4 NLRI: "+prefixList.toString();
+	}
+
+}
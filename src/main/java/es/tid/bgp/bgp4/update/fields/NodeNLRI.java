@@ -1,6 +1,7 @@
 package es.tid.bgp.bgp4.update.fields;
 
 import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
 import es.tid.bgp.bgp4.update.tlv.RoutingUniverseIdentifierTypes;
 
 /**
@@ -51,11 +52,25 @@ public class NodeNLRI extends LinkStateNLRI {
 		super(bytes,offset);
 		decode();
 	}
+
+	/**
+	 * Decodes the NLRI sharing the node descriptors through a cache
+	 * @param bytes bytes of the NLRI
+	 * @param offset offset of the NLRI
+	 * @param descriptorsCache cache of canonical node descriptors
+	 */
+	public NodeNLRI(byte[] bytes, int offset, NodeDescriptorsCache descriptorsCache) {
+		super(bytes,offset);
+		decode(descriptorsCache);
+	}
 	@Override
 	public void encode() {
 		int len=4+1+8;// The four bytes of the header plus the 4 first bytes)
 		if (localNodeDescriptors!=null){
-			localNodeDescriptors.encode();
+			//Shared descriptors keep their bytes, other threads may be copying them
+			if (!localNodeDescriptors.isShared() || localNodeDescriptors.getTlv_bytes()==null){
+				localNodeDescriptors.encode();
+			}
 			len=len+localNodeDescriptors.getTotalTLVLength();		
 		}
 		
@@ -86,6 +101,10 @@ public class NodeNLRI extends LinkStateNLRI {
 		
 	}
 	public void decode(){
+		decode(null);
+	}
+
+	private void decode(NodeDescriptorsCache descriptorsCache){
 		//Decoding NodeNLRI
 		int offset = 4; //Cabecera del LinkState NLRI
 		protocolID = this.bytes[offset];
@@ -99,7 +118,11 @@ public class NodeNLRI extends LinkStateNLRI {
 		//this.setRoutingUniverseIdentifier((2^32)*routingUniverseIdentifieraux1+routingUniverseIdentifieraux2);
 		this.setRoutingUniverseIdentifier((routingUniverseIdentifieraux1 <<32)&0xFFFFFFFF00000000L | routingUniverseIdentifieraux2);
 		offset = offset +8;
-		this.localNodeDescriptors=new LocalNodeDescriptorsTLV(this.bytes, offset);
+		if (descriptorsCache != null){
+			this.localNodeDescriptors=descriptorsCache.getLocalNodeDescriptors(this.bytes, offset);
+		} else {
+			this.localNodeDescriptors=new LocalNodeDescriptorsTLV(this.bytes, offset);
+		}
 	}
 
 	public int getProtocolID() {
@@ -68,6 +68,11 @@ public abstract class PathAttribute extends BGP4Object {
 
 	protected int mandatoryLength = 3;
 	protected int pathAttributeLength;
+	/**
+	 * The instance is shared between updates by a PathAttributeCache. Its
+	 * bytes are final: it is not encoded again.
+	 */
+	private volatile boolean shared=false;
 	public PathAttribute(){
 	}
 
@@ -107,12 +112,21 @@ public abstract class PathAttribute extends BGP4Object {
 			bytes[2]=(byte)(pathAttributeLength & 0xFF );
 	}
 	
+	/**
+	 * Sets the length of the attribute value. The Extended Length bit and
+	 * the size of the Attribute Length field (one or two octets) follow it, so
+	 * an attribute re-encoded across the 255 bytes boundary gets a valid header.
+	 * @param pal Length of the attribute value, in octets
+	 */
 	protected void setPathAttributeLength(int pal){
 		this.pathAttributeLength= pal;
+		//The Extended Length bit must match the size of the Attribute Length field
 		if (pathAttributeLength>255){
+			this.extendedLengthBit=true;
 			this.mandatoryLength=4;
 			this.length=pathAttributeLength+this.mandatoryLength;
 		}else {
+			this.extendedLengthBit=false;
 			this.mandatoryLength=3;
 			this.length=pathAttributeLength+this.mandatoryLength;
 		}
@@ -165,6 +179,23 @@ public abstract class PathAttribute extends BGP4Object {
 	}
 
 
+	/**
+	 * @return true if the attribute is shared by a PathAttributeCache and must be treated as read-only
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+
+	/**
+	 * Marks the attribute as shared. Its current bytes are used from now on
+	 * when an update that carries it is encoded.
+	 */
+	public void setShared() {
+		this.shared = true;
+	}
+
+
 	protected void setTypeCode(int typeCode) {
 		this.typeCode = typeCode;
 	}
@@ -2,6 +2,7 @@ package es.tid.bgp.bgp4.update.fields;
 
 import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
 import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
 import es.tid.bgp.bgp4.update.tlv.RoutingUniverseIdentifierTypes;
 import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.*;
 
@@ -26,12 +27,26 @@ public class PrefixNLRI extends LinkStateNLRI {
 		decode();
 		// TODO Auto-generated constructor stub
 	}
+
+	/**
+	 * Decodes the NLRI sharing the node descriptors through a cache
+	 * @param bytes bytes of the NLRI
+	 * @param offset offset of the NLRI
+	 * @param descriptorsCache cache of canonical node descriptors
+	 */
+	public PrefixNLRI(byte[] bytes, int offset, NodeDescriptorsCache descriptorsCache) {
+		super(bytes,offset);
+		decode(descriptorsCache);
+	}
 	
 @Override
 	public void encode() {
-		int len=4+8;// The four bytes of the header plus the 4 first bytes)
+		int len=4+1+8;// The four bytes of the header, the protocol-ID and the identifier
 		if (localNodeDescriptors!=null){
-			localNodeDescriptors.encode();
+			//Shared descriptors keep their bytes, other threads may be copying them
+			if (!localNodeDescriptors.isShared() || localNodeDescriptors.getTlv_bytes()==null){
+				localNodeDescriptors.encode();
+			}
 			len=len+localNodeDescriptors.getTotalTLVLength();		
 		}
 		
@@ -80,7 +95,11 @@ public class PrefixNLRI extends LinkStateNLRI {
 	
 	}
 
-	private void decode() {	
+	private void decode() {
+		decode(null);
+	}
+
+	private void decode(NodeDescriptorsCache descriptorsCache) {	
 		//Decoding Prefix NLRI");
 		int offset = 4; //Cabecera del LinkState NLRI
 		protocolID = this.bytes[offset];
@@ -95,7 +114,11 @@ public class PrefixNLRI extends LinkStateNLRI {
 		this.setRoutingUniverseIdentifier((routingUniverseIdentifieraux1 <<32)&0xFFFFFFFF00000000L | routingUniverseIdentifieraux2);
 		offset = offset +8;
 	
-		this.localNodeDescriptors=new LocalNodeDescriptorsTLV(this.bytes, offset);
+		if (descriptorsCache != null){
+			this.localNodeDescriptors=descriptorsCache.getLocalNodeDescriptors(this.bytes, offset);
+		} else {
+			this.localNodeDescriptors=new LocalNodeDescriptorsTLV(this.bytes, offset);
+		}
 		offset = offset + localNodeDescriptors.getTotalTLVLength();
 		
 		boolean fin=false;
@@ -140,9 +163,8 @@ public class PrefixNLRI extends LinkStateNLRI {
 		this.localNodeDescriptors = localNodeDescriptors;
 	}
 	
-	private void setRoutingUniverseIdentifier(long level3identifier) {
-		// TODO Auto-generated method stub
-		
+	private void setRoutingUniverseIdentifier(long routingUniverseIdentifier) {
+		this.routingUniverseIdentifier = routingUniverseIdentifier;
 	}
 	
 	public long getRoutingUniverseIdentifier() {
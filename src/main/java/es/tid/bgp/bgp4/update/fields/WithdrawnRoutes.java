@@ -35,27 +35,44 @@ import es.tid.bgp.bgp4.objects.BGP4Object;
  *
  */
 public class WithdrawnRoutes extends BGP4Object{
-	private int length;
-	private byte[] prefix;//FIXME: pensar
-	
-	public void encode(){
-		
-	}
+	/**
+	 * Prefixes of the routes being withdrawn
+	 */
+	private IPv4PrefixList prefixList;
 
-	public int getLength() {
-		return length;
+	public WithdrawnRoutes(){
+		prefixList = new IPv4PrefixList();
 	}
 
-	public void setLength(int length) {
+	/**
+	 * Decodes the Withdrawn Routes field
+	 * @param bytes bytes of the message
+	 * @param offset offset of the first prefix
+	 * @param length Withdrawn Routes Length
+	 */
+	public WithdrawnRoutes(byte[] bytes, int offset, int length){
 		this.length = length;
+		this.bytes = new byte[length];
+		System.arraycopy(bytes, offset, this.bytes, 0, length);
+		prefixList = new IPv4PrefixList(bytes, offset, length);
+	}
+
+	public void encode(){
+		this.length = prefixList.getEncodedLength();
+		this.bytes = new byte[this.length];
+		prefixList.encode(this.bytes, 0);
+	}
+
+	public IPv4PrefixList getPrefixList() {
+		return prefixList;
 	}
 
-	public byte[] getPrefix() {
-		return prefix;
+	public void setPrefixList(IPv4PrefixList prefixList) {
+		this.prefixList = prefixList;
 	}
 
-	public void setPrefix(byte[] prefix) {
-		this.prefix = prefix;
+	public String toString(){
+		return "Withdrawn Routes: "+prefixList.toString();
 	}
-	
+
 }
@@ -0,0 +1,497 @@
+package es.tid.bgp.bgp4.update.fields.pathAttributes;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import es.tid.bgp.bgp4.update.MalformedBGP4ElementException;
+
+/**
+ * Compact, immutable representation of the value of an AS_PATH attribute.
+ * <p>
+ * All the segments of the path are packed in a single int array. Each
+ * segment starts with a header word (segment type in the second octet,
+ * number of ASes in the lowest octet) followed by the AS numbers. The AS
+ * numbers are 4-octet (RFC 6793) and stored as unsigned 32 bit values.
+ * <p>
+ * There are far fewer distinct AS paths than routes, so the instances are
+ * meant to be shared through an {@link ASPathTable}. The derived values used
+ * in the decision process (path length, loop detection) are computed once
+ * and the queries do not allocate.
+ * <p>
+ * Both encodings are supported: with 4-octet AS numbers, when the
+ * capability of RFC 6793 has been negotiated with the peer, and with
+ * 2-octet AS numbers. In the 2-octet encoding the AS numbers that do not
+ * fit are replaced by AS_TRANS.
+ *
+ * @author ogondio
+ *
+ */
+public final class ASPath {
+
+	/**
+	 * Reserved 2-octet AS number used to represent 4-octet AS numbers (RFC 6793)
+	 */
+	public static final int AS_TRANS = 23456;
+
+	public static final ASPath EMPTY = new ASPath(new int[0]);
+
+	private final int[] data;
+
+	private final int hash;
+
+	private final int numberOfSegments;
+
+	private final int numberOfASes;
+
+	private final int pathLength;
+
+	private final boolean fourOctetOnly;
+
+	private ASPath(int[] data){
+		this.data = data;
+		this.hash = Arrays.hashCode(data);
+		int segments = 0;
+		int ases = 0;
+		int len = 0;
+		boolean large = false;
+		int i = 0;
+		while (i < data.length){
+			int type = getSegmentType(data[i]);
+			int count = getSegmentCount(data[i]);
+			segments++;
+			ases += count;
+			len += countInPathLength(type, count);
+			for (int j = i + 1; j <= i + count; j++){
+				if ((data[j] & 0xFFFF0000) != 0){
+					large = true;
+				}
+			}
+			i += count + 1;
+		}
+		this.numberOfSegments = segments;
+		this.numberOfASes = ases;
+		this.pathLength = len;
+		this.fourOctetOnly = large;
+	}
+
+	/**
+	 * Creates a path with a single AS_SEQUENCE segment
+	 * @param asns AS numbers, the first one is the neighbor AS
+	 * @return The path
+	 */
+	public static ASPath sequence(long... asns){
+		if (asns.length == 0){
+			return EMPTY;
+		}
+		int segments = (asns.length + 254) / 255;
+		int[] data = new int[asns.length + segments];
+		int pos = 0;
+		for (int i = 0; i < asns.length; i += 255){
+			int count = Math.min(255, asns.length - i);
+			data[pos++] = header(PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE, count);
+			for (int j = 0; j < count; j++){
+				data[pos++] = (int) asns[i + j];
+			}
+		}
+		return new ASPath(data);
+	}
+
+	/**
+	 * Builds the path from a list of segments
+	 * @param segments AS path segments
+	 * @return The path
+	 */
+	public static ASPath fromSegments(List<AS_Path_Segment> segments){
+		if (segments == null || segments.isEmpty()){
+			return EMPTY;
+		}
+		int size = 0;
+		for (AS_Path_Segment segment : segments){
+			size += 1 + segment.getNumberOfSegments();
+		}
+		int[] data = new int[size];
+		int pos = 0;
+		for (AS_Path_Segment segment : segments){
+			int count = segment.getNumberOfSegments();
+			data[pos++] = header(segment.getType(), count);
+			int[] asns = segment.getSegments();
+			for (int j = 0; j < count; j++){
+				data[pos++] = asns[j];
+			}
+		}
+		return new ASPath(data);
+	}
+
+	/**
+	 * Decodes the value of an AS_PATH attribute.
+	 * @param bytes Bytes of the message
+	 * @param offset Offset of the first segment
+	 * @param length Length of the attribute value
+	 * @param fourOctetAS true if the AS numbers are encoded in 4 octets
+	 * @return The path
+	 * @throws MalformedBGP4ElementException if the segments do not fill the value
+	 */
+	public static ASPath decode(byte[] bytes, int offset, int length, boolean fourOctetAS) throws MalformedBGP4ElementException {
+		if (!isValid(bytes, offset, length, fourOctetAS)){
+			throw new MalformedBGP4ElementException();
+		}
+		if (length == 0){
+			return EMPTY;
+		}
+		int asSize = fourOctetAS ? 4 : 2;
+		int size = 0;
+		int pos = offset;
+		int end = offset + length;
+		while (pos < end){
+			int count = bytes[pos + 1] & 0xFF;
+			size += 1 + count;
+			pos += 2 + count * asSize;
+		}
+		int[] data = new int[size];
+		int i = 0;
+		pos = offset;
+		while (pos < end){
+			int count = bytes[pos + 1] & 0xFF;
+			data[i++] = header(bytes[pos] & 0xFF, count);
+			pos += 2;
+			for (int j = 0; j < count; j++){
+				data[i++] = readAS(bytes, pos, fourOctetAS);
+				pos += asSize;
+			}
+		}
+		return new ASPath(data);
+	}
+
+	/**
+	 * Checks that the value of an AS_PATH attribute is a well formed list
+	 * of segments with the given AS number size. It is used to guess the
+	 * encoding when the capability exchange is not known.
+	 * @param bytes Bytes of the message
+	 * @param offset Offset of the first segment
+	 * @param length Length of the attribute value
+	 * @param fourOctetAS true if the AS numbers are encoded in 4 octets
+	 * @return true if the segments fill exactly the value
+	 */
+	public static boolean isValid(byte[] bytes, int offset, int length, boolean fourOctetAS){
+		if (length < 0 || offset + length > bytes.length){
+			return false;
+		}
+		int asSize = fourOctetAS ? 4 : 2;
+		int pos = offset;
+		int end = offset + length;
+		while (pos < end){
+			if (pos + 2 > end){
+				return false;
+			}
+			int type = bytes[pos] & 0xFF;
+			int count = bytes[pos + 1] & 0xFF;
+			if (type < PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SET || type > PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_CONFED_SET){
+				return false;
+			}
+			pos += 2 + count * asSize;
+		}
+		return pos == end;
+	}
+
+	/**
+	 * Computes the hash code that the decoded path would have, without
+	 * decoding it. The value must be well formed.
+	 */
+	static int hashCode(byte[] bytes, int offset, int length, boolean fourOctetAS){
+		int asSize = fourOctetAS ? 4 : 2;
+		int h = 1;
+		int pos = offset;
+		int end = offset + length;
+		while (pos < end){
+			int count = bytes[pos + 1] & 0xFF;
+			h = 31 * h + header(bytes[pos] & 0xFF, count);
+			pos += 2;
+			for (int j = 0; j < count; j++){
+				h = 31 * h + readAS(bytes, pos, fourOctetAS);
+				pos += asSize;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Compares the path with an encoded value, without decoding it. The
+	 * value must be well formed.
+	 */
+	boolean matches(byte[] bytes, int offset, int length, boolean fourOctetAS){
+		int asSize = fourOctetAS ? 4 : 2;
+		int i = 0;
+		int pos = offset;
+		int end = offset + length;
+		while (pos < end){
+			if (i >= data.length){
+				return false;
+			}
+			int count = bytes[pos + 1] & 0xFF;
+			if (data[i++] != header(bytes[pos] & 0xFF, count)){
+				return false;
+			}
+			pos += 2;
+			for (int j = 0; j < count; j++){
+				if (data[i++] != readAS(bytes, pos, fourOctetAS)){
+					return false;
+				}
+				pos += asSize;
+			}
+		}
+		return i == data.length;
+	}
+
+	private static int readAS(byte[] bytes, int offset, boolean fourOctetAS){
+		if (fourOctetAS){
+			return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+		}
+		return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+	}
+
+	private static int header(int type, int count){
+		return ((type & 0xFF) << 8) | (count & 0xFF);
+	}
+
+	private static int getSegmentType(int header){
+		return (header >>> 8) & 0xFF;
+	}
+
+	private static int getSegmentCount(int header){
+		return header & 0xFF;
+	}
+
+	/**
+	 * Contribution of a segment to the path length (RFC 4271 9.1.2.2 and
+	 * RFC 5065 5.3): an AS_SET counts as 1, confederation segments are not
+	 * counted.
+	 */
+	private static int countInPathLength(int type, int count){
+		switch (type){
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE:
+			return count;
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SET:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns a new path with the AS prepended to the first AS_SEQUENCE, as done
+	 * when the route is advertised to an external peer.
+	 * @param as AS number to prepend
+	 * @return The new path
+	 */
+	public ASPath prepend(long as){
+		if (data.length > 0 && getSegmentType(data[0]) == PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE && getSegmentCount(data[0]) < 255){
+			int[] newData = new int[data.length + 1];
+			newData[0] = data[0] + 1;
+			newData[1] = (int) as;
+			System.arraycopy(data, 1, newData, 2, data.length - 1);
+			return new ASPath(newData);
+		}
+		int[] newData = new int[data.length + 2];
+		newData[0] = header(PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE, 1);
+		newData[1] = (int) as;
+		System.arraycopy(data, 0, newData, 2, data.length);
+		return new ASPath(newData);
+	}
+
+	/**
+	 * Path length used in the route selection. It is computed when the path
+	 * is created.
+	 * @return Number of ASes in AS_SEQUENCE segments plus one per AS_SET
+	 */
+	public int getPathLength() {
+		return pathLength;
+	}
+
+	/**
+	 * Loop detection: checks if the AS is in any of the segments.
+	 * @param as AS number
+	 * @return true if the AS is in the path
+	 */
+	public boolean contains(long as){
+		int value = (int) as;
+		int i = 0;
+		while (i < data.length){
+			int end = i + getSegmentCount(data[i]);
+			for (int j = i + 1; j <= end; j++){
+				if (data[j] == value){
+					return true;
+				}
+			}
+			i = end + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts how many times the AS appears in the path, to allow a number of
+	 * occurrences of the local AS.
+	 * @param as AS number
+	 * @return number of occurrences
+	 */
+	public int countOccurrences(long as){
+		int value = (int) as;
+		int occurrences = 0;
+		int i = 0;
+		while (i < data.length){
+			int end = i + getSegmentCount(data[i]);
+			for (int j = i + 1; j <= end; j++){
+				if (data[j] == value){
+					occurrences++;
+				}
+			}
+			i = end + 1;
+		}
+		return occurrences;
+	}
+
+	/**
+	 * @return First AS of the path (the neighbor AS), or -1 if the path does not start with an AS_SEQUENCE
+	 */
+	public long getFirstAS(){
+		if (data.length == 0 || getSegmentType(data[0]) != PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE){
+			return -1;
+		}
+		return data[1] & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @return Last AS of the path (the originating AS), or -1 if the path does not end with an AS_SEQUENCE
+	 */
+	public long getOriginAS(){
+		int i = 0;
+		int last = -1;
+		while (i < data.length){
+			last = i;
+			i += getSegmentCount(data[i]) + 1;
+		}
+		if (last < 0 || getSegmentType(data[last]) != PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE){
+			return -1;
+		}
+		return data[i - 1] & 0xFFFFFFFFL;
+	}
+
+	public int getNumberOfSegments() {
+		return numberOfSegments;
+	}
+
+	public int getNumberOfASes() {
+		return numberOfASes;
+	}
+
+	/**
+	 * @return true if any of the AS numbers does not fit in 2 octets
+	 */
+	public boolean hasFourOctetASes() {
+		return fourOctetOnly;
+	}
+
+	/**
+	 * Length of the encoded path
+	 * @param fourOctetAS true to encode the AS numbers in 4 octets
+	 * @return length in bytes
+	 */
+	public int getEncodedLength(boolean fourOctetAS){
+		return numberOfSegments * 2 + numberOfASes * (fourOctetAS ? 4 : 2);
+	}
+
+	/**
+	 * Encodes the path in a buffer
+	 * @param bytes Buffer
+	 * @param offset Offset where the first segment is written
+	 * @param fourOctetAS true to encode the AS numbers in 4 octets
+	 * @return The offset after the path
+	 */
+	public int encode(byte[] bytes, int offset, boolean fourOctetAS){
+		int i = 0;
+		while (i < data.length){
+			int count = getSegmentCount(data[i]);
+			bytes[offset++] = (byte) getSegmentType(data[i]);
+			bytes[offset++] = (byte) count;
+			for (int j = i + 1; j <= i + count; j++){
+				int as = data[j];
+				if (fourOctetAS){
+					bytes[offset++] = (byte) (as >>> 24);
+					bytes[offset++] = (byte) (as >>> 16);
+				}else if ((as & 0xFFFF0000) != 0){
+					as = AS_TRANS;
+				}
+				bytes[offset++] = (byte) (as >>> 8);
+				bytes[offset++] = (byte) as;
+			}
+			i += count + 1;
+		}
+		return offset;
+	}
+
+	/**
+	 * Creates the segment objects of the path
+	 * @param fourOctetAS AS number size set in the segments
+	 * @return List of segments
+	 */
+	public LinkedList<AS_Path_Segment> toSegments(boolean fourOctetAS){
+		LinkedList<AS_Path_Segment> segments = new LinkedList<AS_Path_Segment>();
+		int i = 0;
+		while (i < data.length){
+			int count = getSegmentCount(data[i]);
+			AS_Path_Segment segment = new AS_Path_Segment();
+			segment.setType(getSegmentType(data[i]));
+			segment.setSegments(Arrays.copyOfRange(data, i + 1, i + 1 + count));
+			segment.setAS4(fourOctetAS);
+			segments.add(segment);
+			i += count + 1;
+		}
+		return segments;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ASPath other = (ASPath) obj;
+		return hash == other.hash && Arrays.equals(data, other.data);
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		int i = 0;
+		while (i < data.length){
+			int type = getSegmentType(data[i]);
+			int count = getSegmentCount(data[i]);
+			if (sb.length() > 0){
+				sb.append(' ');
+			}
+			boolean set = (type != PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE);
+			if (set){
+				sb.append(type == PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_CONFED_SEQUENCE ? '(' : '{');
+			}
+			for (int j = i + 1; j <= i + count; j++){
+				if (j > i + 1){
+					sb.append(set ? "," : " ");
+				}
+				sb.append(data[j] & 0xFFFFFFFFL);
+			}
+			if (set){
+				sb.append(type == PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_CONFED_SEQUENCE ? ')' : '}');
+			}
+			i += count + 1;
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,149 @@
+package es.tid.bgp.bgp4.update.fields.pathAttributes;
+
+import es.tid.bgp.bgp4.update.MalformedBGP4ElementException;
+
+/**
+ * Interning table of AS paths, keyed by their content.
+ * <p>
+ * The encoded value of an AS_PATH attribute is looked up directly in the
+ * table, hashing and comparing the AS numbers as they are read from the
+ * message, so decoding a path that is already known does not allocate. On
+ * a miss the path is decoded once and becomes the canonical instance shared
+ * by all the routes with the same path, whatever the AS number size used in
+ * the update it came from.
+ * <p>
+ * The table is an open addressing hash table (linear probing) that doubles
+ * its size when it is half full. The number of distinct paths is small
+ * compared with the number of routes, so the paths are not evicted; call
+ * {@link #clear()} when the peers holding the routes are gone.
+ *
+ * @author ogondio
+ *
+ */
+public class ASPathTable {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private ASPath[] table;
+
+	private int size;
+
+	private long hits;
+
+	private long misses;
+
+	public ASPathTable(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity Expected number of distinct paths
+	 */
+	public ASPathTable(int initialCapacity){
+		int capacity = 16;
+		while (capacity < initialCapacity * 2){
+			capacity <<= 1;
+		}
+		this.table = new ASPath[capacity];
+	}
+
+	/**
+	 * Returns the canonical instance of the AS path encoded in the message.
+	 * @param bytes Bytes of the message
+	 * @param offset Offset of the first segment
+	 * @param length Length of the attribute value
+	 * @param fourOctetAS true if the AS numbers are encoded in 4 octets
+	 * @return The canonical path
+	 * @throws MalformedBGP4ElementException if the value is not a well formed AS path
+	 */
+	public synchronized ASPath intern(byte[] bytes, int offset, int length, boolean fourOctetAS) throws MalformedBGP4ElementException {
+		if (!ASPath.isValid(bytes, offset, length, fourOctetAS)){
+			throw new MalformedBGP4ElementException();
+		}
+		int mask = table.length - 1;
+		int i = mix(ASPath.hashCode(bytes, offset, length, fourOctetAS)) & mask;
+		ASPath path;
+		while ((path = table[i]) != null){
+			if (path.matches(bytes, offset, length, fourOctetAS)){
+				hits++;
+				return path;
+			}
+			i = (i + 1) & mask;
+		}
+		misses++;
+		path = ASPath.decode(bytes, offset, length, fourOctetAS);
+		insert(path, i);
+		return path;
+	}
+
+	/**
+	 * Returns the canonical instance of a path. If an equal path is already
+	 * in the table that one is returned, otherwise the path becomes the
+	 * canonical instance.
+	 * @param path AS path
+	 * @return The canonical path
+	 */
+	public synchronized ASPath intern(ASPath path){
+		int mask = table.length - 1;
+		int i = mix(path.hashCode()) & mask;
+		ASPath canonical;
+		while ((canonical = table[i]) != null){
+			if (canonical.equals(path)){
+				hits++;
+				return canonical;
+			}
+			i = (i + 1) & mask;
+		}
+		misses++;
+		insert(path, i);
+		return path;
+	}
+
+	private void insert(ASPath path, int slot){
+		table[slot] = path;
+		size++;
+		if (size * 2 > table.length){
+			ASPath[] old = table;
+			table = new ASPath[old.length * 2];
+			int mask = table.length - 1;
+			for (ASPath p : old){
+				if (p != null){
+					int i = mix(p.hashCode()) & mask;
+					while (table[i] != null){
+						i = (i + 1) & mask;
+					}
+					table[i] = p;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Spreads the hash code so that the low bits used to index the table
+	 * depend on all the AS numbers of the path.
+	 */
+	private static int mix(int h){
+		h ^= (h >>> 16);
+		h *= 0x85EBCA6B;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	public synchronized int size(){
+		return size;
+	}
+
+	public synchronized void clear(){
+		table = new ASPath[table.length];
+		size = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
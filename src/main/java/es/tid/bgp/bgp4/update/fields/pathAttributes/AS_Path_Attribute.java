@@ -34,13 +34,31 @@ import java.util.List;
  * numbers, each encoded as a 2-octet length field.
  * <p>
  * Usage of this attribute is defined in 5.1.2.
+ * <p>
+ * The path is kept as a packed {@link ASPath}, which can be shared between
+ * the routes through an {@link ASPathTable}. The AS numbers are encoded in 4
+ * octets (RFC 6793) unless the attribute is set to use 2-octet AS numbers,
+ * as done with peers that have not advertised the 4-octet AS capability.
+ * When the path is given as segments, a segment with
+ * {@link AS_Path_Segment#setAS4(boolean) setAS4(false)} also selects 2-octet
+ * AS numbers for the whole attribute.
  *
  * @author mcs
  */
 public class AS_Path_Attribute extends PathAttribute
 {
+	/**
+	 * Segment objects, created on demand from the packed path
+	 */
 	private LinkedList<AS_Path_Segment> asPathSegments;
 
+	/**
+	 * true if the AS numbers are encoded in 4 octets
+	 */
+	private boolean fourOctetAS = true;
+
+	private ASPath path;
+
 	public AS_Path_Attribute()
 	{
 		super();
@@ -49,48 +67,72 @@ public class AS_Path_Attribute extends PathAttribute
 		asPathSegments = new LinkedList<AS_Path_Segment>();
 	}
 
+	/**
+	 * Decodes the attribute guessing the AS number size: 4 octets if the
+	 * segments are well formed with 4-octet AS numbers, 2 octets otherwise.
+	 *
+	 * @param bytes bytes of the message
+	 * @param offset offset of the attribute
+	 * @throws MalformedBGP4ElementException if the segments are malformed
+	 */
 	public AS_Path_Attribute(byte[] bytes, int offset) throws MalformedBGP4ElementException
 	{
 		super(bytes, offset);
-		asPathSegments = new LinkedList<AS_Path_Segment>();
-		decode();
+		this.fourOctetAS = ASPath.isValid(this.bytes, mandatoryLength, length - mandatoryLength, true);
+		decode(null);
+	}
+
+	/**
+	 * Decodes the attribute with the AS number size negotiated in the session.
+	 *
+	 * @param bytes bytes of the message
+	 * @param offset offset of the attribute
+	 * @param fourOctetAS true if both speakers advertised the 4-octet AS capability
+	 * @param asPathTable table where the path is interned, may be null
+	 * @throws MalformedBGP4ElementException if the segments are malformed
+	 */
+	public AS_Path_Attribute(byte[] bytes, int offset, boolean fourOctetAS, ASPathTable asPathTable) throws MalformedBGP4ElementException
+	{
+		super(bytes, offset);
+		this.fourOctetAS = fourOctetAS;
+		decode(asPathTable);
 	}
 
 	@Override
 	public void encode()
 	{
-		int path_attribute_length=0;
-		
-		for(AS_Path_Segment asPathSegment : asPathSegments)
+		if(asPathSegments != null)
+		{
+			path = ASPath.fromSegments(asPathSegments);
+		}else if(path == null)
 		{
-			asPathSegment.encode();
-			path_attribute_length+=asPathSegment.getLength();
+			path = ASPath.EMPTY;
 		}
-		this.setPathAttributeLength(path_attribute_length);
+		boolean as4 = isFourOctetAS();
+		this.setPathAttributeLength(path.getEncodedLength(as4));
 		bytes = new byte[length];
 		encodeHeader();
-		int offset = this.mandatoryLength; //After the header encoding
-		int num_segs=asPathSegments.size();
-		for(int i=0;i<num_segs;++i)
-		{
-			System.arraycopy(asPathSegments.get(i).getBytes(), 0, bytes, offset, asPathSegments.get(i).getLength());
-			offset += asPathSegments.get(i).getLength();
-		}
-
+		path.encode(bytes, this.mandatoryLength, as4);
 	}
 
 	public void decode() throws MalformedBGP4ElementException
+	{
+		decode(null);
+	}
+
+	private void decode(ASPathTable asPathTable) throws MalformedBGP4ElementException
 	{
 		if(typeCode != PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ASPATH)
 			throw new MalformedBGP4ElementException();
-		
-		int offset = this.mandatoryLength; 
-		while(offset < length)
+		int offset = this.mandatoryLength;
+		if(asPathTable != null)
+		{
+			path = asPathTable.intern(bytes, offset, length - offset, fourOctetAS);
+		}else
 		{
-			AS_Path_Segment asPathSegment = new AS_Path_Segment(bytes, offset);
-			asPathSegments.add(asPathSegment);
-			offset += asPathSegment.getLength();
+			path = ASPath.decode(bytes, offset, length - offset, fourOctetAS);
 		}
+		asPathSegments = null;
 	}
 
 	public int getType()
@@ -98,22 +140,89 @@ public class AS_Path_Attribute extends PathAttribute
 		return typeCode;
 	}
 
-	public List<AS_Path_Segment> getAsPathSegments(){ return asPathSegments; }
+	/**
+	 * @return The segments of the path. Changes in the list are taken into account in the next encode.
+	 */
+	public List<AS_Path_Segment> getAsPathSegments()
+	{
+		if(asPathSegments == null)
+		{
+			asPathSegments = (path == null) ? new LinkedList<AS_Path_Segment>() : path.toSegments(fourOctetAS);
+		}
+		return asPathSegments;
+	}
 
 	public void setAsPathSegments(LinkedList<AS_Path_Segment> asPathSegments)
 	{
 		this.asPathSegments = asPathSegments;
+		this.path = null;
+	}
+
+	/**
+	 * @return The packed path
+	 */
+	public ASPath getPath()
+	{
+		if(path == null)
+		{
+			path = ASPath.fromSegments(asPathSegments);
+		}
+		return path;
+	}
+
+	public void setPath(ASPath path)
+	{
+		this.path = path;
+		this.asPathSegments = null;
+	}
+
+	/**
+	 * @return true if the AS numbers are encoded in 4 octets: the attribute is
+	 * set to use 4-octet AS numbers and none of its segments uses 2 octets
+	 */
+	public boolean isFourOctetAS()
+	{
+		if(fourOctetAS && asPathSegments != null)
+		{
+			for(AS_Path_Segment segment : asPathSegments)
+			{
+				if(!segment.isAS4())
+				{
+					//Segments built for a peer without the 4-octet AS capability
+					return false;
+				}
+			}
+		}
+		return fourOctetAS;
+	}
+
+	public void setFourOctetAS(boolean fourOctetAS)
+	{
+		this.fourOctetAS = fourOctetAS;
+	}
+
+	/**
+	 * @return Path length used in the route selection
+	 */
+	public int getPathLength()
+	{
+		return getPath().getPathLength();
+	}
+
+	/**
+	 * Loop detection
+	 * @param as AS number, usually the local AS
+	 * @return true if the AS is already in the path
+	 */
+	public boolean containsAS(long as)
+	{
+		return getPath().contains(as);
 	}
 
 	@Override
 	public String toString()
 	{
-		String ret="";
-		ret+="AS_PATH [Type=" + typeCode + " Length=" + length + " NumberOfAsPathSegments=" + asPathSegments.size() + "]";
-		for (int i=0; i<asPathSegments.size();++i){
-			ret+=asPathSegments.toString();
-		}
-		return ret;
+		return "AS_PATH [Type=" + typeCode + " Length=" + length + " NumberOfAsPathSegments=" + getPath().getNumberOfSegments() + " Path=" + getPath() + "]";
 	}
 
 	@Override
@@ -40,7 +40,10 @@ import java.util.Arrays;
 public class AS_Path_Segment implements BGP4Element {
 	private int type;
 	private int numberOfSegments;
-	private long segments[];
+	/**
+	 * AS numbers of the segment, as unsigned 32 bit values
+	 */
+	private int segments[];
 	private byte bytes[];
 	private int length;
 
@@ -51,50 +54,69 @@ public class AS_Path_Segment implements BGP4Element {
 		this.AS4= as4;
 	}
 
+	public boolean isAS4(){
+		return AS4;
+	}
+
 	public AS_Path_Segment()
 	{
 		type = PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE;
+		segments = new int[0];
 	} //Type and number, and nothing else;
 
+	/**
+	 * Decodes a segment guessing the AS number size: 4 octets unless the
+	 * segment does not fit in the buffer. Use the constructor with the size
+	 * negotiated in the session when it is known.
+	 *
+	 * @param bytes bytes of the message
+	 * @param offset offset of the segment
+	 * @throws MalformedBGP4ElementException if the segment type is unknown
+	 */
 	public AS_Path_Segment(byte[] bytes, int offset) throws MalformedBGP4ElementException
+	{
+		this(bytes, offset, (bytes.length - offset) >= 2 + (bytes[offset + 1] & 0xFF) * 4);
+	}
+
+	/**
+	 * Decodes a segment
+	 *
+	 * @param bytes bytes of the message
+	 * @param offset offset of the segment
+	 * @param as4 true if the AS numbers are encoded in 4 octets (RFC 6793)
+	 * @throws MalformedBGP4ElementException if the segment type is unknown or the segment is truncated
+	 */
+	public AS_Path_Segment(byte[] bytes, int offset, boolean as4) throws MalformedBGP4ElementException
 	{
 		this.type = (int) bytes[offset] & 0xFF;
 		this.numberOfSegments = bytes[offset + 1] & 0xFF;
-		this.length = 2+numberOfSegments*4;
-		if ((bytes.length-offset)<length){
-			this.length = 2+numberOfSegments*2;
-			AS4=false;
-		}
-		else AS4=true;
-
-		this.segments = new long[this.numberOfSegments];
-		if(this.type != PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE && this.type != PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SET)
+		this.AS4 = as4;
+		int asSize = AS4 ? 4 : 2;
+		this.length = 2 + numberOfSegments * asSize;
+		if(this.type < PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SET || this.type > PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_CONFED_SET)
+			throw new MalformedBGP4ElementException();
+		if((bytes.length - offset) < length)
 			throw new MalformedBGP4ElementException();
 
-
+		this.segments = new int[this.numberOfSegments];
+		int pos = offset + 2;
 		for (int i = 0; i < this.numberOfSegments; i++)
 		{
-			//AS PATH 2Bytes
-			if (AS4==false)
-				this.segments[i] = (long) (((bytes[offset + 2 + (i * 2)] & 0xFF) << 8) & 0xFF00 | bytes[offset + 2 + (i * 2) + 1] & 0xFF);
+			if (AS4)
+				this.segments[i] = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
 			else
-				this.segments[i] = (long) ( ((bytes[offset + 2 + (i * 4)] & 0xFF) << 24) & 0xFF000000 | ((bytes[offset + 2 + (i * 4)+1] & 0xFF0000) << 16) & 0xFF00 |  ((bytes[offset + 2 + (i * 4)+2] & 0xFF) << 8) & 0xFF00 | bytes[offset + 2 + (i * 4) + 3] & 0xFF);
+				this.segments[i] = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+			pos += asSize;
 		}
-
+		this.bytes = new byte[length];
+		System.arraycopy(bytes, offset, this.bytes, 0, length);
 	}
 
 	@Override
 	public void encode()
 	{
-		//AS PATH 2Bytes
-		if(AS4==true)
-			this.length = 2 + numberOfSegments * 4;
-
-		if(AS4==false)
-			this.length = 2 + numberOfSegments * 2;
-
-		//AS PATH 4Bytes
-		//this.length = 2 + numberOfSegments * 4;
+		//AS PATH 4Bytes or 2Bytes
+		this.length = 2 + numberOfSegments * (AS4 ? 4 : 2);
 
 		int offset = 0;
 		bytes = new byte[this.length];
@@ -103,19 +125,18 @@ public class AS_Path_Segment implements BGP4Element {
 
 		for(int i = 0; i < numberOfSegments; i++)
 		{
+			int as = segments[i];
 			//AS PATH 4Bytes
-			if (AS4==true) {
-				bytes[offset++] = (byte) ((segments[i] & 0xFF000000 >> 24) & 0xFF);
-				bytes[offset++] = (byte) ((segments[i] & 0xFF0000 >> 16) & 0xFF);
-				bytes[offset++] = (byte) ((segments[i] & 0xFF00 >> 8) & 0xFF);
-				bytes[offset++] = (byte) (segments[i] & 0xFF);
+			if (AS4) {
+				bytes[offset++] = (byte) (as >>> 24);
+				bytes[offset++] = (byte) (as >>> 16);
 			}
-			//AS PATH 2Bytes
-			else{
-				bytes[offset++] = (byte) ((segments[i] & 0xFF00 >> 8) & 0xFF);
-				bytes[offset++] = (byte) (segments[i] & 0xFF);
-
+			//AS PATH 2Bytes, ASes that do not fit are sent as AS_TRANS (RFC 6793)
+			else if ((as & 0xFFFF0000) != 0) {
+				as = ASPath.AS_TRANS;
 			}
+			bytes[offset++] = (byte) (as >>> 8);
+			bytes[offset++] = (byte) as;
 		}
 
 	}
@@ -137,42 +158,49 @@ public class AS_Path_Segment implements BGP4Element {
 		return type;
 	}
 
+	public void setType(int type)
+	{
+		this.type = type;
+	}
+
 	public int getNumberOfSegments()
 	{
 		return numberOfSegments;
 	}
 
+	/**
+	 * @return AS numbers of the segment, 4-octet AS numbers are returned as unsigned 32 bit values
+	 */
 	public int[] getSegments(){
+		return segments;
+	}
 
-		int temp_segments[] = new int[segments.length];
+	public long[] get4Segments(){
+		long temp_segments[] = new long[segments.length];
 		for (int i=0;i<segments.length;++i){
-			temp_segments[i]=(int)segments[i];
+			temp_segments[i]=segments[i] & 0xFFFFFFFFL;
 		}
 		return temp_segments;
 	}
-	public long[] get4Segments(){ return segments; }
 
 	public void set4Segments(long[] segments)
 	{
-		if(segments == null) this.segments = new long[0];
+		if(segments == null) this.segments = new int[0];
 		else
 		{
-			this.segments = segments;
-			numberOfSegments = this.segments.length;
+			this.segments = new int[segments.length];
+			for (int i=0;i<segments.length;++i){
+				this.segments[i]=(int)segments[i];
+			}
 		}
+		numberOfSegments = this.segments.length;
 	}
 
 	public void setSegments(int[] segments)
 	{
-		if(segments == null) this.segments = new long[0];
-		else
-		{
-			this.segments = new long[segments.length];
-			for (int i=0;i<segments.length;++i){
-				this.segments[i]=(long)segments[i];
-			}
-			numberOfSegments = this.segments.length;
-		}
+		if(segments == null) this.segments = new int[0];
+		else this.segments = segments.clone();
+		numberOfSegments = this.segments.length;
 	}
 
 
@@ -1,6 +1,8 @@
 package es.tid.bgp.bgp4.update.fields.pathAttributes;
 
 import es.tid.bgp.bgp4.update.fields.*;
+import es.tid.bgp.bgp4.update.filter.LinkStateNLRIFilter;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -25,28 +27,56 @@ public class BGP_LS_MP_Reach_Attribute extends MP_Reach_Attribute {
 	}
 
 	public BGP_LS_MP_Reach_Attribute(byte [] bytes, int offset) {
+		this(bytes, offset, null);
+	}
+
+	/**
+	 * Decodes the attribute sharing the node descriptors of the NLRIs through a cache
+	 * @param bytes bytes of the message
+	 * @param offset offset of the attribute
+	 * @param descriptorsCache cache of canonical node descriptors, null to decode all of them
+	 */
+	public BGP_LS_MP_Reach_Attribute(byte [] bytes, int offset, NodeDescriptorsCache descriptorsCache) {
+		this(bytes, offset, descriptorsCache, null);
+	}
+
+	/**
+	 * Decodes the attribute, only materialising the NLRIs accepted by a filter.
+	 * The rest of the NLRIs are skipped without decoding them.
+	 * @param bytes bytes of the message
+	 * @param offset offset of the attribute
+	 * @param descriptorsCache cache of canonical node descriptors, null to decode all of them
+	 * @param filter filter of the NLRIs to decode, null to decode all of them
+	 */
+	public BGP_LS_MP_Reach_Attribute(byte [] bytes, int offset, NodeDescriptorsCache descriptorsCache, LinkStateNLRIFilter filter) {
 		super(bytes, offset);
 		int offset2=offset+this.mandatoryLength+5+this.getLengthofNextHopNetworkAddress();
 		lsNLRIList = new LinkedList<LinkStateNLRI>();
 		while(offset2 < length+offset)
 		{
 			LinkStateNLRI tempNLri;
+			if (filter != null && !filter.matches(bytes, offset2))
+			{
+				offset2 += LinkStateNLRI.getNLRILength(bytes, offset2)+4;
+				continue;
+			}
 			int type = LinkStateNLRI.getType(bytes, offset2);
 			if(type == NLRITypes.Link_NLRI)
 			{
-				tempNLri = new LinkNLRI(bytes, offset2);
+				tempNLri = new LinkNLRI(bytes, offset2, descriptorsCache);
 			} else if(type == NLRITypes.Node_NLRI)
 			{
-				tempNLri = new NodeNLRI(bytes, offset2);
+				tempNLri = new NodeNLRI(bytes, offset2, descriptorsCache);
 			}else if(type == NLRITypes.IT_Node_NLRI)
 			{
 				tempNLri = new ITNodeNLRI(bytes, offset2);
 			} else if(type == NLRITypes.Prefix_v4_NLRI)
 			{
-				tempNLri = new PrefixNLRI(bytes, offset2);
+				tempNLri = new PrefixNLRI(bytes, offset2, descriptorsCache);
 			} else
 			{
 				log.warn("UNKNOWN_NLRI: " + type);
+				offset2 += LinkStateNLRI.getNLRILength(bytes, offset2)+4;
 				continue;
 			}
 			offset2 += tempNLri.getTotalNLRILength();
@@ -23,6 +23,7 @@ import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.PrefixMetricPrefixAtt
 import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.RouteTagPrefixAttribTLV;
 import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.SidLabelNodeAttribTLV;
 import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.UnreservedBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPv6RouterIDSubTLV;
 //********** RUBEN *************
 import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.SharedRiskLinkGroupAttribTLV;
 import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.TransceiverClassAndAppAttribTLV;
@@ -166,6 +167,8 @@ public class LinkStateAttribute  extends PathAttribute{
 	AvailableLabels availableLabels;//Añadida por nosotros
 	IPv4RouterIDLocalNodeLinkAttribTLV IPv4RouterIDLocalNodeLATLV;
 	IPv4RouterIDRemoteNodeLinkAttribTLV IPv4RouterIDRemoteNodeLATLV;
+	IPv6RouterIDSubTLV IPv6RouterIDLocalNodeLATLV;
+	IPv6RouterIDSubTLV IPv6RouterIDRemoteNodeLATLV;
 	DefaultTEMetricLinkAttribTLV TEMetricTLV;
 	//********** RUBEN *************
 	SharedRiskLinkGroupAttribTLV SharedRiskLinkGroupATLV;
@@ -204,6 +207,8 @@ public class LinkStateAttribute  extends PathAttribute{
 	@Override
 	public void encode() {
 		//Encode LinkStateAttribute
+		//The length is computed from scratch so that the attribute can be encoded again
+		pathAttributeLength=0;
 
 		//LINK ATTRIBUTES
 		if (maximumLinkBandwidthTLV!=null){
@@ -243,6 +248,14 @@ public class LinkStateAttribute  extends PathAttribute{
 			IPv4RouterIDRemoteNodeLATLV.encode();
 			pathAttributeLength=pathAttributeLength+IPv4RouterIDRemoteNodeLATLV.getTotalTLVLength();
 		}
+		if(IPv6RouterIDLocalNodeLATLV!=null){
+			IPv6RouterIDLocalNodeLATLV.encode();
+			pathAttributeLength=pathAttributeLength+IPv6RouterIDLocalNodeLATLV.getTotalSubTLVLength();
+		}
+		if(IPv6RouterIDRemoteNodeLATLV!=null){
+			IPv6RouterIDRemoteNodeLATLV.encode();
+			pathAttributeLength=pathAttributeLength+IPv6RouterIDRemoteNodeLATLV.getTotalSubTLVLength();
+		}
 		if(TEMetricTLV!=null){
 			TEMetricTLV.encode();
 			pathAttributeLength=pathAttributeLength+TEMetricTLV.getTotalTLVLength();
@@ -319,7 +332,7 @@ public class LinkStateAttribute  extends PathAttribute{
 		}
 
 		//Length
-		this.length=pathAttributeLength+mandatoryLength;
+		this.setPathAttributeLength(pathAttributeLength);
 		this.bytes=new byte[this.length];
 
 		//Encode Header
@@ -364,6 +377,16 @@ public class LinkStateAttribute  extends PathAttribute{
 			offset=offset+IPv4RouterIDRemoteNodeLATLV.getTotalTLVLength();
 		}
 
+		if (IPv6RouterIDLocalNodeLATLV!=null){
+			System.arraycopy(IPv6RouterIDLocalNodeLATLV.getSubTLV_bytes(),0, this.bytes,offset, IPv6RouterIDLocalNodeLATLV.getTotalSubTLVLength());
+			offset=offset+IPv6RouterIDLocalNodeLATLV.getTotalSubTLVLength();
+		}
+
+		if (IPv6RouterIDRemoteNodeLATLV!=null){
+			System.arraycopy(IPv6RouterIDRemoteNodeLATLV.getSubTLV_bytes(),0, this.bytes,offset, IPv6RouterIDRemoteNodeLATLV.getTotalSubTLVLength());
+			offset=offset+IPv6RouterIDRemoteNodeLATLV.getTotalSubTLVLength();
+		}
+
 		if(TEMetricTLV!=null){
 			System.arraycopy(TEMetricTLV.getTlv_bytes(),0, this.bytes,offset, TEMetricTLV.getTotalTLVLength());
 			offset=offset+TEMetricTLV.getTotalTLVLength();
@@ -470,6 +493,12 @@ public class LinkStateAttribute  extends PathAttribute{
 			case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv4_ROUTER_ID_OF_REMOTE_NODE:
 				this.IPv4RouterIDRemoteNodeLATLV=new IPv4RouterIDRemoteNodeLinkAttribTLV(this.bytes, offset);
 				break;
+			case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_LOCAL_NODE:
+				this.IPv6RouterIDLocalNodeLATLV=new IPv6RouterIDSubTLV(this.bytes, offset);
+				break;
+			case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_REMOTE_NODE:
+				this.IPv6RouterIDRemoteNodeLATLV=new IPv6RouterIDSubTLV(this.bytes, offset);
+				break;
 			case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_TE_DEFAULT_METRIC:
 				this.TEMetricTLV=new DefaultTEMetricLinkAttribTLV(this.bytes, offset);
 				break;
@@ -626,6 +655,18 @@ public class LinkStateAttribute  extends PathAttribute{
 	public void setIPv4RouterIDRemoteNodeLATLV(IPv4RouterIDRemoteNodeLinkAttribTLV iPv4RouterIDRemoteNodeLATLV) {
 		IPv4RouterIDRemoteNodeLATLV = iPv4RouterIDRemoteNodeLATLV;
 	}
+	public IPv6RouterIDSubTLV getIPv6RouterIDLocalNodeLATLV() {
+		return IPv6RouterIDLocalNodeLATLV;
+	}
+	public void setIPv6RouterIDLocalNodeLATLV(IPv6RouterIDSubTLV iPv6RouterIDLocalNodeLATLV) {
+		IPv6RouterIDLocalNodeLATLV = iPv6RouterIDLocalNodeLATLV;
+	}
+	public IPv6RouterIDSubTLV getIPv6RouterIDRemoteNodeLATLV() {
+		return IPv6RouterIDRemoteNodeLATLV;
+	}
+	public void setIPv6RouterIDRemoteNodeLATLV(IPv6RouterIDSubTLV iPv6RouterIDRemoteNodeLATLV) {
+		IPv6RouterIDRemoteNodeLATLV = iPv6RouterIDRemoteNodeLATLV;
+	}
 	public DefaultTEMetricLinkAttribTLV getTEMetricTLV() {
 		return TEMetricTLV;
 	}
@@ -735,6 +776,16 @@ public class LinkStateAttribute  extends PathAttribute{
 			sb.append(IPv4RouterIDRemoteNodeLATLV.toString());
 			sb.append("\r\n");
 
+		}
+		if(IPv6RouterIDLocalNodeLATLV!=null){
+			sb.append(IPv6RouterIDLocalNodeLATLV.toString());
+			sb.append("\r\n");
+
+		}
+		if(IPv6RouterIDRemoteNodeLATLV!=null){
+			sb.append(IPv6RouterIDRemoteNodeLATLV.toString());
+			sb.append("\r\n");
+
 		}
 		if(TEMetricTLV!=null){
 			sb.append(TEMetricTLV.toString());
@@ -0,0 +1,503 @@
+package es.tid.bgp.bgp4.update.fields.pathAttributes;
+
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.AdministrativeGroupLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.DefaultTEMetricLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.IGPFlagBitsPrefixAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.IPv4RouterIDLocalNodeLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.IPv4RouterIDRemoteNodeLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.IS_IS_AreaIdentifierNodeAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.LinkProtectionTypeLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.LinkStateAttributeTLVTypes;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MF_OTPAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MaxReservableBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MaximumLinkBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MetricLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.NodeFlagBitsNodeAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.NodeNameNodeAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.OSPFForwardingAddressPrefixAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.PrefixMetricPrefixAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.RouteTagPrefixAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.SharedRiskLinkGroupAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.SidLabelNodeAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.TransceiverClassAndAppAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.UnreservedBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPv6RouterIDSubTLV;
+import es.tid.ospf.ospfv2.lsa.tlv.subtlv.AvailableLabels;
+import es.tid.ospf.ospfv2.lsa.tlv.subtlv.MalformedOSPFSubTLVException;
+
+/**
+ * Differences between two encodings of a BGP-LS attribute, computed TLV by
+ * TLV on the bytes.
+ * <p>
+ * When a link is advertised again, the TLVs of the new attribute are
+ * compared with the TLVs of the same type in the previous one. The result
+ * is a bitmap with one bit per kind of TLV that changed (for example only
+ * {@link #CHANGED_UNRESERVED_BANDWIDTH}, or {@link #CHANGED_IGP_METRIC}),
+ * which is enough to decide if paths need to be computed again. Only the
+ * changed TLVs are decoded, and only when their values are requested.
+ * <p>
+ * If an attribute carries several TLVs of the same type, the n-th TLV of a
+ * type in the new attribute is compared with the n-th TLV of that type in
+ * the old one. A TLV present only in one of the attributes is a change.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStateAttributeDiff {
+
+	public static final long CHANGED_MAXIMUM_BANDWIDTH = 1L << 0;
+	public static final long CHANGED_MAX_RESERVABLE_BANDWIDTH = 1L << 1;
+	public static final long CHANGED_UNRESERVED_BANDWIDTH = 1L << 2;
+	public static final long CHANGED_ADMINISTRATIVE_GROUP = 1L << 3;
+	public static final long CHANGED_LINK_PROTECTION = 1L << 4;
+	public static final long CHANGED_IGP_METRIC = 1L << 5;
+	public static final long CHANGED_TE_METRIC = 1L << 6;
+	public static final long CHANGED_SRLG = 1L << 7;
+	public static final long CHANGED_ROUTER_ID = 1L << 8;
+	public static final long CHANGED_AVAILABLE_LABELS = 1L << 9;
+	/**
+	 * Transceiver class and MF-OTP TLVs
+	 */
+	public static final long CHANGED_OPTICAL = 1L << 10;
+	public static final long CHANGED_NODE_ATTRIBUTES = 1L << 11;
+	public static final long CHANGED_PREFIX_ATTRIBUTES = 1L << 12;
+	public static final long CHANGED_UNKNOWN = 1L << 13;
+
+	/**
+	 * Changes in the resources still available in the link. They do not
+	 * change the topology, the paths only need to be checked against the
+	 * new available resources.
+	 */
+	public static final long RESOURCE_CHANGES = CHANGED_MAX_RESERVABLE_BANDWIDTH | CHANGED_UNRESERVED_BANDWIDTH | CHANGED_AVAILABLE_LABELS;
+
+	/**
+	 * Changes that affect the route selection: metrics, SRLGs, administrative
+	 * groups, protection and capacity of the link.
+	 */
+	public static final long PATH_COMPUTATION_CHANGES = CHANGED_MAXIMUM_BANDWIDTH | CHANGED_ADMINISTRATIVE_GROUP | CHANGED_LINK_PROTECTION | CHANGED_IGP_METRIC | CHANGED_TE_METRIC | CHANGED_SRLG;
+
+	/**
+	 * Diff of two identical attributes
+	 */
+	private static final LinkStateAttributeDiff NO_CHANGES = new LinkStateAttributeDiff(null, null, 0, new int[0], 0);
+
+	private final byte[] oldBytes;
+
+	private final byte[] newBytes;
+
+	private final long changeBitmap;
+
+	/**
+	 * Changed TLVs, three ints per change: type, offset in the old attribute
+	 * and offset in the new attribute (-1 if the TLV is not there)
+	 */
+	private final int[] changes;
+
+	private final int numberOfChanges;
+
+	private LinkStateAttributeDiff(byte[] oldBytes, byte[] newBytes, long changeBitmap, int[] changes, int numberOfChanges){
+		this.oldBytes = oldBytes;
+		this.newBytes = newBytes;
+		this.changeBitmap = changeBitmap;
+		this.changes = changes;
+		this.numberOfChanges = numberOfChanges;
+	}
+
+	/**
+	 * Compares two attributes. If they have not been encoded yet they are
+	 * encoded.
+	 * @param oldAttribute previous attribute, null if the link is new
+	 * @param newAttribute new attribute
+	 * @return The differences
+	 */
+	public static LinkStateAttributeDiff compare(LinkStateAttribute oldAttribute, LinkStateAttribute newAttribute){
+		byte[] newBytes = getEncoding(newAttribute);
+		if (oldAttribute == null){
+			return compare(null, 0, newBytes, 0);
+		}
+		return compare(getEncoding(oldAttribute), 0, newBytes, 0);
+	}
+
+	/**
+	 * Compares two encoded attributes.
+	 * @param oldBytes bytes of the previous attribute, null if the link is new
+	 * @param oldOffset offset of the previous attribute (start of the flags octet)
+	 * @param newBytes bytes of the new attribute
+	 * @param newOffset offset of the new attribute (start of the flags octet)
+	 * @return The differences
+	 */
+	public static LinkStateAttributeDiff compare(byte[] oldBytes, int oldOffset, byte[] newBytes, int newOffset){
+		if (sameEncoding(oldBytes, oldOffset, newBytes, newOffset)){
+			return NO_CHANGES;
+		}
+		int oldStart = (oldBytes == null) ? 0 : oldOffset + PathAttribute.getMandatoryLength(oldBytes, oldOffset);
+		int oldEnd = (oldBytes == null) ? 0 : oldStart + PathAttribute.getAttributeLength(oldBytes, oldOffset);
+		int newStart = newOffset + PathAttribute.getMandatoryLength(newBytes, newOffset);
+		int newEnd = newStart + PathAttribute.getAttributeLength(newBytes, newOffset);
+		int[] changes = new int[3 * 4];
+		int count = 0;
+		long bitmap = 0;
+		//Changed and added TLVs
+		for (int offset = newStart; offset + 4 <= newEnd; offset += BGP4TLVFormat.getTotalTLVLength(newBytes, offset)){
+			int type = BGP4TLVFormat.getType(newBytes, offset);
+			int oldTLV = findOccurrence(oldBytes, oldStart, oldEnd, type, occurrence(newBytes, newStart, offset, type));
+			if (oldTLV < 0 || !sameTLV(oldBytes, oldTLV, newBytes, offset)){
+				bitmap |= getChangeBit(type);
+				changes = addChange(changes, count++, type, oldTLV, offset);
+			}
+		}
+		//Removed TLVs
+		for (int offset = oldStart; offset + 4 <= oldEnd; offset += BGP4TLVFormat.getTotalTLVLength(oldBytes, offset)){
+			int type = BGP4TLVFormat.getType(oldBytes, offset);
+			if (findOccurrence(newBytes, newStart, newEnd, type, occurrence(oldBytes, oldStart, offset, type)) < 0){
+				bitmap |= getChangeBit(type);
+				changes = addChange(changes, count++, type, offset, -1);
+			}
+		}
+		return new LinkStateAttributeDiff(oldBytes, newBytes, bitmap, changes, count);
+	}
+
+	/**
+	 * Computes only the change bitmap of two encoded attributes, without
+	 * creating any object. It is meant to classify high rate updates, like
+	 * the ones that only change the unreserved bandwidth.
+	 * @param oldBytes bytes of the previous attribute, null if the link is new
+	 * @param oldOffset offset of the previous attribute (start of the flags octet)
+	 * @param newBytes bytes of the new attribute
+	 * @param newOffset offset of the new attribute (start of the flags octet)
+	 * @return Bitmap of CHANGED_* bits, 0 if the attributes are equivalent
+	 */
+	public static long getChangeBitmap(byte[] oldBytes, int oldOffset, byte[] newBytes, int newOffset){
+		if (sameEncoding(oldBytes, oldOffset, newBytes, newOffset)){
+			return 0;
+		}
+		int oldStart = (oldBytes == null) ? 0 : oldOffset + PathAttribute.getMandatoryLength(oldBytes, oldOffset);
+		int oldEnd = (oldBytes == null) ? 0 : oldStart + PathAttribute.getAttributeLength(oldBytes, oldOffset);
+		int newStart = newOffset + PathAttribute.getMandatoryLength(newBytes, newOffset);
+		int newEnd = newStart + PathAttribute.getAttributeLength(newBytes, newOffset);
+		long bitmap = 0;
+		for (int offset = newStart; offset + 4 <= newEnd; offset += BGP4TLVFormat.getTotalTLVLength(newBytes, offset)){
+			int type = BGP4TLVFormat.getType(newBytes, offset);
+			int oldTLV = findOccurrence(oldBytes, oldStart, oldEnd, type, occurrence(newBytes, newStart, offset, type));
+			if (oldTLV < 0 || !sameTLV(oldBytes, oldTLV, newBytes, offset)){
+				bitmap |= getChangeBit(type);
+			}
+		}
+		for (int offset = oldStart; offset + 4 <= oldEnd; offset += BGP4TLVFormat.getTotalTLVLength(oldBytes, offset)){
+			int type = BGP4TLVFormat.getType(oldBytes, offset);
+			if (findOccurrence(newBytes, newStart, newEnd, type, occurrence(oldBytes, oldStart, offset, type)) < 0){
+				bitmap |= getChangeBit(type);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Bit of the change bitmap that corresponds to a BGP-LS attribute TLV
+	 * @param tlvType type of the TLV
+	 * @return CHANGED_* bit
+	 */
+	public static long getChangeBit(int tlvType){
+		switch (tlvType){
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MAXIMUM_BANDWITH:
+			return CHANGED_MAXIMUM_BANDWIDTH;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MAX_RESERVABLE_BANDWITH:
+			return CHANGED_MAX_RESERVABLE_BANDWIDTH;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_UNRESERVED_BANDWITH:
+			return CHANGED_UNRESERVED_BANDWIDTH;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_ADMINISTRATIVE_GROUP:
+			return CHANGED_ADMINISTRATIVE_GROUP;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_LINK_PROTECTION_TYPE:
+			return CHANGED_LINK_PROTECTION;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_METRIC:
+			return CHANGED_IGP_METRIC;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_TE_DEFAULT_METRIC:
+			return CHANGED_TE_METRIC;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_SHARED_RISK_LINK_GROUP:
+			return CHANGED_SRLG;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv4_ROUTER_ID_OF_LOCAL_NODE:
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_LOCAL_NODE:
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv4_ROUTER_ID_OF_REMOTE_NODE:
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_REMOTE_NODE:
+			return CHANGED_ROUTER_ID;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_AVAILABLELABELS:
+			return CHANGED_AVAILABLE_LABELS;
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_TRANSCEIVER_CLASS_AND_APPLICATION:
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MF_OTP:
+			return CHANGED_OPTICAL;
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_NODE_FLAG_BITS:
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_NODE_NAME:
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_IS_IS_AREA_ID:
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_SID_LABEL:
+			return CHANGED_NODE_ATTRIBUTES;
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_IGP_FLAGS:
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_ROUTE_TAG:
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_PREFIX_METRIC:
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_OSPF_FORWARDING_ADDRESS:
+			return CHANGED_PREFIX_ATTRIBUTES;
+		default:
+			return CHANGED_UNKNOWN;
+		}
+	}
+
+	private static byte[] getEncoding(LinkStateAttribute attribute){
+		if (attribute.getBytes() == null){
+			attribute.encode();
+		}
+		return attribute.getBytes();
+	}
+
+	private static boolean sameEncoding(byte[] oldBytes, int oldOffset, byte[] newBytes, int newOffset){
+		if (oldBytes == null){
+			return false;
+		}
+		int oldLength = PathAttribute.getMandatoryLength(oldBytes, oldOffset) + PathAttribute.getAttributeLength(oldBytes, oldOffset);
+		int newLength = PathAttribute.getMandatoryLength(newBytes, newOffset) + PathAttribute.getAttributeLength(newBytes, newOffset);
+		if (oldLength != newLength){
+			return false;
+		}
+		//The header (flags and type code) is not compared, only the value
+		int oldStart = oldOffset + PathAttribute.getMandatoryLength(oldBytes, oldOffset);
+		int newStart = newOffset + PathAttribute.getMandatoryLength(newBytes, newOffset);
+		int len = newLength - PathAttribute.getMandatoryLength(newBytes, newOffset);
+		for (int i = 0; i < len; i++){
+			if (oldBytes[oldStart + i] != newBytes[newStart + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameTLV(byte[] oldBytes, int oldOffset, byte[] newBytes, int newOffset){
+		int len = BGP4TLVFormat.getTotalTLVLength(newBytes, newOffset);
+		if (len != BGP4TLVFormat.getTotalTLVLength(oldBytes, oldOffset)){
+			return false;
+		}
+		for (int i = 4; i < len; i++){
+			if (oldBytes[oldOffset + i] != newBytes[newOffset + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Number of TLVs of the same type before the TLV at the given offset
+	 */
+	private static int occurrence(byte[] bytes, int start, int tlvOffset, int type){
+		int n = 0;
+		for (int offset = start; offset < tlvOffset; offset += BGP4TLVFormat.getTotalTLVLength(bytes, offset)){
+			if (BGP4TLVFormat.getType(bytes, offset) == type){
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Offset of the n-th TLV of the given type, -1 if there is none
+	 */
+	private static int findOccurrence(byte[] bytes, int start, int end, int type, int n){
+		if (bytes == null){
+			return -1;
+		}
+		for (int offset = start; offset + 4 <= end; offset += BGP4TLVFormat.getTotalTLVLength(bytes, offset)){
+			if (BGP4TLVFormat.getType(bytes, offset) == type){
+				if (n == 0){
+					return offset;
+				}
+				n--;
+			}
+		}
+		return -1;
+	}
+
+	private static int[] addChange(int[] changes, int index, int type, int oldOffset, int newOffset){
+		if (3 * index + 3 > changes.length){
+			int[] newChanges = new int[changes.length * 2];
+			System.arraycopy(changes, 0, newChanges, 0, changes.length);
+			changes = newChanges;
+		}
+		changes[3 * index] = type;
+		changes[3 * index + 1] = oldOffset;
+		changes[3 * index + 2] = newOffset;
+		return changes;
+	}
+
+	/**
+	 * Decodes a BGP-LS attribute TLV with the same class used by LinkStateAttribute
+	 * @param bytes bytes of the attribute
+	 * @param offset offset of the TLV
+	 * @return the TLV, or null if the type is not supported
+	 */
+	public static Object decodeTLV(byte[] bytes, int offset){
+		switch (BGP4TLVFormat.getType(bytes, offset)){
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MAXIMUM_BANDWITH:
+			return new MaximumLinkBandwidthLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MAX_RESERVABLE_BANDWITH:
+			return new MaxReservableBandwidthLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_UNRESERVED_BANDWITH:
+			return new UnreservedBandwidthLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_ADMINISTRATIVE_GROUP:
+			return new AdministrativeGroupLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_LINK_PROTECTION_TYPE:
+			return new LinkProtectionTypeLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_METRIC:
+			return new MetricLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_TE_DEFAULT_METRIC:
+			return new DefaultTEMetricLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_SHARED_RISK_LINK_GROUP:
+			return new SharedRiskLinkGroupAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv4_ROUTER_ID_OF_LOCAL_NODE:
+			return new IPv4RouterIDLocalNodeLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv4_ROUTER_ID_OF_REMOTE_NODE:
+			return new IPv4RouterIDRemoteNodeLinkAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_LOCAL_NODE:
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_REMOTE_NODE:
+			return new IPv6RouterIDSubTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_TRANSCEIVER_CLASS_AND_APPLICATION:
+			return new TransceiverClassAndAppAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MF_OTP:
+			return new MF_OTPAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_AVAILABLELABELS:
+			try {
+				return new AvailableLabels(bytes, offset);
+			} catch (MalformedOSPFSubTLVException e) {
+				return null;
+			}
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_NODE_FLAG_BITS:
+			return new NodeFlagBitsNodeAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_NODE_NAME:
+			return new NodeNameNodeAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_IS_IS_AREA_ID:
+			return new IS_IS_AreaIdentifierNodeAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.NODE_ATTRIBUTE_TLV_TYPE_SID_LABEL:
+			return new SidLabelNodeAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_IGP_FLAGS:
+			return new IGPFlagBitsPrefixAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_ROUTE_TAG:
+			return new RouteTagPrefixAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_PREFIX_METRIC:
+			return new PrefixMetricPrefixAttribTLV(bytes, offset);
+		case LinkStateAttributeTLVTypes.PREFIX_ATTRIBUTE_TLV_TYPE_OSPF_FORWARDING_ADDRESS:
+			return new OSPFForwardingAddressPrefixAttribTLV(bytes, offset);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return Bitmap of CHANGED_* bits
+	 */
+	public long getChangeBitmap() {
+		return changeBitmap;
+	}
+
+	public boolean hasChanges(){
+		return changeBitmap != 0;
+	}
+
+	/**
+	 * @param bits CHANGED_* bits
+	 * @return true if any of the bits changed
+	 */
+	public boolean hasChanged(long bits){
+		return (changeBitmap & bits) != 0;
+	}
+
+	/**
+	 * @param mask CHANGED_* bits
+	 * @return true if there are changes and all of them are in the mask
+	 */
+	public boolean isOnly(long mask){
+		return changeBitmap != 0 && (changeBitmap & ~mask) == 0;
+	}
+
+	/**
+	 * @return true if only the available resources of the link changed
+	 */
+	public boolean isResourceOnly(){
+		return isOnly(RESOURCE_CHANGES);
+	}
+
+	/**
+	 * @return true if the changes may change the result of a path computation
+	 */
+	public boolean affectsPathComputation(){
+		return hasChanged(PATH_COMPUTATION_CHANGES | RESOURCE_CHANGES | CHANGED_UNKNOWN);
+	}
+
+	public int getNumberOfChanges() {
+		return numberOfChanges;
+	}
+
+	/**
+	 * @param index index of the change
+	 * @return type of the changed TLV
+	 */
+	public int getChangedType(int index){
+		checkIndex(index);
+		return changes[3 * index];
+	}
+
+	/**
+	 * Decodes the previous value of a changed TLV
+	 * @param index index of the change
+	 * @return the TLV, or null if the TLV was added
+	 */
+	public Object getOldValue(int index){
+		checkIndex(index);
+		int offset = changes[3 * index + 1];
+		return (offset < 0) ? null : decodeTLV(oldBytes, offset);
+	}
+
+	/**
+	 * Decodes the new value of a changed TLV
+	 * @param index index of the change
+	 * @return the TLV, or null if the TLV was removed
+	 */
+	public Object getNewValue(int index){
+		checkIndex(index);
+		int offset = changes[3 * index + 2];
+		return (offset < 0) ? null : decodeTLV(newBytes, offset);
+	}
+
+	/**
+	 * Finds the change of a TLV type
+	 * @param tlvType type of the TLV
+	 * @return index of the first change of the type, -1 if it did not change
+	 */
+	public int indexOf(int tlvType){
+		for (int i = 0; i < numberOfChanges; i++){
+			if (changes[3 * i] == tlvType){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void checkIndex(int index){
+		if (index < 0 || index >= numberOfChanges){
+			throw new IndexOutOfBoundsException("Change "+index+" of "+numberOfChanges);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("LinkStateAttributeDiff [changeBitmap=0x");
+		sb.append(Long.toHexString(changeBitmap));
+		sb.append(" changedTLVs=");
+		for (int i = 0; i < numberOfChanges; i++){
+			if (i > 0){
+				sb.append(',');
+			}
+			sb.append(changes[3 * i]);
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+
+}
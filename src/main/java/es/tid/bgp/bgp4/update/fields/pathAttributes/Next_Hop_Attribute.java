@@ -1,5 +1,8 @@
 package es.tid.bgp.bgp4.update.fields.pathAttributes;
 
+import java.net.Inet4Address;
+import java.net.UnknownHostException;
+
 import es.tid.bgp.bgp4.update.fields.PathAttribute;
 
 /**
@@ -17,12 +20,20 @@ import es.tid.bgp.bgp4.update.fields.PathAttribute;
  */
 public class Next_Hop_Attribute extends PathAttribute{
 	
-	
+	/**
+	 * IPv4 address of the next hop
+	 */
+	private Inet4Address nextHop;
 
 	@Override
 	public void encode() {
-		// TODO Auto-generated method stub
-		
+		pathAttributeLength = 4; //Length of NEXT_HOP
+		this.length=pathAttributeLength+mandatoryLength;
+		this.bytes=new byte[this.length];
+		encodeHeader();
+		if (nextHop!=null){
+			System.arraycopy(nextHop.getAddress(), 0, this.bytes, mandatoryLength, 4);
+		}
 	}
 	
 	public Next_Hop_Attribute(){		
@@ -39,7 +50,30 @@ public class Next_Hop_Attribute extends PathAttribute{
 	
 	
 	private void decode(){
-		
+		if (pathAttributeLength<4){
+			log.warn("NEXT_HOP attribute too short: "+pathAttributeLength);
+			return;
+		}
+		byte[] ip=new byte[4];
+		System.arraycopy(this.bytes, mandatoryLength, ip, 0, 4);
+		try {
+			nextHop=(Inet4Address)Inet4Address.getByAddress(ip);
+		} catch (UnknownHostException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public Inet4Address getNextHop() {
+		return nextHop;
+	}
+
+	public void setNextHop(Inet4Address nextHop) {
+		this.nextHop = nextHop;
+	}
+
+	@Override
+	public String toString() {
+		return "Next Hop [Value=" + (nextHop==null?"null":nextHop.getHostAddress())+ "]";
 	}
 
 }
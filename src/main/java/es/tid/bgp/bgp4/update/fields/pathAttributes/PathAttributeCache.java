@@ -0,0 +1,132 @@
+package es.tid.bgp.bgp4.update.fields.pathAttributes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Interning cache of decoded path attributes, keyed by the attribute bytes
+ * (flags, type code, length and value).
+ * <p>
+ * In a full BGP-LS table most updates carry the same ORIGIN, AS_PATH,
+ * LOCAL_PREF and NEXT_HOP attributes, and many Link NLRIs carry byte-identical
+ * BGP-LS attributes. When a BGP4Update is decoded with a cache, the attribute
+ * bytes are looked up before decoding and, on a hit, the canonical instance is
+ * reused, so the stored routes share the attribute objects.
+ * <p>
+ * The instances returned by the cache are shared: they MUST be treated as
+ * read-only. To change an attribute of a route, create a new one. They are
+ * marked as shared ({@link PathAttribute#isShared()}), so BGP4Update does not
+ * encode them again and several threads can encode updates that carry them.
+ * <p>
+ * MP_REACH_NLRI and MP_UNREACH_NLRI are never cached, they carry the NLRIs and
+ * are different in every update. The cache is bounded, the least recently used
+ * attributes are evicted first.
+ *
+ * @author ogondio
+ *
+ */
+public class PathAttributeCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 65536;
+
+	private final LinkedHashMap<BytesKey, PathAttribute> cache;
+
+	private long hits;
+
+	private long misses;
+
+	public PathAttributeCache(){
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries Maximum number of attributes kept in the cache
+	 */
+	public PathAttributeCache(final int maxEntries){
+		this.cache = new LinkedHashMap<BytesKey, PathAttribute>(1024, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BytesKey, PathAttribute> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the attribute with the given type code can be shared between updates
+	 * @param typeCode Path attribute type code
+	 * @return true if the attribute can be interned
+	 */
+	public static boolean isCacheable(int typeCode){
+		switch (typeCode){
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ORIGIN:
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_ASPATH:
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_NEXTHOP:
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_LOCAL_PREF:
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE:
+		case PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_BGP_LS_ATTRIBUTE_LEGACY:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Looks up the attribute encoded at the given offset, without decoding it.
+	 * @param bytes Bytes of the message
+	 * @param offset Offset of the path attribute (start of the flags octet)
+	 * @return The canonical instance, or null if the attribute is not in the cache
+	 */
+	public synchronized PathAttribute lookup(byte[] bytes, int offset){
+		int len = PathAttribute.getMandatoryLength(bytes, offset)+PathAttribute.getAttributeLength(bytes, offset);
+		PathAttribute attribute = cache.get(new BytesKey(bytes, offset, len));
+		if (attribute != null){
+			hits++;
+		}else {
+			misses++;
+		}
+		return attribute;
+	}
+
+	/**
+	 * Returns the canonical instance of an attribute. If an attribute with the
+	 * same bytes is already in the cache, that one is returned, otherwise the
+	 * attribute becomes the canonical instance.
+	 * @param attribute Decoded (or encoded) path attribute
+	 * @return Canonical instance
+	 */
+	public synchronized PathAttribute intern(PathAttribute attribute){
+		byte[] attBytes = attribute.getBytes();
+		if (attBytes == null || !isCacheable(attribute.getTypeCode())){
+			return attribute;
+		}
+		BytesKey key = new BytesKey(attBytes, 0, attribute.getLength());
+		PathAttribute canonical = cache.get(key);
+		if (canonical != null){
+			return canonical;
+		}
+		attribute.setShared();
+		cache.put(key, attribute);
+		return attribute;
+	}
+
+	public synchronized int size(){
+		return cache.size();
+	}
+
+	public synchronized void clear(){
+		cache.clear();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
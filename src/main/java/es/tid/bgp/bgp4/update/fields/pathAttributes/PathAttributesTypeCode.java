@@ -42,5 +42,8 @@ public class PathAttributesTypeCode {
 	//Para AS_PATH (rfc 4271)
 	public final static int PATH_ATTRIBUTE_ASPATH_AS_SET = 1;
 	public final static int PATH_ATTRIBUTE_ASPATH_AS_SEQUENCE = 2;
+	//Para AS_PATH con confederaciones (rfc 5065)
+	public final static int PATH_ATTRIBUTE_ASPATH_AS_CONFED_SEQUENCE = 3;
+	public final static int PATH_ATTRIBUTE_ASPATH_AS_CONFED_SET = 4;
 	
 }
@@ -0,0 +1,119 @@
+package es.tid.bgp.bgp4.update.filter;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AFICodes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.BGP_LS_MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
+
+/**
+ * Filter of Link-State NLRIs evaluated on the raw bytes of the
+ * MP_REACH_NLRI attribute, before decoding.
+ * <p>
+ * The fixed fields of each NLRI (type, Protocol-ID and Identifier) are read at
+ * their offsets, and the Local Node Descriptors are scanned once, only if the
+ * predicate needs them. Only the NLRIs accepted by the predicate are decoded
+ * (see {@link BGP_LS_MP_Reach_Attribute#BGP_LS_MP_Reach_Attribute(byte[], int, NodeDescriptorsCache, LinkStateNLRIFilter)}).
+ * <p>
+ * A filter keeps the state of the NLRI being evaluated, so an instance must
+ * not be used by several threads at the same time.
+ *
+ * @author ogondio
+ *
+ */
+public class LinkStateNLRIFilter {
+
+	private static final Logger log = LoggerFactory.getLogger("BGP4Parser");
+
+	private final NLRIPredicate predicate;
+
+	private final NLRIView view = new NLRIView();
+
+	private long matchedNLRIs;
+
+	private long skippedNLRIs;
+
+	/**
+	 * @param predicate Condition that the NLRIs must fulfil to be decoded
+	 */
+	public LinkStateNLRIFilter(NLRIPredicate predicate){
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Evaluates the predicate on an encoded NLRI
+	 * @param bytes Bytes containing the NLRI
+	 * @param offset Offset of the NLRI (start of the NLRI type)
+	 * @return true if the NLRI is accepted
+	 */
+	public boolean matches(byte[] bytes, int offset){
+		boolean matches;
+		try {
+			view.reset(bytes, offset);
+			matches = predicate.evaluate(view);
+		} catch (ArrayIndexOutOfBoundsException e){
+			log.warn("Malformed Link-State NLRI, it does not match the filter");
+			matches = false;
+		}
+		if (matches){
+			matchedNLRIs++;
+		} else {
+			skippedNLRIs++;
+		}
+		return matches;
+	}
+
+	/**
+	 * Decodes the Link-State NLRIs of a raw UPDATE message that are accepted by the filter
+	 * @param messageBytes Bytes of the whole UPDATE message, including the BGP header
+	 * @param descriptorsCache cache of canonical node descriptors, may be null
+	 * @return NLRIs of the BGP-LS MP_REACH_NLRI accepted by the filter, empty if there are none
+	 */
+	public List<LinkStateNLRI> filterUpdate(byte[] messageBytes, NodeDescriptorsCache descriptorsCache){
+		int offset = BGP4Message.getBGPHeaderLength();
+		int withdrawnRoutesLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+		offset += 2+withdrawnRoutesLength;
+		int totalPathAttributeLength = ((messageBytes[offset]&0xFF)<<8) | (messageBytes[offset+1]&0xFF);
+		offset += 2;
+		int end = offset+totalPathAttributeLength;
+		while (offset < end){
+			int attLength = PathAttribute.getMandatoryLength(messageBytes, offset)+PathAttribute.getAttributeLength(messageBytes, offset);
+			if (PathAttribute.getAttibuteTypeCode(messageBytes, offset) == PathAttributesTypeCode.PATH_ATTRIBUTE_TYPECODE_MP_REACH_NLRI){
+				int afiOffset = offset+PathAttribute.getMandatoryLength(messageBytes, offset);
+				int afi = ((messageBytes[afiOffset]&0xFF)<<8) | (messageBytes[afiOffset+1]&0xFF);
+				if (afi == AFICodes.AFI_BGP_LS){
+					return new BGP_LS_MP_Reach_Attribute(messageBytes, offset, descriptorsCache, this).getLsNLRIList();
+				}
+			}
+			offset += attLength;
+		}
+		return Collections.emptyList();
+	}
+
+	public NLRIPredicate getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * @return Number of NLRIs accepted by the filter
+	 */
+	public long getMatchedNLRIs() {
+		return matchedNLRIs;
+	}
+
+	/**
+	 * @return Number of NLRIs skipped without decoding
+	 */
+	public long getSkippedNLRIs() {
+		return skippedNLRIs;
+	}
+
+}
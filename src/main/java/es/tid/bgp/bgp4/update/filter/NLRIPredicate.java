@@ -0,0 +1,205 @@
+package es.tid.bgp.bgp4.update.filter;
+
+import java.net.Inet4Address;
+import java.util.Arrays;
+
+/**
+ * Condition on the fields of a Link-State NLRI, evaluated on its raw bytes.
+ * <p>
+ * The predicates are created with the static methods of this class and
+ * combined with {@link #and(NLRIPredicate...)}, {@link #or(NLRIPredicate...)}
+ * and {@link #not(NLRIPredicate)}. The conditions on the node descriptors
+ * (AS, BGP-LS Identifier, Area-ID and IGP Router-ID) refer to the Local Node
+ * Descriptors, and are false when the NLRI does not carry the sub-TLV.
+ * <p>
+ * Example: OSPF Link NLRIs of AS 65001 or 65002
+ * <pre>
+ * NLRIPredicate.and(NLRIPredicate.nlriType(NLRITypes.Link_NLRI),
+ *                   NLRIPredicate.protocolID(ProtocolIDCodes.OSPF_Protocol_ID),
+ *                   NLRIPredicate.autonomousSystem(65001, 65002));
+ * </pre>
+ *
+ * @author ogondio
+ *
+ */
+public abstract class NLRIPredicate {
+
+	NLRIPredicate(){
+	}
+
+	abstract boolean evaluate(NLRIView view);
+
+	/**
+	 * @return Predicate true for every NLRI
+	 */
+	public static NLRIPredicate any(){
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param nlriTypes NLRI types (see NLRITypes)
+	 * @return Predicate true if the NLRI type is one of the given ones
+	 */
+	public static NLRIPredicate nlriType(int... nlriTypes){
+		final long[] values = sorted(nlriTypes);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				return Arrays.binarySearch(values, view.nlriType) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param protocolIDs Protocol-IDs (see ProtocolIDCodes)
+	 * @return Predicate true if the Protocol-ID of the NLRI is one of the given ones
+	 */
+	public static NLRIPredicate protocolID(int... protocolIDs){
+		final long[] values = sorted(protocolIDs);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				return view.hasProtocolID && Arrays.binarySearch(values, view.protocolID) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param identifiers Identifiers (routing universe) of the NLRI
+	 * @return Predicate true if the Identifier of the NLRI is one of the given ones
+	 */
+	public static NLRIPredicate identifier(long... identifiers){
+		final long[] values = sorted(identifiers);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				return view.hasProtocolID && Arrays.binarySearch(values, view.identifier) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param asNumbers AS numbers
+	 * @return Predicate true if the Autonomous System sub-TLV of the local node is one of the given ones
+	 */
+	public static NLRIPredicate autonomousSystem(long... asNumbers){
+		final long[] values = sorted(asNumbers);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				view.scanDescriptors();
+				return view.hasAS && Arrays.binarySearch(values, view.as) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param bgpLSIdentifiers BGP-LS Identifiers
+	 * @return Predicate true if the BGP-LS Identifier sub-TLV of the local node is one of the given ones
+	 */
+	public static NLRIPredicate bgpLSIdentifier(long... bgpLSIdentifiers){
+		final long[] values = sorted(bgpLSIdentifiers);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				view.scanDescriptors();
+				return view.hasBGPLSIdentifier && Arrays.binarySearch(values, view.bgpLSIdentifier) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param areaIDs Area-IDs
+	 * @return Predicate true if the Area-ID sub-TLV of the local node is one of the given ones
+	 */
+	public static NLRIPredicate areaID(long... areaIDs){
+		final long[] values = sorted(areaIDs);
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				view.scanDescriptors();
+				return view.hasAreaID && Arrays.binarySearch(values, view.areaID) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * @param routerID Value of the IGP Router-ID sub-TLV (4 octets for OSPF, 6 for IS-IS...)
+	 * @return Predicate true if the IGP Router-ID of the local node is the given one
+	 */
+	public static NLRIPredicate igpRouterID(byte[] routerID){
+		final byte[] value = routerID.clone();
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				view.scanDescriptors();
+				if (view.routerIDOffset < 0 || view.routerIDLength != value.length){
+					return false;
+				}
+				for (int i = 0; i < value.length; ++i){
+					if (view.bytes[view.routerIDOffset+i] != value[i]){
+						return false;
+					}
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param routerID OSPF Router-ID
+	 * @return Predicate true if the IGP Router-ID of the local node is the given OSPF Router-ID
+	 */
+	public static NLRIPredicate igpRouterID(Inet4Address routerID){
+		return igpRouterID(routerID.getAddress());
+	}
+
+	public static NLRIPredicate and(final NLRIPredicate... predicates){
+		final NLRIPredicate[] operands = predicates.clone();
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				for (NLRIPredicate predicate : operands){
+					if (!predicate.evaluate(view)){
+						return false;
+					}
+				}
+				return true;
+			}
+		};
+	}
+
+	public static NLRIPredicate or(final NLRIPredicate... predicates){
+		final NLRIPredicate[] operands = predicates.clone();
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				for (NLRIPredicate predicate : operands){
+					if (predicate.evaluate(view)){
+						return true;
+					}
+				}
+				return false;
+			}
+		};
+	}
+
+	public static NLRIPredicate not(final NLRIPredicate predicate){
+		return new NLRIPredicate(){
+			boolean evaluate(NLRIView view){
+				return !predicate.evaluate(view);
+			}
+		};
+	}
+
+	private static long[] sorted(int[] values){
+		long[] result = new long[values.length];
+		for (int i = 0; i < values.length; ++i){
+			result[i] = values[i];
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	private static long[] sorted(long[] values){
+		long[] result = values.clone();
+		Arrays.sort(result);
+		return result;
+	}
+
+}
@@ -0,0 +1,137 @@
+package es.tid.bgp.bgp4.update.filter;
+
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NLRITypes;
+import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.NodeDescriptorsSubTLVTypes;
+
+/**
+ * Fields of a Link-State NLRI read directly from its bytes. The fixed fields
+ * are read when the view is positioned on an NLRI, and the Local Node
+ * Descriptors are only scanned if a predicate asks for them.
+ *
+ * @author ogondio
+ *
+ */
+final class NLRIView {
+
+	byte[] bytes;
+
+	int offset;
+
+	int nlriType;
+
+	int totalLength;
+
+	//Protocol-ID and Identifier are present in Node, Link and Prefix NLRIs
+	boolean hasProtocolID;
+
+	int protocolID;
+
+	long identifier;
+
+	private boolean descriptorsScanned;
+
+	boolean hasAS;
+
+	long as;
+
+	boolean hasBGPLSIdentifier;
+
+	long bgpLSIdentifier;
+
+	boolean hasAreaID;
+
+	long areaID;
+
+	//Offset and length of the value of the IGP Router-ID sub-TLV, -1 if not present
+	int routerIDOffset;
+
+	int routerIDLength;
+
+	/**
+	 * Positions the view on an NLRI
+	 * @param bytes Bytes containing the NLRI
+	 * @param offset Offset of the NLRI
+	 */
+	void reset(byte[] bytes, int offset){
+		this.bytes = bytes;
+		this.offset = offset;
+		this.nlriType = LinkStateNLRI.getType(bytes, offset);
+		this.totalLength = LinkStateNLRI.getNLRILength(bytes, offset)+4;
+		this.hasProtocolID = (nlriType == NLRITypes.Node_NLRI) || (nlriType == NLRITypes.Link_NLRI) ||
+				(nlriType == NLRITypes.Prefix_v4_NLRI) || (nlriType == NLRITypes.Prefix_v6_NLRI);
+		if (hasProtocolID){
+			protocolID = bytes[offset+4]&0xFF;
+			identifier = readLong(bytes, offset+5, 8);
+		}
+		descriptorsScanned = false;
+	}
+
+	/**
+	 * Scans the sub-TLVs of the Local Node Descriptors, once per NLRI
+	 */
+	void scanDescriptors(){
+		if (descriptorsScanned){
+			return;
+		}
+		descriptorsScanned = true;
+		hasAS = false;
+		hasBGPLSIdentifier = false;
+		hasAreaID = false;
+		routerIDOffset = -1;
+		routerIDLength = 0;
+		if (!hasProtocolID){
+			return;
+		}
+		int tlvOffset = offset+13;
+		int nlriEnd = offset+totalLength;
+		if (tlvOffset+4 > nlriEnd || readInt(bytes, tlvOffset, 2) != LocalNodeDescriptorsTLV.Local_Node_Descriptors_TLV){
+			return;
+		}
+		int end = Math.min(tlvOffset+4+readInt(bytes, tlvOffset+2, 2), nlriEnd);
+		int subOffset = tlvOffset+4;
+		while (subOffset+4 <= end){
+			int type = readInt(bytes, subOffset, 2);
+			int length = readInt(bytes, subOffset+2, 2);
+			int value = subOffset+4;
+			if (value+length > end){
+				return;
+			}
+			switch (type){
+			case NodeDescriptorsSubTLVTypes.NODE_DESCRIPTORS_SUBTLV_TYPE_AUTONOMOUS_SYSTEM:
+				hasAS = true;
+				as = readLong(bytes, value, length);
+				break;
+			case NodeDescriptorsSubTLVTypes.NODE_DESCRIPTORS_SUBTLV_TYPE_BGP_LS_IDENTIFIER:
+				hasBGPLSIdentifier = true;
+				bgpLSIdentifier = readLong(bytes, value, length);
+				break;
+			case NodeDescriptorsSubTLVTypes.NODE_DESCRIPTORS_SUBTLV_TYPE_AREA_ID:
+				hasAreaID = true;
+				areaID = readLong(bytes, value, length);
+				break;
+			case NodeDescriptorsSubTLVTypes.NODE_DESCRIPTORS_SUBTLV_TYPE_IGP_ROUTER_ID:
+				routerIDOffset = value;
+				routerIDLength = length;
+				break;
+			default:
+				break;
+			}
+			subOffset = value+length;
+		}
+	}
+
+	private static int readInt(byte[] bytes, int offset, int length){
+		return (int) readLong(bytes, offset, length);
+	}
+
+	private static long readLong(byte[] bytes, int offset, int length){
+		long value = 0;
+		for (int i = 0; i < length; ++i){
+			value = (value<<8) | (bytes[offset+i]&0xFF);
+		}
+		return value;
+	}
+
+}
@@ -39,6 +39,12 @@ public abstract class BGP4TLVFormat {
 	protected int TotalTLVLength;
 	
 	protected byte[] tlv_bytes;
+
+	/**
+	 * The instance is shared between NLRIs by a NodeDescriptorsCache. Its
+	 * bytes are final: it is not encoded again.
+	 */
+	private volatile boolean shared=false;
 	
 	protected static final Logger log = LoggerFactory.getLogger("BGP4Parser");
 	public BGP4TLVFormat(){
@@ -119,6 +125,21 @@ public abstract class BGP4TLVFormat {
 
 	public abstract void encode();
 
+	/**
+	 * @return true if the TLV is shared by a NodeDescriptorsCache and must be treated as read-only
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Marks the TLV as shared. Its current bytes are used from now on when
+	 * an NLRI that carries it is encoded.
+	 */
+	public void setShared() {
+		this.shared = true;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
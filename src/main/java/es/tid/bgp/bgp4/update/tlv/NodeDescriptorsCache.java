@@ -0,0 +1,151 @@
+package es.tid.bgp.bgp4.update.tlv;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Canonicalising table of Local (256) and Remote (257) Node Descriptors TLVs.
+ * <p>
+ * Every Link NLRI carries the descriptors of both ends of the link and every
+ * Node and Prefix NLRI the descriptors of its node, so in a large topology the
+ * same node is described hundreds of thousands of times. When the NLRIs are
+ * decoded with a cache, the descriptors are looked up by their TLV bytes and
+ * only decoded the first time; all the NLRIs decoded while the descriptors are
+ * in the cache then reference the same instance. The table is bounded and the
+ * least recently used descriptors are evicted first, so equal descriptors may
+ * still be different objects: they must be compared with equals().
+ * <p>
+ * The shared instances MUST be treated as read-only. They are marked as
+ * shared (see {@link BGP4TLVFormat#isShared()}) and the NLRIs copy their
+ * bytes instead of encoding them again, so they can be encoded by several
+ * threads at the same time.
+ *
+ * @author ogondio
+ *
+ */
+public class NodeDescriptorsCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 262144;
+
+	private final LinkedHashMap<BytesKey, BGP4TLVFormat> cache;
+
+	private long hits;
+
+	private long misses;
+
+	public NodeDescriptorsCache(){
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries Maximum number of descriptors kept in the cache
+	 */
+	public NodeDescriptorsCache(final int maxEntries){
+		this.cache = new LinkedHashMap<BytesKey, BGP4TLVFormat>(1024, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BytesKey, BGP4TLVFormat> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the canonical Local Node Descriptors TLV encoded at the given offset,
+	 * decoding it only if it is not already in the cache.
+	 * @param bytes Bytes of the NLRI
+	 * @param offset Offset of the TLV
+	 * @return Canonical Local Node Descriptors
+	 */
+	public synchronized LocalNodeDescriptorsTLV getLocalNodeDescriptors(byte[] bytes, int offset){
+		BGP4TLVFormat tlv = lookup(bytes, offset);
+		if (tlv instanceof LocalNodeDescriptorsTLV){
+			return (LocalNodeDescriptorsTLV) tlv;
+		}
+		LocalNodeDescriptorsTLV lnd = new LocalNodeDescriptorsTLV(bytes, offset);
+		store(lnd);
+		return lnd;
+	}
+
+	/**
+	 * Gets the canonical Remote Node Descriptors TLV encoded at the given offset,
+	 * decoding it only if it is not already in the cache.
+	 * @param bytes Bytes of the NLRI
+	 * @param offset Offset of the TLV
+	 * @return Canonical Remote Node Descriptors
+	 */
+	public synchronized RemoteNodeDescriptorsTLV getRemoteNodeDescriptors(byte[] bytes, int offset){
+		BGP4TLVFormat tlv = lookup(bytes, offset);
+		if (tlv instanceof RemoteNodeDescriptorsTLV){
+			return (RemoteNodeDescriptorsTLV) tlv;
+		}
+		RemoteNodeDescriptorsTLV rnd = new RemoteNodeDescriptorsTLV(bytes, offset);
+		store(rnd);
+		return rnd;
+	}
+
+	/**
+	 * Returns the canonical instance of an already built Local Node Descriptors TLV.
+	 * The TLV must be encoded.
+	 * @param lnd Local Node Descriptors
+	 * @return Canonical instance
+	 */
+	public synchronized LocalNodeDescriptorsTLV intern(LocalNodeDescriptorsTLV lnd){
+		BGP4TLVFormat tlv = lookup(lnd.getTlv_bytes(), 0);
+		if (tlv instanceof LocalNodeDescriptorsTLV){
+			return (LocalNodeDescriptorsTLV) tlv;
+		}
+		store(lnd);
+		return lnd;
+	}
+
+	/**
+	 * Returns the canonical instance of an already built Remote Node Descriptors TLV.
+	 * The TLV must be encoded.
+	 * @param rnd Remote Node Descriptors
+	 * @return Canonical instance
+	 */
+	public synchronized RemoteNodeDescriptorsTLV intern(RemoteNodeDescriptorsTLV rnd){
+		BGP4TLVFormat tlv = lookup(rnd.getTlv_bytes(), 0);
+		if (tlv instanceof RemoteNodeDescriptorsTLV){
+			return (RemoteNodeDescriptorsTLV) tlv;
+		}
+		store(rnd);
+		return rnd;
+	}
+
+	private BGP4TLVFormat lookup(byte[] bytes, int offset){
+		BGP4TLVFormat tlv = cache.get(new BytesKey(bytes, offset, BGP4TLVFormat.getTotalTLVLength(bytes, offset)));
+		if (tlv != null){
+			hits++;
+		}else {
+			misses++;
+		}
+		return tlv;
+	}
+
+	private void store(BGP4TLVFormat tlv){
+		tlv.setShared();
+		//The key references the bytes of the TLV, not the bytes of the message
+		cache.put(new BytesKey(tlv.getTlv_bytes(), 0, tlv.getTotalTLVLength()), tlv);
+	}
+
+	public synchronized int size(){
+		return cache.size();
+	}
+
+	public synchronized void clear(){
+		cache.clear();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
@@ -24,14 +24,16 @@ public class IPReachabilityInformationPrefixDescriptorSubTLV extends
 
 	@Override
 	public void encode() {
-		int len = 1+prefix_length;
+		//The prefix length is in bits, only the significant octets of the prefix are encoded
+		int prefixBytes = (prefix_length+7)/8;
+		int len = 1+prefixBytes;
 		this.setTLVValueLength(len);		
 		this.setTlv_bytes(new byte[this.getTotalTLVLength()]);		
 		encodeHeader();
 		int offset = 4;
 		this.tlv_bytes[offset] = (byte)prefix_length;
 		offset+=1;
-		System.arraycopy(ipv4Address.getAddress(),0, this.tlv_bytes, offset, prefix_length);
+		System.arraycopy(ipv4Address.getAddress(),0, this.tlv_bytes, offset, prefixBytes);
 		
 	}
 	
@@ -43,7 +45,7 @@ public class IPReachabilityInformationPrefixDescriptorSubTLV extends
 			for(int i = 0;i<address.length;i++){
 				address[i]=0;
 			}
-			System.arraycopy(this.tlv_bytes,offset, address, 0, prefix_length);
+			System.arraycopy(this.tlv_bytes,offset, address, 0, Math.min((prefix_length+7)/8, address.length));
 		try {
 				ipv4Address= (Inet4Address) Inet4Address.getByAddress(address);
 		} catch (UnknownHostException e) {
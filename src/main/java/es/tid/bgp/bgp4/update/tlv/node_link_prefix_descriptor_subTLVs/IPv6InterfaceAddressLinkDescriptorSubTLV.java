@@ -1,24 +1,116 @@
 package es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs;
 
+import java.net.Inet6Address;
+
 import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
+import es.tid.protocol.commons.ByteHandler;
+
+/**
+ * IPv6 Interface Address (RFC 7752, Section 3.2.2, Type 261)
+ * <p>
+ * RFC 6119        IPv6 Traffic Engineering in IS-IS     February 2011
+ * <p>
+ * This sub-TLV contains a 16-octet IPv6 address for the interface
+ * described by the containing Extended IS Reachability TLV. This
+ * sub-TLV can occur multiple times.
+ * <p>
+ * The address is stored as two longs (the 64 high order and the 64 low
+ * order bits), the Inet6Address is only created when it is requested.
+ *
+ * @author ogondio
+ *
+ */
+public class IPv6InterfaceAddressLinkDescriptorSubTLV extends BGP4TLVFormat{
+
+	private long addressHigh;
+
+	private long addressLow;
 
-public class IPv6InterfaceAddressLinkDescriptorSubTLV extends  BGP4TLVFormat{
 	public IPv6InterfaceAddressLinkDescriptorSubTLV(){
 		super();
 		this.setTLVType(LinkDescriptorSubTLVTypes.LINK_DESCRIPTOR_SUB_TLV_TYPE_IPv6INTERFACE);
 	}
-	
-	
-	public IPv6InterfaceAddressLinkDescriptorSubTLV(byte []bytes, int offset) {		
+
+
+	public IPv6InterfaceAddressLinkDescriptorSubTLV(byte []bytes, int offset) {
 		super(bytes, offset);
 		decode();
 	}
+
 	@Override
 	public void encode() {
-		// TODO Auto-generated method stub
-		
+		this.setTLVValueLength(16);
+		this.setTlv_bytes(new byte[this.getTotalTLVLength()]);
+		encodeHeader();
+		ByteHandler.encode8bytesLong(addressHigh, this.tlv_bytes, 4);
+		ByteHandler.encode8bytesLong(addressLow, this.tlv_bytes, 12);
 	}
+
 	public void decode(){
-		
+		if (this.getTLVValueLength()!=16){
+			log.warn("IPv6InterfaceAddress with wrong length: "+this.getTLVValueLength());
+			return;
+		}
+		addressHigh=ByteHandler.decode8bytesLong(this.tlv_bytes, 4);
+		addressLow=ByteHandler.decode8bytesLong(this.tlv_bytes, 12);
+	}
+
+	public Inet6Address getIpv6Address() {
+		return ByteHandler.toInet6Address(addressHigh, addressLow);
+	}
+
+	public void setIpv6Address(Inet6Address ipv6Address) {
+		byte[] address=ipv6Address.getAddress();
+		this.addressHigh=ByteHandler.decode8bytesLong(address, 0);
+		this.addressLow=ByteHandler.decode8bytesLong(address, 8);
+	}
+
+	/**
+	 * @return 64 high order bits of the address
+	 */
+	public long getAddressHigh() {
+		return addressHigh;
+	}
+
+	public void setAddressHigh(long addressHigh) {
+		this.addressHigh = addressHigh;
+	}
+
+	/**
+	 * @return 64 low order bits of the address
+	 */
+	public long getAddressLow() {
+		return addressLow;
+	}
+
+	public void setAddressLow(long addressLow) {
+		this.addressLow = addressLow;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (addressHigh ^ (addressHigh >>> 32));
+		result = prime * result + (int) (addressLow ^ (addressLow >>> 32));
+		return result;
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IPv6InterfaceAddressLinkDescriptorSubTLV other = (IPv6InterfaceAddressLinkDescriptorSubTLV) obj;
+		return addressHigh == other.addressHigh && addressLow == other.addressLow;
+	}
+
+	@Override
+	public String toString() {
+		return "IPv6InterfaceAddress [ipv6Address=" + getIpv6Address().getHostAddress() + "]";
+	}
+
 }
@@ -1,37 +1,125 @@
 package es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.net.Inet6Address;
+
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.LinkStateAttributeTLVTypes;
+import es.tid.protocol.commons.ByteHandler;
 
 /**
- *  Campo del Node Descriptor Sub TLV
+ *  IPv6 Router-ID (RFC 6119, carried in BGP-LS as the TLVs 1029 and 1031
+ *  of RFC 7752)
  *  
  *  IPv6 Router ID:  opaque value (can be an IPv6 address or 128 Bit
       router ID) followed by a LAN-ID octet in case LAN "Pseudonode"
       information gets advertised.  The PSN octet must be zero for non-
       LAN "Pseudonodes".
-      
+ * <p>
+ * The router ID is stored as two longs (the 64 high order and the 64 low
+ * order bits), the Inet6Address is only created when it is requested.
+ *
  * @author mcs
  *
  */
 public class IPv6RouterIDSubTLV extends NodeDescriptorsSubTLV{
 
-  private static Logger log = LoggerFactory.getLogger("BGP4Parser");
+	private long routerIDHigh;
+
+	private long routerIDLow;
+
+	/**
+	 * Creates an IPv6 Router-ID of the local node
+	 */
+	public IPv6RouterIDSubTLV(){
+		this(LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_LOCAL_NODE);
+	}
 
-  public IPv6RouterIDSubTLV(){
+	/**
+	 * @param type LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_LOCAL_NODE or LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_REMOTE_NODE
+	 */
+	public IPv6RouterIDSubTLV(int type){
 		super();
-		//this.setSubTLVType(NodeDescriptorsSubTLVTypes.BGP4_SUBTLV_TYPE_IPV6);
+		this.setSubTLVType(type);
 	}
+
 	public IPv6RouterIDSubTLV(byte [] bytes, int offset){
-		//super(bytes, offset);
+		super(bytes, offset);
 		decode();
 	}
+
 	@Override
 	public void encode() {
-		// TODO Auto-generated method stub
-		
+		this.setSubTLVValueLength(16);
+		this.subtlv_bytes=new byte[this.getTotalSubTLVLength()];
+		encodeHeader();
+		ByteHandler.encode8bytesLong(routerIDHigh, this.subtlv_bytes, 4);
+		ByteHandler.encode8bytesLong(routerIDLow, this.subtlv_bytes, 12);
 	}
+
 	public void decode(){
-		
+		if (this.getSubTLVValueLength()<16){
+			log.warn("IPv6 Router-ID with wrong length: "+this.getSubTLVValueLength());
+			return;
+		}
+		routerIDHigh=ByteHandler.decode8bytesLong(this.subtlv_bytes, 4);
+		routerIDLow=ByteHandler.decode8bytesLong(this.subtlv_bytes, 12);
+	}
+
+	public Inet6Address getIpv6RouterID() {
+		return ByteHandler.toInet6Address(routerIDHigh, routerIDLow);
+	}
+
+	public void setIpv6RouterID(Inet6Address routerID) {
+		byte[] address=routerID.getAddress();
+		this.routerIDHigh=ByteHandler.decode8bytesLong(address, 0);
+		this.routerIDLow=ByteHandler.decode8bytesLong(address, 8);
+	}
+
+	/**
+	 * @return 64 high order bits of the router ID
+	 */
+	public long getRouterIDHigh() {
+		return routerIDHigh;
+	}
+
+	public void setRouterIDHigh(long routerIDHigh) {
+		this.routerIDHigh = routerIDHigh;
+	}
+
+	/**
+	 * @return 64 low order bits of the router ID
+	 */
+	public long getRouterIDLow() {
+		return routerIDLow;
+	}
+
+	public void setRouterIDLow(long routerIDLow) {
+		this.routerIDLow = routerIDLow;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + SubTLVType;
+		result = prime * result + (int) (routerIDHigh ^ (routerIDHigh >>> 32));
+		result = prime * result + (int) (routerIDLow ^ (routerIDLow >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IPv6RouterIDSubTLV other = (IPv6RouterIDSubTLV) obj;
+		return SubTLVType == other.SubTLVType && routerIDHigh == other.routerIDHigh && routerIDLow == other.routerIDLow;
+	}
+
+	@Override
+	public String toString() {
+		return "IPv6RouterID [routerID=" + getIpv6RouterID().getHostAddress() + "]";
 	}
 }
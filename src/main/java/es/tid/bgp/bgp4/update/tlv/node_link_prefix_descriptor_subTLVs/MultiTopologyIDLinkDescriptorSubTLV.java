@@ -5,7 +5,7 @@ import es.tid.bgp.bgp4.update.tlv.BGP4TLVFormat;
 /**
  * 3.2.2.1.  Multi Topology ID TLV
 
-   The Multi Topology ID TLV (Type 268) carries the Multi Topology ID
+   The Multi Topology ID TLV (Type 263) carries the Multi Topology ID
    for this link.  The semantics of the Multi Topology ID are defined in
    RFC5120, Section 7.2 [RFC5120], and the OSPF Multi Topology ID),
    defined in RFC4915, Section 3.7 [RFC4915].  If the value in the Multi
@@ -59,14 +59,20 @@ public class MultiTopologyIDLinkDescriptorSubTLV extends BGP4TLVFormat{
 	}
 	@Override
 	public void encode() {
-		log.debug("Encode MultiTopologyIDTLV TBD");
-	
-		
+		this.setTLVValueLength(2);
+		this.setTlv_bytes(new byte[this.getTotalTLVLength()]);
+		encodeHeader();
+		this.tlv_bytes[4]=(byte)(multitopologyID>>>8 & 0x0F);
+		this.tlv_bytes[5]=(byte)(multitopologyID & 0xFF);
 	}
 
 	public void decode(){
-		log.debug("Decoding MultiTopologyIDTLV TBD");
-		
+		if (this.getTLVValueLength()<2){
+			log.warn("MultiTopologyIDTLV with wrong length: "+this.getTLVValueLength());
+			return;
+		}
+		//A Link Descriptor carries one MT-ID, the first one is taken
+		multitopologyID=((this.tlv_bytes[4]&0x0F)<<8) | (this.tlv_bytes[5]&0xFF);
 	}
 	public int getMultitopologyID() {
 		return multitopologyID;
@@ -74,6 +80,11 @@ public class MultiTopologyIDLinkDescriptorSubTLV extends BGP4TLVFormat{
 	public void setMultitopologyID(int multitopologyID) {
 		this.multitopologyID = multitopologyID;
 	}
+
+	@Override
+	public String toString() {
+		return "MultiTopologyID [multitopologyID=" + multitopologyID + "]";
+	}
 	
 	
 
@@ -0,0 +1,112 @@
+package es.tid.pce.pcep.computation;
+
+import java.io.ByteArrayOutputStream;
+
+import es.tid.pce.pcep.constructs.RROBandwidth;
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.objects.Metric;
+import es.tid.pce.pcep.objects.PCEPObject;
+import es.tid.pce.pcep.objects.RequestParameters;
+import es.tid.pce.pcep.objects.tlvs.PathSetupTLV;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Canonical key of the constraints of a path computation request: two
+ * requests with the same key get the same path.
+ * <p>
+ * The key is made of the encoded END-POINTS, BANDWIDTH, METRIC (in order),
+ * LSPA, IRO, XRO, OF, RRO, BANDWIDTH of the RRO, LOAD-BALANCING,
+ * INTER-LAYER, SWITCH-LAYER, REQ-ADAP-CAP and RESERVATION objects of the
+ * request, with the P and I flags of the object headers cleared, and the
+ * B, L, R, O, F, N and E flags and the PATH-SETUP-TYPE TLV of the RP object.
+ * The Request-ID-number, the priority and the maximum request time are not
+ * part of the key.
+ *
+ * @author ogondio
+ *
+ */
+public final class ConstraintKey {
+
+	private static final int FLAG_BIDIRECTIONAL = 0x01;
+
+	private static final int FLAG_LOOSE = 0x02;
+
+	private static final int FLAG_REOPT = 0x04;
+
+	private static final int FLAG_SUPPLY_OF = 0x08;
+
+	private static final int FLAG_F = 0x10;
+
+	private static final int FLAG_N = 0x20;
+
+	private static final int FLAG_E = 0x40;
+
+	private ConstraintKey(){
+	}
+
+	/**
+	 * @param request Decoded request
+	 * @return Key of the constraints of the request
+	 */
+	public static BytesKey getKey(Request request){
+		ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+		int flags = 0;
+		RequestParameters rp = request.getRequestParameters();
+		if (rp != null){
+			flags |= rp.isBidirect() ? FLAG_BIDIRECTIONAL : 0;
+			flags |= rp.isLoose() ? FLAG_LOOSE : 0;
+			flags |= rp.isReopt() ? FLAG_REOPT : 0;
+			flags |= rp.isSupplyOF() ? FLAG_SUPPLY_OF : 0;
+			flags |= rp.isFbit() ? FLAG_F : 0;
+			flags |= rp.isNbit() ? FLAG_N : 0;
+			flags |= rp.isEbit() ? FLAG_E : 0;
+		}
+		out.write(flags);
+		if (rp != null && rp.getPathSetupTLV() != null){
+			PathSetupTLV pathSetup = rp.getPathSetupTLV();
+			if (pathSetup.getTlv_bytes() == null){
+				pathSetup.encode();
+			}
+			out.write(pathSetup.getTlv_bytes(), 0, pathSetup.getTotalTLVLength());
+		}
+		append(out, request.getEndPoints());
+		append(out, request.getBandwidth());
+		if (request.getMetricList() != null){
+			for (Metric metric : request.getMetricList()){
+				append(out, metric);
+			}
+		}
+		append(out, request.getLSPA());
+		append(out, request.getIRO());
+		append(out, request.getXro());
+		append(out, request.getObjectiveFunction());
+		RROBandwidth rroBandwidth = request.getRROBandwidth();
+		if (rroBandwidth != null){
+			append(out, rroBandwidth.getRRO());
+			append(out, rroBandwidth.getBandwidth());
+		}
+		append(out, request.getLoadBalancing());
+		append(out, request.getInterLayer());
+		append(out, request.getSwitchLayer());
+		append(out, request.getReqAdapCap());
+		append(out, request.getReservation());
+		return new BytesKey(out.toByteArray());
+	}
+
+	private static void append(ByteArrayOutputStream out, PCEPObject object){
+		if (object == null){
+			return;
+		}
+		byte[] bytes = object.getObject_bytes();
+		if (bytes == null){
+			object.encode();
+			bytes = object.getObject_bytes();
+		}
+		int length = object.getLength();
+		out.write(bytes[0]);
+		//Processing rule (P) and ignore (I) flags do not change the path
+		out.write(bytes[1] & 0xFC);
+		out.write(bytes, 2, length - 2);
+	}
+
+}
@@ -0,0 +1,21 @@
+package es.tid.pce.pcep.computation;
+
+import es.tid.pce.pcep.constructs.Response;
+
+/**
+ * Receiver of the requests discarded by a {@link RequestScheduler} because
+ * their maximum request time passed while they were waiting.
+ *
+ * @author ogondio
+ *
+ */
+public interface ExpiredRequestHandler {
+
+	/**
+	 * Called for each expired request, to send the response to the PCC
+	 * @param request Expired request
+	 * @param response NO-PATH response for the request
+	 */
+	public void requestExpired(ScheduledRequest request, Response response);
+
+}
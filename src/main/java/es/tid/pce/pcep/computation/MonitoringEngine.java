@@ -0,0 +1,168 @@
+package es.tid.pce.pcep.computation;
+
+import java.util.concurrent.TimeUnit;
+
+import es.tid.pce.pcep.constructs.MetricPCE;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.messages.PCEPMonRep;
+import es.tid.pce.pcep.messages.PCEPMonReq;
+import es.tid.pce.pcep.messages.PCEPRequest;
+import es.tid.pce.pcep.objects.Monitoring;
+import es.tid.pce.pcep.objects.Overload;
+import es.tid.pce.pcep.objects.PceId;
+import es.tid.pce.pcep.objects.ProcTime;
+import es.tid.pce.pcep.objects.RequestParameters;
+
+/**
+ * PCEP monitoring (RFC 5886) of a PCE, from the processing times measured
+ * by the PCE itself.
+ * <p>
+ * The PCE records the processing time of each request with
+ * {@link #recordProcessingTime(long)}. The times are kept in a
+ * {@link ProcessingTimeStatistics}, and given in the PROC-TIME objects in
+ * milliseconds: current (the last request, or the request being answered),
+ * minimum, maximum, average and variance. The OVERLOAD object is taken from
+ * the {@link OverloadController}, if there is one.
+ * <p>
+ * The monitoring data is sent in PCMonRep messages, as the answer of an
+ * out-of-band PCMonReq ({@link #processMonReq(PCEPMonReq)}), or in the
+ * responses of a PCReq with a MONITORING object (in-band, see
+ * {@link #addMonitoring(PCEPRequest, Response, long)}). In both cases the
+ * PROC-TIME is included if the P bit of the MONITORING object is set, and the
+ * OVERLOAD if the O bit is set and the PCE is overloaded.
+ *
+ * @author ogondio
+ *
+ */
+public class MonitoringEngine {
+
+	private static final long MAX_VALUE = 0xFFFFFFFFL;
+
+	private final PceId pceId;
+
+	private final OverloadController overloadController;
+
+	private final ProcessingTimeStatistics statistics = new ProcessingTimeStatistics();
+
+	/**
+	 * @param pceId Identifier of the PCE, sent in the metric-pce
+	 * @param overloadController Overload state of the PCE, null if it is not known
+	 */
+	public MonitoringEngine(PceId pceId, OverloadController overloadController){
+		this.pceId = pceId;
+		this.overloadController = overloadController;
+	}
+
+	/**
+	 * Records the processing time of a request
+	 * @param time Time from the reception of the request to the response, in nanoseconds
+	 */
+	public void recordProcessingTime(long time){
+		statistics.record(time);
+	}
+
+	/**
+	 * Answers an out-of-band monitoring request
+	 * @param request PCMonReq received
+	 * @return PCMonRep with the monitoring data requested
+	 */
+	public PCEPMonRep processMonReq(PCEPMonReq request){
+		PCEPMonRep reply = new PCEPMonRep();
+		reply.setMonitoring(createMonitoring(request.getMonitoring()));
+		reply.setPccReqId(request.getPccReqId());
+		if (request.getRequestList() != null && !request.getRequestList().isEmpty()){
+			RequestParameters rp = request.getRequestList().get(0).getRequestParameters();
+			if (rp != null){
+				RequestParameters replyRP = new RequestParameters();
+				replyRP.setRequestID(rp.getRequestID());
+				reply.setRP(replyRP);
+			}
+		}
+		MetricPCE metricPCE = createMetricPCE(request.getMonitoring(), statistics.getLast());
+		if (metricPCE != null){
+			reply.getMetricPCEList().add(metricPCE);
+		}
+		return reply;
+	}
+
+	/**
+	 * Adds the monitoring data to the response of a request of a PCReq with
+	 * a MONITORING object (in-band monitoring). Nothing is added if the
+	 * message has no MONITORING object.
+	 * @param message PCReq of the request
+	 * @param response Response to the request
+	 * @param processingTime Processing time of the request, in nanoseconds
+	 */
+	public void addMonitoring(PCEPRequest message, Response response, long processingTime){
+		if (message.getMonitoring() == null){
+			return;
+		}
+		response.setMonitoring(createMonitoring(message.getMonitoring()));
+		response.setPccIdreq(message.getPccReqId());
+		MetricPCE metricPCE = createMetricPCE(message.getMonitoring(), processingTime);
+		if (metricPCE != null){
+			response.getMetricPCEList().add(metricPCE);
+		}
+	}
+
+	/**
+	 * Creates the metric-pce of this PCE
+	 * @param monitoring MONITORING object of the request
+	 * @param current Current processing time, in nanoseconds
+	 * @return metric-pce with the objects requested, null if none is requested
+	 */
+	public MetricPCE createMetricPCE(Monitoring monitoring, long current){
+		if (monitoring == null || !(monitoring.isProcessingTimeBit() || monitoring.isOverloadBit())){
+			return null;
+		}
+		MetricPCE metricPCE = new MetricPCE();
+		metricPCE.setPceId(pceId);
+		if (monitoring.isProcessingTimeBit()){
+			metricPCE.setProcTime(getProcTime(current));
+		}
+		if (monitoring.isOverloadBit() && overloadController != null && overloadController.isOverloaded()){
+			Overload overload = new Overload();
+			overload.setOverloadDuration((int)Math.min(overloadController.getEstimatedDuration(), 0xFFFF));
+			metricPCE.setOverload(overload);
+		}
+		return metricPCE;
+	}
+
+	/**
+	 * @param current Current processing time, in nanoseconds
+	 * @return PROC-TIME object with the statistics of the processing times
+	 */
+	public ProcTime getProcTime(long current){
+		ProcTime procTime = new ProcTime();
+		synchronized (statistics){
+			procTime.setCurrentProcessingTime(toMillis(current));
+			procTime.setMinProcessingTime(toMillis(statistics.getMin()));
+			procTime.setMaxProcessingTime(toMillis(statistics.getMax()));
+			procTime.setAverageProcessingTime(toMillis(Math.round(statistics.getMean())));
+			double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+			procTime.setVarianceProcessingTime(Math.min(Math.round(statistics.getVariance() / (nanosPerMilli * nanosPerMilli)), MAX_VALUE));
+		}
+		return procTime;
+	}
+
+	private static long toMillis(long nanos){
+		return Math.min(TimeUnit.NANOSECONDS.toMillis(nanos), MAX_VALUE);
+	}
+
+	private static Monitoring createMonitoring(Monitoring request){
+		Monitoring monitoring = new Monitoring();
+		if (request != null){
+			monitoring.setMonitoringIdNumber(request.getMonitoringIdNumber());
+			monitoring.setLivenessBit(request.isLivenessBit());
+			monitoring.setGeneralBit(request.isGeneralBit());
+			monitoring.setProcessingTimeBit(request.isProcessingTimeBit());
+			monitoring.setOverloadBit(request.isOverloadBit());
+		}
+		return monitoring;
+	}
+
+	public ProcessingTimeStatistics getStatistics(){
+		return statistics;
+	}
+
+}
@@ -0,0 +1,206 @@
+package es.tid.pce.pcep.computation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.pce.pcep.constructs.Notify;
+import es.tid.pce.pcep.messages.PCEPNotification;
+import es.tid.pce.pcep.objects.Notification;
+import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.tlvs.OverloadedDurationTLV;
+
+/**
+ * Detection of the overloaded state of the PCE from the depth of the queue
+ * of requests and the time that the requests wait in it.
+ * <p>
+ * As recommended by RFC 5440, it uses two thresholds of each measure to
+ * avoid oscillations: the PCE becomes overloaded when the queue depth or
+ * the waiting time reach the high threshold, and the overload is cleared
+ * only when both are at or below the low thresholds. The waiting time is
+ * smoothed (moving average with weight 1/8) so an isolated slow request
+ * does not change the state, and the state is kept at least the hold time
+ * after each change to pace the notifications.
+ * <p>
+ * Each change of state is given to the {@link OverloadNotificationHandler}
+ * as a PCNtf with Notification-type=2 (Overloaded PCE): value 1 with an
+ * OVERLOADED-DURATION TLV, the estimated waiting time rounded up to
+ * seconds, when the PCE becomes overloaded, and value 2 when the overload
+ * is cleared.
+ *
+ * @author ogondio
+ *
+ */
+public class OverloadController {
+
+	private static final Logger log = LoggerFactory.getLogger("PCEPParser");
+
+	private final OverloadNotificationHandler handler;
+
+	private final int highQueueDepth;
+
+	private final int lowQueueDepth;
+
+	private final long highWaitTime;
+
+	private final long lowWaitTime;
+
+	private final long holdTime;
+
+	private boolean overloaded;
+
+	private long smoothedWaitTime;
+
+	private long lastChange;
+
+	private long overloadNotifications;
+
+	private long clearedNotifications;
+
+	/**
+	 * @param handler Receiver of the notifications
+	 * @param highQueueDepth Queue depth at which the PCE becomes overloaded
+	 * @param lowQueueDepth Queue depth at or below which the overload can be cleared
+	 * @param highWaitTime Smoothed waiting time at which the PCE becomes overloaded
+	 * @param lowWaitTime Smoothed waiting time at or below which the overload can be cleared
+	 * @param holdTime Minimum time between changes of state
+	 * @param unit Unit of the times
+	 */
+	public OverloadController(OverloadNotificationHandler handler, int highQueueDepth, int lowQueueDepth, long highWaitTime, long lowWaitTime, long holdTime, TimeUnit unit){
+		if (lowQueueDepth > highQueueDepth || lowWaitTime > highWaitTime){
+			throw new IllegalArgumentException("The low thresholds must not be above the high thresholds");
+		}
+		this.handler = handler;
+		this.highQueueDepth = highQueueDepth;
+		this.lowQueueDepth = lowQueueDepth;
+		this.highWaitTime = unit.toNanos(highWaitTime);
+		this.lowWaitTime = unit.toNanos(lowWaitTime);
+		this.holdTime = unit.toNanos(holdTime);
+		this.lastChange = System.nanoTime() - this.holdTime;
+	}
+
+	/**
+	 * Updates the state with the measures of a scheduler: the number of
+	 * requests waiting and the time that the request at the head of the
+	 * queue has been waiting (0 when the queue is empty, so an idle queue
+	 * clears the overload). It can be called after each request taken or
+	 * periodically.
+	 * @param scheduler Queue of requests of the PCE
+	 * @return true if the PCE is overloaded
+	 */
+	public boolean update(RequestScheduler scheduler){
+		return update(scheduler.size(), scheduler.getHeadWaitTime());
+	}
+
+	/**
+	 * Updates the state with a new measure
+	 * @param queueDepth Number of requests waiting
+	 * @param waitTime Time that a request waited in the queue, in nanoseconds
+	 * @return true if the PCE is overloaded
+	 */
+	public boolean update(int queueDepth, long waitTime){
+		PCEPNotification notification = null;
+		boolean state;
+		synchronized (this){
+			long now = System.nanoTime();
+			smoothedWaitTime += (waitTime - smoothedWaitTime) / 8;
+			if (now - lastChange >= holdTime){
+				if (!overloaded && (queueDepth >= highQueueDepth || smoothedWaitTime >= highWaitTime)){
+					overloaded = true;
+					lastChange = now;
+					overloadNotifications++;
+					notification = createOverloadNotification(getEstimatedDuration());
+				} else if (overloaded && queueDepth <= lowQueueDepth && smoothedWaitTime <= lowWaitTime){
+					overloaded = false;
+					lastChange = now;
+					clearedNotifications++;
+					notification = createOverloadClearedNotification();
+				}
+			}
+			state = overloaded;
+		}
+		if (notification != null){
+			log.info("PCE " + (state ? "overloaded" : "no longer overloaded") + ", queue depth " + queueDepth);
+			if (handler != null){
+				try {
+					handler.overloadChanged(notification, state);
+				} catch (RuntimeException e){
+					log.warn("Error sending the overload notification: " + e);
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Creates a PCNtf telling that the PCE is overloaded
+	 * @param duration Estimated duration of the overload, in seconds. No
+	 * OVERLOADED-DURATION TLV is included if it is 0.
+	 * @return Overloaded PCE notification
+	 */
+	public static PCEPNotification createOverloadNotification(long duration){
+		Notification notification = new Notification();
+		notification.setNotificationType(ObjectParameters.PCEP_NOTIFICATION_TYPE_OVERLOADED_PCE);
+		notification.setNotificationValue(ObjectParameters.PCEP_NOTIFICATION_VALUE_OVERLOADED);
+		if (duration > 0){
+			OverloadedDurationTLV odtlv = new OverloadedDurationTLV();
+			odtlv.setOverloadedDuration(duration);
+			notification.setOdtlv(odtlv);
+		}
+		return createNotification(notification);
+	}
+
+	/**
+	 * Creates a PCNtf telling that the PCE is no longer overloaded
+	 * @return Overload cleared notification
+	 */
+	public static PCEPNotification createOverloadClearedNotification(){
+		Notification notification = new Notification();
+		notification.setNotificationType(ObjectParameters.PCEP_NOTIFICATION_TYPE_OVERLOADED_PCE);
+		notification.setNotificationValue(ObjectParameters.PCEP_NOTIFICATION_VALUE_OVERLOAD_CLEARED);
+		return createNotification(notification);
+	}
+
+	private static PCEPNotification createNotification(Notification notification){
+		Notify notify = new Notify();
+		notify.getNotificationList().add(notification);
+		PCEPNotification message = new PCEPNotification();
+		message.addNotify(notify);
+		return message;
+	}
+
+	public synchronized boolean isOverloaded(){
+		return overloaded;
+	}
+
+	/**
+	 * @return Smoothed time that the requests wait in the queue, in nanoseconds
+	 */
+	public synchronized long getSmoothedWaitTime(){
+		return smoothedWaitTime;
+	}
+
+	/**
+	 * @return Estimated duration of the overload: the smoothed waiting time
+	 * rounded up to seconds
+	 */
+	public synchronized long getEstimatedDuration(){
+		return TimeUnit.NANOSECONDS.toSeconds(smoothedWaitTime + TimeUnit.SECONDS.toNanos(1) - 1);
+	}
+
+	/**
+	 * @return Number of overload notifications sent
+	 */
+	public synchronized long getOverloadNotifications(){
+		return overloadNotifications;
+	}
+
+	/**
+	 * @return Number of overload cleared notifications sent
+	 */
+	public synchronized long getClearedNotifications(){
+		return clearedNotifications;
+	}
+
+}
@@ -0,0 +1,21 @@
+package es.tid.pce.pcep.computation;
+
+import es.tid.pce.pcep.messages.PCEPNotification;
+
+/**
+ * Receiver of the overload notifications of an {@link OverloadController},
+ * which sends them to the PCCs.
+ *
+ * @author ogondio
+ *
+ */
+public interface OverloadNotificationHandler {
+
+	/**
+	 * Called when the PCE enters or leaves the overloaded state
+	 * @param notification PCNtf with the Overloaded PCE notification
+	 * @param overloaded true if the PCE is now overloaded, false if the overload is cleared
+	 */
+	public void overloadChanged(PCEPNotification notification, boolean overloaded);
+
+}
@@ -0,0 +1,309 @@
+package es.tid.pce.pcep.computation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.pce.pcep.PCEPProtocolViolationException;
+import es.tid.pce.pcep.constructs.Path;
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.protocol.commons.BytesKey;
+import es.tid.rsvp.objects.subobjects.EROSubobject;
+import es.tid.rsvp.objects.subobjects.IPv4prefixEROSubobject;
+import es.tid.rsvp.objects.subobjects.UnnumberIfIDEROSubobject;
+
+/**
+ * Cache of the results of the path computation, keyed by the
+ * {@link ConstraintKey} of the request.
+ * <p>
+ * A result is kept encoded, with the version of the topology database used
+ * to compute it and the links of its paths. The links are identified by the
+ * addresses of the IPv4 subobjects of the EROs (Inet4Address) and by
+ * "router-id/interface-id" for the unnumbered subobjects, or given by the
+ * caller. A hit is decoded again on every lookup, so the caller gets a
+ * response of its own, with the Request-ID-number of the new request (see
+ * {@link RequestCoalescer#createResponse(byte[], Request)}).
+ * <p>
+ * When a link gets worse (down, less bandwidth) {@link #invalidateLink(Object)}
+ * removes only the results that use it. The changes that can give better
+ * paths to any request (a new link, more bandwidth) must be notified with
+ * {@link #invalidateBefore(long)}, which discards the results computed with
+ * older versions of the topology.
+ * <p>
+ * The entries are evicted in least recently used order when the total
+ * size of the encoded results goes over the byte budget.
+ *
+ * @author ogondio
+ *
+ */
+public class PathCache {
+
+	private static final Logger log = LoggerFactory.getLogger("PCEPParser");
+
+	/**
+	 * Approximate memory of an entry besides the encoded result
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private static final class Entry {
+
+		final BytesKey key;
+
+		final byte[] response;
+
+		final long topologyVersion;
+
+		final Collection<Object> links;
+
+		final int size;
+
+		Entry(BytesKey key, byte[] response, long topologyVersion, Collection<Object> links){
+			this.key = key;
+			this.response = response;
+			this.topologyVersion = topologyVersion;
+			this.links = links;
+			this.size = ENTRY_OVERHEAD + key.getLength() + response.length;
+		}
+	}
+
+	private final LinkedHashMap<BytesKey, Entry> entries = new LinkedHashMap<BytesKey, Entry>(256, 0.75f, true);
+
+	private final HashMap<Object, HashSet<BytesKey>> entriesByLink = new HashMap<Object, HashSet<BytesKey>>();
+
+	private final long maxBytes;
+
+	private long bytes;
+
+	/**
+	 * Results computed with a lower version are not valid
+	 */
+	private long minimumVersion;
+
+	private long hits;
+
+	private long misses;
+
+	private long invalidations;
+
+	private long evictions;
+
+	/**
+	 * @param maxBytes Budget of memory of the cache, in bytes
+	 */
+	public PathCache(long maxBytes){
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Looks for the result of a request with the same constraints
+	 * @param request Request
+	 * @return Response to the request, null if there is no valid result
+	 */
+	public Response get(Request request){
+		BytesKey key = ConstraintKey.getKey(request);
+		byte[] encoded;
+		synchronized (this){
+			Entry entry = entries.get(key);
+			if (entry != null && entry.topologyVersion < minimumVersion){
+				remove(entry);
+				entry = null;
+			}
+			if (entry == null){
+				misses++;
+				return null;
+			}
+			hits++;
+			encoded = entry.response;
+		}
+		try {
+			return RequestCoalescer.createResponse(encoded, request);
+		} catch (PCEPProtocolViolationException e){
+			log.warn("PathCache: cached response could not be decoded");
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the result of a request, with the links of its EROs
+	 * @param request Request
+	 * @param response Result of the computation
+	 * @param topologyVersion Version of the topology used to compute the result
+	 * @throws PCEPProtocolViolationException if the response can not be encoded
+	 */
+	public void put(Request request, Response response, long topologyVersion) throws PCEPProtocolViolationException{
+		put(request, response, topologyVersion, getLinks(response));
+	}
+
+	/**
+	 * Stores the result of a request
+	 * @param request Request
+	 * @param response Result of the computation
+	 * @param topologyVersion Version of the topology used to compute the result
+	 * @param links Identifiers of the links used by the result
+	 * @throws PCEPProtocolViolationException if the response can not be encoded
+	 */
+	public void put(Request request, Response response, long topologyVersion, Collection<Object> links) throws PCEPProtocolViolationException{
+		BytesKey key = ConstraintKey.getKey(request);
+		response.encode();
+		byte[] encoded = new byte[response.getLength()];
+		System.arraycopy(response.getBytes(), 0, encoded, 0, encoded.length);
+		Entry entry = new Entry(key, encoded, topologyVersion, new ArrayList<Object>(links));
+		synchronized (this){
+			if (topologyVersion < minimumVersion || entry.size > maxBytes){
+				return;
+			}
+			Entry previous = entries.get(key);
+			if (previous != null){
+				remove(previous);
+			}
+			entries.put(key, entry);
+			bytes += entry.size;
+			for (Object link : entry.links){
+				HashSet<BytesKey> keys = entriesByLink.get(link);
+				if (keys == null){
+					keys = new HashSet<BytesKey>();
+					entriesByLink.put(link, keys);
+				}
+				keys.add(key);
+			}
+			Iterator<Entry> it = entries.values().iterator();
+			while (bytes > maxBytes && it.hasNext()){
+				Entry eldest = it.next();
+				it.remove();
+				unlink(eldest);
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the results that use a link
+	 * @param link Identifier of the link
+	 * @return Number of results removed
+	 */
+	public synchronized int invalidateLink(Object link){
+		HashSet<BytesKey> keys = entriesByLink.get(link);
+		if (keys == null){
+			return 0;
+		}
+		int removed = 0;
+		for (BytesKey key : new ArrayList<BytesKey>(keys)){
+			Entry entry = entries.get(key);
+			if (entry != null){
+				remove(entry);
+				removed++;
+			}
+		}
+		invalidations += removed;
+		return removed;
+	}
+
+	/**
+	 * Discards all the results computed with a version of the topology lower
+	 * than the given one. The entries are removed when they are looked up or
+	 * evicted.
+	 * @param topologyVersion First valid version
+	 */
+	public synchronized void invalidateBefore(long topologyVersion){
+		if (topologyVersion > minimumVersion){
+			minimumVersion = topologyVersion;
+			invalidations++;
+		}
+	}
+
+	public synchronized void clear(){
+		entries.clear();
+		entriesByLink.clear();
+		bytes = 0;
+	}
+
+	private void remove(Entry entry){
+		entries.remove(entry.key);
+		unlink(entry);
+	}
+
+	private void unlink(Entry entry){
+		bytes -= entry.size;
+		for (Object link : entry.links){
+			HashSet<BytesKey> keys = entriesByLink.get(link);
+			if (keys != null){
+				keys.remove(entry.key);
+				if (keys.isEmpty()){
+					entriesByLink.remove(link);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param response Response with paths
+	 * @return Identifiers of the links of the EROs of the response
+	 */
+	public static List<Object> getLinks(Response response){
+		List<Object> links = new ArrayList<Object>();
+		for (Path path : response.getPathList()){
+			if (path.getEro() == null){
+				continue;
+			}
+			for (EROSubobject subobject : path.getEro().getEROSubobjectList()){
+				if (subobject instanceof IPv4prefixEROSubobject){
+					links.add(((IPv4prefixEROSubobject)subobject).getIpv4address());
+				} else if (subobject instanceof UnnumberIfIDEROSubobject){
+					UnnumberIfIDEROSubobject unnumbered = (UnnumberIfIDEROSubobject)subobject;
+					links.add(unnumbered.getRouterID().getHostAddress() + "/" + unnumbered.getInterfaceID());
+				}
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * @return Number of results in the cache
+	 */
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	/**
+	 * @return Memory used by the results, in bytes
+	 */
+	public synchronized long getBytes(){
+		return bytes;
+	}
+
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * @return Number of results removed by link changes, plus the number of version changes
+	 */
+	public synchronized long getInvalidations(){
+		return invalidations;
+	}
+
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+
+	/**
+	 * @return Ratio of lookups that found a valid result
+	 */
+	public synchronized double getHitRatio(){
+		long lookups = hits + misses;
+		return (lookups == 0) ? 0 : (double)hits / lookups;
+	}
+
+}
@@ -0,0 +1,21 @@
+package es.tid.pce.pcep.computation;
+
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.constructs.Response;
+
+/**
+ * Path computation algorithm of a PCE.
+ *
+ * @author ogondio
+ *
+ */
+public interface PathComputer {
+
+	/**
+	 * Computes the path of a request
+	 * @param request Decoded request
+	 * @return Response with the path or the NO-PATH object
+	 */
+	public Response computePath(Request request);
+
+}
@@ -0,0 +1,99 @@
+package es.tid.pce.pcep.computation;
+
+/**
+ * Streaming statistics of the processing times of the requests: last,
+ * minimum, maximum, mean and variance, updated in constant time and memory
+ * for each sample (Welford's method), without keeping the samples.
+ *
+ * @author ogondio
+ *
+ */
+public class ProcessingTimeStatistics {
+
+	private long count;
+
+	private long last;
+
+	private long min;
+
+	private long max;
+
+	private double mean;
+
+	/**
+	 * Sum of the squares of the differences from the mean
+	 */
+	private double m2;
+
+	/**
+	 * Adds a sample
+	 * @param time Processing time, in nanoseconds
+	 */
+	public synchronized void record(long time){
+		count++;
+		last = time;
+		if (count == 1){
+			min = time;
+			max = time;
+		} else if (time < min){
+			min = time;
+		} else if (time > max){
+			max = time;
+		}
+		double delta = time - mean;
+		mean += delta / count;
+		m2 += delta * (time - mean);
+	}
+
+	public synchronized void reset(){
+		count = 0;
+		last = 0;
+		min = 0;
+		max = 0;
+		mean = 0;
+		m2 = 0;
+	}
+
+	/**
+	 * @return Number of samples
+	 */
+	public synchronized long getCount(){
+		return count;
+	}
+
+	/**
+	 * @return Last processing time, in nanoseconds
+	 */
+	public synchronized long getLast(){
+		return last;
+	}
+
+	/**
+	 * @return Minimum processing time, in nanoseconds
+	 */
+	public synchronized long getMin(){
+		return min;
+	}
+
+	/**
+	 * @return Maximum processing time, in nanoseconds
+	 */
+	public synchronized long getMax(){
+		return max;
+	}
+
+	/**
+	 * @return Mean processing time, in nanoseconds
+	 */
+	public synchronized double getMean(){
+		return mean;
+	}
+
+	/**
+	 * @return Variance of the processing time, in square nanoseconds
+	 */
+	public synchronized double getVariance(){
+		return (count < 2) ? 0 : m2 / count;
+	}
+
+}
@@ -0,0 +1,140 @@
+package es.tid.pce.pcep.computation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import es.tid.pce.pcep.PCEPProtocolViolationException;
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.objects.RequestParameters;
+import es.tid.protocol.commons.BytesKey;
+
+/**
+ * Coalescing of the path computation requests with the same constraints
+ * that arrive while one of them is being computed.
+ * <p>
+ * The first request with a {@link ConstraintKey} is computed by the thread
+ * that calls {@link #compute(Request)}; the requests with the same key that
+ * arrive before the computation ends do not start another computation, but
+ * wait for that one. The result is encoded once and decoded again for each
+ * request, which gets its own {@link Response} with the Request-ID-number
+ * of the request. Once the computation ends the key is forgotten, so the
+ * next request is computed again; the results to be reused later are kept
+ * by {@link PathCache}.
+ *
+ * @author ogondio
+ *
+ */
+public class RequestCoalescer {
+
+	private final PathComputer computer;
+
+	/**
+	 * Encoded results of the computations in progress
+	 */
+	private final ConcurrentHashMap<BytesKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<BytesKey, CompletableFuture<byte[]>>();
+
+	private final AtomicLong computations = new AtomicLong();
+
+	private final AtomicLong coalescedRequests = new AtomicLong();
+
+	/**
+	 * @param computer Path computation algorithm
+	 */
+	public RequestCoalescer(PathComputer computer){
+		this.computer = computer;
+	}
+
+	/**
+	 * Computes the path of a request, or joins the computation of a request
+	 * with the same constraints.
+	 * @param request Decoded request
+	 * @return Future of the response to the request. It is already completed
+	 * when the request has been computed by the calling thread.
+	 */
+	public CompletableFuture<Response> compute(final Request request){
+		BytesKey key = ConstraintKey.getKey(request);
+		Function<byte[], Response> fanOut = new Function<byte[], Response>() {
+			public Response apply(byte[] result) {
+				try {
+					return createResponse(result, request);
+				} catch (PCEPProtocolViolationException e){
+					throw new CompletionException(e);
+				}
+			}
+		};
+		CompletableFuture<byte[]> flight = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null){
+			coalescedRequests.incrementAndGet();
+			return existing.thenApply(fanOut);
+		}
+		computations.incrementAndGet();
+		try {
+			Response result = computer.computePath(request);
+			result.encode();
+			byte[] encoded = new byte[result.getLength()];
+			System.arraycopy(result.getBytes(), 0, encoded, 0, encoded.length);
+			flight.complete(encoded);
+		} catch (Throwable e){
+			flight.completeExceptionally(e);
+		} finally {
+			inFlight.remove(key, flight);
+		}
+		return flight.thenApply(fanOut);
+	}
+
+	/**
+	 * Creates the response to a request from the encoded result of the
+	 * computation of another request with the same constraints. The result
+	 * is decoded again, so the response does not share any object with the
+	 * other responses, and its RP object is the one of the request. The
+	 * MONITORING, PCC-ID-REQ and METRIC-PCE objects belong to the request
+	 * that was computed, and are not copied.
+	 * @param result Encoded response computed
+	 * @param request Request to answer
+	 * @return Response to the request
+	 * @throws PCEPProtocolViolationException if the result can not be decoded
+	 */
+	public static Response createResponse(byte[] result, Request request) throws PCEPProtocolViolationException{
+		Response response = new Response(result, 0);
+		RequestParameters rp = new RequestParameters();
+		RequestParameters requestRP = request.getRequestParameters();
+		if (requestRP != null){
+			rp.setRequestID(requestRP.getRequestID());
+			rp.setBidirect(requestRP.isBidirect());
+			rp.setLoose(requestRP.isLoose());
+			rp.setReopt(requestRP.isReopt());
+		}
+		response.setRequestParameters(rp);
+		response.setMonitoring(null);
+		response.setPccIdreq(null);
+		response.getMetricPCEList().clear();
+		return response;
+	}
+
+	/**
+	 * @return Number of requests being computed
+	 */
+	public int getInFlight(){
+		return inFlight.size();
+	}
+
+	/**
+	 * @return Number of computations run
+	 */
+	public long getComputations(){
+		return computations.get();
+	}
+
+	/**
+	 * @return Number of requests answered with the computation of another request
+	 */
+	public long getCoalescedRequests(){
+		return coalescedRequests.get();
+	}
+
+}
@@ -0,0 +1,284 @@
+package es.tid.pce.pcep.computation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.messages.PCEPRequest;
+import es.tid.pce.pcep.objects.NoPath;
+import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.RequestParameters;
+import es.tid.pce.pcep.objects.tlvs.NoPathTLV;
+
+/**
+ * Queue of the path computation requests received by a PCE, ordered by
+ * priority and deadline instead of by arrival (see {@link ScheduledRequest}).
+ * <p>
+ * The deadline of a request is its arrival plus the time of the
+ * MaxRequestTimeTLV of the RP object, in milliseconds. A request whose
+ * deadline passes while it waits is not given to the computation threads:
+ * it is removed and handed to the {@link ExpiredRequestHandler} with a
+ * NO-PATH response (PCE currently unavailable). The expired requests are
+ * found when they reach the head of the queue, or by
+ * {@link #shedExpired()}.
+ * <p>
+ * The scheduler keeps, for each priority, the number of requests taken and
+ * shed and the time that they waited in the queue.
+ *
+ * @author ogondio
+ *
+ */
+public class RequestScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger("PCEPParser");
+
+	public static final int NUMBER_OF_PRIORITIES = 8;
+
+	private final PriorityQueue<ScheduledRequest> queue = new PriorityQueue<ScheduledRequest>();
+
+	private final ExpiredRequestHandler expiredHandler;
+
+	private long sequence;
+
+	private final long[] takenRequests = new long[NUMBER_OF_PRIORITIES];
+
+	private final long[] shedRequests = new long[NUMBER_OF_PRIORITIES];
+
+	private final long[] waitTime = new long[NUMBER_OF_PRIORITIES];
+
+	private final long[] maxWaitTime = new long[NUMBER_OF_PRIORITIES];
+
+	private long lastWaitTime;
+
+	/**
+	 * @param expiredHandler Receiver of the expired requests
+	 */
+	public RequestScheduler(ExpiredRequestHandler expiredHandler){
+		this.expiredHandler = expiredHandler;
+	}
+
+	/**
+	 * Adds a request to the queue
+	 * @param request Decoded request
+	 * @param session Session of the request, returned with it
+	 * @return The scheduled request
+	 */
+	public ScheduledRequest submit(Request request, Object session){
+		ScheduledRequest scheduled;
+		synchronized (this){
+			scheduled = new ScheduledRequest(request, session, System.nanoTime(), sequence++);
+			queue.add(scheduled);
+			notifyAll();
+		}
+		return scheduled;
+	}
+
+	/**
+	 * Adds all the requests of a PCReq message to the queue
+	 * @param message Decoded PCReq message
+	 * @param session Session of the message
+	 */
+	public void submit(PCEPRequest message, Object session){
+		long now = System.nanoTime();
+		synchronized (this){
+			for (Request request : message.getRequestList()){
+				queue.add(new ScheduledRequest(request, session, now, sequence++));
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Takes the request with the highest priority that has not expired,
+	 * waiting until there is one
+	 * @return Next request to compute
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public ScheduledRequest take() throws InterruptedException{
+		ScheduledRequest request;
+		while ((request = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null){
+		}
+		return request;
+	}
+
+	/**
+	 * Takes the request with the highest priority that has not expired
+	 * @param timeout Maximum time to wait
+	 * @param unit Unit of the timeout
+	 * @return Next request to compute, null if there is none after the timeout
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public ScheduledRequest poll(long timeout, TimeUnit unit) throws InterruptedException{
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		while (true){
+			List<ScheduledRequest> expired = null;
+			ScheduledRequest next = null;
+			boolean timedOut = false;
+			synchronized (this){
+				while (next == null){
+					long now = System.nanoTime();
+					ScheduledRequest head = queue.poll();
+					if (head == null){
+						long remaining = end - now;
+						if (remaining <= 0){
+							timedOut = true;
+							break;
+						}
+						if (expired != null){
+							//Send the NO-PATH of the expired requests out of the lock, then wait again
+							break;
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} else if (head.isExpired(now)){
+						if (expired == null){
+							expired = new ArrayList<ScheduledRequest>();
+						}
+						expired.add(head);
+						shedRequests[head.getPriority()]++;
+					} else {
+						next = head;
+						int prio = next.getPriority();
+						long waited = now - next.getArrivalTime();
+						takenRequests[prio]++;
+						waitTime[prio] += waited;
+						lastWaitTime = waited;
+						if (waited > maxWaitTime[prio]){
+							maxWaitTime[prio] = waited;
+						}
+					}
+				}
+			}
+			if (expired != null){
+				notifyExpired(expired);
+			}
+			if (next != null || timedOut){
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the expired requests of the queue and sends their NO-PATH
+	 * responses. It can be called periodically so the PCCs get the response
+	 * of the expired requests before they reach the head of the queue.
+	 * @return Number of requests removed
+	 */
+	public int shedExpired(){
+		List<ScheduledRequest> expired = new ArrayList<ScheduledRequest>();
+		synchronized (this){
+			long now = System.nanoTime();
+			Iterator<ScheduledRequest> it = queue.iterator();
+			while (it.hasNext()){
+				ScheduledRequest request = it.next();
+				if (request.isExpired(now)){
+					it.remove();
+					expired.add(request);
+					shedRequests[request.getPriority()]++;
+				}
+			}
+		}
+		notifyExpired(expired);
+		return expired.size();
+	}
+
+	private void notifyExpired(List<ScheduledRequest> expired){
+		for (ScheduledRequest request : expired){
+			log.debug("Request " + (request.getRequest().getRequestParameters() == null ? "" : request.getRequest().getRequestParameters().getRequestID()) + " expired in the queue");
+			if (expiredHandler != null){
+				try {
+					expiredHandler.requestExpired(request, createExpiredResponse(request.getRequest()));
+				} catch (RuntimeException e){
+					log.warn("Error sending the response of an expired request: " + e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the response to a request that has not been computed in time:
+	 * a NO-PATH object with the PCE currently unavailable flag.
+	 * @param request Request
+	 * @return NO-PATH response
+	 */
+	public static Response createExpiredResponse(Request request){
+		Response response = new Response();
+		RequestParameters rp = new RequestParameters();
+		if (request.getRequestParameters() != null){
+			rp.setRequestID(request.getRequestParameters().getRequestID());
+			rp.setBidirect(request.getRequestParameters().isBidirect());
+			rp.setReopt(request.getRequestParameters().isReopt());
+			rp.setLoose(request.getRequestParameters().isLoose());
+		}
+		response.setRequestParameters(rp);
+		NoPath noPath = new NoPath();
+		noPath.setNatureOfIssue(ObjectParameters.NOPATH_NOPATH_SAT_CONSTRAINTS);
+		NoPathTLV noPathTLV = new NoPathTLV();
+		noPathTLV.setPCEunavailable(true);
+		noPath.setNoPathTLV(noPathTLV);
+		response.setNoPath(noPath);
+		return response;
+	}
+
+	/**
+	 * @return Number of requests waiting
+	 */
+	public synchronized int size(){
+		return queue.size();
+	}
+
+	/**
+	 * @param priority Priority, 0 to 7
+	 * @return Number of requests of the priority given to the computation
+	 */
+	public synchronized long getTakenRequests(int priority){
+		return takenRequests[priority];
+	}
+
+	/**
+	 * @param priority Priority, 0 to 7
+	 * @return Number of requests of the priority that expired in the queue
+	 */
+	public synchronized long getShedRequests(int priority){
+		return shedRequests[priority];
+	}
+
+	/**
+	 * @param priority Priority, 0 to 7
+	 * @return Average time that the requests of the priority waited in the queue, in nanoseconds
+	 */
+	public synchronized long getAverageWaitTime(int priority){
+		return (takenRequests[priority] == 0) ? 0 : waitTime[priority] / takenRequests[priority];
+	}
+
+	/**
+	 * @param priority Priority, 0 to 7
+	 * @return Maximum time that a request of the priority waited in the queue, in nanoseconds
+	 */
+	public synchronized long getMaxWaitTime(int priority){
+		return maxWaitTime[priority];
+	}
+
+	/**
+	 * @return Time that the request at the head of the queue has been
+	 * waiting, in nanoseconds, 0 if the queue is empty
+	 */
+	public synchronized long getHeadWaitTime(){
+		ScheduledRequest head = queue.peek();
+		return (head == null) ? 0 : System.nanoTime() - head.getArrivalTime();
+	}
+
+	/**
+	 * @return Time that the last request taken waited in the queue, in nanoseconds
+	 */
+	public synchronized long getLastWaitTime(){
+		return lastWaitTime;
+	}
+
+}
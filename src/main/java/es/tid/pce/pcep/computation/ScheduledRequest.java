@@ -0,0 +1,114 @@
+package es.tid.pce.pcep.computation;
+
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.objects.RequestParameters;
+
+/**
+ * Path computation request waiting in a {@link RequestScheduler}.
+ * <p>
+ * The requests are ordered by priority (the Pri field of the RP object,
+ * higher first), then by deadline (earlier first, the requests without
+ * deadline last), then the requests that are not reoptimizations before
+ * the reoptimizations, and last by arrival.
+ *
+ * @author ogondio
+ *
+ */
+public class ScheduledRequest implements Comparable<ScheduledRequest> {
+
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	private final Request request;
+
+	private final Object session;
+
+	private final int priority;
+
+	private final boolean reoptimization;
+
+	private final long arrivalTime;
+
+	private final long deadline;
+
+	private final long sequence;
+
+	ScheduledRequest(Request request, Object session, long arrivalTime, long sequence){
+		this.request = request;
+		this.session = session;
+		this.arrivalTime = arrivalTime;
+		this.sequence = sequence;
+		RequestParameters rp = request.getRequestParameters();
+		if (rp != null){
+			this.priority = rp.getPrio() & 0x07;
+			this.reoptimization = rp.isReopt();
+			if (rp.getMaxRequestTimeTLV() != null){
+				//Maximum request time in milliseconds
+				this.deadline = arrivalTime + rp.getMaxRequestTimeTLV().getMaxRequestTime() * 1000000L;
+			} else {
+				this.deadline = NO_DEADLINE;
+			}
+		} else {
+			this.priority = 0;
+			this.reoptimization = false;
+			this.deadline = NO_DEADLINE;
+		}
+	}
+
+	public int compareTo(ScheduledRequest other) {
+		if (priority != other.priority){
+			return (priority > other.priority) ? -1 : 1;
+		}
+		if (deadline != other.deadline){
+			return (deadline < other.deadline) ? -1 : 1;
+		}
+		if (reoptimization != other.reoptimization){
+			return reoptimization ? 1 : -1;
+		}
+		return Long.compare(sequence, other.sequence);
+	}
+
+	/**
+	 * @param now Current time, from System.nanoTime()
+	 * @return true if the deadline of the request has passed
+	 */
+	public boolean isExpired(long now){
+		return deadline != NO_DEADLINE && now - deadline > 0;
+	}
+
+	public Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return Session that received the request, as given to the scheduler
+	 */
+	public Object getSession() {
+		return session;
+	}
+
+	/**
+	 * @return Priority of the request, 0 to 7
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	public boolean isReoptimization() {
+		return reoptimization;
+	}
+
+	/**
+	 * @return Time of arrival, from System.nanoTime()
+	 */
+	public long getArrivalTime() {
+		return arrivalTime;
+	}
+
+	/**
+	 * @return Deadline of the request, from System.nanoTime(), or NO_DEADLINE
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+}
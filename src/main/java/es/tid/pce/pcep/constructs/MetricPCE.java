@@ -3,6 +3,7 @@ package es.tid.pce.pcep.constructs;
 import es.tid.pce.pcep.PCEPProtocolViolationException;
 import es.tid.pce.pcep.objects.MalformedPCEPObjectException;
 import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.Overload;
 import es.tid.pce.pcep.objects.PCEPObject;
 import es.tid.pce.pcep.objects.PceId;
 import es.tid.pce.pcep.objects.PceIdIPv4;
@@ -26,6 +27,7 @@ public class MetricPCE extends PCEPConstruct{
 
 	private PceId pceId; //Compulsory
 	private ProcTime procTime;//Optional
+	private Overload overload;//Optional
 
 	private static final Logger log= LoggerFactory.getLogger("PCEPParser");
 
@@ -54,6 +56,10 @@ public class MetricPCE extends PCEPConstruct{
 			procTime.encode();
 			len=len+procTime.getLength();
 		}		
+		if (overload!=null){
+			overload.encode();
+			len=len+overload.getLength();
+		}
 		this.setLength(len);
 		bytes=new byte[len];
 		int offset=0;
@@ -64,6 +70,10 @@ public class MetricPCE extends PCEPConstruct{
 			offset=offset+procTime.getLength();
 
 		}
+		if (overload!=null){
+			System.arraycopy(overload.getBytes(), 0, bytes, offset, overload.getLength());
+			offset=offset+overload.getLength();
+		}
 	}
 
 
@@ -101,6 +111,17 @@ public class MetricPCE extends PCEPConstruct{
 			offset=offset+procTime.getLength();
 			len=len+procTime.getLength();
 		}
+		oc=PCEPObject.getObjectClass(bytes, offset);
+		if (oc==ObjectParameters.PCEP_OBJECT_CLASS_OVERLOAD){
+			try {
+				overload=new Overload(bytes,offset);
+			} catch (MalformedPCEPObjectException e) {
+				log.warn("Malformed Overload Object found");
+				throw new PCEPProtocolViolationException();
+			}
+			offset=offset+overload.getLength();
+			len=len+overload.getLength();
+		}
 		this.setLength(len);
 
 	}
@@ -117,6 +138,12 @@ public class MetricPCE extends PCEPConstruct{
 	public void setProcTime(ProcTime procTime) {
 		this.procTime = procTime;
 	}
+	public Overload getOverload() {
+		return overload;
+	}
+	public void setOverload(Overload overload) {
+		this.overload = overload;
+	}
 	public String toString(){
 		String ret="";
 		if (pceId!=null){
@@ -125,6 +152,9 @@ public class MetricPCE extends PCEPConstruct{
 		if (procTime!=null){
 			ret=ret+procTime.toString();
 		}
+		if (overload!=null){
+			ret=ret+overload.toString();
+		}
 		return ret;
 	}
 	@Override
@@ -134,6 +164,8 @@ public class MetricPCE extends PCEPConstruct{
 		result = prime * result + ((pceId == null) ? 0 : pceId.hashCode());
 		result = prime * result
 				+ ((procTime == null) ? 0 : procTime.hashCode());
+		result = prime * result
+				+ ((overload == null) ? 0 : overload.hashCode());
 		return result;
 	}
 	@Override
@@ -155,6 +187,11 @@ public class MetricPCE extends PCEPConstruct{
 				return false;
 		} else if (!procTime.equals(other.procTime))
 			return false;
+		if (overload == null) {
+			if (other.overload != null)
+				return false;
+		} else if (!overload.equals(other.overload))
+			return false;
 		return true;
 	}
 	
@@ -0,0 +1,591 @@
+package es.tid.pce.pcep.lspdb;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import es.tid.pce.pcep.PCEPProtocolViolationException;
+import es.tid.pce.pcep.constructs.Path;
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.messages.PCEPReport;
+import es.tid.pce.pcep.objects.Bandwidth;
+import es.tid.pce.pcep.objects.BandwidthExistingLSP;
+import es.tid.pce.pcep.objects.BandwidthRequested;
+import es.tid.pce.pcep.objects.LSP;
+import es.tid.pce.pcep.objects.tlvs.IPv4LSPIdentifiersTLV;
+import es.tid.pce.pcep.objects.tlvs.SymbolicPathNameTLV;
+
+/**
+ * Compact store of LSP records for PCEs with a large number of LSPs.
+ * <p>
+ * Instead of keeping the decoded {@link StateReport} of every LSP, the
+ * fields of the LSP object are kept in primitive arrays (one array per
+ * field, indexed by record), and the symbolic path name and the encoded
+ * path (ERO and attribute list) are kept in a blob area in off-heap memory.
+ * A record takes around 50 bytes plus its blob, and the PCEP objects are
+ * only created again when they are requested with
+ * {@link #getStateReport(int)}.
+ * <p>
+ * The records are found by (PCC, PLSP-ID) with an open addressing hash
+ * table of primitive keys. The blobs of updated and removed records leave
+ * holes in the blob area, which is compacted when it has to grow.
+ * <p>
+ * Only IPv4 PCCs and LSP identifiers are stored in primitive form.
+ *
+ * @author ogondio
+ *
+ */
+public class CompactLSPStore {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/*
+	 * Flags of the LSP object, as in the last 12 bits of the first word
+	 */
+	public static final int FLAG_DELEGATE = 0x001;
+	public static final int FLAG_SYNC = 0x002;
+	public static final int FLAG_REMOVE = 0x004;
+	public static final int FLAG_ADMINISTRATIVE = 0x008;
+	public static final int FLAG_CREATE = 0x080;
+	public static final int FLAG_P2MP = 0x100;
+	public static final int FLAG_FRAGMENTATION = 0x200;
+	public static final int FLAG_ERO_COMPRESSION = 0x400;
+
+	private static final long EMPTY = -1L;
+
+	/*
+	 * Columns, one entry per record. A free record has PLSP-ID 0 (reserved).
+	 */
+	private int[] pccIndexes;
+	private int[] plspIds;
+	private short[] flags;
+	private float[] bandwidths;
+	private int[] tunnelSenders;
+	/**
+	 * Tunnel ID in the high 16 bits, LSP ID in the low 16 bits
+	 */
+	private int[] tunnelLspIds;
+	private int[] extendedTunnelIds;
+	private int[] blobOffsets;
+	private int[] blobLengths;
+
+	private int numberOfRecords;
+
+	private int[] freeRecords;
+
+	private int numberOfFreeRecords;
+
+	/*
+	 * Index of (PCC, PLSP-ID) -> record
+	 */
+	private long[] indexKeys;
+	private int[] indexRecords;
+	private int indexMask;
+
+	/*
+	 * PCC addresses
+	 */
+	private final ArrayList<InetAddress> pccAddresses = new ArrayList<InetAddress>();
+	private final HashMap<InetAddress, Integer> pccIndexByAddress = new HashMap<InetAddress, Integer>();
+
+	/**
+	 * Blob of each record: length of the name (2 bytes), name and encoded path
+	 */
+	private ByteBuffer blobs;
+
+	private int garbageBytes;
+
+	public CompactLSPStore(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity Expected number of LSPs
+	 */
+	public CompactLSPStore(int initialCapacity){
+		int capacity = Math.max(16, initialCapacity);
+		pccIndexes = new int[capacity];
+		plspIds = new int[capacity];
+		flags = new short[capacity];
+		bandwidths = new float[capacity];
+		tunnelSenders = new int[capacity];
+		tunnelLspIds = new int[capacity];
+		extendedTunnelIds = new int[capacity];
+		blobOffsets = new int[capacity];
+		blobLengths = new int[capacity];
+		freeRecords = new int[16];
+		int indexSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		indexKeys = new long[indexSize];
+		Arrays.fill(indexKeys, EMPTY);
+		indexRecords = new int[indexSize];
+		indexMask = indexSize - 1;
+		blobs = ByteBuffer.allocateDirect(capacity * 64);
+		blobs.limit(0);
+	}
+
+	/**
+	 * Applies the state reports of a PCRpt message: the LSPs with the R flag
+	 * are removed and the others are stored. The end of synchronization
+	 * marker is ignored.
+	 * @param pcc Address of the PCC
+	 * @param report PCRpt message
+	 * @throws PCEPProtocolViolationException if a path can not be encoded
+	 */
+	public synchronized void applyReport(InetAddress pcc, PCEPReport report) throws PCEPProtocolViolationException{
+		for (StateReport stateReport : report.getStateReportList()){
+			LSP lsp = stateReport.getLsp();
+			if (lsp.getLspId() == LSPDatabase.END_OF_SYNC_PLSP_ID){
+				continue;
+			}
+			if (lsp.isRemoveFlag()){
+				remove(pcc, lsp.getLspId());
+			} else {
+				put(pcc, stateReport);
+			}
+		}
+	}
+
+	/**
+	 * Stores the state of an LSP, replacing the previous one
+	 * @param pcc Address of the PCC
+	 * @param stateReport State report of the LSP
+	 * @return Index of the record
+	 * @throws PCEPProtocolViolationException if the path can not be encoded
+	 */
+	public synchronized int put(InetAddress pcc, StateReport stateReport) throws PCEPProtocolViolationException{
+		LSP lsp = stateReport.getLsp();
+		int plspId = lsp.getLspId();
+		if (plspId == 0){
+			throw new IllegalArgumentException("PLSP-ID 0 is reserved");
+		}
+		int pccIndex = getPccIndex(pcc);
+		long key = ((long)pccIndex << 32) | plspId;
+		int record = find(key);
+		byte[] name = null;
+		if (lsp.getSymbolicPathNameTLV_tlv() != null){
+			name = lsp.getSymbolicPathNameTLV_tlv().getSymbolicPathNameID();
+		} else if (record >= 0){
+			//The name is only sent in the first report
+			name = readName(record);
+		}
+		if (record < 0){
+			record = allocateRecord();
+			insertIndex(key, record);
+			pccIndexes[record] = pccIndex;
+			plspIds[record] = plspId;
+		} else {
+			garbageBytes += blobLengths[record];
+			blobLengths[record] = 0;
+		}
+		flags[record] = (short)encodeFlags(lsp);
+		IPv4LSPIdentifiersTLV identifiers = lsp.getLspIdentifiers_tlv();
+		if (identifiers != null){
+			tunnelSenders[record] = identifiers.getTunnelSenderIPAddress() == null ? 0 : ByteBuffer.wrap(identifiers.getTunnelSenderIPAddress().getAddress()).getInt();
+			tunnelLspIds[record] = (identifiers.getTunnelID() << 16) | (identifiers.getLspID() & 0xFFFF);
+			extendedTunnelIds[record] = identifiers.getExtendedTunnelID();
+		} else {
+			tunnelSenders[record] = 0;
+			tunnelLspIds[record] = 0;
+			extendedTunnelIds[record] = 0;
+		}
+		Path path = stateReport.getPath();
+		bandwidths[record] = getBandwidth(path);
+		int pathLength = 0;
+		if (path != null){
+			if (path.getBytes() == null){
+				//Decoded paths do not keep their bytes
+				path.encode();
+			}
+			pathLength = path.getLength();
+		}
+		int nameLength = (name == null) ? 0 : name.length;
+		int length = 2 + nameLength + pathLength;
+		int offset = allocateBlob(length);
+		blobs.putShort(offset, (short)nameLength);
+		if (nameLength > 0){
+			blobs.position(offset + 2);
+			blobs.put(name);
+		}
+		if (pathLength > 0){
+			blobs.position(offset + 2 + nameLength);
+			blobs.put(path.getBytes(), 0, pathLength);
+		}
+		blobOffsets[record] = offset;
+		blobLengths[record] = length;
+		return record;
+	}
+
+	/**
+	 * Removes an LSP
+	 * @param pcc Address of the PCC
+	 * @param plspId PLSP-ID of the LSP
+	 * @return true if the LSP was in the store
+	 */
+	public synchronized boolean remove(InetAddress pcc, int plspId){
+		Integer pccIndex = pccIndexByAddress.get(pcc);
+		if (pccIndex == null){
+			return false;
+		}
+		long key = ((long)pccIndex << 32) | plspId;
+		int record = removeIndex(key);
+		if (record < 0){
+			return false;
+		}
+		garbageBytes += blobLengths[record];
+		blobLengths[record] = 0;
+		plspIds[record] = 0;
+		if (numberOfFreeRecords == freeRecords.length){
+			freeRecords = Arrays.copyOf(freeRecords, freeRecords.length * 2);
+		}
+		freeRecords[numberOfFreeRecords++] = record;
+		return true;
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @param plspId PLSP-ID of the LSP
+	 * @return Index of the record of the LSP, -1 if it is not in the store
+	 */
+	public synchronized int indexOf(InetAddress pcc, int plspId){
+		Integer pccIndex = pccIndexByAddress.get(pcc);
+		if (pccIndex == null){
+			return -1;
+		}
+		return find(((long)pccIndex << 32) | plspId);
+	}
+
+	/**
+	 * Creates the PCEP objects of a record
+	 * @param record Index of the record
+	 * @return State report with the LSP object and the path of the record
+	 * @throws PCEPProtocolViolationException if the stored path can not be decoded
+	 */
+	public synchronized StateReport getStateReport(int record) throws PCEPProtocolViolationException{
+		checkRecord(record);
+		LSP lsp = new LSP();
+		lsp.setLspId(plspIds[record]);
+		int f = flags[record];
+		lsp.setDelegateFlag((f & FLAG_DELEGATE) != 0);
+		lsp.setSyncFlag((f & FLAG_SYNC) != 0);
+		lsp.setRemoveFlag((f & FLAG_REMOVE) != 0);
+		lsp.setAdministrativeFlag((f & FLAG_ADMINISTRATIVE) != 0);
+		lsp.setOpFlags((f >> 4) & 0x07);
+		lsp.setCreateFlag((f & FLAG_CREATE) != 0);
+		lsp.setP2mpFlag((f & FLAG_P2MP) != 0);
+		lsp.setFragmentationFlag((f & FLAG_FRAGMENTATION) != 0);
+		lsp.setEroCompressionFlag((f & FLAG_ERO_COMPRESSION) != 0);
+		byte[] name = readName(record);
+		if (name != null){
+			SymbolicPathNameTLV nameTLV = new SymbolicPathNameTLV();
+			nameTLV.setSymbolicPathNameID(name);
+			lsp.setSymbolicPathNameTLV_tlv(nameTLV);
+		}
+		if (tunnelSenders[record] != 0 || tunnelLspIds[record] != 0 || extendedTunnelIds[record] != 0){
+			IPv4LSPIdentifiersTLV identifiers = new IPv4LSPIdentifiersTLV();
+			identifiers.setTunnelSenderIPAddress(toAddress(tunnelSenders[record]));
+			identifiers.setTunnelID(tunnelLspIds[record] >>> 16);
+			identifiers.setLspID(tunnelLspIds[record] & 0xFFFF);
+			identifiers.setExtendedTunnelID(extendedTunnelIds[record]);
+			lsp.setLspIdentifiers_tlv(identifiers);
+		}
+		StateReport stateReport = new StateReport();
+		stateReport.setLsp(lsp);
+		int nameLength = blobs.getShort(blobOffsets[record]) & 0xFFFF;
+		int pathLength = blobLengths[record] - 2 - nameLength;
+		if (pathLength > 0){
+			byte[] pathBytes = new byte[pathLength];
+			blobs.position(blobOffsets[record] + 2 + nameLength);
+			blobs.get(pathBytes);
+			stateReport.setPath(new Path(pathBytes, 0));
+		}
+		return stateReport;
+	}
+
+	public synchronized InetAddress getPcc(int record){
+		checkRecord(record);
+		return pccAddresses.get(pccIndexes[record]);
+	}
+
+	public synchronized int getPlspId(int record){
+		checkRecord(record);
+		return plspIds[record];
+	}
+
+	/**
+	 * @param record Index of the record
+	 * @return Flags of the LSP object (FLAG_* and the operational status in bits 4 to 6)
+	 */
+	public synchronized int getFlags(int record){
+		checkRecord(record);
+		return flags[record];
+	}
+
+	public synchronized boolean isDelegated(int record){
+		return (getFlags(record) & FLAG_DELEGATE) != 0;
+	}
+
+	public synchronized int getOperationalStatus(int record){
+		return (getFlags(record) >> 4) & 0x07;
+	}
+
+	/**
+	 * @param record Index of the record
+	 * @return Bandwidth of the path in bytes per second, 0 if none
+	 */
+	public synchronized float getBandwidth(int record){
+		checkRecord(record);
+		return bandwidths[record];
+	}
+
+	/**
+	 * @param record Index of the record
+	 * @return Tunnel sender address of the LSP identifiers, as an int
+	 */
+	public synchronized int getTunnelSender(int record){
+		checkRecord(record);
+		return tunnelSenders[record];
+	}
+
+	public synchronized int getTunnelId(int record){
+		checkRecord(record);
+		return tunnelLspIds[record] >>> 16;
+	}
+
+	public synchronized int getLspId(int record){
+		checkRecord(record);
+		return tunnelLspIds[record] & 0xFFFF;
+	}
+
+	public synchronized int getExtendedTunnelId(int record){
+		checkRecord(record);
+		return extendedTunnelIds[record];
+	}
+
+	/**
+	 * @param record Index of the record
+	 * @return Symbolic path name, null if it was not reported
+	 */
+	public synchronized String getSymbolicPathName(int record){
+		checkRecord(record);
+		byte[] name = readName(record);
+		return (name == null) ? null : new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return Number of LSPs in the store
+	 */
+	public synchronized int size(){
+		return numberOfRecords - numberOfFreeRecords;
+	}
+
+	/**
+	 * @return Bytes of the blob area in use, including the holes
+	 */
+	public synchronized int getBlobBytes(){
+		return blobs.limit();
+	}
+
+	/**
+	 * @return Bytes of the blob area left by updated or removed records
+	 */
+	public synchronized int getGarbageBytes(){
+		return garbageBytes;
+	}
+
+	private static int encodeFlags(LSP lsp){
+		int f = (lsp.getOpFlags() & 0x07) << 4;
+		if (lsp.isDelegateFlag()) f |= FLAG_DELEGATE;
+		if (lsp.isSyncFlag()) f |= FLAG_SYNC;
+		if (lsp.isRemoveFlag()) f |= FLAG_REMOVE;
+		if (lsp.isAdministrativeFlag()) f |= FLAG_ADMINISTRATIVE;
+		if (lsp.isCreateFlag()) f |= FLAG_CREATE;
+		if (lsp.isP2mpFlag()) f |= FLAG_P2MP;
+		if (lsp.isFragmentationFlag()) f |= FLAG_FRAGMENTATION;
+		if (lsp.isEroCompressionFlag()) f |= FLAG_ERO_COMPRESSION;
+		return f;
+	}
+
+	private static float getBandwidth(Path path){
+		Bandwidth bandwidth = (path == null) ? null : path.getBandwidth();
+		if (bandwidth instanceof BandwidthRequested){
+			return ((BandwidthRequested)bandwidth).getBw();
+		} else if (bandwidth instanceof BandwidthExistingLSP){
+			return ((BandwidthExistingLSP)bandwidth).getBw();
+		}
+		return 0;
+	}
+
+	private static Inet4Address toAddress(int address){
+		try {
+			return (Inet4Address)InetAddress.getByAddress(ByteBuffer.allocate(4).putInt(address).array());
+		} catch (UnknownHostException e) {
+			//Not possible with 4 bytes
+			return null;
+		}
+	}
+
+	private byte[] readName(int record){
+		int nameLength = blobs.getShort(blobOffsets[record]) & 0xFFFF;
+		if (nameLength == 0){
+			return null;
+		}
+		byte[] name = new byte[nameLength];
+		blobs.position(blobOffsets[record] + 2);
+		blobs.get(name);
+		return name;
+	}
+
+	private void checkRecord(int record){
+		if (record < 0 || record >= numberOfRecords || plspIds[record] == 0){
+			throw new IllegalArgumentException("No LSP in record " + record);
+		}
+	}
+
+	private int getPccIndex(InetAddress pcc){
+		Integer index = pccIndexByAddress.get(pcc);
+		if (index == null){
+			index = pccAddresses.size();
+			pccAddresses.add(pcc);
+			pccIndexByAddress.put(pcc, index);
+		}
+		return index;
+	}
+
+	private int allocateRecord(){
+		if (numberOfFreeRecords > 0){
+			return freeRecords[--numberOfFreeRecords];
+		}
+		if (numberOfRecords == plspIds.length){
+			int capacity = plspIds.length * 2;
+			pccIndexes = Arrays.copyOf(pccIndexes, capacity);
+			plspIds = Arrays.copyOf(plspIds, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			bandwidths = Arrays.copyOf(bandwidths, capacity);
+			tunnelSenders = Arrays.copyOf(tunnelSenders, capacity);
+			tunnelLspIds = Arrays.copyOf(tunnelLspIds, capacity);
+			extendedTunnelIds = Arrays.copyOf(extendedTunnelIds, capacity);
+			blobOffsets = Arrays.copyOf(blobOffsets, capacity);
+			blobLengths = Arrays.copyOf(blobLengths, capacity);
+		}
+		return numberOfRecords++;
+	}
+
+	/**
+	 * Reserves space at the end of the blob area. The limit of the buffer
+	 * marks the end of the used space.
+	 */
+	private int allocateBlob(int length){
+		int offset = blobs.limit();
+		if (blobs.capacity() - offset < length){
+			compactBlobs(length);
+			offset = blobs.limit();
+		}
+		blobs.limit(offset + length);
+		return offset;
+	}
+
+	/**
+	 * Copies the blobs of the records to a new area, without the holes
+	 */
+	private void compactBlobs(int needed){
+		long live = (long)blobs.limit() - garbageBytes;
+		long capacity = Math.max(blobs.capacity(), (live + needed) * 2);
+		if (capacity > Integer.MAX_VALUE){
+			capacity = Integer.MAX_VALUE;
+			if (live + needed > capacity){
+				throw new IllegalStateException("Blob area full");
+			}
+		}
+		ByteBuffer newBlobs = ByteBuffer.allocateDirect((int)capacity);
+		for (int record = 0; record < numberOfRecords; record++){
+			if (plspIds[record] != 0 && blobLengths[record] > 0){
+				int offset = newBlobs.position();
+				ByteBuffer blob = blobs.duplicate();
+				blob.limit(blobOffsets[record] + blobLengths[record]);
+				blob.position(blobOffsets[record]);
+				newBlobs.put(blob);
+				blobOffsets[record] = offset;
+			}
+		}
+		newBlobs.limit(newBlobs.position());
+		blobs = newBlobs;
+		garbageBytes = 0;
+	}
+
+	/*
+	 * Open addressing hash table with linear probing
+	 */
+
+	private static int hash(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	private int find(long key){
+		int i = hash(key) & indexMask;
+		while (indexKeys[i] != EMPTY){
+			if (indexKeys[i] == key){
+				return indexRecords[i];
+			}
+			i = (i + 1) & indexMask;
+		}
+		return -1;
+	}
+
+	private void insertIndex(long key, int record){
+		if ((size() + 1) * 2 > indexKeys.length){
+			long[] oldKeys = indexKeys;
+			int[] oldRecords = indexRecords;
+			indexKeys = new long[oldKeys.length * 2];
+			Arrays.fill(indexKeys, EMPTY);
+			indexRecords = new int[oldKeys.length * 2];
+			indexMask = indexKeys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++){
+				if (oldKeys[i] != EMPTY){
+					putIndex(oldKeys[i], oldRecords[i]);
+				}
+			}
+		}
+		putIndex(key, record);
+	}
+
+	private void putIndex(long key, int record){
+		int i = hash(key) & indexMask;
+		while (indexKeys[i] != EMPTY){
+			i = (i + 1) & indexMask;
+		}
+		indexKeys[i] = key;
+		indexRecords[i] = record;
+	}
+
+	private int removeIndex(long key){
+		int i = hash(key) & indexMask;
+		while (indexKeys[i] != key){
+			if (indexKeys[i] == EMPTY){
+				return -1;
+			}
+			i = (i + 1) & indexMask;
+		}
+		int record = indexRecords[i];
+		//Moves back the following keys of the cluster
+		int hole = i;
+		i = (i + 1) & indexMask;
+		while (indexKeys[i] != EMPTY){
+			int home = hash(indexKeys[i]) & indexMask;
+			if (((i - home) & indexMask) >= ((i - hole) & indexMask)){
+				indexKeys[hole] = indexKeys[i];
+				indexRecords[hole] = indexRecords[i];
+				hole = i;
+			}
+			i = (i + 1) & indexMask;
+		}
+		indexKeys[hole] = EMPTY;
+		return record;
+	}
+
+}
@@ -0,0 +1,387 @@
+package es.tid.pce.pcep.lspdb;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.messages.PCEPReport;
+import es.tid.pce.pcep.objects.LSP;
+import es.tid.pce.pcep.objects.OPEN;
+import es.tid.pce.pcep.objects.tlvs.LSPDatabaseVersionTLV;
+import es.tid.pce.pcep.objects.tlvs.StatefulCapabilityTLV;
+
+/**
+ * LSP database of a stateful PCE (RFC 8231), with the LSPs of each PCC
+ * keyed by PLSP-ID.
+ * <p>
+ * The state reports of the PCRpt messages are applied with
+ * {@link #applyReport(InetAddress, PCEPReport)}: a report with the R flag
+ * removes the LSP, and the report with PLSP-ID 0 and the S flag cleared
+ * marks the end of the state synchronization, when the LSPs of the PCC that
+ * were not reported during the synchronization are removed.
+ * <p>
+ * The database keeps the LSP State Database Version of each PCC (RFC 8232),
+ * taken from the LSP-DB-VERSION TLV of the reports (during a synchronization,
+ * only when it ends). The LSPs of a PCC are
+ * kept when its session goes down, so when the PCC reconnects with the same
+ * version in its Open the state is still valid and the synchronization is
+ * skipped (see {@link #sessionUp(InetAddress, OPEN, OPEN)}).
+ *
+ * @author ogondio
+ *
+ */
+public class LSPDatabase {
+
+	private static final Logger log = LoggerFactory.getLogger("PCEPParser");
+
+	/**
+	 * PLSP-ID of the report that marks the end of the synchronization
+	 */
+	public static final int END_OF_SYNC_PLSP_ID = 0;
+
+	/**
+	 * LSPs and synchronization state of a PCC
+	 */
+	private static final class PCCState {
+
+		final HashMap<Integer, LSPState> lsps = new HashMap<Integer, LSPState>();
+
+		final HashMap<String, LSPState> lspsByName = new HashMap<String, LSPState>();
+
+		/**
+		 * LSP State Database Version of the PCC, 0 if unknown
+		 */
+		long dbVersion;
+
+		/**
+		 * Version reported during the synchronization, which becomes the
+		 * version of the database when the synchronization ends
+		 */
+		long syncVersion;
+
+		boolean sessionUp;
+
+		boolean synchronizing;
+
+		int syncGeneration;
+	}
+
+	private final ConcurrentHashMap<InetAddress, PCCState> pccs = new ConcurrentHashMap<InetAddress, PCCState>();
+
+	private volatile long skippedSynchronizations;
+
+	private volatile long fullSynchronizations;
+
+	/**
+	 * Registers the establishment of a session with a PCC and tells if the
+	 * PCC will synchronize its LSPs. The synchronization is avoided when both
+	 * speakers set the INCLUDE-DB-VERSION flag and the version of the Open of
+	 * the PCC is the one in the database.
+	 * @param pcc Address of the PCC
+	 * @param pccOpen OPEN object received from the PCC
+	 * @param pceOpen OPEN object sent to the PCC
+	 * @return true if the PCC will send its LSPs, false if the state in the database is kept
+	 */
+	public boolean sessionUp(InetAddress pcc, OPEN pccOpen, OPEN pceOpen){
+		long version = 0;
+		if (includesDBVersion(pccOpen) && includesDBVersion(pceOpen) && pccOpen.getLsp_database_version_tlv() != null){
+			version = pccOpen.getLsp_database_version_tlv().getLSPStateDBVersion();
+		}
+		PCCState state = getOrCreate(pcc);
+		synchronized (state){
+			state.sessionUp = true;
+			if (version != 0 && version == state.dbVersion){
+				state.synchronizing = false;
+				skippedSynchronizations++;
+				log.info("LSP-DB of PCC " + pcc.getHostAddress() + " in version " + version + ", synchronization skipped");
+				return false;
+			}
+			state.synchronizing = true;
+			state.syncVersion = 0;
+			state.syncGeneration++;
+			fullSynchronizations++;
+			return true;
+		}
+	}
+
+	/**
+	 * Registers that the session with a PCC is down. The LSPs are kept to
+	 * avoid the synchronization if the PCC comes back with the same version,
+	 * unless the session goes down during the synchronization: the database
+	 * then has no valid version and the next session synchronizes again.
+	 * @param pcc Address of the PCC
+	 */
+	public void sessionDown(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state != null){
+			synchronized (state){
+				state.sessionUp = false;
+				if (state.synchronizing){
+					state.dbVersion = 0;
+				}
+				state.synchronizing = false;
+			}
+		}
+	}
+
+	/**
+	 * Applies the state reports of a PCRpt message
+	 * @param pcc Address of the PCC that sent the message
+	 * @param report PCRpt message
+	 */
+	public void applyReport(InetAddress pcc, PCEPReport report){
+		PCCState state = getOrCreate(pcc);
+		synchronized (state){
+			for (StateReport stateReport : report.getStateReportList()){
+				apply(pcc, state, stateReport);
+			}
+		}
+	}
+
+	/**
+	 * Applies a single state report
+	 * @param pcc Address of the PCC that sent the report
+	 * @param stateReport LSP State Report
+	 */
+	public void applyStateReport(InetAddress pcc, StateReport stateReport){
+		PCCState state = getOrCreate(pcc);
+		synchronized (state){
+			apply(pcc, state, stateReport);
+		}
+	}
+
+	private void apply(InetAddress pcc, PCCState state, StateReport stateReport){
+		LSP lsp = stateReport.getLsp();
+		LSPDatabaseVersionTLV versionTLV = lsp.getLspDBVersion_tlv();
+		if (versionTLV != null){
+			if (state.synchronizing){
+				state.syncVersion = versionTLV.getLSPStateDBVersion();
+			} else {
+				state.dbVersion = versionTLV.getLSPStateDBVersion();
+			}
+		}
+		int plspId = lsp.getLspId();
+		if (plspId == END_OF_SYNC_PLSP_ID){
+			if (!lsp.isSyncFlag()){
+				endSynchronization(pcc, state);
+			}
+			return;
+		}
+		if (lsp.isRemoveFlag()){
+			LSPState removed = state.lsps.remove(plspId);
+			if (removed != null && removed.getSymbolicPathName() != null){
+				state.lspsByName.remove(removed.getSymbolicPathName());
+			}
+			return;
+		}
+		LSPState previous = state.lsps.get(plspId);
+		String name = null;
+		if (lsp.getSymbolicPathNameTLV_tlv() != null && lsp.getSymbolicPathNameTLV_tlv().getSymbolicPathNameID() != null){
+			name = new String(lsp.getSymbolicPathNameTLV_tlv().getSymbolicPathNameID(), StandardCharsets.UTF_8);
+		} else if (previous != null){
+			//The name is only sent in the first report
+			name = previous.getSymbolicPathName();
+		}
+		LSPState lspState = new LSPState(pcc, stateReport, name, state.syncGeneration, System.currentTimeMillis());
+		state.lsps.put(plspId, lspState);
+		if (previous != null && previous.getSymbolicPathName() != null && !previous.getSymbolicPathName().equals(name)){
+			state.lspsByName.remove(previous.getSymbolicPathName());
+		}
+		if (name != null){
+			state.lspsByName.put(name, lspState);
+		}
+	}
+
+	private void endSynchronization(InetAddress pcc, PCCState state){
+		if (!state.synchronizing){
+			return;
+		}
+		state.synchronizing = false;
+		state.dbVersion = state.syncVersion;
+		int stale = 0;
+		Iterator<LSPState> it = state.lsps.values().iterator();
+		while (it.hasNext()){
+			LSPState lspState = it.next();
+			if (lspState.syncGeneration != state.syncGeneration){
+				it.remove();
+				if (lspState.getSymbolicPathName() != null){
+					state.lspsByName.remove(lspState.getSymbolicPathName());
+				}
+				stale++;
+			}
+		}
+		log.info("End of synchronization of PCC " + pcc.getHostAddress() + ": " + state.lsps.size() + " LSPs, " + stale + " stale LSPs removed");
+	}
+
+	private PCCState getOrCreate(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			PCCState newState = new PCCState();
+			state = pccs.putIfAbsent(pcc, newState);
+			if (state == null){
+				state = newState;
+			}
+		}
+		return state;
+	}
+
+	private static boolean includesDBVersion(OPEN open){
+		StatefulCapabilityTLV capability = (open == null) ? null : open.getStateful_capability_tlv();
+		return capability != null && capability.isSFlag();
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @param plspId PLSP-ID of the LSP
+	 * @return State of the LSP, null if it is not in the database
+	 */
+	public LSPState getLSP(InetAddress pcc, int plspId){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return null;
+		}
+		synchronized (state){
+			return state.lsps.get(plspId);
+		}
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @param symbolicPathName Symbolic path name of the LSP
+	 * @return State of the LSP, null if it is not in the database
+	 */
+	public LSPState getLSP(InetAddress pcc, String symbolicPathName){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return null;
+		}
+		synchronized (state){
+			return state.lspsByName.get(symbolicPathName);
+		}
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @return Copy of the list of LSPs of the PCC
+	 */
+	public List<LSPState> getLSPs(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return new ArrayList<LSPState>();
+		}
+		synchronized (state){
+			return new ArrayList<LSPState>(state.lsps.values());
+		}
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @return LSPs of the PCC delegated to the PCE
+	 */
+	public List<LSPState> getDelegatedLSPs(InetAddress pcc){
+		List<LSPState> delegated = new ArrayList<LSPState>();
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return delegated;
+		}
+		synchronized (state){
+			if (!state.sessionUp){
+				//The delegation ends with the session
+				return delegated;
+			}
+			for (LSPState lspState : state.lsps.values()){
+				if (lspState.isDelegated()){
+					delegated.add(lspState);
+				}
+			}
+		}
+		return delegated;
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @return LSP State Database Version of the PCC, 0 if unknown
+	 */
+	public long getDBVersion(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return 0;
+		}
+		synchronized (state){
+			return state.dbVersion;
+		}
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @return true if the session is up and the state synchronization has finished
+	 */
+	public boolean isSynchronized(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return false;
+		}
+		synchronized (state){
+			return state.sessionUp && !state.synchronizing;
+		}
+	}
+
+	/**
+	 * Removes all the LSPs of a PCC and its version, so the next session
+	 * will be fully synchronized
+	 * @param pcc Address of the PCC
+	 */
+	public void removePCC(InetAddress pcc){
+		pccs.remove(pcc);
+	}
+
+	/**
+	 * @param pcc Address of the PCC
+	 * @return Number of LSPs of the PCC
+	 */
+	public int size(InetAddress pcc){
+		PCCState state = pccs.get(pcc);
+		if (state == null){
+			return 0;
+		}
+		synchronized (state){
+			return state.lsps.size();
+		}
+	}
+
+	/**
+	 * @return Number of LSPs of all the PCCs
+	 */
+	public int size(){
+		int size = 0;
+		for (PCCState state : pccs.values()){
+			synchronized (state){
+				size += state.lsps.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return Number of sessions in which the synchronization was avoided
+	 */
+	public long getSkippedSynchronizations() {
+		return skippedSynchronizations;
+	}
+
+	/**
+	 * @return Number of sessions with a full synchronization
+	 */
+	public long getFullSynchronizations() {
+		return fullSynchronizations;
+	}
+
+}
@@ -0,0 +1,106 @@
+package es.tid.pce.pcep.lspdb;
+
+import java.net.InetAddress;
+
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.objects.LSP;
+
+/**
+ * State of an LSP of a PCC, as reported in its last LSP State Report.
+ * <p>
+ * The state is replaced, not modified, when a new report arrives, so it
+ * can be read without holding the lock of the database.
+ *
+ * @author ogondio
+ *
+ */
+public class LSPState {
+
+	private final InetAddress pcc;
+
+	private final int plspId;
+
+	private final StateReport stateReport;
+
+	private final String symbolicPathName;
+
+	/**
+	 * Synchronization in which the LSP was last reported
+	 */
+	final int syncGeneration;
+
+	private final long lastUpdateTime;
+
+	LSPState(InetAddress pcc, StateReport stateReport, String symbolicPathName, int syncGeneration, long lastUpdateTime){
+		this.pcc = pcc;
+		this.plspId = stateReport.getLsp().getLspId();
+		this.stateReport = stateReport;
+		this.symbolicPathName = symbolicPathName;
+		this.syncGeneration = syncGeneration;
+		this.lastUpdateTime = lastUpdateTime;
+	}
+
+	public InetAddress getPcc() {
+		return pcc;
+	}
+
+	public int getPlspId() {
+		return plspId;
+	}
+
+	/**
+	 * @return Last state report of the LSP
+	 */
+	public StateReport getStateReport() {
+		return stateReport;
+	}
+
+	public LSP getLsp() {
+		return stateReport.getLsp();
+	}
+
+	/**
+	 * @return Symbolic path name of the LSP, null if it has not been reported
+	 */
+	public String getSymbolicPathName() {
+		return symbolicPathName;
+	}
+
+	public boolean isDelegated() {
+		return stateReport.getLsp().isDelegateFlag();
+	}
+
+	/**
+	 * @return true if the LSP was created by a PCInitiate message (C flag)
+	 */
+	public boolean isPCEInitiated() {
+		return stateReport.getLsp().isCreateFlag();
+	}
+
+	/**
+	 * @return Operational status of the LSP (O field)
+	 */
+	public int getOperationalStatus() {
+		return stateReport.getLsp().getOpFlags();
+	}
+
+	/**
+	 * @return SRP-ID of the update that caused the report, 0 if none
+	 */
+	public long getSrpId() {
+		return (stateReport.getSrp() == null) ? 0 : stateReport.getSrp().getSRP_ID_number();
+	}
+
+	/**
+	 * @return Time of the last report, in milliseconds
+	 */
+	public long getLastUpdateTime() {
+		return lastUpdateTime;
+	}
+
+	@Override
+	public String toString() {
+		return "LSP " + pcc.getHostAddress() + "/" + plspId + (symbolicPathName != null ? " (" + symbolicPathName + ")" : "") + (isDelegated() ? " delegated" : "");
+	}
+
+}
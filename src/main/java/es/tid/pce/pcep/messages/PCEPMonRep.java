@@ -3,11 +3,12 @@ package es.tid.pce.pcep.messages;
 import java.util.LinkedList;
 
 import es.tid.pce.pcep.PCEPProtocolViolationException;
-import es.tid.pce.pcep.constructs.Request;
-import es.tid.pce.pcep.constructs.SVECConstruct;
+import es.tid.pce.pcep.constructs.MetricPCE;
+import es.tid.pce.pcep.objects.MalformedPCEPObjectException;
 import es.tid.pce.pcep.objects.Monitoring;
+import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.PCEPObject;
 import es.tid.pce.pcep.objects.PccReqId;
-import es.tid.pce.pcep.objects.PceId;
 import es.tid.pce.pcep.objects.RequestParameters;
 
 /**
@@ -46,7 +47,7 @@ public class PCEPMonRep  extends PCEPMessage {
 	private Monitoring monitoring;
 	private PccReqId pccReqId;
 	private RequestParameters RP;
-	//private LinkedList<> metricPceList;
+	private LinkedList<MetricPCE> metricPCEList;
 
 	/**
 	 * Construct new PCEP PCMonReq
@@ -56,26 +57,95 @@ public class PCEPMonRep  extends PCEPMessage {
 		this.setMessageType(PCEPMessageTypes.MESSAGE_PCMONREP);
 		monitoring=new Monitoring();
 		pccReqId=new PccReqId();
+		metricPCEList=new LinkedList<MetricPCE>();
 	}
 	
 	public PCEPMonRep(byte [] bytes)  throws PCEPProtocolViolationException
 	{
 		super(bytes);
-		//TODO: Complete decode!!!!
-		//decode();
-
+		metricPCEList=new LinkedList<MetricPCE>();
+		decode();
 	}
 	
 	@Override
 	public void encode() throws PCEPProtocolViolationException {
+		if (monitoring==null || pccReqId==null){
+			log.warn("PCMonRep must have MONITORING and PCC-ID-REQ objects");
+			throw new PCEPProtocolViolationException();
+		}
 		monitoring.encode();
 		pccReqId.encode();
-		this.setMessageLength(4+monitoring.getLength()+pccReqId.getLength());
+		int len=4+monitoring.getLength()+pccReqId.getLength();
+		if (RP!=null){
+			RP.encode();
+			len=len+RP.getLength();
+		}
+		for (int i=0;i<metricPCEList.size();++i){
+			metricPCEList.get(i).encode();
+			len=len+metricPCEList.get(i).getLength();
+		}
+		this.setMessageLength(len);
 		this.messageBytes=new byte[this.getLength()];
 		encodeHeader();
-		System.arraycopy(monitoring.getBytes(), 0, messageBytes, 4, monitoring.getLength());
-		
+		int offset=4;
+		System.arraycopy(monitoring.getBytes(), 0, messageBytes, offset, monitoring.getLength());
+		offset=offset+monitoring.getLength();
+		System.arraycopy(pccReqId.getBytes(), 0, messageBytes, offset, pccReqId.getLength());
+		offset=offset+pccReqId.getLength();
+		if (RP!=null){
+			System.arraycopy(RP.getBytes(), 0, messageBytes, offset, RP.getLength());
+			offset=offset+RP.getLength();
+		}
+		for (int i=0;i<metricPCEList.size();++i){
+			System.arraycopy(metricPCEList.get(i).getBytes(), 0, messageBytes, offset, metricPCEList.get(i).getLength());
+			offset=offset+metricPCEList.get(i).getLength();
+		}
+	}
+	
+	/**
+	 * Decodes a PCMonRep message following RFC 5886
+	 * @throws PCEPProtocolViolationException Exception when the message is malformed 
+	 */
+	public void decode() throws PCEPProtocolViolationException{
+		byte[] bytes=this.messageBytes;
+		int offset=4;
+		if (PCEPObject.getObjectClass(bytes, offset)!=ObjectParameters.PCEP_OBJECT_CLASS_MONITORING){
+			log.warn("PCMonRep without MONITORING object");
+			throw new PCEPProtocolViolationException();
+		}
+		try {
+			monitoring=new Monitoring(bytes,offset);
+			offset=offset+monitoring.getLength();
+		} catch (MalformedPCEPObjectException e) {
+			log.warn("Malformed Monitoring Object found");
+			throw new PCEPProtocolViolationException();
+		}
+		if (PCEPObject.getObjectClass(bytes, offset)!=ObjectParameters.PCEP_OBJECT_CLASS_PCC_REQ_ID){
+			log.warn("PCMonRep without PCC-ID-REQ object");
+			throw new PCEPProtocolViolationException();
+		}
+		try {
+			pccReqId=new PccReqId(bytes,offset);
+			offset=offset+pccReqId.getLength();
+			if (PCEPObject.getObjectClass(bytes, offset)==ObjectParameters.PCEP_OBJECT_CLASS_RP){
+				RP=new RequestParameters(bytes,offset);
+				offset=offset+RP.getLength();
+			}
+		} catch (MalformedPCEPObjectException e) {
+			log.warn("Malformed Object found in PCMonRep");
+			throw new PCEPProtocolViolationException();
+		}
+		while (offset<this.getLength() && PCEPObject.getObjectClass(bytes, offset)==ObjectParameters.PCEP_OBJECT_CLASS_PCE_ID){
+			MetricPCE metricPCE=new MetricPCE(bytes,offset);
+			if (metricPCE.getLength()==0){
+				log.warn("Unsupported PCE-ID object found in PCMonRep");
+				throw new PCEPProtocolViolationException();
+			}
+			metricPCEList.add(metricPCE);
+			offset=offset+metricPCE.getLength();
+		}
 	}
+	
 	public Monitoring getMonitoring() {
 		return monitoring;
 	}
@@ -94,11 +164,19 @@ public class PCEPMonRep  extends PCEPMessage {
 	public void setRP(RequestParameters rP) {
 		RP = rP;
 	}
+	public LinkedList<MetricPCE> getMetricPCEList() {
+		return metricPCEList;
+	}
+	public void setMetricPCEList(LinkedList<MetricPCE> metricPCEList) {
+		this.metricPCEList = metricPCEList;
+	}
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
 		result = prime * result + ((RP == null) ? 0 : RP.hashCode());
+		result = prime * result
+				+ ((metricPCEList == null) ? 0 : metricPCEList.hashCode());
 		result = prime * result
 				+ ((monitoring == null) ? 0 : monitoring.hashCode());
 		result = prime * result
@@ -119,6 +197,11 @@ public class PCEPMonRep  extends PCEPMessage {
 				return false;
 		} else if (!RP.equals(other.RP))
 			return false;
+		if (metricPCEList == null) {
+			if (other.metricPCEList != null)
+				return false;
+		} else if (!metricPCEList.equals(other.metricPCEList))
+			return false;
 		if (monitoring == null) {
 			if (other.monitoring != null)
 				return false;
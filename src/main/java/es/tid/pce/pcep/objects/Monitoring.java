@@ -147,10 +147,10 @@ public class Monitoring extends PCEPObject {
 		processingTimeBit =(object_bytes[7]&0x04)==0x04;
 		overloadBit =(object_bytes[7]&0x08)==0x08;
 		incompleteBit =(object_bytes[7]&0x10)==0x10;
-		monitoringIdNumber  = ((long) (  ((int)object_bytes[8] << 24) 
-	 			  | ((int)object_bytes[9] << 16)
-	 			  | ((int)object_bytes[10] << 8)
-	 			  | ((int)object_bytes[11])    ))& 0xFFFFFFFFL;		
+		monitoringIdNumber  = ((long) (  ((int)(object_bytes[8]&0xFF) << 24) 
+	 			  | ((int)(object_bytes[9]&0xFF) << 16)
+	 			  | ((int)(object_bytes[10]&0xFF) << 8)
+	 			  | ((int)(object_bytes[11]&0xFF))    ))& 0xFFFFFFFFL;		
 		
 		boolean fin=false;
 		int offset=12;
@@ -183,7 +183,7 @@ public class Notification extends PCEPObject{
 	 /**
 	  * Optional Overloaded Duration TLV;
 	  */
-	 //private OverloadedDurationTLV odtlv;
+	 private OverloadedDurationTLV odtlv;
 	 
 	 /**
 	  * Optional List of Reachability TLVs
@@ -233,10 +233,10 @@ public class Notification extends PCEPObject{
 	public void encode() {
 		int len=4+4;//The four bytes of the header plus the 4 first bytes
 		
-//		if (odtlv!=null){
-//			odtlv.encode();
-//			len=len+odtlv.getTotalTLVLength();
-//		}
+		if (odtlv!=null){
+			odtlv.encode();
+			len=len+odtlv.getTotalTLVLength();
+		}
 		
 		if (reachabilityTLVList!=null){
 			for (int i=0;i<reachabilityTLVList.size();++i){
@@ -270,10 +270,10 @@ public class Notification extends PCEPObject{
 		this.object_bytes[7]=(byte)notificationValue;
 		int offset=8;
 		
-//		if (odtlv!=null){
-//			System.arraycopy(odtlv.getTlv_bytes(), 0, this.object_bytes, offset, odtlv.getTotalTLVLength());
-//			offset=offset+odtlv.getTotalTLVLength();
-//		}
+		if (odtlv!=null){
+			System.arraycopy(odtlv.getTlv_bytes(), 0, this.object_bytes, offset, odtlv.getTotalTLVLength());
+			offset=offset+odtlv.getTotalTLVLength();
+		}
 		
 		if (reachabilityTLVList!=null){
 			for (int i=0;i<reachabilityTLVList.size();++i){
@@ -332,9 +332,9 @@ public class Notification extends PCEPObject{
 			int tlvtype=PCEPTLV.getType(this.getObject_bytes(), offset);
 			int tlvlength=PCEPTLV.getTotalTLVLength(this.getObject_bytes(), offset);
 			switch (tlvtype){
-//			case ObjectParameters.PCEP_TLV_OVERLOADED_DURATION:
-//				odtlv=new OverloadedDurationTLV(this.getObject_bytes(), offset);				
-//				break;
+			case ObjectParameters.PCEP_TLV_OVERLOADED_DURATION:
+				odtlv=new OverloadedDurationTLV(this.getObject_bytes(), offset);
+				break;
 			case ObjectParameters.PCEP_TLV_REACHABILITY_TLV:
 				if (reachabilityTLVList==null){
 					reachabilityTLVList=new LinkedList<ReachabilityTLV>();
@@ -403,17 +403,17 @@ public class Notification extends PCEPObject{
 //	}
 
 
-//
-//	public OverloadedDurationTLV getOdtlv() {
-//		return odtlv;
-//	}
-//
-//
-//
-//	public void setOdtlv(OverloadedDurationTLV odtlv) {
-//		this.odtlv = odtlv;
-//	}
-//
+
+	public OverloadedDurationTLV getOdtlv() {
+		return odtlv;
+	}
+
+
+
+	public void setOdtlv(OverloadedDurationTLV odtlv) {
+		this.odtlv = odtlv;
+	}
+
 
 
 	public LinkedList<ReachabilityTLV> getReachabilityTLVList() {
@@ -487,6 +487,7 @@ public class Notification extends PCEPObject{
 				+ ((notificationTLV == null) ? 0 : notificationTLV.hashCode());
 		result = prime * result + notificationType;
 		result = prime * result + notificationValue;
+		result = prime * result + ((odtlv == null) ? 0 : odtlv.hashCode());
 		result = prime
 				* result
 				+ ((reachabilityTLVList == null) ? 0 : reachabilityTLVList
@@ -522,6 +523,11 @@ public class Notification extends PCEPObject{
 			return false;
 		if (notificationValue != other.notificationValue)
 			return false;
+		if (odtlv == null) {
+			if (other.odtlv != null)
+				return false;
+		} else if (!odtlv.equals(other.odtlv))
+			return false;
 		if (reachabilityTLVList == null) {
 			if (other.reachabilityTLVList != null)
 				return false;
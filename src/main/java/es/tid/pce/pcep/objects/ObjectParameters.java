@@ -205,7 +205,6 @@ public final class ObjectParameters {
 	
 	/**
 	 * OVERLOAD Object Class
-	 * TODO: NOT IMPLEMENTED
 	 * @see <a href="https://tools.ietf.org/html/rfc5886">RFC 5886</a>
 	 */
 	public static final int PCEP_OBJECT_CLASS_OVERLOAD=27;
@@ -1167,6 +1166,10 @@ public final class ObjectParameters {
 	//Strongest
 	public static final int  PCEP_NOTIFICATION_VALUE_PATH_RESERVATION=1;
 
+	//Overloaded PCE (RFC 5440)
+	public static final int  PCEP_NOTIFICATION_VALUE_OVERLOADED=1;
+	public static final int  PCEP_NOTIFICATION_VALUE_OVERLOAD_CLEARED=2;
+
     
     // Nuevos Emuladr PCEP Session Create LSP
     /*private static final int PCEP_OBJECT_CLASS*/
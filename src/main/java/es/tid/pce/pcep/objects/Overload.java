@@ -0,0 +1,86 @@
+package es.tid.pce.pcep.objects;
+
+/**
+ * OVERLOAD Object (RFC 5886). It is carried in a metric-pce of a PCMonRep
+ * or PCRep message when the O bit of the MONITORING object is set and the
+ * PCE is overloaded.
+ * <pre>
+    0                   1                   2                   3
+    0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+   |     Flags     |   Reserved    |     Overload Duration         |
+   +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+   Overload Duration (16 bits): This field indicates the amount of time,
+   in seconds, that the responding PCE expects that it may continue to
+   be overloaded from the time that the response message was generated.
+ * </pre>
+ * @author ogondio
+ *
+ */
+public class Overload extends PCEPObject {
+
+	private int overloadDuration;
+
+	public Overload(){
+		this.setObjectClass(ObjectParameters.PCEP_OBJECT_CLASS_OVERLOAD);
+		this.setOT(ObjectParameters.PCEP_OBJECT_TYPE_OVERLOAD);
+	}
+
+	public Overload(byte []bytes, int offset)throws MalformedPCEPObjectException {
+		super(bytes, offset);
+		decode();
+	}
+
+	public void encode() {
+		ObjectLength=8;
+		object_bytes=new byte[ObjectLength];
+		encode_header();
+		this.object_bytes[4]=0x00;
+		this.object_bytes[5]=0x00;
+		this.object_bytes[6]=(byte)(overloadDuration >>> 8 & 0xff);
+		this.object_bytes[7]=(byte)(overloadDuration & 0xff);
+	}
+
+	public void decode() throws MalformedPCEPObjectException {
+		if (ObjectLength!=8){
+			throw new MalformedPCEPObjectException();
+		}
+		overloadDuration=((object_bytes[6] & 0xff) << 8) | (object_bytes[7] & 0xff);
+	}
+
+	public int getOverloadDuration() {
+		return overloadDuration;
+	}
+
+	public void setOverloadDuration(int overloadDuration) {
+		this.overloadDuration = overloadDuration;
+	}
+
+	public String toString(){
+		return "<OVERLOAD "+overloadDuration+">";
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + overloadDuration;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Overload other = (Overload) obj;
+		if (overloadDuration != other.overloadDuration)
+			return false;
+		return true;
+	}
+
+}
@@ -1,25 +1,89 @@
 package es.tid.pce.pcep.objects.tlvs;
 
+import es.tid.pce.pcep.objects.MalformedPCEPObjectException;
+import es.tid.pce.pcep.objects.ObjectParameters;
+
+/**
+ * OVERLOADED-DURATION TLV (RFC 5440). It is carried in the NOTIFICATION
+ * object of an Overloaded PCE notification and gives the estimated time
+ * of the congestion of the PCE, during which no further request should be
+ * sent to it.
+ * <pre>
+ * Type:   2
+ * Length: 4 bytes
+ * Value:  32-bit flags field indicates the estimated PCE
+ *         congestion duration in seconds.
+ * </pre>
+ * @author ogondio
+ *
+ */
 public class OverloadedDurationTLV extends PCEPTLV {
-	
+
+	/**
+	 * Estimated duration of the congestion, in seconds
+	 */
+	private long overloadedDuration;
+
 	public OverloadedDurationTLV(){
-		
+		this.setTLVType(ObjectParameters.PCEP_TLV_OVERLOADED_DURATION);
 	}
-	
-	public OverloadedDurationTLV(byte[] bytes, int offset){
+
+	public OverloadedDurationTLV(byte[] bytes, int offset) throws MalformedPCEPObjectException{
 		super(bytes,offset);
+		decode();
 	}
 
-	
+	/**
+	 * Encodes the Overloaded Duration TLV.
+	 */
 	public void encode() {
-		// TODO Auto-generated method stub
+		this.setTLVValueLength(4);
+		this.tlv_bytes=new byte[this.getTotalTLVLength()];
+		this.encodeHeader();
+		this.tlv_bytes[4]=(byte)(overloadedDuration >>> 24);
+		this.tlv_bytes[5]=(byte)(overloadedDuration >>> 16);
+		this.tlv_bytes[6]=(byte)(overloadedDuration >>> 8);
+		this.tlv_bytes[7]=(byte)overloadedDuration;
+	}
 
+	public void decode() throws MalformedPCEPObjectException {
+		if (this.getTLVValueLength()!=4){
+			throw new MalformedPCEPObjectException();
+		}
+		this.overloadedDuration=0;
+		for (int k = 0; k < 4; k++) {
+			overloadedDuration = (overloadedDuration << 8) | (this.tlv_bytes[k+4] & 0xff);
+		}
 	}
 
-	
-	public void decode() {
-		// TODO Auto-generated method stub
+	public long getOverloadedDuration() {
+		return overloadedDuration;
+	}
+
+	public void setOverloadedDuration(long overloadedDuration) {
+		this.overloadedDuration = overloadedDuration;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + (int) (overloadedDuration ^ (overloadedDuration >>> 32));
+		return result;
+	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		OverloadedDurationTLV other = (OverloadedDurationTLV) obj;
+		if (overloadedDuration != other.overloadedDuration)
+			return false;
+		return true;
 	}
 
 }
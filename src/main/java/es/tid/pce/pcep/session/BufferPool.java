@@ -0,0 +1,81 @@
+package es.tid.pce.pcep.session;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of buffers of the same size, to encode messages without allocating
+ * a new array for each one.
+ * <p>
+ * The pool keeps up to a maximum number of free buffers; when it is empty a
+ * new buffer is allocated, and when it is full the returned buffer is left
+ * to the garbage collector. It can be used by several threads.
+ *
+ * @author ogondio
+ *
+ */
+public class BufferPool {
+
+	private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+
+	private final int bufferSize;
+
+	private final boolean direct;
+
+	private final AtomicLong allocatedBuffers = new AtomicLong();
+
+	/**
+	 * @param bufferSize Size of the buffers
+	 * @param maxFreeBuffers Maximum number of free buffers kept in the pool
+	 * @param direct true to allocate direct buffers
+	 */
+	public BufferPool(int bufferSize, int maxFreeBuffers, boolean direct){
+		this.bufferSize = bufferSize;
+		this.direct = direct;
+		this.freeBuffers = new ArrayBlockingQueue<ByteBuffer>(maxFreeBuffers);
+	}
+
+	/**
+	 * @return A clear buffer
+	 */
+	public ByteBuffer acquire(){
+		ByteBuffer buffer = freeBuffers.poll();
+		if (buffer == null){
+			allocatedBuffers.incrementAndGet();
+			buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used after.
+	 * @param buffer Buffer obtained from {@link #acquire()}
+	 */
+	public void release(ByteBuffer buffer){
+		if (buffer.capacity() != bufferSize){
+			throw new IllegalArgumentException("The buffer does not belong to the pool");
+		}
+		buffer.clear();
+		freeBuffers.offer(buffer);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return Number of free buffers in the pool
+	 */
+	public int getFreeBuffers() {
+		return freeBuffers.size();
+	}
+
+	/**
+	 * @return Number of buffers allocated by the pool
+	 */
+	public long getAllocatedBuffers() {
+		return allocatedBuffers.get();
+	}
+
+}
@@ -0,0 +1,289 @@
+package es.tid.pce.pcep.session;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table of the outstanding operations of a session, identified by a 32 bit
+ * number (Request-ID-number of the RP object or SRP-ID-number of the SRP
+ * object), with the future that is completed by the answer.
+ * <p>
+ * The identifiers are allocated in sequence, skipping 0 and 0xFFFFFFFF
+ * (reserved for the SRP-ID-number by RFC 8231), and the operation
+ * with identifier n is kept in the slot n modulo the capacity of the table,
+ * so an answer is matched by reading one slot and the operation is removed
+ * with a compare-and-set: registering and completing operations do not
+ * take any lock. An identifier whose slot is still in use is skipped.
+ * <p>
+ * The timeouts are kept in a hashed timing wheel: each operation is added
+ * to the bucket of the tick of its deadline, and every tick only the
+ * operations of one bucket are checked. The wheel is advanced by a
+ * scheduled executor, or by calling {@link #expireTimeouts()}. An operation
+ * that times out is completed with a {@link TimeoutException}.
+ *
+ * @author ogondio
+ *
+ * @param <T> Type of the answer
+ */
+public class CorrelationTable<T> {
+
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * Outstanding operation
+	 */
+	public static final class Pending<T> extends CompletableFuture<T> {
+
+		private final long id;
+
+		private final long deadlineTick;
+
+		Pending(long id, long deadlineTick){
+			this.id = id;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * @return Identifier to put in the message
+		 */
+		public long getId() {
+			return id;
+		}
+	}
+
+	private final AtomicReferenceArray<Pending<T>> slots;
+
+	private final int mask;
+
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	private final ConcurrentLinkedQueue<Pending<T>>[] wheel;
+
+	private final long tickNanos;
+
+	private final long startNanos;
+
+	/**
+	 * Last tick whose bucket is being or has been checked
+	 */
+	private volatile long lastTick;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong timeouts = new AtomicLong();
+
+	private final AtomicLong unmatched = new AtomicLong();
+
+	private ScheduledFuture<?> timerFuture;
+
+	public CorrelationTable(){
+		this(DEFAULT_CAPACITY, DEFAULT_TICK_MILLIS);
+	}
+
+	/**
+	 * @param capacity Maximum number of outstanding operations (rounded up to a power of 2)
+	 * @param tickMillis Resolution of the timeouts, in milliseconds
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public CorrelationTable(int capacity, long tickMillis){
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new AtomicReferenceArray<Pending<T>>(size);
+		this.mask = size - 1;
+		this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++){
+			wheel[i] = new ConcurrentLinkedQueue<Pending<T>>();
+		}
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Advances the timing wheel with the given executor, every tick
+	 * @param timer Executor of the timer
+	 */
+	public synchronized void start(ScheduledExecutorService timer){
+		if (timerFuture == null){
+			timerFuture = timer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					expireTimeouts();
+				}
+			}, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public synchronized void stop(){
+		if (timerFuture != null){
+			timerFuture.cancel(false);
+			timerFuture = null;
+		}
+	}
+
+	/**
+	 * Allocates an identifier and registers an operation
+	 * @param timeoutMillis Time to wait for the answer, in milliseconds
+	 * @return The operation, with the identifier to send and the future of the answer
+	 * @throws IllegalStateException if the table is full
+	 */
+	public Pending<T> register(long timeoutMillis){
+		long deadlineTick = (System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) + tickNanos - 1) / tickNanos;
+		for (int attempt = 0; attempt <= mask; attempt++){
+			long id = nextId.getAndIncrement() & 0xFFFFFFFFL;
+			if (id == 0 || id == 0xFFFFFFFFL){
+				continue;
+			}
+			int slot = (int)(id & mask);
+			if (slots.get(slot) != null){
+				continue;
+			}
+			Pending<T> pending = new Pending<T>(id, deadlineTick);
+			if (slots.compareAndSet(slot, null, pending)){
+				outstanding.incrementAndGet();
+				long tick = Math.max(deadlineTick, lastTick + 1);
+				wheel[(int)(tick & (WHEEL_SIZE - 1))].add(pending);
+				//If the bucket has been checked meanwhile, the operation is
+				//added to the next one, so it does not wait a full turn
+				long current;
+				while ((current = lastTick) >= tick){
+					tick = current + 1;
+					wheel[(int)(tick & (WHEEL_SIZE - 1))].add(pending);
+				}
+				return pending;
+			}
+		}
+		throw new IllegalStateException("Too many outstanding operations");
+	}
+
+	/**
+	 * Completes an operation with its answer
+	 * @param id Identifier received
+	 * @param answer Answer of the operation
+	 * @return true if the operation was outstanding
+	 */
+	public boolean complete(long id, T answer){
+		Pending<T> pending = remove(id);
+		if (pending == null){
+			unmatched.incrementAndGet();
+			return false;
+		}
+		completed.incrementAndGet();
+		pending.complete(answer);
+		return true;
+	}
+
+	/**
+	 * Completes an operation with an error
+	 * @param id Identifier of the operation
+	 * @param error Error
+	 * @return true if the operation was outstanding
+	 */
+	public boolean fail(long id, Throwable error){
+		Pending<T> pending = remove(id);
+		if (pending == null){
+			return false;
+		}
+		pending.completeExceptionally(error);
+		return true;
+	}
+
+	/**
+	 * Completes all the outstanding operations with an error, for example
+	 * when the session is closed
+	 * @param error Error
+	 */
+	public void failAll(Throwable error){
+		for (int slot = 0; slot <= mask; slot++){
+			Pending<T> pending = slots.get(slot);
+			if (pending != null && slots.compareAndSet(slot, pending, null)){
+				outstanding.decrementAndGet();
+				pending.completeExceptionally(error);
+			}
+		}
+	}
+
+	/**
+	 * @param id Identifier of the operation
+	 * @return true if the operation is waiting for its answer
+	 */
+	public boolean isOutstanding(long id){
+		Pending<T> pending = slots.get((int)(id & mask));
+		return pending != null && pending.id == id;
+	}
+
+	private Pending<T> remove(long id){
+		int slot = (int)(id & mask);
+		Pending<T> pending = slots.get(slot);
+		if (pending == null || pending.id != id || !slots.compareAndSet(slot, pending, null)){
+			return null;
+		}
+		outstanding.decrementAndGet();
+		return pending;
+	}
+
+	/**
+	 * Checks the buckets of the ticks elapsed since the last call and
+	 * completes the operations whose deadline has passed. It must not be
+	 * called by several threads at the same time.
+	 */
+	public void expireTimeouts(){
+		long now = (System.nanoTime() - startNanos) / tickNanos;
+		long tick = lastTick;
+		//A full turn checks all the buckets
+		long last = Math.min(now, tick + WHEEL_SIZE);
+		while (tick < last){
+			tick++;
+			//Published before the bucket is checked, for register()
+			lastTick = tick;
+			Iterator<Pending<T>> it = wheel[(int)(tick & (WHEEL_SIZE - 1))].iterator();
+			while (it.hasNext()){
+				Pending<T> pending = it.next();
+				if (pending.isDone()){
+					it.remove();
+				} else if (pending.deadlineTick <= now){
+					it.remove();
+					if (remove(pending.id) == pending){
+						timeouts.incrementAndGet();
+						pending.completeExceptionally(new TimeoutException("No answer to operation " + pending.id));
+					}
+				}
+			}
+		}
+		lastTick = now;
+	}
+
+	/**
+	 * @return Number of operations waiting for their answer
+	 */
+	public int getOutstanding(){
+		return outstanding.get();
+	}
+
+	public long getCompleted(){
+		return completed.get();
+	}
+
+	public long getTimeouts(){
+		return timeouts.get();
+	}
+
+	/**
+	 * @return Number of answers that did not match an outstanding operation
+	 */
+	public long getUnmatched(){
+		return unmatched.get();
+	}
+
+}
@@ -0,0 +1,23 @@
+package es.tid.pce.pcep.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of the messages encoded in pooled buffers, usually the
+ * socket of a PCEP session.
+ *
+ * @author ogondio
+ *
+ */
+public interface MessageSink {
+
+	/**
+	 * Sends an encoded message. The buffer goes back to its pool when the
+	 * method returns, so the bytes must be written or copied before.
+	 * @param message Buffer in read mode with one complete PCEP message
+	 * @throws IOException if the message can not be sent
+	 */
+	public void send(ByteBuffer message) throws IOException;
+
+}
@@ -0,0 +1,201 @@
+package es.tid.pce.pcep.session;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import es.tid.pce.pcep.PCEPProtocolViolationException;
+import es.tid.pce.pcep.messages.PCEPMessage;
+import es.tid.pce.pcep.messages.PCEPMessageTypes;
+import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.PCEPObject;
+
+/**
+ * Template of PCUpd and PCInitiate messages for a single LSP.
+ * <p>
+ * The prototype message is encoded once and the positions of the fields
+ * that change from one message to the next are recorded: the SRP-ID-number
+ * of the SRP object, the PLSP-ID of the LSP object, the bandwidth of the
+ * BANDWIDTH object and the ERO. A new message is then made by copying the
+ * bytes of the template and writing those fields, without creating and
+ * encoding the objects again. The ERO is replaced by splicing an encoded
+ * ERO object of any length between the bytes before and after the ERO of
+ * the template.
+ * <p>
+ * The first SRP, LSP, BANDWIDTH (requested or existing LSP) and ERO
+ * objects of the prototype are used. A template is immutable and can be
+ * used by several threads.
+ *
+ * @author ogondio
+ *
+ */
+public class PCEPMessageTemplate {
+
+	private final byte[] template;
+
+	private final int srpIdOffset;
+
+	private final int plspIdOffset;
+
+	private final int bandwidthOffset;
+
+	private final int eroOffset;
+
+	private final int eroLength;
+
+	/**
+	 * @param prototype PCUpd or PCInitiate message with one LSP
+	 * @throws PCEPProtocolViolationException if the prototype can not be encoded or it lacks the SRP or LSP object
+	 */
+	public PCEPMessageTemplate(PCEPMessage prototype) throws PCEPProtocolViolationException{
+		prototype.encode();
+		int type = prototype.getMessageType();
+		if (type != PCEPMessageTypes.MESSAGE_UPDATE && type != PCEPMessageTypes.MESSAGE_INITIATE){
+			throw new IllegalArgumentException("Only PCUpd and PCInitiate templates are supported");
+		}
+		this.template = prototype.getBytes();
+		int srp = -1;
+		int plsp = -1;
+		int bw = -1;
+		int ero = -1;
+		int eroLen = 0;
+		int offset = 4;
+		while (offset < template.length){
+			int oc = PCEPObject.getObjectClass(template, offset);
+			int length = PCEPObject.getObjectLength(template, offset);
+			if (length < 4){
+				throw new PCEPProtocolViolationException();
+			}
+			if (oc == ObjectParameters.PCEP_OBJECT_CLASS_SRP && srp < 0){
+				srp = offset + 8;
+			} else if (oc == ObjectParameters.PCEP_OBJECT_CLASS_LSP && plsp < 0){
+				plsp = offset + 4;
+			} else if (oc == ObjectParameters.PCEP_OBJECT_CLASS_BANDWIDTH && bw < 0){
+				int ot = PCEPObject.getObjectType(template, offset);
+				if (ot == ObjectParameters.PCEP_OBJECT_TYPE_BANDWIDTH_REQUEST || ot == ObjectParameters.PCEP_OBJECT_TYPE_BANDWIDTH_EXISTING_TE_LSP){
+					bw = offset + 4;
+				}
+			} else if (oc == ObjectParameters.PCEP_OBJECT_CLASS_ERO && ero < 0){
+				ero = offset;
+				eroLen = length;
+			}
+			offset += length;
+		}
+		if (srp < 0 || plsp < 0){
+			throw new PCEPProtocolViolationException();
+		}
+		this.srpIdOffset = srp;
+		this.plspIdOffset = plsp;
+		this.bandwidthOffset = bw;
+		this.eroOffset = ero;
+		this.eroLength = eroLen;
+	}
+
+	/**
+	 * @param srpId SRP-ID-number of the new message
+	 * @param plspId PLSP-ID of the new message
+	 * @return Bytes of the new message
+	 */
+	public byte[] encode(long srpId, int plspId){
+		byte[] message = template.clone();
+		patch(ByteBuffer.wrap(message), 0, srpId, plspId, Float.NaN, 0);
+		return message;
+	}
+
+	/**
+	 * @param srpId SRP-ID-number of the new message
+	 * @param plspId PLSP-ID of the new message
+	 * @param bandwidth Bandwidth in bytes per second, NaN to keep the one of the template
+	 * @param ero Encoded ERO object, null to keep the one of the template
+	 * @return Bytes of the new message
+	 */
+	public byte[] encode(long srpId, int plspId, float bandwidth, byte[] ero){
+		int length = getLength(ero);
+		ByteBuffer out = ByteBuffer.allocate(length);
+		encode(out, srpId, plspId, bandwidth, ero);
+		return out.array();
+	}
+
+	/**
+	 * Writes a new message in a buffer, for example one of a {@link BufferPool}
+	 * @param out Buffer where the message is written, from its position
+	 * @param srpId SRP-ID-number of the new message
+	 * @param plspId PLSP-ID of the new message
+	 * @param bandwidth Bandwidth in bytes per second, NaN to keep the one of the template
+	 * @param ero Encoded ERO object, null to keep the one of the template
+	 * @return Length of the message
+	 * @throws BufferOverflowException if the message does not fit in the buffer
+	 */
+	public int encode(ByteBuffer out, long srpId, int plspId, float bandwidth, byte[] ero){
+		int start = out.position();
+		int length = getLength(ero);
+		if (length > 0xFFFF){
+			throw new IllegalArgumentException("Message too long: " + length);
+		}
+		int delta = 0;
+		if (ero == null){
+			out.put(template);
+		} else {
+			if (eroOffset < 0){
+				throw new IllegalStateException("The template has no ERO");
+			}
+			if (PCEPObject.getObjectClass(ero, 0) != ObjectParameters.PCEP_OBJECT_CLASS_ERO || PCEPObject.getObjectLength(ero, 0) != ero.length){
+				throw new IllegalArgumentException("Not an encoded ERO object");
+			}
+			out.put(template, 0, eroOffset);
+			out.put(ero);
+			out.put(template, eroOffset + eroLength, template.length - eroOffset - eroLength);
+			delta = ero.length - eroLength;
+			out.put(start + 2, (byte)(length >>> 8));
+			out.put(start + 3, (byte)length);
+		}
+		patch(out, start, srpId, plspId, bandwidth, delta);
+		return length;
+	}
+
+	/**
+	 * @param ero Encoded ERO that replaces the one of the template, may be null
+	 * @return Length of the message built with the ERO
+	 */
+	public int getLength(byte[] ero){
+		return (ero == null) ? template.length : template.length - eroLength + ero.length;
+	}
+
+	/**
+	 * Writes the fields of the message. The fields after the ERO are moved
+	 * by the difference of length of the new ERO.
+	 */
+	private void patch(ByteBuffer out, int start, long srpId, int plspId, float bandwidth, int delta){
+		out.putInt(start + shift(srpIdOffset, delta), (int)srpId);
+		int plsp = start + shift(plspIdOffset, delta);
+		//PLSP-ID in the first 20 bits, the flags are kept
+		out.put(plsp, (byte)(plspId >>> 12));
+		out.put(plsp + 1, (byte)(plspId >>> 4));
+		out.put(plsp + 2, (byte)(((plspId & 0x0F) << 4) | (out.get(plsp + 2) & 0x0F)));
+		if (!Float.isNaN(bandwidth)){
+			if (bandwidthOffset < 0){
+				throw new IllegalStateException("The template has no BANDWIDTH object");
+			}
+			out.putFloat(start + shift(bandwidthOffset, delta), bandwidth);
+		}
+	}
+
+	private int shift(int offset, int delta){
+		return (eroOffset >= 0 && offset > eroOffset) ? offset + delta : offset;
+	}
+
+	/**
+	 * @return Length of the message of the template
+	 */
+	public int getTemplateLength(){
+		return template.length;
+	}
+
+	public boolean hasBandwidth(){
+		return bandwidthOffset >= 0;
+	}
+
+	public boolean hasEro(){
+		return eroOffset >= 0;
+	}
+
+}
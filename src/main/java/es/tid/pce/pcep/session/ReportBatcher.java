@@ -0,0 +1,182 @@
+package es.tid.pce.pcep.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.tid.pce.pcep.PCEPProtocolViolationException;
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.messages.PCEPMessageTypes;
+
+/**
+ * Writer that packs state reports in PCRpt messages.
+ * <p>
+ * The state reports are encoded as they are added, one after the other,
+ * in a buffer of a {@link BufferPool}. When the next report does not fit in
+ * the maximum length of a PCEP message (65535 bytes, the Message-Length is
+ * 16 bits) the header of the PCRpt is written and the message is handed to
+ * the {@link MessageSink}. The message is also sent when the first report
+ * of the batch has waited the linger time, so the reports are not delayed
+ * more than that when there are few of them, or when {@link #flush()} is
+ * called (for example after the end of synchronization marker).
+ * <p>
+ * The order of the reports is kept. The methods can be called by several
+ * threads.
+ *
+ * @author ogondio
+ *
+ */
+public class ReportBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger("PCEPParser");
+
+	public static final int MAX_MESSAGE_LENGTH = 65535;
+
+	private static final int HEADER_LENGTH = 4;
+
+	private final MessageSink sink;
+
+	private final BufferPool pool;
+
+	private final int maxMessageLength;
+
+	private final ScheduledExecutorService timer;
+
+	private final long lingerNanos;
+
+	private final Runnable lingerTask = new Runnable() {
+		public void run() {
+			try {
+				flush();
+			} catch (IOException e) {
+				log.warn("ReportBatcher: error sending a PCRpt: " + e);
+			}
+		}
+	};
+
+	/**
+	 * Message being filled, null if there are no pending reports
+	 */
+	private ByteBuffer current;
+
+	private int currentReports;
+
+	private ScheduledFuture<?> lingerFuture;
+
+	private long sentMessages;
+
+	private long sentReports;
+
+	/**
+	 * Creates a batcher that only sends when the message is full or on {@link #flush()}
+	 * @param sink Destination of the messages
+	 */
+	public ReportBatcher(MessageSink sink){
+		this(sink, new BufferPool(MAX_MESSAGE_LENGTH, 4, false), MAX_MESSAGE_LENGTH, null, 0);
+	}
+
+	/**
+	 * @param sink Destination of the messages
+	 * @param pool Pool of the buffers, of at least maxMessageLength bytes
+	 * @param maxMessageLength Maximum length of a message
+	 * @param timer Executor of the linger timer, null for no timer
+	 * @param lingerMillis Time that a report can wait for more reports, in milliseconds
+	 */
+	public ReportBatcher(MessageSink sink, BufferPool pool, int maxMessageLength, ScheduledExecutorService timer, long lingerMillis){
+		if (maxMessageLength > MAX_MESSAGE_LENGTH || maxMessageLength > pool.getBufferSize()){
+			throw new IllegalArgumentException("maxMessageLength larger than the message or buffer size");
+		}
+		this.sink = sink;
+		this.pool = pool;
+		this.maxMessageLength = maxMessageLength;
+		this.timer = timer;
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+	}
+
+	/**
+	 * Adds a state report to the current message. The message is sent first
+	 * if the report does not fit.
+	 * @param stateReport State report to send
+	 * @throws PCEPProtocolViolationException if the report can not be encoded or it does not fit in a message
+	 * @throws IOException if a message can not be sent
+	 */
+	public synchronized void add(StateReport stateReport) throws PCEPProtocolViolationException, IOException{
+		stateReport.encode();
+		int length = stateReport.getLength();
+		if (length > maxMessageLength - HEADER_LENGTH){
+			log.warn("State report of " + length + " bytes does not fit in a PCRpt");
+			throw new PCEPProtocolViolationException();
+		}
+		if (current != null && current.position() + length > maxMessageLength){
+			flush();
+		}
+		if (current == null){
+			current = pool.acquire();
+			current.position(HEADER_LENGTH);
+			if (timer != null && lingerNanos > 0){
+				lingerFuture = timer.schedule(lingerTask, lingerNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		current.put(stateReport.getBytes(), 0, length);
+		currentReports++;
+	}
+
+	/**
+	 * Sends the pending reports, if any
+	 * @throws IOException if the message can not be sent
+	 */
+	public synchronized void flush() throws IOException{
+		if (current == null){
+			return;
+		}
+		if (lingerFuture != null){
+			lingerFuture.cancel(false);
+			lingerFuture = null;
+		}
+		ByteBuffer message = current;
+		int reports = currentReports;
+		current = null;
+		currentReports = 0;
+		int length = message.position();
+		message.put(0, (byte)0x20); //Version 1, no flags
+		message.put(1, (byte)PCEPMessageTypes.MESSAGE_REPORT);
+		message.put(2, (byte)(length >>> 8));
+		message.put(3, (byte)length);
+		message.flip();
+		try {
+			sink.send(message);
+		} finally {
+			pool.release(message);
+		}
+		sentMessages++;
+		sentReports += reports;
+	}
+
+	/**
+	 * @return Number of reports waiting to be sent
+	 */
+	public synchronized int getPendingReports(){
+		return currentReports;
+	}
+
+	public synchronized long getSentMessages() {
+		return sentMessages;
+	}
+
+	public synchronized long getSentReports() {
+		return sentReports;
+	}
+
+	/**
+	 * @return Average number of reports in each message sent
+	 */
+	public synchronized double getAverageReportsPerMessage(){
+		return (sentMessages == 0) ? 0 : (double)sentReports / sentMessages;
+	}
+
+}
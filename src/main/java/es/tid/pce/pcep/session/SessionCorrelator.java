@@ -0,0 +1,124 @@
+package es.tid.pce.pcep.session;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.messages.PCEPReport;
+import es.tid.pce.pcep.messages.PCEPResponse;
+import es.tid.pce.pcep.session.CorrelationTable.Pending;
+
+/**
+ * Correlation of the operations of a PCEP session with their answers:
+ * the path computation requests (PCReq) with the responses of the PCRep
+ * messages, by Request-ID-number, and the PCUpd and PCInitiate messages
+ * with the state reports of the PCRpt messages, by SRP-ID-number.
+ * <p>
+ * The identifiers are taken from the correlator when the message is built,
+ * and the decoded answers are passed to {@link #onResponse(PCEPResponse)}
+ * and {@link #onReport(PCEPReport)}, which complete the futures of the
+ * waiting operations. See {@link CorrelationTable}.
+ *
+ * @author ogondio
+ *
+ */
+public class SessionCorrelator {
+
+	private final CorrelationTable<Response> requests;
+
+	private final CorrelationTable<StateReport> srps;
+
+	public SessionCorrelator(){
+		this(CorrelationTable.DEFAULT_CAPACITY, CorrelationTable.DEFAULT_TICK_MILLIS);
+	}
+
+	/**
+	 * @param capacity Maximum number of outstanding operations of each kind
+	 * @param tickMillis Resolution of the timeouts, in milliseconds
+	 */
+	public SessionCorrelator(int capacity, long tickMillis){
+		this.requests = new CorrelationTable<Response>(capacity, tickMillis);
+		this.srps = new CorrelationTable<StateReport>(capacity, tickMillis);
+	}
+
+	/**
+	 * Starts the expiration of the timeouts
+	 * @param timer Executor of the timer
+	 */
+	public void start(ScheduledExecutorService timer){
+		requests.start(timer);
+		srps.start(timer);
+	}
+
+	/**
+	 * Registers a path computation request. The identifier of the result
+	 * has to be used as Request-ID-number of the RP object.
+	 * @param timeoutMillis Time to wait for the response, in milliseconds
+	 * @return The request, completed with the response
+	 */
+	public Pending<Response> newRequest(long timeoutMillis){
+		return requests.register(timeoutMillis);
+	}
+
+	/**
+	 * Registers a PCUpd or PCInitiate operation. The identifier of the
+	 * result has to be used as SRP-ID-number of the SRP object.
+	 * @param timeoutMillis Time to wait for the state report, in milliseconds
+	 * @return The operation, completed with the first state report with its SRP-ID-number
+	 */
+	public Pending<StateReport> newSRP(long timeoutMillis){
+		return srps.register(timeoutMillis);
+	}
+
+	/**
+	 * Completes the requests answered in a PCRep message
+	 * @param response Decoded PCRep message
+	 * @return Number of requests completed
+	 */
+	public int onResponse(PCEPResponse response){
+		int matched = 0;
+		for (Response r : response.getResponseList()){
+			if (r.getRequestParameters() != null && requests.complete(r.getRequestParameters().getRequestID(), r)){
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Completes the operations acknowledged in a PCRpt message. The reports
+	 * without SRP, or with SRP-ID-number 0, are not answers.
+	 * @param report Decoded PCRpt message
+	 * @return Number of operations completed
+	 */
+	public int onReport(PCEPReport report){
+		int matched = 0;
+		for (StateReport stateReport : report.getStateReportList()){
+			if (stateReport.getSrp() != null && stateReport.getSrp().getSRP_ID_number() != 0
+					&& srps.complete(stateReport.getSrp().getSRP_ID_number(), stateReport)){
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Fails all the outstanding operations, when the session is closed
+	 * @param error Cause
+	 */
+	public void close(Throwable error){
+		requests.stop();
+		srps.stop();
+		requests.failAll(error);
+		srps.failAll(error);
+	}
+
+	public CorrelationTable<Response> getRequests() {
+		return requests;
+	}
+
+	public CorrelationTable<StateReport> getSrps() {
+		return srps;
+	}
+
+}
@@ -1,12 +1,14 @@
 package es.tid.protocol.commons;
 
+import java.net.Inet6Address;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.BitSet;
 
 
 
 public class ByteHandler {
-
+
 	/*
 	 * 
 	 */
@@ -361,6 +363,40 @@ public class ByteHandler {
 		return number;
 	}
 	
+	public static void encode8bytesLong(long number, byte[] bytes, int offset ){
+		for (int i=7;i>=0;--i){
+			bytes[offset+i]=(byte)(number & 0xFF);
+			number=number>>>8;
+		}
+	}
+
+	public static long decode8bytesLong( byte[] bytes, int offset) {
+		long number=0;
+		for (int i=0;i<8;++i){
+			number=(number<<8) | ((long)bytes[offset+i] & 0xFFL);
+		}
+		return number;
+	}
+
+	/**
+	 * Builds an IPv6 address stored as two longs (the 64 high order bits and
+	 * the 64 low order bits of the address)
+	 * @param high 64 high order bits
+	 * @param low 64 low order bits
+	 * @return the IPv6 address
+	 */
+	public static Inet6Address toInet6Address(long high, long low) {
+		byte[] address=new byte[16];
+		encode8bytesLong(high, address, 0);
+		encode8bytesLong(low, address, 8);
+		try {
+			return Inet6Address.getByAddress(null, address, -1);
+		} catch (UnknownHostException e) {
+			//Not thrown for 16 byte addresses
+			return null;
+		}
+	}
+
 	/**
 	 * Get an Integer value from 2 bytes of a byte array
 	 * @param bytes bytes to examine
@@ -0,0 +1,96 @@
+package es.tid.protocol.commons;
+
+/**
+ * Hash key over a slice of a byte array, compared by content.
+ * <p>
+ * Used to look up encoded protocol elements directly in the received message
+ * bytes, without copying them. The key keeps a reference to the array, so the
+ * keys that are stored in a map should point to the bytes of the stored
+ * element, not to the whole message.
+ *
+ * @author ogondio
+ *
+ */
+public final class BytesKey {
+
+	private final byte[] bytes;
+
+	private final int offset;
+
+	private final int length;
+
+	private final int hash;
+
+	public BytesKey(byte[] bytes){
+		this(bytes, 0, bytes.length);
+	}
+
+	public BytesKey(byte[] bytes, int offset, int length){
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+		this.hash = hashCode(bytes, offset, length);
+	}
+
+	/**
+	 * Computes the same hash as {@link java.util.Arrays#hashCode(byte[])} over a slice of an array
+	 * @param bytes Array of bytes
+	 * @param offset Start of the slice
+	 * @param length Length of the slice
+	 * @return hash of the slice
+	 */
+	public static int hashCode(byte[] bytes, int offset, int length){
+		int h = 1;
+		for (int i = offset; i < offset+length; ++i){
+			h = 31 * h + bytes[i];
+		}
+		return h;
+	}
+
+	/**
+	 * Compares two slices of byte arrays
+	 * @param a First array
+	 * @param aOffset Start of the slice in the first array
+	 * @param b Second array
+	 * @param bOffset Start of the slice in the second array
+	 * @param length Length of both slices
+	 * @return true if the contents are the same
+	 */
+	public static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length){
+		for (int i = 0; i < length; ++i){
+			if (a[aOffset+i] != b[bOffset+i])
+				return false;
+		}
+		return true;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BytesKey))
+			return false;
+		BytesKey other = (BytesKey) obj;
+		if (hash != other.hash || length != other.length)
+			return false;
+		return equals(bytes, offset, other.bytes, other.offset, length);
+	}
+
+}
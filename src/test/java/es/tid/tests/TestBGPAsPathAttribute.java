@@ -1,10 +1,22 @@
 package es.tid.tests;
 
+import es.tid.bgp.bgp4.messages.BGP4Open;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.open.BGP4Capability;
+import es.tid.bgp.bgp4.open.BGP4CapabilitiesOptionalParameter;
+import es.tid.bgp.bgp4.open.BGP4OctetsASByteCapabilityAdvertisement;
+import es.tid.bgp.bgp4.open.BGP4OptionalParameter;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.ASPath;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.ASPathTable;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.AS_Path_Attribute;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.AS_Path_Segment;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.OriginAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,6 +54,41 @@ public class TestBGPAsPathAttribute
 		}
 	}
 
+	@Test
+	public void testTwoOctetSegments() throws Exception
+	{
+		//Path built segment by segment for a peer without the 4-octet AS capability
+		AS_Path_Segment segment = new AS_Path_Segment();
+		segment.setAS4(false);
+		segment.setSegments(new int[]{65001, 65002});
+		LinkedList<AS_Path_Segment> segments = new LinkedList<AS_Path_Segment>();
+		segments.add(segment);
+		AS_Path_Attribute attribute = new AS_Path_Attribute();
+		attribute.setAsPathSegments(segments);
+		attribute.encode();
+
+		Assert.assertFalse(attribute.isFourOctetAS());
+		Assert.assertEquals(2 + 2 * 2, attribute.getPathAttributeLength());
+		AS_Path_Attribute decoded = new AS_Path_Attribute(attribute.getBytes(), 0, false, null);
+		Assert.assertArrayEquals(new int[]{65001, 65002}, decoded.getAsPathSegments().get(0).getSegments());
+		segment.encode();
+		byte[] value = new byte[attribute.getPathAttributeLength()];
+		System.arraycopy(attribute.getBytes(), attribute.getMandatoryLength(), value, 0, value.length);
+		Assert.assertArrayEquals(segment.getBytes(), value);
+
+		//The width is chosen again in every encode
+		segment.setAS4(true);
+		attribute.encode();
+		Assert.assertTrue(attribute.isFourOctetAS());
+		Assert.assertEquals(2 + 2 * 4, attribute.getPathAttributeLength());
+
+		//The segment keeps its own copy of the AS numbers
+		int[] asNumbers = new int[]{65003, 65004};
+		segment.setSegments(asNumbers);
+		asNumbers[0] = 65005;
+		Assert.assertArrayEquals(new int[]{65003, 65004}, segment.getSegments());
+	}
+
 	@Test
 	public void testAsPathAttribute()
 	{
@@ -63,4 +110,129 @@ public class TestBGPAsPathAttribute
 		Assert.assertArrayEquals("Bytes from both PathAttribute_AS_PATH objects should be the same", ap1.getBytes(), ap2.getBytes());
 
 	}
+
+	@Test
+	public void testFourOctetAsPath()
+	{
+		AS_Path_Segment seq = new AS_Path_Segment();
+		seq.set4Segments(new long[]{4200000001L, 65001, 131072});
+		AS_Path_Segment set = new AS_Path_Segment();
+		set.setType(PathAttributesTypeCode.PATH_ATTRIBUTE_ASPATH_AS_SET);
+		set.set4Segments(new long[]{65010, 65011});
+		LinkedList<AS_Path_Segment> asList = new LinkedList<AS_Path_Segment>();
+		asList.add(seq);
+		asList.add(set);
+		AS_Path_Attribute ap1 = new AS_Path_Attribute();
+		ap1.setAsPathSegments(asList);
+		ap1.encode();
+
+		AS_Path_Attribute ap2 = new AS_Path_Attribute(ap1.getBytes(), 0, true, null);
+		Assert.assertArrayEquals("The 4-octet ASes should be decoded", new long[]{4200000001L, 65001, 131072}, ap2.getAsPathSegments().get(0).get4Segments());
+		Assert.assertEquals("AS_SET counts as one", 4, ap2.getPathLength());
+		Assert.assertTrue(ap2.containsAS(4200000001L));
+		Assert.assertTrue(ap2.containsAS(65011));
+		Assert.assertFalse(ap2.containsAS(65002));
+		Assert.assertEquals(4200000001L, ap2.getPath().getFirstAS());
+		Assert.assertEquals(-1, ap2.getPath().getOriginAS());
+		ap2.encode();
+		Assert.assertArrayEquals("Bytes from both PathAttribute_AS_PATH objects should be the same", ap1.getBytes(), ap2.getBytes());
+
+		//Guessing the size gives the same path
+		AS_Path_Attribute ap3 = new AS_Path_Attribute(ap1.getBytes(), 0);
+		Assert.assertEquals(ap2.getPath(), ap3.getPath());
+
+		//2-octet session: the ASes that do not fit are sent as AS_TRANS
+		ap1.setFourOctetAS(false);
+		ap1.encode();
+		AS_Path_Attribute ap4 = new AS_Path_Attribute(ap1.getBytes(), 0, false, null);
+		Assert.assertEquals(4, ap4.getPathLength());
+		Assert.assertArrayEquals(new long[]{ASPath.AS_TRANS, 65001, ASPath.AS_TRANS}, ap4.getAsPathSegments().get(0).get4Segments());
+		Assert.assertFalse(ap4.getPath().hasFourOctetASes());
+		Assert.assertTrue(ap2.getPath().hasFourOctetASes());
+	}
+
+	@Test
+	public void testAsPathInterning()
+	{
+		ASPathTable table = new ASPathTable(4);
+		ASPath path = ASPath.sequence(65001, 65002, 65003);
+		byte[] bytes4 = new byte[path.getEncodedLength(true)];
+		path.encode(bytes4, 0, true);
+		byte[] bytes2 = new byte[path.getEncodedLength(false)];
+		path.encode(bytes2, 0, false);
+
+		ASPath p1 = table.intern(bytes4, 0, bytes4.length, true);
+		ASPath p2 = table.intern(bytes2, 0, bytes2.length, false);
+		ASPath p3 = table.intern(ASPath.sequence(65001, 65002, 65003));
+		Assert.assertSame("The same path should be shared whatever the AS size", p1, p2);
+		Assert.assertSame(p1, p3);
+		Assert.assertEquals(path, p1);
+		Assert.assertEquals(1, table.size());
+		Assert.assertEquals(2, table.getHits());
+
+		for (int i = 0; i < 1000; i++)
+		{
+			table.intern(path.prepend(64512 + i));
+		}
+		Assert.assertEquals(1001, table.size());
+		ASPath prepended = path.prepend(64512 + 999);
+		Assert.assertEquals(4, prepended.getPathLength());
+		Assert.assertEquals(64512 + 999, prepended.getFirstAS());
+		Assert.assertEquals(65003, prepended.getOriginAS());
+		Assert.assertSame(table.intern(prepended), table.intern(ASPath.sequence(64512 + 999, 65001, 65002, 65003)));
+		Assert.assertEquals(2, ASPath.sequence(65001, 65002, 65001).countOccurrences(65001));
+		Assert.assertEquals("65001 65002 65003", path.toString());
+
+		byte[] malformed = new byte[]{2, 3, 0, 1};
+		try
+		{
+			table.intern(malformed, 0, malformed.length, false);
+			Assert.fail("Malformed AS path should not be interned");
+		}catch(Exception e)
+		{
+			Assert.assertEquals(1001, table.size());
+		}
+	}
+
+	@Test
+	public void testFourOctetCapabilityNegotiation()
+	{
+		BGP4OctetsASByteCapabilityAdvertisement cap = new BGP4OctetsASByteCapabilityAdvertisement();
+		cap.setAS(4200000001L);
+		cap.encode();
+		BGP4OctetsASByteCapabilityAdvertisement cap2 = new BGP4OctetsASByteCapabilityAdvertisement(cap.getBytes(), 0);
+		Assert.assertEquals(4200000001L, cap2.getAS());
+
+		BGP4Open local = new BGP4Open();
+		BGP4CapabilitiesOptionalParameter param = new BGP4CapabilitiesOptionalParameter();
+		LinkedList<BGP4Capability> capabilities = new LinkedList<BGP4Capability>();
+		capabilities.add(cap);
+		param.setCapabilityList(capabilities);
+		LinkedList<BGP4OptionalParameter> params = new LinkedList<BGP4OptionalParameter>();
+		params.add(param);
+		local.setParametersList(params);
+		BGP4Open remote = new BGP4Open();
+		Assert.assertFalse(BGP4OctetsASByteCapabilityAdvertisement.isNegotiated(local, remote));
+		remote.setParametersList(params);
+		Assert.assertTrue(BGP4OctetsASByteCapabilityAdvertisement.isNegotiated(local, remote));
+
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		OriginAttribute origin = new OriginAttribute();
+		pathAttributes.add(origin);
+		AS_Path_Attribute asPath = new AS_Path_Attribute();
+		asPath.setPath(ASPath.sequence(4200000001L, 65001));
+		pathAttributes.add(asPath);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+
+		ASPathTable table = new ASPathTable();
+		BGP4Update update1 = new BGP4Update(update.getBytes(), null, null, table, true);
+		BGP4Update update2 = new BGP4Update(update.getBytes(), null, null, table, true);
+		AS_Path_Attribute ap1 = (AS_Path_Attribute) update1.getPathAttributes().get(1);
+		AS_Path_Attribute ap2 = (AS_Path_Attribute) update2.getPathAttributes().get(1);
+		Assert.assertSame("Both updates should share the path", ap1.getPath(), ap2.getPath());
+		Assert.assertEquals(4200000001L, ap1.getPath().getFirstAS());
+		Assert.assertEquals(1, table.size());
+	}
 }
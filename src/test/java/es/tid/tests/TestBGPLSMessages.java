@@ -1,18 +1,42 @@
 package es.tid.tests;
 
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.update.fields.LinkNLRI;
 import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NLRITypes;
 import es.tid.bgp.bgp4.update.fields.NodeNLRI;
+import es.tid.bgp.bgp4.update.filter.LinkStateNLRIFilter;
+import es.tid.bgp.bgp4.update.filter.NLRIPredicate;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.BGP_LS_MP_Reach_Attribute;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.Generic_MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AS_Path_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.AS_Path_Segment;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.LinkStateAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.LinkStateAttributeDiff;
 import es.tid.bgp.bgp4.update.fields.pathAttributes.MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.OriginAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributeCache;
 import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.NodeDescriptorsCache;
 import es.tid.bgp.bgp4.update.tlv.ProtocolIDCodes;
+import es.tid.bgp.bgp4.update.tlv.RemoteNodeDescriptorsTLV;
 import es.tid.bgp.bgp4.update.tlv.RoutingUniverseIdentifierTypes;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.LinkStateAttributeTLVTypes;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MaximumLinkBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.UnreservedBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.AutonomousSystemNodeDescriptorSubTLV;
 import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IGPRouterIDNodeDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPv6InterfaceAddressLinkDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPv6NeighborAddressLinkDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPv6RouterIDSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.MultiTopologyIDLinkDescriptorSubTLV;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -81,4 +105,291 @@ public class TestBGPLSMessages
 		}
 	}
 
+	@Test
+	public void testPathAttributeCache()
+	{
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		OriginAttribute origin = new OriginAttribute();
+		origin.setValue(0);
+		pathAttributes.add(origin);
+		AS_Path_Attribute asPath = new AS_Path_Attribute();
+		AS_Path_Segment segment = new AS_Path_Segment();
+		segment.setSegments(new int[]{65001, 65002});
+		LinkedList<AS_Path_Segment> segments = new LinkedList<AS_Path_Segment>();
+		segments.add(segment);
+		asPath.setAsPathSegments(segments);
+		pathAttributes.add(asPath);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+
+		PathAttributeCache cache = new PathAttributeCache();
+		BGP4Update update1 = new BGP4Update(update.getBytes(), cache);
+		BGP4Update update2 = new BGP4Update(update.getBytes(), cache);
+		BGP4Update update3 = new BGP4Update(update.getBytes());
+
+		Assert.assertEquals("Both attributes should be cached", 2, cache.size());
+		Assert.assertEquals("Second decode should hit the cache", 2, cache.getHits());
+		for(int i = 0; i < update1.getPathAttributes().size(); ++i)
+		{
+			Assert.assertSame("Attributes should be shared", update1.getPathAttributes().get(i), update2.getPathAttributes().get(i));
+			Assert.assertEquals("Cached attributes should be equal to the decoded ones", update3.getPathAttributes().get(i), update1.getPathAttributes().get(i));
+			Assert.assertTrue(update1.getPathAttributes().get(i).isShared());
+			Assert.assertFalse(update3.getPathAttributes().get(i).isShared());
+		}
+
+		//Encoding an update does not rewrite the shared attributes
+		byte[] sharedBytes = update1.getPathAttributes().get(1).getBytes();
+		update1.encode();
+		update2.encode();
+		Assert.assertSame(sharedBytes, update2.getPathAttributes().get(1).getBytes());
+		Assert.assertArrayEquals(update.getBytes(), update1.getBytes());
+		Assert.assertArrayEquals(update.getBytes(), update2.getBytes());
+	}
+
+	@Test
+	public void testNodeDescriptorsCache() throws Exception
+	{
+		IGPRouterIDNodeDescriptorSubTLV igpRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		igpRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName("10.0.0.1"));
+		igpRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		LocalNodeDescriptorsTLV lnd = new LocalNodeDescriptorsTLV();
+		lnd.setIGPRouterID(igpRouterID);
+		NodeNLRI nlri = new NodeNLRI();
+		nlri.setProtocolID(ProtocolIDCodes.OSPF_Protocol_ID);
+		nlri.setLocalNodeDescriptors(lnd);
+		nlri.encode();
+
+		NodeDescriptorsCache cache = new NodeDescriptorsCache();
+		NodeNLRI nlri1 = new NodeNLRI(nlri.getBytes(), 0, cache);
+		NodeNLRI nlri2 = new NodeNLRI(nlri.getBytes(), 0, cache);
+		NodeNLRI nlri3 = new NodeNLRI(nlri.getBytes(), 0);
+
+		Assert.assertSame("Node descriptors should be shared", nlri1.getLocalNodeDescriptors(), nlri2.getLocalNodeDescriptors());
+		Assert.assertEquals("Shared node descriptors should be equal to the decoded ones", nlri3.getLocalNodeDescriptors(), nlri1.getLocalNodeDescriptors());
+		Assert.assertEquals("Both NLRIs should be equal", nlri3, nlri1);
+		Assert.assertEquals("Only one descriptor should be cached", 1, cache.size());
+		Assert.assertEquals("Second decode should hit the cache", 1, cache.getHits());
+
+		//The shared descriptors are not encoded again when the NLRIs are
+		Assert.assertTrue(nlri1.getLocalNodeDescriptors().isShared());
+		Assert.assertFalse(nlri3.getLocalNodeDescriptors().isShared());
+		byte[] sharedBytes = nlri1.getLocalNodeDescriptors().getTlv_bytes();
+		nlri1.encode();
+		nlri2.encode();
+		Assert.assertSame(sharedBytes, nlri1.getLocalNodeDescriptors().getTlv_bytes());
+		Assert.assertArrayEquals(nlri.getBytes(), nlri1.getBytes());
+		Assert.assertArrayEquals(nlri.getBytes(), nlri2.getBytes());
+
+		//Once evicted, equal descriptors are different objects
+		NodeDescriptorsCache small = new NodeDescriptorsCache(1);
+		NodeNLRI before = new NodeNLRI(nlri.getBytes(), 0, small);
+		NodeNLRI other = createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.233", "10.0.0.2");
+		other.encode();
+		new NodeNLRI(other.getBytes(), 0, small);
+		NodeNLRI after = new NodeNLRI(nlri.getBytes(), 0, small);
+		Assert.assertNotSame(before.getLocalNodeDescriptors(), after.getLocalNodeDescriptors());
+		Assert.assertEquals(before.getLocalNodeDescriptors(), after.getLocalNodeDescriptors());
+	}
+
+	@Test
+	public void testExtendedLengthBoundary() throws Exception
+	{
+		BGP_LS_MP_Reach_Attribute mpReach = new BGP_LS_MP_Reach_Attribute();
+		mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.233", "10.0.0.1"));
+		mpReach.encode();
+		Assert.assertEquals(0, mpReach.getBytes()[0] & 0x10);
+		Assert.assertEquals(3, mpReach.getMandatoryLength());
+		Assert.assertEquals(mpReach.getPathAttributeLength(), mpReach.getBytes()[2] & 0xFF);
+
+		//Over 255 bytes the Attribute Length takes two octets
+		for (int i = 2; i <= 20; ++i)
+		{
+			mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.233", "10.0.0." + i));
+		}
+		mpReach.encode();
+		byte[] bytes = mpReach.getBytes();
+		Assert.assertTrue(mpReach.getPathAttributeLength() > 255);
+		Assert.assertEquals(0x10, bytes[0] & 0x10);
+		Assert.assertEquals(4, mpReach.getMandatoryLength());
+		Assert.assertEquals(mpReach.getPathAttributeLength(), ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF));
+		Assert.assertEquals(mpReach.getPathAttributeLength() + 4, mpReach.getLength());
+		BGP_LS_MP_Reach_Attribute decoded = new BGP_LS_MP_Reach_Attribute(bytes, 0);
+		Assert.assertEquals(20, decoded.getLsNLRIList().size());
+		Assert.assertEquals(mpReach.getLsNLRIList(), decoded.getLsNLRIList());
+
+		//Back under 256 bytes the same instance uses one octet again
+		mpReach.getLsNLRIList().subList(1, 20).clear();
+		mpReach.encode();
+		Assert.assertEquals(0, mpReach.getBytes()[0] & 0x10);
+		Assert.assertEquals(3, mpReach.getMandatoryLength());
+		Assert.assertEquals(mpReach.getPathAttributeLength() + 3, mpReach.getLength());
+		Assert.assertEquals(1, new BGP_LS_MP_Reach_Attribute(mpReach.getBytes(), 0).getLsNLRIList().size());
+	}
+
+	private static NodeNLRI createNodeNLRI(int protocolID, String asNumber, String routerID) throws Exception
+	{
+		IGPRouterIDNodeDescriptorSubTLV igpRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		igpRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName(routerID));
+		igpRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		AutonomousSystemNodeDescriptorSubTLV as = new AutonomousSystemNodeDescriptorSubTLV();
+		as.setAS_ID((Inet4Address) Inet4Address.getByName(asNumber));
+		LocalNodeDescriptorsTLV lnd = new LocalNodeDescriptorsTLV();
+		lnd.setAutonomousSystemSubTLV(as);
+		lnd.setIGPRouterID(igpRouterID);
+		NodeNLRI nlri = new NodeNLRI();
+		nlri.setProtocolID(protocolID);
+		nlri.setLocalNodeDescriptors(lnd);
+		return nlri;
+	}
+
+	@Test
+	public void testLinkStateNLRIFilter() throws Exception
+	{
+		//AS 65001 is 0.0.253.233, AS 65002 is 0.0.253.234
+		BGP_LS_MP_Reach_Attribute mpReach = new BGP_LS_MP_Reach_Attribute();
+		mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.233", "10.0.0.1"));
+		mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.234", "10.0.0.2"));
+		mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.IS_IS_Level2_Protocol_ID, "0.0.253.233", "10.0.0.3"));
+		mpReach.getLsNLRIList().add(createNodeNLRI(ProtocolIDCodes.OSPF_Protocol_ID, "0.0.253.233", "10.0.0.4"));
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		pathAttributes.add(mpReach);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+
+		LinkStateNLRIFilter filter = new LinkStateNLRIFilter(NLRIPredicate.and(
+				NLRIPredicate.nlriType(NLRITypes.Node_NLRI, NLRITypes.Link_NLRI),
+				NLRIPredicate.protocolID(ProtocolIDCodes.OSPF_Protocol_ID),
+				NLRIPredicate.autonomousSystem(65001)));
+		List<LinkStateNLRI> nlris = filter.filterUpdate(update.getBytes(), null);
+		Assert.assertEquals(2, nlris.size());
+		Assert.assertEquals(mpReach.getLsNLRIList().get(0), nlris.get(0));
+		Assert.assertEquals(mpReach.getLsNLRIList().get(3), nlris.get(1));
+		Assert.assertEquals(2, filter.getMatchedNLRIs());
+		Assert.assertEquals(2, filter.getSkippedNLRIs());
+
+		filter = new LinkStateNLRIFilter(NLRIPredicate.or(
+				NLRIPredicate.igpRouterID((Inet4Address) Inet4Address.getByName("10.0.0.2")),
+				NLRIPredicate.not(NLRIPredicate.identifier(0))));
+		nlris = filter.filterUpdate(update.getBytes(), null);
+		Assert.assertEquals(1, nlris.size());
+		Assert.assertEquals(mpReach.getLsNLRIList().get(1), nlris.get(0));
+		Assert.assertEquals(0, new LinkStateNLRIFilter(NLRIPredicate.areaID(1)).filterUpdate(update.getBytes(), null).size());
+	}
+
+
+	@Test
+	public void testLinkNLRIIPv6Descriptors() throws Exception
+	{
+		IGPRouterIDNodeDescriptorSubTLV localRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		localRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName("10.0.0.1"));
+		localRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		LocalNodeDescriptorsTLV lnd = new LocalNodeDescriptorsTLV();
+		lnd.setIGPRouterID(localRouterID);
+		IGPRouterIDNodeDescriptorSubTLV remoteRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		remoteRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName("10.0.0.2"));
+		remoteRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		RemoteNodeDescriptorsTLV rnd = new RemoteNodeDescriptorsTLV();
+		rnd.setIGPRouterID(remoteRouterID);
+
+		IPv6InterfaceAddressLinkDescriptorSubTLV ifAddress = new IPv6InterfaceAddressLinkDescriptorSubTLV();
+		ifAddress.setIpv6Address((Inet6Address) Inet6Address.getByName("2001:db8::1"));
+		IPv6NeighborAddressLinkDescriptorSubTLV neighborAddress = new IPv6NeighborAddressLinkDescriptorSubTLV();
+		neighborAddress.setIpv6Address((Inet6Address) Inet6Address.getByName("2001:db8::2"));
+		MultiTopologyIDLinkDescriptorSubTLV mtID = new MultiTopologyIDLinkDescriptorSubTLV();
+		mtID.setMultitopologyID(2);
+
+		LinkNLRI nlri = new LinkNLRI();
+		nlri.setProtocolID(ProtocolIDCodes.IS_IS_Level2_Protocol_ID);
+		nlri.setLocalNodeDescriptors(lnd);
+		nlri.setRemoteNodeDescriptorsTLV(rnd);
+		nlri.setIpv6InterfaceAddressTLV(ifAddress);
+		nlri.setIpv6NeighborAddressTLV(neighborAddress);
+		nlri.setMultiTopologyIDTLV(mtID);
+		nlri.encode();
+
+		LinkNLRI decoded = new LinkNLRI(nlri.getBytes(), 0);
+		Assert.assertEquals("Both NLRIs should be equal", nlri, decoded);
+		Assert.assertEquals(nlri.hashCode(), decoded.hashCode());
+		Assert.assertEquals(Inet6Address.getByName("2001:db8::1"), decoded.getIpv6InterfaceAddressTLV().getIpv6Address());
+		Assert.assertEquals(Inet6Address.getByName("2001:db8::2"), decoded.getIpv6NeighborAddressTLV().getIpv6Address());
+		Assert.assertEquals(0x20010db800000000L, decoded.getIpv6InterfaceAddressTLV().getAddressHigh());
+		Assert.assertEquals(1L, decoded.getIpv6InterfaceAddressTLV().getAddressLow());
+		Assert.assertEquals(2, decoded.getMultiTopologyIDTLV().getMultitopologyID());
+
+		//Parallel links that only differ in the IPv6 addresses are different NLRIs
+		IPv6InterfaceAddressLinkDescriptorSubTLV otherIfAddress = new IPv6InterfaceAddressLinkDescriptorSubTLV();
+		otherIfAddress.setIpv6Address((Inet6Address) Inet6Address.getByName("2001:db8::5"));
+		nlri.setIpv6InterfaceAddressTLV(otherIfAddress);
+		nlri.encode();
+		Assert.assertFalse("The IPv6 address should be part of the NLRI", Arrays.equals(nlri.getBytes(), decoded.getBytes()));
+
+		LinkStateAttribute attribute = new LinkStateAttribute();
+		IPv6RouterIDSubTLV localIPv6RouterID = new IPv6RouterIDSubTLV();
+		localIPv6RouterID.setIpv6RouterID((Inet6Address) Inet6Address.getByName("2001:db8::a"));
+		IPv6RouterIDSubTLV remoteIPv6RouterID = new IPv6RouterIDSubTLV(LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_IPv6_ROUTER_ID_OF_REMOTE_NODE);
+		remoteIPv6RouterID.setIpv6RouterID((Inet6Address) Inet6Address.getByName("2001:db8::b"));
+		attribute.setIPv6RouterIDLocalNodeLATLV(localIPv6RouterID);
+		attribute.setIPv6RouterIDRemoteNodeLATLV(remoteIPv6RouterID);
+		attribute.encode();
+		LinkStateAttribute decodedAttribute = new LinkStateAttribute(attribute.getBytes(), 0);
+		Assert.assertEquals(localIPv6RouterID, decodedAttribute.getIPv6RouterIDLocalNodeLATLV());
+		Assert.assertEquals(remoteIPv6RouterID, decodedAttribute.getIPv6RouterIDRemoteNodeLATLV());
+		Assert.assertEquals(Inet6Address.getByName("2001:db8::b"), decodedAttribute.getIPv6RouterIDRemoteNodeLATLV().getIpv6RouterID());
+	}
+
+	@Test
+	public void testLinkStateAttributeDiff()
+	{
+		LinkStateAttribute oldAttribute = createLinkAttribute(100, new float[]{10, 10, 10, 10, 10, 10, 10, 10});
+		LinkStateAttribute sameAttribute = createLinkAttribute(100, new float[]{10, 10, 10, 10, 10, 10, 10, 10});
+		LinkStateAttribute newAttribute = createLinkAttribute(100, new float[]{10, 10, 4, 10, 10, 10, 10, 10});
+
+		LinkStateAttributeDiff diff = LinkStateAttributeDiff.compare(oldAttribute, sameAttribute);
+		Assert.assertFalse("Equal attributes should have no changes", diff.hasChanges());
+		Assert.assertEquals(0, diff.getNumberOfChanges());
+
+		diff = LinkStateAttributeDiff.compare(oldAttribute, newAttribute);
+		Assert.assertEquals(LinkStateAttributeDiff.CHANGED_UNRESERVED_BANDWIDTH, diff.getChangeBitmap());
+		Assert.assertTrue("Only the resources should have changed", diff.isResourceOnly());
+		Assert.assertEquals(1, diff.getNumberOfChanges());
+		Assert.assertEquals(LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_UNRESERVED_BANDWITH, diff.getChangedType(0));
+		Assert.assertEquals(10f, ((UnreservedBandwidthLinkAttribTLV) diff.getOldValue(0)).getUnreservedBandwidth()[2], 0f);
+		Assert.assertEquals(4f, ((UnreservedBandwidthLinkAttribTLV) diff.getNewValue(0)).getUnreservedBandwidth()[2], 0f);
+		Assert.assertEquals(diff.getChangeBitmap(), LinkStateAttributeDiff.getChangeBitmap(oldAttribute.getBytes(), 0, newAttribute.getBytes(), 0));
+
+		//Capacity upgrade and removal of the unreserved bandwidth
+		newAttribute = createLinkAttribute(400, null);
+		diff = LinkStateAttributeDiff.compare(oldAttribute, newAttribute);
+		Assert.assertEquals(LinkStateAttributeDiff.CHANGED_MAXIMUM_BANDWIDTH | LinkStateAttributeDiff.CHANGED_UNRESERVED_BANDWIDTH, diff.getChangeBitmap());
+		Assert.assertFalse(diff.isResourceOnly());
+		Assert.assertTrue(diff.affectsPathComputation());
+		int index = diff.indexOf(LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_MAXIMUM_BANDWITH);
+		Assert.assertEquals(400f, ((MaximumLinkBandwidthLinkAttribTLV) diff.getNewValue(index)).getMaximumBandwidth(), 0f);
+		index = diff.indexOf(LinkStateAttributeTLVTypes.LINK_ATTRIBUTE_TLV_TYPE_UNRESERVED_BANDWITH);
+		Assert.assertNull("The unreserved bandwidth was removed", diff.getNewValue(index));
+		Assert.assertNotNull(diff.getOldValue(index));
+
+		//New link
+		diff = LinkStateAttributeDiff.compare(null, oldAttribute);
+		Assert.assertEquals(2, diff.getNumberOfChanges());
+		Assert.assertNull(diff.getOldValue(0));
+	}
+
+	private LinkStateAttribute createLinkAttribute(float maximumBandwidth, float[] unreservedBandwidth)
+	{
+		LinkStateAttribute attribute = new LinkStateAttribute();
+		MaximumLinkBandwidthLinkAttribTLV maximumBandwidthTLV = new MaximumLinkBandwidthLinkAttribTLV();
+		maximumBandwidthTLV.setMaximumBandwidth(maximumBandwidth);
+		attribute.setMaximumLinkBandwidthTLV(maximumBandwidthTLV);
+		if (unreservedBandwidth != null)
+		{
+			UnreservedBandwidthLinkAttribTLV unreservedBandwidthTLV = new UnreservedBandwidthLinkAttribTLV();
+			unreservedBandwidthTLV.setUnreservedBandwidth(unreservedBandwidth);
+			attribute.setUnreservedBandwidthTLV(unreservedBandwidthTLV);
+		}
+		attribute.encode();
+		return attribute;
+	}
 }
@@ -0,0 +1,464 @@
+package es.tid.tests;
+
+import es.tid.bgp.bgp4.messages.BGP4Message;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.rib.AdjRibOut;
+import es.tid.bgp.bgp4.rib.LinkStateDigestStore;
+import es.tid.bgp.bgp4.rib.LinkStateDumpGenerator;
+import es.tid.bgp.bgp4.rib.LinkStatePrefixIndex;
+import es.tid.bgp.bgp4.rib.LinkStateStore;
+import es.tid.bgp.bgp4.rib.LinkTelemetryStore;
+import es.tid.bgp.bgp4.rib.MetricRingBuffer;
+import es.tid.bgp.bgp4.rib.ShardedLinkStateStore;
+import es.tid.bgp.bgp4.rib.SharedUpdateBuffer;
+import es.tid.bgp.bgp4.rib.UpdateGroup;
+import es.tid.bgp.bgp4.update.fields.LinkNLRI;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.NodeNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.PrefixNLRI;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.BGP_LS_MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.Generic_MP_Unreach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.LinkStateAttribute;
+import es.tid.bgp.bgp4.update.tlv.LocalNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.ProtocolIDCodes;
+import es.tid.bgp.bgp4.update.tlv.RemoteNodeDescriptorsTLV;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MaximumLinkBandwidthLinkAttribTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IGPRouterIDNodeDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.IPReachabilityInformationPrefixDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.UndirectionalLinkDelayDescriptorSubTLV;
+import es.tid.bgp.bgp4.update.tlv.node_link_prefix_descriptor_subTLVs.UndirectionalResidualBandwidthDescriptorSubTLV;
+import es.tid.protocol.commons.BytesKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class TestBGPLSRib
+{
+
+	static NodeNLRI createNodeNLRI(String routerId) throws Exception
+	{
+		IGPRouterIDNodeDescriptorSubTLV igpRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		igpRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName(routerId));
+		igpRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		LocalNodeDescriptorsTLV lnd = new LocalNodeDescriptorsTLV();
+		lnd.setIGPRouterID(igpRouterID);
+		NodeNLRI nlri = new NodeNLRI();
+		nlri.setProtocolID(ProtocolIDCodes.OSPF_Protocol_ID);
+		nlri.setLocalNodeDescriptors(lnd);
+		return nlri;
+	}
+
+	static PrefixNLRI createPrefixNLRI(String routerId, String prefix, int prefixLength) throws Exception
+	{
+		IPReachabilityInformationPrefixDescriptorSubTLV ipReachability = new IPReachabilityInformationPrefixDescriptorSubTLV();
+		ipReachability.setIpv4Address((Inet4Address) Inet4Address.getByName(prefix));
+		ipReachability.setPrefix_length(prefixLength);
+		PrefixNLRI nlri = new PrefixNLRI();
+		nlri.setProtocolID(ProtocolIDCodes.OSPF_Protocol_ID);
+		nlri.setLocalNodeDescriptors(createNodeNLRI(routerId).getLocalNodeDescriptors());
+		nlri.setIpReachability(ipReachability);
+		return nlri;
+	}
+
+	static BGP4Update createUpdate(String routerId, float bandwidth) throws Exception
+	{
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		BGP_LS_MP_Reach_Attribute mpReach = new BGP_LS_MP_Reach_Attribute();
+		mpReach.setLsNLRI(createNodeNLRI(routerId));
+		pathAttributes.add(mpReach);
+		LinkStateAttribute lsAttribute = new LinkStateAttribute();
+		MaximumLinkBandwidthLinkAttribTLV maxBw = new MaximumLinkBandwidthLinkAttribTLV();
+		maxBw.setMaximumBandwidth(bandwidth);
+		lsAttribute.setMaximumLinkBandwidthTLV(maxBw);
+		pathAttributes.add(lsAttribute);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+		return update;
+	}
+
+	@Test
+	public void testLinkStateDigestStore() throws Exception
+	{
+		LinkStateDigestStore store = new LinkStateDigestStore();
+		byte[] first = createUpdate("10.0.0.1", 100).getBytes();
+		byte[] refresh = createUpdate("10.0.0.1", 100).getBytes();
+		byte[] change = createUpdate("10.0.0.1", 50).getBytes();
+		byte[] other = createUpdate("10.0.0.2", 50).getBytes();
+
+		Assert.assertTrue("A new NLRI must be decoded", store.processUpdate(first));
+		Assert.assertFalse("A refresh with the same attribute must be suppressed", store.processUpdate(refresh));
+		Assert.assertTrue("A changed attribute must be decoded", store.processUpdate(change));
+		Assert.assertTrue("Another NLRI must be decoded", store.processUpdate(other));
+		Assert.assertFalse("A refresh with the same attribute must be suppressed", store.processUpdate(change));
+
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals(2, store.getNewNLRIs());
+		Assert.assertEquals(1, store.getChangedNLRIs());
+		Assert.assertEquals(2, store.getUnchangedNLRIs());
+		Assert.assertEquals(2, store.getSuppressedUpdates());
+	}
+
+	@Test
+	public void testLinkStateDigestStoreMalformedUpdate() throws Exception
+	{
+		LinkStateDigestStore store = new LinkStateDigestStore();
+		Assert.assertTrue(store.processUpdate(createUpdate("10.0.0.1", 100).getBytes()));
+
+		//A new NLRI followed by a malformed one: nothing must be applied
+		Assert.assertTrue(store.processUpdate(createMalformedUpdate()));
+		Assert.assertEquals(1, store.size());
+		Assert.assertEquals(1, store.getNewNLRIs());
+	}
+
+	@Test
+	public void testLinkStateStoreMalformedUpdate() throws Exception
+	{
+		LinkStateStore store = new LinkStateStore();
+		Assert.assertEquals(1, store.processUpdate(createUpdate("10.0.0.1", 100).getBytes()));
+		byte[] message = createMalformedUpdate();
+		Assert.assertEquals(-1, store.processUpdate(message));
+		Assert.assertEquals(1, store.size());
+		NodeNLRI first = createNodeNLRI("10.0.0.2");
+		first.encode();
+		Assert.assertFalse(store.contains(first.getBytes(), 0));
+
+		//Path attributes that do not end at the Total Path Attribute Length
+		byte[] update = createUpdate("10.0.0.2", 100).getBytes();
+		int lengthOffset = BGP4Message.getBGPHeaderLength() + 2;
+		update[lengthOffset + 1] = (byte) (update[lengthOffset + 1] - 1);
+		Assert.assertEquals(-1, store.processUpdate(update));
+		Assert.assertEquals(1, store.size());
+	}
+
+	/**
+	 * @return UPDATE with a new NLRI followed by one whose length goes past the MP_REACH_NLRI
+	 */
+	static byte[] createMalformedUpdate() throws Exception
+	{
+		BGP4Update update = createUpdate("10.0.0.2", 100);
+		BGP_LS_MP_Reach_Attribute mpReach = (BGP_LS_MP_Reach_Attribute) update.getPathAttributes().get(0);
+		NodeNLRI last = createNodeNLRI("10.0.0.3");
+		List<LinkStateNLRI> nlris = new ArrayList<LinkStateNLRI>();
+		nlris.add(createNodeNLRI("10.0.0.2"));
+		nlris.add(last);
+		mpReach.setLsNLRIList(nlris);
+		update.encode();
+		byte[] message = update.getBytes();
+		last.encode();
+		int lastOffset = indexOf(message, last.getBytes());
+		Assert.assertTrue(lastOffset > 0);
+		message[lastOffset + 3] = (byte) (message[lastOffset + 3] + 1);
+		return message;
+	}
+
+	static int indexOf(byte[] bytes, byte[] pattern)
+	{
+		for (int i = bytes.length - pattern.length; i >= 0; --i)
+		{
+			int j = 0;
+			while (j < pattern.length && bytes[i + j] == pattern[j])
+			{
+				++j;
+			}
+			if (j == pattern.length)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void testAdjRibOutUpdateGroups() throws Exception
+	{
+		AdjRibOut ribOut = new AdjRibOut();
+		UpdateGroup groupA = ribOut.addPeer("192.168.1.1", "policyA");
+		Assert.assertSame(groupA, ribOut.addPeer("192.168.1.2", "policyA"));
+		ribOut.addPeer("192.168.1.3", "policyA");
+		UpdateGroup groupB = ribOut.addPeer("192.168.1.4", "policyB");
+		Assert.assertNotSame(groupA, groupB);
+		Assert.assertEquals(2, ribOut.getNumberOfGroups());
+
+		BGP4Update update = createUpdate("10.0.0.1", 100);
+		byte[] expected = update.getBytes().clone();
+		SharedUpdateBuffer shared = ribOut.advertise("policyA", update);
+		Assert.assertEquals(3, shared.getReferences());
+		Assert.assertEquals(1, groupA.getEncodedUpdates());
+		Assert.assertEquals(0, groupB.getPendingCount("192.168.1.4"));
+
+		//Encoding again gives the same bytes
+		Assert.assertArrayEquals(expected, update.getBytes());
+
+		for (String peer : new String[] {"192.168.1.1", "192.168.1.2"}){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			WritableByteChannel channel = Channels.newChannel(out);
+			Assert.assertEquals(1, groupA.write(peer, channel));
+			Assert.assertArrayEquals(expected, out.toByteArray());
+			Assert.assertEquals(0, groupA.getPendingCount(peer));
+		}
+		Assert.assertEquals(1, shared.getReferences());
+		Assert.assertEquals(1, groupA.getPendingCount("192.168.1.3"));
+
+		//Removing the slow peer releases its pending buffer
+		Assert.assertTrue(ribOut.removePeer("192.168.1.3"));
+		Assert.assertEquals(0, shared.getReferences());
+
+		ribOut.removePeer("192.168.1.4");
+		Assert.assertEquals(1, ribOut.getNumberOfGroups());
+		Assert.assertNull(ribOut.advertise("policyB", update));
+	}
+
+	@Test
+	public void testLinkStateDumpGenerator() throws Exception
+	{
+		LinkStateStore store = new LinkStateStore();
+		int numNodes = 1000;
+		for (int i = 0; i < numNodes; i++){
+			byte[] update = createUpdate("10.0."+(i/256)+"."+(i%256), i%2 == 0 ? 100 : 50).getBytes();
+			Assert.assertEquals(1, store.processUpdate(update));
+		}
+		Assert.assertEquals(numNodes, store.size());
+		Assert.assertEquals(2, store.getNumberOfAttributeSets());
+
+		//Slow peer: the channel accepts at most 100 bytes per call
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WritableByteChannel slowChannel = new WritableByteChannel() {
+			public boolean isOpen() { return true; }
+			public void close() { }
+			public int write(ByteBuffer src) {
+				int n = Math.min(100, src.remaining());
+				byte[] chunk = new byte[n];
+				src.get(chunk);
+				out.write(chunk, 0, n);
+				return n;
+			}
+		};
+		LinkStateDumpGenerator generator = new LinkStateDumpGenerator(store);
+		int calls = 0;
+		while (!generator.write(slowChannel)){
+			calls++;
+		}
+		Assert.assertTrue(calls > 1);
+		Assert.assertFalse(generator.hasNext());
+
+		byte[] dump = out.toByteArray();
+		int offset = 0;
+		int numNLRIs = 0;
+		int numMessages = 0;
+		BGP4Update last = null;
+		while (offset < dump.length){
+			int len = ((dump[offset+16]&0xFF)<<8) | (dump[offset+17]&0xFF);
+			Assert.assertTrue(len <= LinkStateDumpGenerator.MAX_MESSAGE_LENGTH);
+			last = new BGP4Update(Arrays.copyOfRange(dump, offset, offset+len));
+			for (PathAttribute attribute : last.getPathAttributes()){
+				if (attribute instanceof BGP_LS_MP_Reach_Attribute){
+					numNLRIs += ((BGP_LS_MP_Reach_Attribute) attribute).getLsNLRIList().size();
+				}
+			}
+			numMessages++;
+			offset += len;
+		}
+		Assert.assertEquals(numNodes, numNLRIs);
+		Assert.assertEquals(generator.getNumberOfMessages(), numMessages);
+		Assert.assertTrue("NLRIs must be packed", numMessages < numNodes/10);
+		Assert.assertEquals(1, last.getPathAttributes().size());
+		Assert.assertTrue("The dump must end with End-of-RIB", last.getPathAttributes().get(0) instanceof Generic_MP_Unreach_Attribute);
+
+		//The packed updates refresh the same routes
+		LinkStateStore copy = new LinkStateStore();
+		LinkStateDumpGenerator generator2 = new LinkStateDumpGenerator(store);
+		byte[] message;
+		while ((message = generator2.nextMessage()) != null){
+			copy.processUpdate(message);
+		}
+		Assert.assertEquals(numNodes, copy.size());
+		Assert.assertEquals(2, copy.getNumberOfAttributeSets());
+	}
+
+	@Test
+	public void testLinkStatePrefixIndex() throws Exception
+	{
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		BGP_LS_MP_Reach_Attribute mpReach = new BGP_LS_MP_Reach_Attribute();
+		mpReach.getLsNLRIList().add(createPrefixNLRI("10.0.0.1", "10.0.0.0", 8));
+		mpReach.getLsNLRIList().add(createPrefixNLRI("10.0.0.2", "10.1.0.0", 16));
+		mpReach.getLsNLRIList().add(createPrefixNLRI("10.0.0.3", "10.1.1.0", 24));
+		mpReach.getLsNLRIList().add(createPrefixNLRI("10.0.0.4", "10.1.1.0", 24));
+		pathAttributes.add(mpReach);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+
+		LinkStatePrefixIndex index = new LinkStatePrefixIndex();
+		Assert.assertEquals(4, index.processUpdate(new BGP4Update(update.getBytes())));
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals(3, index.getNumberOfPrefixes());
+
+		LocalNodeDescriptorsTLV node2 = createNodeNLRI("10.0.0.2").getLocalNodeDescriptors();
+		node2.encode();
+		LocalNodeDescriptorsTLV node3 = createNodeNLRI("10.0.0.3").getLocalNodeDescriptors();
+		node3.encode();
+		LinkStatePrefixIndex.Entry entry = index.lookup((Inet4Address) Inet4Address.getByName("10.1.1.7"));
+		Assert.assertEquals(24, entry.getPrefixLength());
+		Assert.assertEquals(node3, entry.getLocalNodeDescriptors());
+		Assert.assertEquals(2, index.lookupAll(entry.getPrefix() | 7).length);
+		entry = index.lookup((Inet4Address) Inet4Address.getByName("10.1.2.7"));
+		Assert.assertEquals(node2, entry.getLocalNodeDescriptors());
+		entry = index.lookup((Inet4Address) Inet4Address.getByName("10.200.0.1"));
+		Assert.assertEquals(8, entry.getPrefixLength());
+		Assert.assertNull(index.lookup((Inet4Address) Inet4Address.getByName("11.0.0.1")));
+
+		Assert.assertTrue(index.withdraw(createPrefixNLRI("10.0.0.3", "10.1.1.0", 24)));
+		Assert.assertTrue(index.withdraw(createPrefixNLRI("10.0.0.4", "10.1.1.0", 24)));
+		Assert.assertFalse(index.withdraw(createPrefixNLRI("10.0.0.4", "10.1.1.0", 24)));
+		entry = index.lookup((Inet4Address) Inet4Address.getByName("10.1.1.7"));
+		Assert.assertEquals(16, entry.getPrefixLength());
+		Assert.assertEquals(2, index.size());
+	}
+
+	static LinkNLRI createLinkNLRI(String localRouterId, String remoteRouterId, int delay) throws Exception
+	{
+		LinkNLRI nlri = new LinkNLRI();
+		nlri.setProtocolID(ProtocolIDCodes.OSPF_Protocol_ID);
+		nlri.setLocalNodeDescriptors(createNodeNLRI(localRouterId).getLocalNodeDescriptors());
+		IGPRouterIDNodeDescriptorSubTLV remoteRouterID = new IGPRouterIDNodeDescriptorSubTLV();
+		remoteRouterID.setIpv4AddressOSPF((Inet4Address) Inet4Address.getByName(remoteRouterId));
+		remoteRouterID.setIGP_router_id_type(IGPRouterIDNodeDescriptorSubTLV.IGP_ROUTER_ID_TYPE_OSPF_NON_PSEUDO);
+		RemoteNodeDescriptorsTLV rnd = new RemoteNodeDescriptorsTLV();
+		rnd.setIGPRouterID(remoteRouterID);
+		nlri.setRemoteNodeDescriptorsTLV(rnd);
+		UndirectionalLinkDelayDescriptorSubTLV linkDelay = new UndirectionalLinkDelayDescriptorSubTLV();
+		linkDelay.setDelay(delay);
+		nlri.setUndirectionalLinkDelayTLV(linkDelay);
+		nlri.encode();
+		return nlri;
+	}
+
+	@Test
+	public void testLinkTelemetryStore() throws Exception
+	{
+		LinkTelemetryStore store = new LinkTelemetryStore(8);
+		for (int i = 1; i <= 20; ++i)
+		{
+			LinkNLRI nlri = new LinkNLRI(createLinkNLRI("10.0.0.1", "10.0.0.2", i * 10).getBytes(), 0);
+			Assert.assertTrue(store.record(nlri, i * 1000L));
+		}
+		store.record(createLinkNLRI("10.0.0.2", "10.0.0.1", 5), 20000L);
+		Assert.assertEquals("The delay should not be part of the link identity", 2, store.size());
+
+		MetricRingBuffer delay = store.getSamples(createLinkNLRI("10.0.0.1", "10.0.0.2", 0), LinkTelemetryStore.METRIC_DELAY);
+		Assert.assertEquals(8, delay.size());
+		Assert.assertEquals(20, delay.getTotalSamples());
+		Assert.assertEquals(200, delay.getLastValue());
+		Assert.assertEquals(20000L, delay.getLastTime());
+		//Samples received in the last 5 seconds: 160..200
+		Assert.assertEquals(5, delay.count(16000L));
+		Assert.assertEquals(160, delay.min(16000L));
+		Assert.assertEquals(200, delay.max(16000L));
+		Assert.assertEquals(180.0, delay.average(16000L), 0.0);
+		Assert.assertEquals(180, delay.percentile(16000L, 50));
+		Assert.assertEquals(200, delay.percentile(16000L, 100));
+		Assert.assertEquals(160, delay.percentile(16000L, 0));
+		//The window is limited by the capacity
+		Assert.assertEquals(130, delay.min(0L));
+		Assert.assertNull(store.getSamples(createLinkNLRI("10.0.0.1", "10.0.0.2", 0), LinkTelemetryStore.METRIC_LOSS));
+		Assert.assertEquals(Double.NaN, delay.average(30000L), 0.0);
+
+		store.remove(createLinkNLRI("10.0.0.1", "10.0.0.2", 0));
+		Assert.assertNull(store.getTelemetry(createLinkNLRI("10.0.0.1", "10.0.0.2", 0)));
+
+		//The bandwidths are advertised as floats in bytes per second and kept in kb/s
+		float[] residualBw = { 1.25e6f, 3.75e6f };
+		for (int i = 0; i < residualBw.length; ++i)
+		{
+			LinkNLRI nlri = createLinkNLRI("10.0.0.3", "10.0.0.4", 10);
+			UndirectionalResidualBandwidthDescriptorSubTLV residual = new UndirectionalResidualBandwidthDescriptorSubTLV();
+			residual.setResidualBw(Float.floatToIntBits(residualBw[i]));
+			nlri.setUndirectionalResidualBwTLV(residual);
+			nlri.encode();
+			store.record(new LinkNLRI(nlri.getBytes(), 0), 1000L * (i + 1));
+		}
+		MetricRingBuffer bandwidth = store.getSamples(createLinkNLRI("10.0.0.3", "10.0.0.4", 0), LinkTelemetryStore.METRIC_RESIDUAL_BANDWIDTH);
+		Assert.assertEquals(10000, bandwidth.min(0L));
+		Assert.assertEquals(30000, bandwidth.max(0L));
+		Assert.assertEquals(20000.0, bandwidth.average(0L), 0.0);
+	}
+
+	@Test
+	public void testShardedLinkStateStore() throws Exception
+	{
+		final ShardedLinkStateStore store = new ShardedLinkStateStore(4);
+		final byte[][] updates = new byte[400][];
+		for (int i = 0; i < updates.length; ++i)
+		{
+			updates[i] = createUpdate("10.0." + (i / 200) + "." + (i % 200), 100).getBytes();
+		}
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; ++t)
+		{
+			final int first = t;
+			writers[t] = new Thread()
+			{
+				public void run()
+				{
+					for (int i = first; i < updates.length; i += 4)
+					{
+						store.processUpdate(updates[i]);
+					}
+				}
+			};
+			writers[t].start();
+		}
+		for (Thread writer : writers)
+		{
+			writer.join();
+		}
+		Assert.assertEquals(400, store.size());
+		Assert.assertEquals("A malformed update must not change any shard", -1, store.processUpdate(createMalformedUpdate()));
+		Assert.assertEquals(400, store.size());
+		for (int s = 0; s < store.getNumberOfShards(); ++s)
+		{
+			Assert.assertTrue("The NLRIs should be spread among the shards", store.getShardSize(s) > 50);
+		}
+
+		NodeNLRI node = createNodeNLRI("10.0.1.7");
+		node.encode();
+		Assert.assertNotNull(store.get(node.getBytes(), 0));
+		Assert.assertEquals("The shard must not depend on the instance", new ShardedLinkStateStore(4).getShardIndex(node.getBytes(), 0), store.getShardIndex(node.getBytes(), 0));
+
+		ShardedLinkStateStore.Snapshot snapshot = store.snapshot();
+		Assert.assertTrue(store.withdraw(node.getBytes(), 0));
+		Assert.assertFalse(store.contains(node.getBytes(), 0));
+		Assert.assertEquals(399, store.size());
+		Assert.assertEquals("The snapshot must not change", 400, snapshot.size());
+		Assert.assertNotNull(snapshot.get(node.getBytes(), 0));
+		int count = 0;
+		for (Map.Entry<BytesKey, byte[]> entry : snapshot)
+		{
+			Assert.assertNotNull(entry.getValue());
+			count++;
+		}
+		Assert.assertEquals(400, count);
+		count = 0;
+		Iterator<Map.Entry<BytesKey, byte[]>> it = store.iterator();
+		while (it.hasNext())
+		{
+			it.next();
+			count++;
+		}
+		Assert.assertEquals(399, count);
+	}
+
+}
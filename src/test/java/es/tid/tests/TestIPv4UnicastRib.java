@@ -0,0 +1,155 @@
+package es.tid.tests;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.rib.IPv4UnicastRib;
+import es.tid.bgp.bgp4.update.MalformedBGP4ElementException;
+import es.tid.bgp.bgp4.update.fields.IPv4PrefixList;
+import es.tid.bgp.bgp4.update.fields.IPv4UnicastNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.WithdrawnRoutes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.OriginAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class TestIPv4UnicastRib
+{
+
+	private static int ip(String address) throws Exception
+	{
+		return IPv4PrefixList.toInt((Inet4Address) Inet4Address.getByName(address));
+	}
+
+	@Test
+	public void testUpdateWithdrawnRoutesAndNLRI() throws Exception
+	{
+		BGP4Update update = new BGP4Update();
+		WithdrawnRoutes withdrawnRoutes = new WithdrawnRoutes();
+		withdrawnRoutes.getPrefixList().add(ip("192.168.0.0"), 16);
+		withdrawnRoutes.getPrefixList().add(ip("0.0.0.0"), 0);
+		update.setWithdrawnRoutes(withdrawnRoutes);
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		OriginAttribute origin = new OriginAttribute();
+		origin.setValue(PathAttributesTypeCode.PATH_ATTRIBUTE_ORIGIN_IGP);
+		pathAttributes.add(origin);
+		update.setPathAttributes(pathAttributes);
+		IPv4UnicastNLRI nlri = new IPv4UnicastNLRI();
+		nlri.getPrefixList().add(ip("10.0.0.0"), 8);
+		nlri.getPrefixList().add(ip("10.1.2.3"), 32);
+		nlri.getPrefixList().add(ip("172.16.255.255"), 12);
+		update.setNlri(nlri);
+		update.encode();
+
+		BGP4Update decoded = new BGP4Update(update.getBytes());
+		Assert.assertEquals(withdrawnRoutes.getPrefixList(), decoded.getWithdrawnRoutes().getPrefixList());
+		Assert.assertTrue(decoded.getNlri() instanceof IPv4UnicastNLRI);
+		IPv4PrefixList prefixes = ((IPv4UnicastNLRI) decoded.getNlri()).getPrefixList();
+		Assert.assertEquals(nlri.getPrefixList(), prefixes);
+		Assert.assertEquals(ip("172.16.0.0"), prefixes.getPrefix(2));
+		decoded.encode();
+		Assert.assertArrayEquals(update.getBytes(), decoded.getBytes());
+
+		IPv4UnicastRib rib = new IPv4UnicastRib();
+		rib.processUpdate(decoded);
+		Assert.assertEquals(3, rib.size());
+		Assert.assertSame(decoded.getPathAttributes(), rib.lookup(ip("10.1.2.3")));
+		Assert.assertSame(decoded.getPathAttributes(), rib.lookup(ip("10.200.0.1")));
+		Assert.assertNull(rib.lookup(ip("11.0.0.1")));
+	}
+
+	@Test
+	public void testTruncatedPrefixList() throws Exception
+	{
+		IPv4PrefixList prefixes = new IPv4PrefixList();
+		prefixes.add(ip("10.1.0.0"), 16);
+		prefixes.add(ip("10.2.3.0"), 24);
+		byte[] bytes = new byte[prefixes.getEncodedLength() + 2];
+		prefixes.encode(bytes, 0);
+		Assert.assertEquals(2, new IPv4PrefixList(bytes, 0, 7).size());
+		//The bytes after the list must not be read as part of the last prefix
+		try
+		{
+			new IPv4PrefixList(bytes, 0, 6);
+			Assert.fail("The truncated prefix must be rejected");
+		}
+		catch (MalformedBGP4ElementException e)
+		{
+		}
+		bytes[0] = 33;
+		try
+		{
+			new IPv4PrefixList(bytes, 0, 7);
+			Assert.fail("The prefix length must be rejected");
+		}
+		catch (MalformedBGP4ElementException e)
+		{
+		}
+	}
+
+	@Test
+	public void testLongestPrefixMatch() throws Exception
+	{
+		IPv4UnicastRib rib = new IPv4UnicastRib(16);
+		List<PathAttribute> attributesA = new ArrayList<PathAttribute>();
+		List<PathAttribute> attributesB = new ArrayList<PathAttribute>();
+		List<PathAttribute> attributesC = new ArrayList<PathAttribute>();
+		Assert.assertTrue(rib.insert(ip("10.0.0.0"), 8, attributesA));
+		Assert.assertTrue(rib.insert(ip("10.1.0.0"), 16, attributesB));
+		Assert.assertTrue(rib.insert(ip("10.1.1.0"), 24, attributesC));
+		Assert.assertFalse(rib.insert(ip("10.1.1.0"), 24, attributesA));
+		Assert.assertSame(attributesA, rib.lookup(ip("10.1.1.1")));
+		Assert.assertSame(attributesB, rib.lookup(ip("10.1.2.1")));
+		Assert.assertSame(attributesA, rib.lookup(ip("10.2.0.1")));
+		Assert.assertTrue(rib.withdraw(ip("10.1.0.0"), 16));
+		Assert.assertFalse(rib.withdraw(ip("10.1.0.0"), 16));
+		Assert.assertSame(attributesA, rib.lookup(ip("10.1.2.1")));
+		Assert.assertNull(rib.get(ip("10.1.0.0"), 16));
+		Assert.assertEquals(2, rib.size());
+
+		//Random table checked against a linear search
+		Random random = new Random(7);
+		rib.clear();
+		int numPrefixes = 5000;
+		int[] prefixes = new int[numPrefixes];
+		int[] lengths = new int[numPrefixes];
+		List<List<PathAttribute>> routes = new ArrayList<List<PathAttribute>>();
+		HashSet<Long> unique = new HashSet<Long>();
+		for (int i = 0; i < numPrefixes; ++i){
+			do {
+				lengths[i] = 8+random.nextInt(25);
+				prefixes[i] = random.nextInt() & IPv4PrefixList.mask(lengths[i]);
+			} while (!unique.add(((long)prefixes[i] << 8) | lengths[i]));
+			routes.add(new ArrayList<PathAttribute>());
+			Assert.assertTrue(rib.insert(prefixes[i], lengths[i], routes.get(i)));
+		}
+		//Withdraw half of them
+		for (int i = 0; i < numPrefixes; i += 2){
+			Assert.assertTrue(rib.withdraw(prefixes[i], lengths[i]));
+		}
+		Assert.assertEquals(numPrefixes/2, rib.size());
+		for (int j = 0; j < 2000; ++j){
+			int address = j%2 == 0 ? random.nextInt() : prefixes[random.nextInt(numPrefixes)] | random.nextInt(256);
+			List<PathAttribute> expected = null;
+			int bestLength = -1;
+			for (int i = 1; i < numPrefixes; i += 2){
+				if (((address ^ prefixes[i]) & IPv4PrefixList.mask(lengths[i])) == 0 && lengths[i] > bestLength){
+					bestLength = lengths[i];
+					expected = routes.get(i);
+				}
+			}
+			Assert.assertSame(expected, rib.lookup(address));
+		}
+		IPv4PrefixList all = rib.getPrefixes();
+		Assert.assertEquals(rib.size(), all.size());
+		rib.withdrawAll(all);
+		Assert.assertEquals(0, rib.size());
+		Assert.assertEquals(0, rib.getNumberOfNodes());
+	}
+
+}
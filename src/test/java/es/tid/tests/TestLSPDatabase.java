@@ -0,0 +1,218 @@
+package es.tid.tests;
+
+import es.tid.pce.pcep.constructs.Path;
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.lspdb.CompactLSPStore;
+import es.tid.pce.pcep.lspdb.LSPDatabase;
+import es.tid.pce.pcep.lspdb.LSPState;
+import es.tid.pce.pcep.messages.PCEPReport;
+import es.tid.pce.pcep.objects.BandwidthRequested;
+import es.tid.pce.pcep.objects.ExplicitRouteObject;
+import es.tid.pce.pcep.objects.LSP;
+import es.tid.pce.pcep.objects.OPEN;
+import es.tid.pce.pcep.objects.tlvs.IPv4LSPIdentifiersTLV;
+import es.tid.pce.pcep.objects.tlvs.LSPDatabaseVersionTLV;
+import es.tid.pce.pcep.objects.tlvs.StatefulCapabilityTLV;
+import es.tid.pce.pcep.objects.tlvs.SymbolicPathNameTLV;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.LinkedList;
+
+public class TestLSPDatabase
+{
+
+	@Test
+	public void testSynchronization() throws Exception
+	{
+		InetAddress pcc = InetAddress.getByName("10.0.0.1");
+		LSPDatabase db = new LSPDatabase();
+		Assert.assertTrue(db.sessionUp(pcc, createOpen(0), createOpen(0)));
+		Assert.assertFalse(db.isSynchronized(pcc));
+		db.applyReport(pcc, createReport(createStateReport(1, "lsp1", true, false, false, 1), createStateReport(2, "lsp2", true, true, false, 2)));
+		db.applyReport(pcc, createReport(createStateReport(0, null, false, false, false, 2)));
+		Assert.assertTrue(db.isSynchronized(pcc));
+		Assert.assertEquals(2, db.size(pcc));
+		Assert.assertEquals(2, db.getDBVersion(pcc));
+		Assert.assertEquals(1, db.getDelegatedLSPs(pcc).size());
+		Assert.assertEquals(2, db.getLSP(pcc, "lsp2").getPlspId());
+
+		//Update without the name delegating the LSP, revocation of the delegation and removal
+		db.applyReport(pcc, createReport(createStateReport(1, null, false, true, false, 3)));
+		LSPState lsp1 = db.getLSP(pcc, 1);
+		Assert.assertEquals("lsp1", lsp1.getSymbolicPathName());
+		Assert.assertTrue(lsp1.isDelegated());
+		db.applyReport(pcc, createReport(createStateReport(2, null, false, false, false, 4)));
+		Assert.assertFalse(db.getLSP(pcc, 2).isDelegated());
+		Assert.assertEquals(1, db.getDelegatedLSPs(pcc).size());
+		Assert.assertEquals(1, db.getDelegatedLSPs(pcc).get(0).getPlspId());
+		db.applyReport(pcc, createReport(createStateReport(2, null, false, false, true, 5)));
+		Assert.assertNull(db.getLSP(pcc, 2));
+		Assert.assertNull(db.getLSP(pcc, "lsp2"));
+		Assert.assertEquals(5, db.getDBVersion(pcc));
+
+		//The PCC comes back with the same version: no synchronization
+		db.sessionDown(pcc);
+		Assert.assertTrue(db.getDelegatedLSPs(pcc).isEmpty());
+		Assert.assertFalse(db.sessionUp(pcc, createOpen(5), createOpen(0)));
+		Assert.assertTrue(db.isSynchronized(pcc));
+		Assert.assertEquals(1, db.size(pcc));
+		Assert.assertEquals(1, db.getSkippedSynchronizations());
+
+		//Different version: full synchronization, the LSPs not reported are removed
+		db.sessionDown(pcc);
+		Assert.assertTrue(db.sessionUp(pcc, createOpen(7), createOpen(0)));
+		db.applyReport(pcc, createReport(createStateReport(3, "lsp3", true, false, false, 7)));
+		Assert.assertEquals(2, db.size(pcc));
+		db.applyReport(pcc, createReport(createStateReport(0, null, false, false, false, 7)));
+		Assert.assertEquals(1, db.size(pcc));
+		Assert.assertNull(db.getLSP(pcc, 1));
+		Assert.assertNotNull(db.getLSP(pcc, "lsp3"));
+		Assert.assertEquals(2, db.getFullSynchronizations());
+	}
+
+	@Test
+	public void testInterruptedSynchronization() throws Exception
+	{
+		InetAddress pcc = InetAddress.getByName("10.0.0.1");
+		LSPDatabase db = new LSPDatabase();
+		Assert.assertTrue(db.sessionUp(pcc, createOpen(0), createOpen(0)));
+		db.applyReport(pcc, createReport(createStateReport(1, "lsp1", true, false, false, 3), createStateReport(2, "lsp2", true, false, false, 3)));
+		//The version is only valid once the synchronization ends
+		Assert.assertEquals(0, db.getDBVersion(pcc));
+
+		//The session goes down before the end of the synchronization
+		db.sessionDown(pcc);
+		Assert.assertEquals(0, db.getDBVersion(pcc));
+		Assert.assertTrue("A partial synchronization must not be skipped", db.sessionUp(pcc, createOpen(3), createOpen(0)));
+		Assert.assertEquals(0, db.getSkippedSynchronizations());
+		db.applyReport(pcc, createReport(createStateReport(2, "lsp2", true, false, false, 3)));
+		db.applyReport(pcc, createReport(createStateReport(0, null, false, false, false, 3)));
+		Assert.assertEquals(3, db.getDBVersion(pcc));
+		Assert.assertEquals(1, db.size(pcc));
+		Assert.assertNull(db.getLSP(pcc, 1));
+
+		//Once complete, the synchronization is skipped
+		db.sessionDown(pcc);
+		Assert.assertEquals(3, db.getDBVersion(pcc));
+		Assert.assertFalse(db.sessionUp(pcc, createOpen(3), createOpen(0)));
+	}
+
+	@Test
+	public void testCompactLSPStore() throws Exception
+	{
+		InetAddress pcc1 = InetAddress.getByName("10.0.0.1");
+		InetAddress pcc2 = InetAddress.getByName("10.0.0.2");
+		CompactLSPStore store = new CompactLSPStore(16);
+		final int numLSPs = 2000;
+		for (int i = 1; i <= numLSPs; ++i)
+		{
+			store.put((i % 2 == 0) ? pcc1 : pcc2, createStateReport(i, "lsp" + i, true, i % 3 == 0, false, i));
+		}
+		Assert.assertEquals(numLSPs, store.size());
+
+		//Updates without the name, to leave holes in the blob area
+		for (int r = 0; r < 5; ++r)
+		{
+			for (int i = 1; i <= numLSPs; i += 2)
+			{
+				StateReport update = createStateReport(i, null, false, true, false, i);
+				BandwidthRequested bw = new BandwidthRequested();
+				bw.setBw(1000 * r);
+				update.getPath().setBandwidth(bw);
+				IPv4LSPIdentifiersTLV identifiers = new IPv4LSPIdentifiersTLV();
+				identifiers.setTunnelSenderIPAddress((Inet4Address) pcc2);
+				identifiers.setTunnelID(i);
+				identifiers.setLspID(r);
+				identifiers.setExtendedTunnelID(0x0A000003);
+				update.getLsp().setLspIdentifiers_tlv(identifiers);
+				store.put(pcc2, update);
+			}
+		}
+		for (int i = 2; i <= numLSPs; i += 4)
+		{
+			Assert.assertTrue(store.remove(pcc1, i));
+		}
+		Assert.assertFalse(store.remove(pcc1, 1));
+		Assert.assertEquals(numLSPs - numLSPs / 4, store.size());
+		Assert.assertTrue(store.getGarbageBytes() < store.getBlobBytes());
+
+		int record = store.indexOf(pcc2, 7);
+		Assert.assertEquals(7, store.getPlspId(record));
+		Assert.assertEquals("lsp7", store.getSymbolicPathName(record));
+		Assert.assertTrue(store.isDelegated(record));
+		Assert.assertEquals(4000f, store.getBandwidth(record), 0);
+		Assert.assertEquals(7, store.getTunnelId(record));
+		Assert.assertEquals(4, store.getLspId(record));
+		StateReport stateReport = store.getStateReport(record);
+		Assert.assertEquals(7, stateReport.getLsp().getLspId());
+		Assert.assertTrue(stateReport.getLsp().isDelegateFlag());
+		Assert.assertEquals(pcc2, stateReport.getLsp().getLspIdentifiers_tlv().getTunnelSenderIPAddress());
+		Assert.assertEquals(0x0A000003, stateReport.getLsp().getLspIdentifiers_tlv().getExtendedTunnelID());
+		Assert.assertEquals(4000f, ((BandwidthRequested) stateReport.getPath().getBandwidth()).getBw(), 0);
+		stateReport.encode();
+
+		Assert.assertEquals(-1, store.indexOf(pcc1, 2));
+		record = store.indexOf(pcc1, 4);
+		Assert.assertEquals("lsp4", store.getSymbolicPathName(record));
+		Assert.assertFalse(store.isDelegated(record));
+		Assert.assertEquals(pcc1, store.getPcc(record));
+	}
+
+	static OPEN createOpen(long version)
+	{
+		OPEN open = new OPEN();
+		StatefulCapabilityTLV capability = new StatefulCapabilityTLV();
+		capability.setUFlag(true);
+		capability.setSFlag(true);
+		open.setStateful_capability_tlv(capability);
+		if (version != 0)
+		{
+			LSPDatabaseVersionTLV versionTLV = new LSPDatabaseVersionTLV();
+			versionTLV.setLSPStateDBVersion(version);
+			open.setLsp_database_version_tlv(versionTLV);
+		}
+		return open;
+	}
+
+	static StateReport createStateReport(int plspId, String name, boolean sync, boolean delegate, boolean remove, long version)
+	{
+		StateReport stateReport = new StateReport();
+		LSP lsp = new LSP();
+		lsp.setLspId(plspId);
+		lsp.setSyncFlag(sync);
+		lsp.setDelegateFlag(delegate);
+		lsp.setRemoveFlag(remove);
+		if (name != null)
+		{
+			SymbolicPathNameTLV nameTLV = new SymbolicPathNameTLV();
+			nameTLV.setSymbolicPathNameID(name.getBytes());
+			lsp.setSymbolicPathNameTLV_tlv(nameTLV);
+		}
+		LSPDatabaseVersionTLV versionTLV = new LSPDatabaseVersionTLV();
+		versionTLV.setLSPStateDBVersion(version);
+		lsp.setLspDBVersion_tlv(versionTLV);
+		stateReport.setLsp(lsp);
+		Path path = new Path();
+		path.setEro(new ExplicitRouteObject());
+		stateReport.setPath(path);
+		return stateReport;
+	}
+
+	static PCEPReport createReport(StateReport... stateReports) throws Exception
+	{
+		PCEPReport report = new PCEPReport();
+		LinkedList<StateReport> list = new LinkedList<StateReport>();
+		for (StateReport stateReport : stateReports)
+		{
+			list.add(stateReport);
+		}
+		report.setStateReportList(list);
+		report.encode();
+		//Decoded as received from the PCC
+		return new PCEPReport(report.getBytes());
+	}
+
+}
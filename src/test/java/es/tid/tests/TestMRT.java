@@ -0,0 +1,87 @@
+package es.tid.tests;
+
+import es.tid.bgp.bgp4.messages.BGP4MessageTypes;
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.mrt.MRTReader;
+import es.tid.bgp.bgp4.mrt.MRTRecord;
+import es.tid.bgp.bgp4.mrt.MRTTypes;
+import es.tid.bgp.bgp4.mrt.MRTWriter;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributeCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+public class TestMRT
+{
+
+	@Test
+	public void testWriteAndRead() throws Exception
+	{
+		File file = File.createTempFile("bgp", ".mrt");
+		file.deleteOnExit();
+		BGP4Update update1 = TestBGPLSRib.createUpdate("10.0.0.1", 100);
+		BGP4Update update2 = TestBGPLSRib.createUpdate("10.0.0.2", 50);
+		InetAddress peer = InetAddress.getByName("192.168.1.2");
+		InetAddress local = InetAddress.getByName("192.168.1.1");
+
+		MRTWriter writer = new MRTWriter(file);
+		writer.writeStateChange(1000000000L, 65001, 65000, peer, local, 5, 6);
+		writer.writeMessage(1000000123L, 65001, 65000, peer, local, update1.getBytes(), 0, update1.getLength());
+		writer.writeMessage(1000050000L, 4200000000L, 65000, peer, local, update2.getBytes(), 0, update2.getLength());
+		writer.close();
+		Assert.assertEquals(3, writer.getRecords());
+
+		MRTReader reader = new MRTReader(file);
+		Assert.assertTrue(reader.next());
+		MRTRecord record = reader.getRecord();
+		Assert.assertTrue(record.isStateChange());
+		Assert.assertEquals(6, record.getNewState());
+		Assert.assertEquals(-1, record.getMessageType());
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(MRTTypes.MRT_TYPE_BGP4MP_ET, record.getType());
+		Assert.assertEquals(MRTTypes.BGP4MP_MESSAGE_AS4, record.getSubtype());
+		Assert.assertEquals(1000L, record.getTimestamp());
+		Assert.assertEquals(123, record.getMicroseconds());
+		Assert.assertEquals(65001L, record.getPeerAS());
+		Assert.assertEquals(peer, record.getPeerAddress());
+		Assert.assertEquals(local, record.getLocalAddress());
+		Assert.assertEquals(BGP4MessageTypes.MESSAGE_UPDATE, record.getMessageType());
+		Assert.assertEquals(update1.getLength(), record.getMessage().remaining());
+		Assert.assertArrayEquals(update1.getBytes(), record.getMessageBytes());
+		Assert.assertEquals(new BGP4Update(update1.getBytes()).getPathAttributes(), record.decodeUpdate().getPathAttributes());
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(4200000000L, record.getPeerAS());
+		PathAttributeCache cache = new PathAttributeCache();
+		Assert.assertEquals(new BGP4Update(update2.getBytes()).getPathAttributes(), record.decodeUpdate(cache, null, null).getPathAttributes());
+
+		Assert.assertFalse(reader.next());
+		Assert.assertEquals(3, reader.getRecords());
+		Assert.assertEquals(file.length(), reader.getPosition());
+		reader.close();
+
+		//A truncated record at the end of the file is not returned
+		byte[] truncated = Arrays.copyOf(update1.getBytes(), 10);
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[]{0, 0, 0, 1, 0, 16, 0, 4, 0, 0, 0, 100});
+		out.write(truncated);
+		out.close();
+		reader = new MRTReader(file);
+		reader.setReplaySpeed(1);
+		long start = System.nanoTime();
+		int records = 0;
+		while (reader.next())
+		{
+			records++;
+		}
+		Assert.assertEquals(3, records);
+		Assert.assertTrue("The original timing should be kept", System.nanoTime() - start >= 40000000L);
+		reader.close();
+	}
+
+}
@@ -32,7 +32,7 @@ public class TestPCEPMessages {
     			//{"es.tid.pce.pcep.messages.PCEPError"},
     			{"es.tid.pce.pcep.messages.PCEPInitiate"},
     			{"es.tid.pce.pcep.messages.PCEPKeepalive"},
-    			//{"es.tid.pce.pcep.messages.PCEPMonRep"},//TODO
+    			{"es.tid.pce.pcep.messages.PCEPMonRep"},
     			{"es.tid.pce.pcep.messages.PCEPMonReq"},
     			{"es.tid.pce.pcep.messages.PCEPNotification"},
     			{"es.tid.pce.pcep.messages.PCEPOpen"},
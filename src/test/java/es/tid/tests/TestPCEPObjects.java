@@ -57,6 +57,7 @@ public class TestPCEPObjects {
     			//{"es.tid.pce.pcep.objects.Notification"},
     			{"es.tid.pce.pcep.objects.OPEN"},
     			{"es.tid.pce.pcep.objects.ObjectiveFunction"},
+    			{"es.tid.pce.pcep.objects.Overload"},
     			{"es.tid.pce.pcep.objects.P2MPEndPointsIPv4"},
     			{"es.tid.pce.pcep.objects.P2MPGeneralizedEndPoints"},
     			{"es.tid.pce.pcep.objects.P2PGeneralizedEndPoints"},
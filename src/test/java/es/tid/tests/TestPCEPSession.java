@@ -0,0 +1,322 @@
+package es.tid.tests;
+
+import es.tid.pce.pcep.constructs.Path;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.constructs.StateReport;
+import es.tid.pce.pcep.constructs.UpdateRequest;
+import es.tid.pce.pcep.messages.PCEPReport;
+import es.tid.pce.pcep.messages.PCEPResponse;
+import es.tid.pce.pcep.messages.PCEPUpdate;
+import es.tid.pce.pcep.objects.BandwidthRequested;
+import es.tid.pce.pcep.objects.ExplicitRouteObject;
+import es.tid.pce.pcep.objects.LSP;
+import es.tid.pce.pcep.objects.RequestParameters;
+import es.tid.pce.pcep.objects.SRP;
+import es.tid.pce.pcep.session.BufferPool;
+import es.tid.pce.pcep.session.CorrelationTable;
+import es.tid.pce.pcep.session.CorrelationTable.Pending;
+import es.tid.pce.pcep.session.MessageSink;
+import es.tid.pce.pcep.session.PCEPMessageTemplate;
+import es.tid.pce.pcep.session.ReportBatcher;
+import es.tid.pce.pcep.session.SessionCorrelator;
+import es.tid.rsvp.objects.subobjects.IPv4prefixEROSubobject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+public class TestPCEPSession
+{
+
+	static class ListSink implements MessageSink
+	{
+		final List<byte[]> messages = new ArrayList<byte[]>();
+
+		public synchronized void send(ByteBuffer message)
+		{
+			byte[] bytes = new byte[message.remaining()];
+			message.get(bytes);
+			messages.add(bytes);
+			notifyAll();
+		}
+	}
+
+	@Test
+	public void testReportBatcher() throws Exception
+	{
+		ListSink sink = new ListSink();
+		BufferPool pool = new BufferPool(ReportBatcher.MAX_MESSAGE_LENGTH, 2, true);
+		ReportBatcher batcher = new ReportBatcher(sink, pool, ReportBatcher.MAX_MESSAGE_LENGTH, null, 0);
+		final int numReports = 5000;
+		for (int i = 1; i <= numReports; ++i)
+		{
+			batcher.add(TestLSPDatabase.createStateReport(i, "lsp" + i, true, false, false, i));
+		}
+		batcher.flush();
+		Assert.assertEquals(0, batcher.getPendingReports());
+		Assert.assertTrue(sink.messages.size() > 1);
+		Assert.assertTrue(sink.messages.size() < numReports / 100);
+		Assert.assertEquals(sink.messages.size(), batcher.getSentMessages());
+		Assert.assertEquals(1, pool.getAllocatedBuffers());
+
+		int expected = 1;
+		for (byte[] bytes : sink.messages)
+		{
+			Assert.assertTrue(bytes.length <= ReportBatcher.MAX_MESSAGE_LENGTH);
+			PCEPReport report = new PCEPReport(bytes);
+			for (StateReport stateReport : report.getStateReportList())
+			{
+				Assert.assertEquals(expected++, stateReport.getLsp().getLspId());
+			}
+		}
+		Assert.assertEquals(numReports + 1, expected);
+	}
+
+	@Test
+	public void testReportBatcherLinger() throws Exception
+	{
+		ListSink sink = new ListSink();
+		ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1);
+		ReportBatcher batcher = new ReportBatcher(sink, new BufferPool(ReportBatcher.MAX_MESSAGE_LENGTH, 2, false), ReportBatcher.MAX_MESSAGE_LENGTH, timer, 20);
+		batcher.add(TestLSPDatabase.createStateReport(1, "lsp1", false, true, false, 1));
+		batcher.add(TestLSPDatabase.createStateReport(2, "lsp2", false, true, false, 2));
+		synchronized (sink)
+		{
+			long deadline = System.currentTimeMillis() + 5000;
+			while (sink.messages.isEmpty() && System.currentTimeMillis() < deadline)
+			{
+				sink.wait(100);
+			}
+		}
+		Assert.assertEquals(1, sink.messages.size());
+		Assert.assertEquals(2, new PCEPReport(sink.messages.get(0)).getStateReportList().size());
+		Assert.assertEquals(2.0, batcher.getAverageReportsPerMessage(), 0);
+		timer.shutdown();
+	}
+
+	@Test
+	public void testMessageTemplate() throws Exception
+	{
+		PCEPMessageTemplate template = new PCEPMessageTemplate(createUpdate(1, 1, 100, 2));
+		Assert.assertTrue(template.hasBandwidth());
+		Assert.assertTrue(template.hasEro());
+
+		PCEPUpdate expected = createUpdate(0x80000001L, 0xABCDE, 100, 2);
+		expected.encode();
+		Assert.assertArrayEquals(expected.getBytes(), template.encode(0x80000001L, 0xABCDE));
+
+		//Longer and shorter EROs spliced in a pooled buffer
+		BufferPool pool = new BufferPool(4096, 1, true);
+		for (int hops = 0; hops < 6; ++hops)
+		{
+			expected = createUpdate(7 + hops, 42, 2500.5f, hops);
+			expected.encode();
+			byte[] ero = createEro(hops).getBytes();
+			Assert.assertArrayEquals(expected.getBytes(), template.encode(7 + hops, 42, 2500.5f, ero));
+			ByteBuffer out = pool.acquire();
+			out.position(10);
+			int length = template.encode(out, 7 + hops, 42, 2500.5f, ero);
+			Assert.assertEquals(expected.getLength(), length);
+			byte[] bytes = new byte[length];
+			out.flip();
+			out.position(10);
+			out.get(bytes);
+			Assert.assertArrayEquals(expected.getBytes(), bytes);
+			pool.release(out);
+			PCEPUpdate decoded = new PCEPUpdate(bytes);
+			Assert.assertEquals(42, decoded.getUpdateRequestList().get(0).getLsp().getLspId());
+			Assert.assertTrue(decoded.getUpdateRequestList().get(0).getLsp().isDelegateFlag());
+		}
+	}
+
+	@Test
+	public void testSessionCorrelator() throws Exception
+	{
+		final SessionCorrelator correlator = new SessionCorrelator(1024, 5);
+		final int numThreads = 4;
+		final int perThread = 5000;
+		Thread[] threads = new Thread[numThreads];
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < numThreads; ++t)
+		{
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < perThread; ++i)
+						{
+							Pending<Response> request = correlator.newRequest(60000);
+							PCEPResponse pcrep = new PCEPResponse();
+							Response response = new Response();
+							RequestParameters rp = new RequestParameters();
+							rp.setRequestID(request.getId());
+							response.setRequestParameters(rp);
+							pcrep.addResponse(response);
+							Assert.assertEquals(1, correlator.onResponse(pcrep));
+							Assert.assertSame(response, request.get());
+						}
+					}
+					catch (Throwable e)
+					{
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		Assert.assertNull(failure[0]);
+		Assert.assertEquals(numThreads * perThread, correlator.getRequests().getCompleted());
+		Assert.assertEquals(0, correlator.getRequests().getOutstanding());
+
+		//PCUpd acknowledged by a PCRpt, and a duplicate report
+		Pending<StateReport> update = correlator.newSRP(60000);
+		StateReport stateReport = TestLSPDatabase.createStateReport(5, null, false, true, false, 1);
+		SRP srp = new SRP();
+		srp.setSRP_ID_number(update.getId());
+		stateReport.setSrp(srp);
+		PCEPReport report = TestLSPDatabase.createReport(stateReport);
+		Assert.assertEquals(1, correlator.onReport(report));
+		Assert.assertEquals(5, update.get().getLsp().getLspId());
+		Assert.assertEquals(0, correlator.onReport(report));
+		Assert.assertEquals(1, correlator.getSrps().getUnmatched());
+
+		//Timeouts
+		ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1);
+		correlator.start(timer);
+		Pending<StateReport> lost = correlator.newSRP(20);
+		Pending<StateReport> closed = correlator.newSRP(60000);
+		try
+		{
+			lost.get(5, TimeUnit.SECONDS);
+			Assert.fail("The operation must time out");
+		}
+		catch (ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertEquals(1, correlator.getSrps().getTimeouts());
+		Assert.assertFalse(correlator.getSrps().isOutstanding(lost.getId()));
+		Assert.assertTrue(correlator.getSrps().isOutstanding(closed.getId()));
+		correlator.close(new IllegalStateException("Session closed"));
+		Assert.assertTrue(closed.isCompletedExceptionally());
+		timer.shutdown();
+	}
+
+	@Test
+	public void testCorrelationTableFull() throws Exception
+	{
+		CorrelationTable<String> table = new CorrelationTable<String>(4, 10);
+		List<Pending<String>> pending = new ArrayList<Pending<String>>();
+		for (int i = 0; i < 4; ++i)
+		{
+			pending.add(table.register(1000));
+		}
+		try
+		{
+			table.register(1000);
+			Assert.fail("The table is full");
+		}
+		catch (IllegalStateException e)
+		{
+		}
+		Assert.assertTrue(table.complete(pending.get(2).getId(), "done"));
+		Pending<String> reused = table.register(1000);
+		Assert.assertEquals(pending.get(2).getId() & 3, reused.getId() & 3);
+		Assert.assertFalse(table.complete(pending.get(2).getId(), "late"));
+		Assert.assertEquals("done", pending.get(2).get());
+	}
+
+	@Test
+	public void testCorrelationTableIdentifiers() throws Exception
+	{
+		CorrelationTable<String> table = new CorrelationTable<String>(4, 10);
+		Field nextId = CorrelationTable.class.getDeclaredField("nextId");
+		nextId.setAccessible(true);
+		((AtomicLong) nextId.get(table)).set(0xFFFFFFFEL);
+		Pending<String> last = table.register(1000);
+		Assert.assertEquals(0xFFFFFFFEL, last.getId());
+		Assert.assertTrue(table.complete(last.getId(), "done"));
+		//0xFFFFFFFF and 0 are reserved
+		Assert.assertEquals(1, table.register(1000).getId());
+		Assert.assertEquals(2, table.register(1000).getId());
+	}
+
+	@Test
+	public void testCorrelationTableRegisterWhileExpiring() throws Exception
+	{
+		final CorrelationTable<String> table = new CorrelationTable<String>(16, 10);
+		final List<Pending<String>> registered = new ArrayList<Pending<String>>();
+		Pending<String> first = table.register(0);
+		first.whenComplete(new BiConsumer<String, Throwable>()
+		{
+			public void accept(String answer, Throwable error)
+			{
+				registered.add(table.register(0));
+			}
+		});
+		Thread.sleep(30);
+		table.expireTimeouts();
+		Assert.assertTrue(first.isCompletedExceptionally());
+		Assert.assertEquals(1, registered.size());
+		//The operation registered while a bucket was checked expires in the next ticks
+		Thread.sleep(30);
+		table.expireTimeouts();
+		Assert.assertTrue(registered.get(0).isCompletedExceptionally());
+		Assert.assertEquals(2, table.getTimeouts());
+		Assert.assertEquals(0, table.getOutstanding());
+	}
+
+	static ExplicitRouteObject createEro(int hops) throws Exception
+	{
+		ExplicitRouteObject ero = new ExplicitRouteObject();
+		for (int i = 1; i <= hops; ++i)
+		{
+			IPv4prefixEROSubobject hop = new IPv4prefixEROSubobject();
+			hop.setIpv4address((Inet4Address) Inet4Address.getByName("192.168.0." + i));
+			hop.setPrefix(32);
+			ero.addEROSubobject(hop);
+		}
+		ero.encode();
+		return ero;
+	}
+
+	static PCEPUpdate createUpdate(long srpId, int plspId, float bandwidth, int hops) throws Exception
+	{
+		UpdateRequest updateRequest = new UpdateRequest();
+		SRP srp = new SRP();
+		srp.setSRP_ID_number(srpId);
+		updateRequest.setSrp(srp);
+		LSP lsp = new LSP();
+		lsp.setLspId(plspId);
+		lsp.setDelegateFlag(true);
+		lsp.setAdministrativeFlag(true);
+		updateRequest.setLsp(lsp);
+		Path path = new Path();
+		path.setEro(createEro(hops));
+		BandwidthRequested bw = new BandwidthRequested();
+		bw.setBw(bandwidth);
+		path.setBandwidth(bw);
+		updateRequest.setPath(path);
+		PCEPUpdate update = new PCEPUpdate();
+		update.addStateReport(updateRequest);
+		return update;
+	}
+
+}
@@ -0,0 +1,499 @@
+package es.tid.tests;
+
+import es.tid.pce.pcep.computation.ConstraintKey;
+import es.tid.pce.pcep.computation.ExpiredRequestHandler;
+import es.tid.pce.pcep.computation.MonitoringEngine;
+import es.tid.pce.pcep.computation.OverloadController;
+import es.tid.pce.pcep.computation.OverloadNotificationHandler;
+import es.tid.pce.pcep.computation.PathCache;
+import es.tid.pce.pcep.computation.PathComputer;
+import es.tid.pce.pcep.computation.RequestCoalescer;
+import es.tid.pce.pcep.computation.RequestScheduler;
+import es.tid.pce.pcep.computation.ScheduledRequest;
+import es.tid.pce.pcep.constructs.MetricPCE;
+import es.tid.pce.pcep.constructs.Path;
+import es.tid.pce.pcep.constructs.Request;
+import es.tid.pce.pcep.constructs.Response;
+import es.tid.pce.pcep.messages.PCEPMonRep;
+import es.tid.pce.pcep.messages.PCEPMonReq;
+import es.tid.pce.pcep.messages.PCEPNotification;
+import es.tid.pce.pcep.messages.PCEPRequest;
+import es.tid.pce.pcep.objects.BandwidthRequested;
+import es.tid.pce.pcep.objects.EndPointsIPv4;
+import es.tid.pce.pcep.objects.LoadBalancing;
+import es.tid.pce.pcep.objects.Metric;
+import es.tid.pce.pcep.objects.Monitoring;
+import es.tid.pce.pcep.objects.Notification;
+import es.tid.pce.pcep.objects.ObjectParameters;
+import es.tid.pce.pcep.objects.PccReqId;
+import es.tid.pce.pcep.objects.PceIdIPv4;
+import es.tid.pce.pcep.objects.ProcTime;
+import es.tid.pce.pcep.objects.RequestParameters;
+import es.tid.pce.pcep.objects.Reservation;
+import es.tid.pce.pcep.objects.tlvs.MaxRequestTimeTLV;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestPathComputation
+{
+
+	@Test
+	public void testRequestScheduler() throws Exception
+	{
+		final List<Response> expired = new ArrayList<Response>();
+		RequestScheduler scheduler = new RequestScheduler(new ExpiredRequestHandler()
+		{
+			public void requestExpired(ScheduledRequest request, Response response)
+			{
+				Assert.assertEquals("session", request.getSession());
+				expired.add(response);
+			}
+		});
+		scheduler.submit(createRequest(1, 0, true, 0), "session");
+		scheduler.submit(createRequest(2, 0, false, 0), "session");
+		scheduler.submit(createRequest(3, 7, false, 0), "session");
+		scheduler.submit(createRequest(4, 3, false, 60000), "session");
+		scheduler.submit(createRequest(5, 3, false, 1000), "session");
+		scheduler.submit(createRequest(6, 3, false, 0), "session");
+		scheduler.submit(createRequest(7, 5, false, 1), "session");
+		scheduler.submit(createRequest(8, 1, true, 1), "session");
+		Assert.assertEquals(8, scheduler.size());
+		Thread.sleep(10);
+
+		long[] expectedOrder = { 3, 5, 4, 6, 2, 1 };
+		for (long id : expectedOrder)
+		{
+			ScheduledRequest request = scheduler.poll(0, TimeUnit.MILLISECONDS);
+			Assert.assertEquals(id, request.getRequest().getRequestParameters().getRequestID());
+		}
+		Assert.assertNull(scheduler.poll(1, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(2, expired.size());
+		Assert.assertEquals(7, expired.get(0).getRequestParameters().getRequestID());
+		Assert.assertTrue(expired.get(0).getNoPath().getNoPathTLV().isPCEunavailable());
+		Assert.assertEquals(8, expired.get(1).getRequestParameters().getRequestID());
+		Assert.assertTrue(expired.get(1).getRequestParameters().isReopt());
+		Assert.assertEquals(1, scheduler.getShedRequests(5));
+		Assert.assertEquals(1, scheduler.getShedRequests(1));
+		Assert.assertEquals(3, scheduler.getTakenRequests(3));
+		Assert.assertTrue(scheduler.getAverageWaitTime(3) >= TimeUnit.MILLISECONDS.toNanos(10));
+		Assert.assertTrue(scheduler.getMaxWaitTime(0) >= scheduler.getAverageWaitTime(0));
+
+		//Periodic removal of the expired requests
+		scheduler.submit(createRequest(9, 2, false, 1), "session");
+		scheduler.submit(createRequest(10, 0, false, 0), "session");
+		Thread.sleep(5);
+		Assert.assertEquals(1, scheduler.shedExpired());
+		Assert.assertEquals(1, scheduler.size());
+		Assert.assertEquals(10, scheduler.take().getRequest().getRequestParameters().getRequestID());
+
+		//After shedding an expired request, poll keeps waiting for the rest of the timeout
+		final RequestScheduler waitingScheduler = scheduler;
+		scheduler.submit(createRequest(11, 2, false, 1), "session");
+		Thread.sleep(5);
+		Thread producer = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				waitingScheduler.submit(createRequest(12, 0, false, 0), "session");
+			}
+		};
+		producer.start();
+		ScheduledRequest late = scheduler.poll(5, TimeUnit.SECONDS);
+		producer.join();
+		Assert.assertNotNull(late);
+		Assert.assertEquals(12, late.getRequest().getRequestParameters().getRequestID());
+		Assert.assertEquals(4, expired.size());
+		Assert.assertEquals(11, expired.get(3).getRequestParameters().getRequestID());
+	}
+
+	@Test
+	public void testRequestCoalescer() throws Exception
+	{
+		final AtomicInteger computations = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RequestCoalescer coalescer = new RequestCoalescer(new PathComputer()
+		{
+			public Response computePath(Request request)
+			{
+				computations.incrementAndGet();
+				started.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+				try
+				{
+					return createPathResponse(request, 3);
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		});
+
+		Request first = createPathRequest(1, "10.0.0.1", "10.0.0.9", 100);
+		Request same = createPathRequest(2, "10.0.0.1", "10.0.0.9", 100);
+		same.getEndPoints().setPbit(true);
+		same.getRequestParameters().setPrio(5);
+		Assert.assertEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(same));
+		Assert.assertNotEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(createPathRequest(3, "10.0.0.1", "10.0.0.9", 200)));
+		Assert.assertNotEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(createPathRequest(3, "10.0.0.2", "10.0.0.9", 100)));
+		//Objects and flags that change the path must be part of the key
+		Request reopt = createPathRequest(3, "10.0.0.1", "10.0.0.9", 100);
+		reopt.getRequestParameters().setReopt(true);
+		Assert.assertNotEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(reopt));
+		Request loadBalancing = createPathRequest(3, "10.0.0.1", "10.0.0.9", 100);
+		LoadBalancing lb = new LoadBalancing();
+		lb.setMaxLSP(2);
+		lb.setMinBandwidth(10);
+		loadBalancing.setLoadBalancing(lb);
+		Assert.assertNotEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(loadBalancing));
+		Request reservation = createPathRequest(3, "10.0.0.1", "10.0.0.9", 100);
+		Reservation timer = new Reservation();
+		timer.setTimer(60);
+		reservation.setReservation(timer);
+		Assert.assertNotEquals(ConstraintKey.getKey(first), ConstraintKey.getKey(reservation));
+
+		final List<CompletableFuture<Response>> futures = new ArrayList<CompletableFuture<Response>>();
+		Thread leader = new Thread()
+		{
+			public void run()
+			{
+				coalescer.compute(createPathRequest(1, "10.0.0.1", "10.0.0.9", 100));
+			}
+		};
+		leader.start();
+		started.await();
+		for (int i = 2; i <= 20; ++i)
+		{
+			futures.add(coalescer.compute(createPathRequest(i, "10.0.0.1", "10.0.0.9", 100)));
+		}
+		Assert.assertEquals(1, coalescer.getInFlight());
+		release.countDown();
+		leader.join();
+		List<Response> responses = new ArrayList<Response>();
+		for (int i = 0; i < futures.size(); ++i)
+		{
+			Response response = futures.get(i).get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(i + 2, response.getRequestParameters().getRequestID());
+			Assert.assertEquals(1, response.getPathList().size());
+			Assert.assertEquals(3, response.getPath(0).getEro().getEROSubobjectList().size());
+			responses.add(response);
+		}
+		//Each response has its own objects, so they can be encoded at the same time
+		Assert.assertNotSame(responses.get(0).getPath(0), responses.get(1).getPath(0));
+		Assert.assertNotSame(responses.get(0).getPath(0).getEro(), responses.get(1).getPath(0).getEro());
+		Assert.assertEquals(1, computations.get());
+		Assert.assertEquals(19, coalescer.getCoalescedRequests());
+		Assert.assertEquals(0, coalescer.getInFlight());
+
+		//Once finished, the next request is computed again
+		Response response = coalescer.compute(createPathRequest(30, "10.0.0.1", "10.0.0.9", 100)).get();
+		Assert.assertEquals(30, response.getRequestParameters().getRequestID());
+		Assert.assertEquals(2, computations.get());
+	}
+
+	@Test
+	public void testRequestCoalescerError() throws Exception
+	{
+		RequestCoalescer coalescer = new RequestCoalescer(new PathComputer()
+		{
+			public Response computePath(Request request)
+			{
+				throw new OutOfMemoryError();
+			}
+		});
+		CompletableFuture<Response> future = coalescer.compute(createPathRequest(1, "10.0.0.1", "10.0.0.9", 100));
+		Assert.assertTrue(future.isCompletedExceptionally());
+		try
+		{
+			future.get();
+			Assert.fail("The computation failed");
+		}
+		catch (ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof OutOfMemoryError);
+		}
+		Assert.assertEquals(0, coalescer.getInFlight());
+	}
+
+	@Test
+	public void testMonitoringEngine() throws Exception
+	{
+		PceIdIPv4 pceId = new PceIdIPv4();
+		pceId.setPceIPAddress((Inet4Address) Inet4Address.getByName("10.0.0.100"));
+		OverloadController overload = new OverloadController(null, 10, 2, 1000, 100, 0, TimeUnit.MILLISECONDS);
+		MonitoringEngine engine = new MonitoringEngine(pceId, overload);
+		engine.recordProcessingTime(TimeUnit.MILLISECONDS.toNanos(10));
+		engine.recordProcessingTime(TimeUnit.MILLISECONDS.toNanos(30));
+		engine.recordProcessingTime(TimeUnit.MILLISECONDS.toNanos(20));
+		Assert.assertEquals(3, engine.getStatistics().getCount());
+
+		//Out-of-band request
+		PCEPMonReq monReq = new PCEPMonReq();
+		monReq.getMonitoring().setMonitoringIdNumber(0x80000001L);
+		monReq.getMonitoring().setProcessingTimeBit(true);
+		monReq.getMonitoring().setOverloadBit(true);
+		monReq.getPccReqId().setPCCIpAddress((Inet4Address) Inet4Address.getByName("10.0.0.1"));
+		monReq.encode();
+		PCEPMonRep monRep = engine.processMonReq(new PCEPMonReq(monReq.getBytes()));
+		monRep.encode();
+		monRep = new PCEPMonRep(monRep.getBytes());
+		Assert.assertEquals(0x80000001L, monRep.getMonitoring().getMonitoringIdNumber());
+		Assert.assertEquals(Inet4Address.getByName("10.0.0.1"), monRep.getPccReqId().getPCCIpAddress());
+		Assert.assertEquals(1, monRep.getMetricPCEList().size());
+		MetricPCE metricPCE = monRep.getMetricPCEList().get(0);
+		Assert.assertEquals(pceId, metricPCE.getPceId());
+		ProcTime procTime = metricPCE.getProcTime();
+		Assert.assertEquals(20, procTime.getCurrentProcessingTime());
+		Assert.assertEquals(10, procTime.getMinProcessingTime());
+		Assert.assertEquals(30, procTime.getMaxProcessingTime());
+		Assert.assertEquals(20, procTime.getAverageProcessingTime());
+		Assert.assertEquals(67, procTime.getVarianceProcessingTime());
+		Assert.assertNull(metricPCE.getOverload());
+
+		//The OVERLOAD object is sent while the PCE is overloaded
+		Assert.assertTrue(overload.update(20, TimeUnit.SECONDS.toNanos(3)));
+		metricPCE = engine.createMetricPCE(monReq.getMonitoring(), 0);
+		Assert.assertEquals(1, metricPCE.getOverload().getOverloadDuration());
+
+		//In-band request
+		PCEPRequest pcReq = new PCEPRequest();
+		Monitoring monitoring = new Monitoring();
+		monitoring.setMonitoringIdNumber(7);
+		monitoring.setProcessingTimeBit(true);
+		pcReq.setMonitoring(monitoring);
+		pcReq.setPccReqId(new PccReqId());
+		pcReq.getPccReqId().setPCCIpAddress((Inet4Address) Inet4Address.getByName("10.0.0.1"));
+		Request request = createPathRequest(1, "10.0.0.1", "10.0.0.9", 100);
+		pcReq.addRequest(request);
+		Response response = createPathResponse(request, 2);
+		engine.addMonitoring(pcReq, response, TimeUnit.MILLISECONDS.toNanos(5));
+		response.encode();
+		response = new Response(response.getBytes(), 0);
+		Assert.assertEquals(7, response.getMonitoring().getMonitoringIdNumber());
+		Assert.assertEquals(5, response.getMetricPCEList().get(0).getProcTime().getCurrentProcessingTime());
+		Assert.assertNull(response.getMetricPCEList().get(0).getOverload());
+
+		Response noMonitoring = createPathResponse(request, 2);
+		engine.addMonitoring(new PCEPRequest(), noMonitoring, 0);
+		Assert.assertNull(noMonitoring.getMonitoring());
+	}
+
+	@Test
+	public void testOverloadController() throws Exception
+	{
+		final List<PCEPNotification> notifications = new ArrayList<PCEPNotification>();
+		OverloadController controller = new OverloadController(new OverloadNotificationHandler()
+		{
+			public void overloadChanged(PCEPNotification notification, boolean overloaded)
+			{
+				notifications.add(notification);
+			}
+		}, 10, 2, 1000, 100, 0, TimeUnit.MILLISECONDS);
+		Assert.assertFalse(controller.update(5, 0));
+		Assert.assertTrue(notifications.isEmpty());
+		Assert.assertTrue(controller.update(3, TimeUnit.SECONDS.toNanos(16)));
+		Assert.assertEquals(1, notifications.size());
+		notifications.get(0).encode();
+		Notification overload = new PCEPNotification(notifications.get(0).getBytes()).getNotify(0).getNotificationList().get(0);
+		Assert.assertEquals(ObjectParameters.PCEP_NOTIFICATION_TYPE_OVERLOADED_PCE, overload.getNotificationType());
+		Assert.assertEquals(ObjectParameters.PCEP_NOTIFICATION_VALUE_OVERLOADED, overload.getNotificationValue());
+		Assert.assertEquals(2, overload.getOdtlv().getOverloadedDuration());
+
+		//The overload is kept until both measures are below the low thresholds
+		Assert.assertTrue(controller.update(0, 0));
+		int updates = 1;
+		while (controller.update(1, 0))
+		{
+			++updates;
+		}
+		Assert.assertTrue(updates > 10);
+		Assert.assertTrue(controller.getSmoothedWaitTime() <= TimeUnit.MILLISECONDS.toNanos(100));
+		Assert.assertEquals(2, notifications.size());
+		notifications.get(1).encode();
+		Notification cleared = new PCEPNotification(notifications.get(1).getBytes()).getNotify(0).getNotificationList().get(0);
+		Assert.assertEquals(ObjectParameters.PCEP_NOTIFICATION_VALUE_OVERLOAD_CLEARED, cleared.getNotificationValue());
+		Assert.assertNull(cleared.getOdtlv());
+		Assert.assertFalse(controller.update(9, 0));
+		Assert.assertTrue(controller.update(10, 0));
+		Assert.assertEquals(2, controller.getOverloadNotifications());
+		Assert.assertEquals(1, controller.getClearedNotifications());
+
+		//The hold time paces the changes of state
+		OverloadController damped = new OverloadController(null, 10, 2, 1000, 100, 1, TimeUnit.HOURS);
+		Assert.assertTrue(damped.update(20, 0));
+		Assert.assertTrue(damped.update(0, 0));
+		Assert.assertEquals(0, damped.getClearedNotifications());
+	}
+
+	@Test
+	public void testOverloadControllerScheduler() throws Exception
+	{
+		RequestScheduler scheduler = new RequestScheduler(null);
+		OverloadController controller = new OverloadController(null, 100, 2, 20, 5, 0, TimeUnit.MILLISECONDS);
+		for (int i = 1; i <= 3; ++i)
+		{
+			scheduler.submit(createRequest(i, 0, false, 0), "session");
+		}
+		//The requests wait in the queue until the PCE becomes overloaded
+		int updates = 0;
+		while (!controller.update(scheduler))
+		{
+			Assert.assertTrue("The waiting time must overload the PCE", ++updates < 1000);
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(1, controller.getOverloadNotifications());
+		while (scheduler.poll(0, TimeUnit.MILLISECONDS) != null)
+		{
+		}
+
+		//Periodic updates with the queue empty clear the overload
+		updates = 0;
+		while (controller.update(scheduler))
+		{
+			Assert.assertTrue("An idle queue must clear the overload", ++updates < 100);
+		}
+		Assert.assertEquals(1, controller.getClearedNotifications());
+		Assert.assertTrue(scheduler.getLastWaitTime() > TimeUnit.MILLISECONDS.toNanos(5));
+	}
+
+	@Test
+	public void testPathCache() throws Exception
+	{
+		PathCache cache = new PathCache(1 << 20);
+		Request first = createPathRequest(1, "10.0.0.1", "10.0.0.9", 100);
+		Request second = createPathRequest(2, "10.0.0.1", "10.0.0.8", 100);
+		Assert.assertNull(cache.get(first));
+		cache.put(first, createPathResponse(first, 3), 1);
+		cache.put(second, createPathResponse(second, 2), 1);
+		Assert.assertEquals(2, cache.size());
+
+		Response response = cache.get(createPathRequest(10, "10.0.0.1", "10.0.0.9", 100));
+		Assert.assertEquals(10, response.getRequestParameters().getRequestID());
+		Assert.assertEquals(3, response.getPathList().get(0).getEro().getEROSubobjectList().size());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		//Every hit is a copy of its own
+		Response again = cache.get(createPathRequest(11, "10.0.0.1", "10.0.0.9", 100));
+		Assert.assertEquals(11, again.getRequestParameters().getRequestID());
+		Assert.assertNotSame(response.getPath(0).getEro(), again.getPath(0).getEro());
+
+		//The requests with other constraints do not get the cached result
+		Request reopt = createPathRequest(12, "10.0.0.1", "10.0.0.9", 100);
+		reopt.getRequestParameters().setReopt(true);
+		Assert.assertNull(cache.get(reopt));
+		Request loadBalancing = createPathRequest(13, "10.0.0.1", "10.0.0.9", 100);
+		LoadBalancing lb = new LoadBalancing();
+		lb.setMaxLSP(2);
+		loadBalancing.setLoadBalancing(lb);
+		Assert.assertNull(cache.get(loadBalancing));
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(3, cache.getMisses());
+
+		//Only the results that use the link are removed
+		Assert.assertEquals(1, cache.invalidateLink(Inet4Address.getByName("192.168.0.3")));
+		Assert.assertNull(cache.get(first));
+		Assert.assertNotNull(cache.get(second));
+		Assert.assertEquals(0, cache.invalidateLink(Inet4Address.getByName("192.168.0.3")));
+
+		//A new topology version discards the older results
+		cache.invalidateBefore(2);
+		Assert.assertNull(cache.get(second));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getBytes());
+		cache.put(first, createPathResponse(first, 3), 1);
+		Assert.assertEquals(0, cache.size());
+		cache.put(first, createPathResponse(first, 3), 2);
+		Assert.assertNotNull(cache.get(first));
+
+		//Least recently used results are evicted over the byte budget
+		long entryBytes = cache.getBytes();
+		PathCache small = new PathCache(entryBytes * 2);
+		Request third = createPathRequest(3, "10.0.0.1", "10.0.0.7", 100);
+		small.put(first, createPathResponse(first, 3), 1);
+		small.put(second, createPathResponse(second, 3), 1);
+		Assert.assertNotNull(small.get(first));
+		small.put(third, createPathResponse(third, 3), 1);
+		Assert.assertEquals(1, small.getEvictions());
+		Assert.assertNull(small.get(second));
+		Assert.assertNotNull(small.get(first));
+		Assert.assertNotNull(small.get(third));
+		Assert.assertTrue(small.getBytes() <= entryBytes * 2);
+	}
+
+	static Response createPathResponse(Request request, int hops) throws Exception
+	{
+		Response response = new Response();
+		response.setRequestParameters(request.getRequestParameters());
+		Path path = new Path();
+		path.setEro(TestPCEPSession.createEro(hops));
+		response.addPath(path);
+		return response;
+	}
+
+	static Request createPathRequest(long requestId, String source, String destination, float bandwidth)
+	{
+		Request request = createRequest(requestId, 0, false, 0);
+		try
+		{
+			EndPointsIPv4 endPoints = new EndPointsIPv4();
+			endPoints.setSourceIP((Inet4Address) Inet4Address.getByName(source));
+			endPoints.setDestIP((Inet4Address) Inet4Address.getByName(destination));
+			request.setEndPoints(endPoints);
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+		BandwidthRequested bw = new BandwidthRequested();
+		bw.setBw(bandwidth);
+		request.setBandwidth(bw);
+		Metric metric = new Metric();
+		metric.setMetricType(2);
+		metric.setComputedMetricBit(true);
+		request.getMetricList().add(metric);
+		return request;
+	}
+
+	static Request createRequest(long requestId, int priority, boolean reopt, long maxRequestTime)
+	{
+		Request request = new Request();
+		RequestParameters rp = new RequestParameters();
+		rp.setRequestID(requestId);
+		rp.setPrio(priority);
+		rp.setReopt(reopt);
+		if (maxRequestTime > 0)
+		{
+			MaxRequestTimeTLV maxRequestTimeTLV = new MaxRequestTimeTLV();
+			maxRequestTimeTLV.setMaxRequestTime(maxRequestTime);
+			rp.setMaxRequestTimeTLV(maxRequestTimeTLV);
+		}
+		request.setRequestParameters(rp);
+		return request;
+	}
+
+}
@@ -0,0 +1,274 @@
+package es.tid.tests;
+
+import es.tid.bgp.bgp4.messages.BGP4Update;
+import es.tid.bgp.bgp4.pipeline.UpdateHandler;
+import es.tid.bgp.bgp4.pipeline.UpdatePipeline;
+import es.tid.bgp.bgp4.update.fields.IPv4PrefixList;
+import es.tid.bgp.bgp4.update.fields.IPv4UnicastNLRI;
+import es.tid.bgp.bgp4.update.fields.LinkStateNLRI;
+import es.tid.bgp.bgp4.update.fields.PathAttribute;
+import es.tid.bgp.bgp4.update.fields.WithdrawnRoutes;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.BGP_LS_MP_Reach_Attribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.LinkStateAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.OriginAttribute;
+import es.tid.bgp.bgp4.update.fields.pathAttributes.PathAttributesTypeCode;
+import es.tid.bgp.bgp4.update.tlv.linkstate_attribute_tlvs.MaximumLinkBandwidthLinkAttribTLV;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestUpdatePipeline
+{
+
+	@Test
+	public void testPerPrefixOrdering() throws Exception
+	{
+		final int rounds = 50;
+		final int numPrefixes = 64;
+		final Map<Integer, StringBuffer> events = new ConcurrentHashMap<Integer, StringBuffer>();
+		final AtomicInteger withoutAttributes = new AtomicInteger();
+		UpdatePipeline pipeline = new UpdatePipeline(4, 8, new UpdateHandler()
+		{
+			public void processUpdate(BGP4Update update, int worker)
+			{
+				if (update.getWithdrawnRoutes() != null)
+				{
+					IPv4PrefixList prefixes = update.getWithdrawnRoutes().getPrefixList();
+					for (int i = 0; i < prefixes.size(); ++i)
+					{
+						events.get(prefixes.getPrefix(i)).append('W');
+					}
+				}
+				if (update.getNlri() instanceof IPv4UnicastNLRI)
+				{
+					IPv4PrefixList prefixes = ((IPv4UnicastNLRI) update.getNlri()).getPrefixList();
+					for (int i = 0; i < prefixes.size(); ++i)
+					{
+						if (update.getPathAttributes() == null)
+						{
+							withoutAttributes.incrementAndGet();
+						}
+						events.get(prefixes.getPrefix(i)).append('A');
+					}
+				}
+			}
+		}, null, null, null, true);
+		pipeline.start();
+
+		BGP4Update advertisement = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		OriginAttribute origin = new OriginAttribute();
+		origin.setValue(PathAttributesTypeCode.PATH_ATTRIBUTE_ORIGIN_IGP);
+		pathAttributes.add(origin);
+		advertisement.setPathAttributes(pathAttributes);
+		IPv4UnicastNLRI nlri = new IPv4UnicastNLRI();
+		BGP4Update withdrawal = new BGP4Update();
+		WithdrawnRoutes withdrawnRoutes = new WithdrawnRoutes();
+		for (int i = 0; i < numPrefixes; ++i)
+		{
+			int prefix = (10 << 24) | (i << 8);
+			nlri.getPrefixList().add(prefix, 24);
+			withdrawnRoutes.getPrefixList().add(prefix, 24);
+			events.put(prefix, new StringBuffer());
+		}
+		advertisement.setNlri(nlri);
+		advertisement.encode();
+		withdrawal.setWithdrawnRoutes(withdrawnRoutes);
+		withdrawal.setPathAttributes(new ArrayList<PathAttribute>());
+		withdrawal.encode();
+
+		//Both messages are framed from the same stream
+		ByteBuffer stream = ByteBuffer.allocate(advertisement.getLength() + withdrawal.getLength() + 5);
+		for (int r = 0; r < rounds; ++r)
+		{
+			stream.put(advertisement.getBytes());
+			stream.put(withdrawal.getBytes(), 0, withdrawal.getLength());
+			stream.put(advertisement.getBytes(), 0, 5);
+			stream.flip();
+			List<byte[]> others = pipeline.frame(stream);
+			Assert.assertTrue(others.isEmpty());
+			Assert.assertEquals("The incomplete message must stay in the buffer", 5, stream.remaining());
+			stream.clear();
+		}
+		pipeline.flush();
+		Assert.assertEquals(0, pipeline.getTotalQueueDepth());
+		Assert.assertEquals("The path attributes must be copied", 0, withoutAttributes.get());
+		StringBuilder expected = new StringBuilder();
+		for (int r = 0; r < rounds; ++r)
+		{
+			expected.append("AW");
+		}
+		for (StringBuffer prefixEvents : events.values())
+		{
+			Assert.assertEquals(expected.toString(), prefixEvents.toString());
+		}
+		Assert.assertEquals(2 * rounds, pipeline.getSubmittedMessages());
+		Assert.assertEquals(2 * rounds, pipeline.getSplitMessages());
+		long processed = 0;
+		for (int w = 0; w < pipeline.getNumberOfWorkers(); ++w)
+		{
+			processed += pipeline.getProcessedUpdates(w);
+		}
+		Assert.assertTrue(processed > 2 * rounds);
+		Assert.assertEquals(0, pipeline.getDecodingErrors());
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testLinkStateNLRISplit() throws Exception
+	{
+		final Set<LinkStateNLRI> received = ConcurrentHashMap.newKeySet();
+		final AtomicInteger withoutLinkStateAttribute = new AtomicInteger();
+		UpdatePipeline pipeline = new UpdatePipeline(3, new UpdateHandler()
+		{
+			public void processUpdate(BGP4Update update, int worker)
+			{
+				BGP_LS_MP_Reach_Attribute mpReach = (BGP_LS_MP_Reach_Attribute) update.getPathAttributes().get(0);
+				if (!(update.getPathAttributes().get(1) instanceof LinkStateAttribute))
+				{
+					withoutLinkStateAttribute.incrementAndGet();
+				}
+				received.addAll(mpReach.getLsNLRIList());
+			}
+		}, true);
+		pipeline.start();
+
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		BGP_LS_MP_Reach_Attribute mpReach = new BGP_LS_MP_Reach_Attribute();
+		List<LinkStateNLRI> nlris = new ArrayList<LinkStateNLRI>();
+		for (int i = 1; i <= 16; ++i)
+		{
+			nlris.add(TestBGPLSRib.createNodeNLRI("10.0.0." + i));
+		}
+		mpReach.setLsNLRIList(nlris);
+		pathAttributes.add(mpReach);
+		LinkStateAttribute lsAttribute = new LinkStateAttribute();
+		MaximumLinkBandwidthLinkAttribTLV maxBw = new MaximumLinkBandwidthLinkAttribTLV();
+		maxBw.setMaximumBandwidth(100);
+		lsAttribute.setMaximumLinkBandwidthTLV(maxBw);
+		pathAttributes.add(lsAttribute);
+		update.setPathAttributes(pathAttributes);
+		update.encode();
+
+		pipeline.submit(update.getBytes());
+		pipeline.flush();
+		Assert.assertEquals(1, pipeline.getSplitMessages());
+		Assert.assertEquals(0, pipeline.getDecodingErrors());
+		Assert.assertEquals("The LINK_STATE attribute must be copied", 0, withoutLinkStateAttribute.get());
+		Assert.assertEquals(16, received.size());
+		for (LinkStateNLRI nlri : nlris)
+		{
+			Assert.assertTrue(received.contains(nlri));
+		}
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testPerWorkerCaches() throws Exception
+	{
+		final int numWorkers = 4;
+		UpdatePipeline pipeline = new UpdatePipeline(numWorkers, new UpdateHandler()
+		{
+			public void processUpdate(BGP4Update update, int worker)
+			{
+			}
+		}, true);
+		for (int w = 0; w < numWorkers; ++w)
+		{
+			Assert.assertNotNull(pipeline.getAttributeCache(w));
+			for (int v = 0; v < w; ++v)
+			{
+				Assert.assertNotSame(pipeline.getAttributeCache(v), pipeline.getAttributeCache(w));
+				Assert.assertNotSame(pipeline.getDescriptorsCache(v), pipeline.getDescriptorsCache(w));
+				Assert.assertNotSame(pipeline.getASPathTable(v), pipeline.getASPathTable(w));
+			}
+		}
+		pipeline.start();
+
+		BGP4Update update = new BGP4Update();
+		ArrayList<PathAttribute> pathAttributes = new ArrayList<PathAttribute>();
+		OriginAttribute origin = new OriginAttribute();
+		origin.setValue(PathAttributesTypeCode.PATH_ATTRIBUTE_ORIGIN_IGP);
+		pathAttributes.add(origin);
+		update.setPathAttributes(pathAttributes);
+		IPv4UnicastNLRI nlri = new IPv4UnicastNLRI();
+		for (int i = 0; i < 64; ++i)
+		{
+			nlri.getPrefixList().add((10 << 24) | (i << 8), 24);
+		}
+		update.setNlri(nlri);
+		update.encode();
+
+		pipeline.submit(update.getBytes());
+		pipeline.flush();
+		long[] processed = new long[numWorkers];
+		for (int w = 0; w < numWorkers; ++w)
+		{
+			processed[w] = pipeline.getProcessedUpdates(w);
+		}
+		Assert.assertEquals(1, processed[0]);
+
+		//While the cache of the first worker is locked, the other workers must
+		//still decode their part of the update
+		synchronized (pipeline.getAttributeCache(0))
+		{
+			pipeline.submit(update.getBytes());
+			long deadline = System.currentTimeMillis() + 5000;
+			boolean done = false;
+			while (!done && System.currentTimeMillis() < deadline)
+			{
+				done = true;
+				for (int w = 1; w < numWorkers; ++w)
+				{
+					done &= pipeline.getProcessedUpdates(w) == 2 * processed[w];
+				}
+				Thread.sleep(1);
+			}
+			Assert.assertTrue("The workers must not share the caches", done);
+			Assert.assertEquals(1, pipeline.getProcessedUpdates(0));
+		}
+		pipeline.flush();
+		Assert.assertEquals(2, pipeline.getProcessedUpdates(0));
+		Assert.assertTrue(pipeline.getAttributeCache(0).getHits() > 0);
+		Assert.assertEquals(0, pipeline.getDecodingErrors());
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testHandlerError() throws Exception
+	{
+		final AtomicInteger calls = new AtomicInteger();
+		UpdatePipeline pipeline = new UpdatePipeline(1, new UpdateHandler()
+		{
+			public void processUpdate(BGP4Update update, int worker)
+			{
+				if (calls.incrementAndGet() == 1)
+				{
+					throw new StackOverflowError();
+				}
+			}
+		}, true);
+		pipeline.start();
+
+		BGP4Update update = new BGP4Update();
+		update.setPathAttributes(new ArrayList<PathAttribute>());
+		update.encode();
+		pipeline.submit(update.getBytes());
+		pipeline.submit(update.getBytes());
+		//flush() must not hang, and the worker must still process the second update
+		pipeline.flush();
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(1, pipeline.getDecodingErrors());
+		Assert.assertEquals(2, pipeline.getProcessedUpdates(0));
+		pipeline.shutdown();
+	}
+
+}